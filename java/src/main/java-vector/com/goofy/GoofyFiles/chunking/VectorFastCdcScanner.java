@@ -0,0 +1,176 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scanner FastCDC qui évalue le hash Gear sur plusieurs positions à la fois
+ * avec l'API Vector (module incubateur {@code jdk.incubator.vector}).
+ *
+ * Pour un bloc de n octets, l'empreinte à la position j vaut
+ * {@code fp << (j + 1) + somme(GEAR[b_m] << (j - m))} pour m de 0 à j : les
+ * valeurs Gear du bloc sont chargées dans un vecteur puis cumulées par un scan
+ * parallèle en log2(n) étapes. Les points de coupure sont identiques à ceux du
+ * scanner scalaire.
+ *
+ * Cette classe ne doit être chargée que si le module est présent, voir
+ * {@link FastCdcChunkingStrategy#isVectorBackendAvailable()}.
+ */
+final class VectorFastCdcScanner implements BoundaryScanner {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    static final int LANES = SPECIES.length();
+    private static final LongVector ZERO = LongVector.zero(SPECIES);
+    // Étape s du scan : lane j reçoit la lane j - 2^s, les 2^s premières lanes valent zéro.
+    // Pas de slice(int, Vector) : son code C2 plante la JVM en JDK 17 avec AVX-512
+    private static final VectorShuffle<Long>[] SHIFT_SHUFFLES;
+    private static final VectorMask<Long>[] SHIFT_MASKS;
+    // Décalage de l'empreinte du bloc précédent pour chaque lane : 1, 2, ..., LANES
+    private static final LongVector PREVIOUS_SHIFTS;
+
+    static {
+        long[] shifts = new long[LANES];
+        for (int j = 0; j < LANES; j++) {
+            shifts[j] = j + 1;
+        }
+        PREVIOUS_SHIFTS = LongVector.fromArray(SPECIES, shifts, 0);
+
+        int steps = Integer.numberOfTrailingZeros(LANES);
+        SHIFT_SHUFFLES = new VectorShuffle[steps];
+        SHIFT_MASKS = new VectorMask[steps];
+        for (int step = 0; step < steps; step++) {
+            int shift = 1 << step;
+            SHIFT_SHUFFLES[step] = VectorShuffle.fromOp(SPECIES, j -> Math.max(0, j - shift));
+            SHIFT_MASKS[step] = VectorMask.fromLong(SPECIES, (1L << shift) - 1);
+        }
+    }
+
+    private final int minChunkSize;
+    private final int normalChunkSize;
+    private final int maxChunkSize;
+    private final long maskS;
+    private final long maskL;
+    private final long[] gearValues = new long[LANES];
+    private long fingerprint;
+
+    VectorFastCdcScanner(int minChunkSize, int normalChunkSize, int maxChunkSize, long maskS, long maskL) {
+        this.minChunkSize = minChunkSize;
+        this.normalChunkSize = normalChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.maskS = maskS;
+        this.maskL = maskL;
+    }
+
+    @Override
+    public void reset() {
+        fingerprint = 0;
+    }
+
+    @Override
+    public int findBoundary(byte[] data, int chunkStart, int from, int to) {
+        int i = Math.max(from, chunkStart + minChunkSize);
+
+        int normalEnd = Math.min(to, chunkStart + normalChunkSize);
+        int boundary = scan(data, i, normalEnd, maskS);
+        if (boundary >= 0) {
+            return boundary;
+        }
+        i = Math.max(i, normalEnd);
+
+        int maxEnd = Math.min(to, chunkStart + maxChunkSize);
+        boundary = scan(data, i, maxEnd, maskL);
+        if (boundary >= 0) {
+            return boundary;
+        }
+        i = Math.max(i, maxEnd);
+
+        return i == chunkStart + maxChunkSize ? i : -1;
+    }
+
+    @Override
+    public int findBoundary(ByteBuffer data, int chunkStart, int from, int to) {
+        int i = Math.max(from, chunkStart + minChunkSize);
+
+        int normalEnd = Math.min(to, chunkStart + normalChunkSize);
+        int boundary = scan(data, i, normalEnd, maskS);
+        if (boundary >= 0) {
+            return boundary;
+        }
+        i = Math.max(i, normalEnd);
+
+        int maxEnd = Math.min(to, chunkStart + maxChunkSize);
+        boundary = scan(data, i, maxEnd, maskL);
+        if (boundary >= 0) {
+            return boundary;
+        }
+        i = Math.max(i, maxEnd);
+
+        return i == chunkStart + maxChunkSize ? i : -1;
+    }
+
+    private int scan(byte[] data, int i, int end, long mask) {
+        long fp = fingerprint;
+        for (; i + LANES <= end; i += LANES) {
+            for (int j = 0; j < LANES; j++) {
+                gearValues[j] = FastCdcChunkingStrategy.GEAR[data[i + j] & 0xff];
+            }
+            LongVector fps = gear(fp);
+            VectorMask<Long> cuts = fps.and(mask).compare(VectorOperators.EQ, 0);
+            if (cuts.anyTrue()) {
+                return i + cuts.firstTrue() + 1;
+            }
+            fp = fps.lane(LANES - 1);
+        }
+        // Fin de plage plus courte qu'un vecteur
+        for (; i < end; i++) {
+            fp = (fp << 1) + FastCdcChunkingStrategy.GEAR[data[i] & 0xff];
+            if ((fp & mask) == 0) {
+                return i + 1;
+            }
+        }
+        fingerprint = fp;
+        return -1;
+    }
+
+    private int scan(ByteBuffer data, int i, int end, long mask) {
+        long fp = fingerprint;
+        for (; i + LANES <= end; i += LANES) {
+            for (int j = 0; j < LANES; j++) {
+                gearValues[j] = FastCdcChunkingStrategy.GEAR[data.get(i + j) & 0xff];
+            }
+            LongVector fps = gear(fp);
+            VectorMask<Long> cuts = fps.and(mask).compare(VectorOperators.EQ, 0);
+            if (cuts.anyTrue()) {
+                return i + cuts.firstTrue() + 1;
+            }
+            fp = fps.lane(LANES - 1);
+        }
+        for (; i < end; i++) {
+            fp = (fp << 1) + FastCdcChunkingStrategy.GEAR[data.get(i) & 0xff];
+            if ((fp & mask) == 0) {
+                return i + 1;
+            }
+        }
+        fingerprint = fp;
+        return -1;
+    }
+
+    /**
+     * Empreintes Gear des LANES positions du bloc dont les valeurs Gear sont
+     * dans {@link #gearValues}, {@code previous} étant l'empreinte avant le bloc.
+     */
+    private LongVector gear(long previous) {
+        // Chargement contigu : le gather indexé sur GEAR s'est révélé plus lent
+        LongVector fps = LongVector.fromArray(SPECIES, gearValues, 0);
+        // Scan : après l'étape s, chaque lane a cumulé ses 2^(s+1) dernières valeurs
+        for (int step = 0; step < SHIFT_SHUFFLES.length; step++) {
+            LongVector previousLanes = fps.rearrange(SHIFT_SHUFFLES[step]).blend(ZERO, SHIFT_MASKS[step]);
+            fps = fps.add(previousLanes.lanewise(VectorOperators.LSHL, 1 << step));
+        }
+        return fps.add(LongVector.broadcast(SPECIES, previous).lanewise(VectorOperators.LSHL, PREVIOUS_SHIFTS));
+    }
+}
@@ -0,0 +1,31 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * État de découpage d'un parcours. Les octets d'un même chunk peuvent arriver
+ * en plusieurs appels, l'état étant conservé jusqu'au prochain
+ * {@link #reset()}.
+ */
+public interface BoundaryScanner {
+
+    /**
+     * Remet l'état à zéro au début d'un nouveau chunk.
+     */
+    void reset();
+
+    /**
+     * Cherche un point de coupure dans {@code data[from, to)}.
+     *
+     * @param chunkStart index du premier octet du chunk en cours
+     * @return l'index qui suit le dernier octet du chunk, ou -1 si aucune
+     *         frontière n'a été trouvée avant {@code to}
+     */
+    int findBoundary(byte[] data, int chunkStart, int from, int to);
+
+    /**
+     * Variante pour un buffer sans tableau sous-jacent (fichier mappé en
+     * mémoire). Les index sont absolus dans {@code data}.
+     */
+    int findBoundary(ByteBuffer data, int chunkStart, int from, int to);
+}
@@ -0,0 +1,153 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Lit le fichier par blocs. Les chunks sont des vues sur le buffer de lecture
+ * (bloc + un chunk maximum) : un nouveau buffer est alloué quand le précédent
+ * est plein, et seule la fin du chunk en cours y est recopiée.
+ *
+ * La source peut aussi être un flux (corps d'une requête en cours de
+ * réception) : les chunks sont produits au fil de l'arrivée des données.
+ */
+class BufferedChunkIterator implements ChunkIterator {
+    private final ReadableByteChannel channel;
+    // Null pour un flux : lectures séquentielles
+    private final FileChannel fileChannel;
+    private final BoundaryScanner scanner;
+    private final ChunkDigester digester;
+    private final long end;
+
+    // Le buffer contient toujours le chunk en cours (< taille maximale) plus un bloc de lecture
+    private ByteBuffer buffer;
+    private byte[] data;
+    private int chunkStart = 0;  // début du chunk courant dans le buffer
+    private int scanPos = 0;     // prochain octet à examiner
+    private int limit = 0;       // fin des données lues
+    private long currentPosition;  // position dans le fichier de data[chunkStart]
+    private long readPosition;     // prochaine position à lire dans le fichier
+    private boolean endOfFile = false;
+    private Chunk nextChunk;
+
+    /**
+     * Parcourt uniquement la plage [start, end) du fichier, avec des lectures
+     * positionnelles : plusieurs itérateurs peuvent partager le même channel.
+     */
+    BufferedChunkIterator(FileChannel channel, BoundaryScanner scanner, int maxChunkSize, ChunkDigester digester,
+            int readBlockSize, long start, long end) {
+        this(channel, channel, scanner, maxChunkSize, digester, readBlockSize, start, end);
+    }
+
+    /**
+     * Parcourt le flux jusqu'à sa fin, dans l'ordre de lecture.
+     */
+    BufferedChunkIterator(ReadableByteChannel channel, BoundaryScanner scanner, int maxChunkSize,
+            ChunkDigester digester, int readBlockSize) {
+        this(channel, null, scanner, maxChunkSize, digester, readBlockSize, 0, Long.MAX_VALUE);
+    }
+
+    private BufferedChunkIterator(ReadableByteChannel channel, FileChannel fileChannel, BoundaryScanner scanner,
+            int maxChunkSize, ChunkDigester digester, int readBlockSize, long start, long end) {
+        this.channel = channel;
+        this.fileChannel = fileChannel;
+        this.scanner = scanner;
+        this.digester = digester;
+        this.buffer = ByteBuffer.allocate(maxChunkSize + readBlockSize);
+        this.data = buffer.array();
+        this.currentPosition = start;
+        this.readPosition = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextChunk == null) {
+            try {
+                nextChunk = readNextChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextChunk != null;
+    }
+
+    @Override
+    public Chunk next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Chunk chunk = nextChunk;
+        nextChunk = null;
+        return chunk;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Chunk readNextChunk() throws IOException {
+        while (!endOfFile) {
+            if (scanPos == limit) {
+                fill();
+                continue;
+            }
+
+            // Hacher les octets que le scanner vient de parcourir, encore en cache
+            int boundary = scanner.findBoundary(data, chunkStart, scanPos, limit);
+            int scanned = boundary < 0 ? limit : boundary;
+            digester.update(data, scanPos, scanned - scanPos);
+            scanPos = scanned;
+            if (boundary < 0) {
+                continue;
+            }
+            scanner.reset();
+            return cut(boundary - chunkStart);
+        }
+
+        // Traiter le dernier chunk s'il reste des données
+        if (limit > chunkStart) {
+            return cut(limit - chunkStart);
+        }
+        return null;
+    }
+
+    private void fill() throws IOException {
+        if (readPosition >= end) {
+            endOfFile = true;
+            return;
+        }
+        // Les chunks déjà produits référencent le buffer courant : une fois plein,
+        // continuer dans un nouveau buffer en y recopiant seulement le chunk en cours.
+        // Un flux livre de petites lectures qui s'ajoutent à la suite jusque-là
+        if (chunkStart > 0 && limit == data.length) {
+            ByteBuffer next = ByteBuffer.allocate(buffer.capacity());
+            System.arraycopy(data, chunkStart, next.array(), 0, limit - chunkStart);
+            buffer = next;
+            data = next.array();
+            scanPos -= chunkStart;
+            limit -= chunkStart;
+            chunkStart = 0;
+        }
+        buffer.limit((int) Math.min(data.length, limit + (end - readPosition))).position(limit);
+        int read = fileChannel != null ? fileChannel.read(buffer, readPosition) : channel.read(buffer);
+        if (read < 0) {
+            endOfFile = true;
+        } else {
+            limit += read;
+            readPosition += read;
+        }
+    }
+
+    private Chunk cut(int length) {
+        Chunk chunk = new Chunk(ByteBuffer.wrap(data, chunkStart, length), digester.digest(), currentPosition);
+        currentPosition += length;
+        chunkStart += length;
+        return chunk;
+    }
+}
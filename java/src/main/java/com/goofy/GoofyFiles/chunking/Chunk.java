@@ -1,25 +1,59 @@
 package com.goofy.GoofyFiles.chunking;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
+/**
+ * Vue en lecture seule sur les octets d'un chunk. Les données ne sont pas
+ * copiées : plusieurs chunks partagent le même buffer de lecture ou la même
+ * projection du fichier. Utiliser {@link #copyData()} pour obtenir un tableau
+ * indépendant, par exemple avant de le stocker.
+ */
 public class Chunk {
-    private final byte[] data;
-    private final String hash;
+    private final ByteBuffer data;
+    private final ChunkHash hash;
     private final int originalSize;
-    private final int position;
+    private final long position;
 
-    public Chunk(byte[] data, String hash, int position) {
-        this.data = Arrays.copyOf(data, data.length);
+    /**
+     * Le chunk référence le tableau tel quel : l'appelant ne doit plus le modifier.
+     */
+    public Chunk(byte[] data, ChunkHash hash, long position) {
+        this(ByteBuffer.wrap(data), hash, position);
+    }
+
+    /**
+     * Chunk couvrant les octets restants de {@code data}, entre sa position et
+     * sa limite, sans copie.
+     */
+    public Chunk(ByteBuffer data, ChunkHash hash, long position) {
+        this.data = data.slice().asReadOnlyBuffer();
         this.hash = hash;
-        this.originalSize = data.length;
+        this.originalSize = this.data.remaining();
         this.position = position;
     }
 
-    public byte[] getData() {
-        return Arrays.copyOf(data, data.length);
+    /**
+     * Vue en lecture seule des données. Chaque appel renvoie un buffer
+     * indépendant positionné au début du chunk.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return data.duplicate();
+    }
+
+    /**
+     * Copie des données dans un nouveau tableau appartenant à l'appelant.
+     */
+    public byte[] copyData() {
+        byte[] copy = new byte[originalSize];
+        data.get(0, copy);
+        return copy;
     }
 
-    public String getHash() {
+    /**
+     * Empreinte binaire calculée pendant le découpage avec l'algorithme demandé,
+     * ou null pour un chunk produit sans hachage (voir {@link ChunkHasher}).
+     */
+    public ChunkHash getHash() {
         return hash;
     }
 
@@ -27,7 +61,10 @@ public class Chunk {
         return originalSize;
     }
 
-    public int getPosition() {
+    /**
+     * Décalage en octets du chunk dans le fichier d'origine.
+     */
+    public long getPosition() {
         return position;
     }
 }
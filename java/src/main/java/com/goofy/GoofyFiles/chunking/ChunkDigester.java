@@ -0,0 +1,118 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.digest.Blake3;
+
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+/**
+ * Calcule l'empreinte d'un chunk au fil du découpage : les octets sont ajoutés
+ * juste après avoir été examinés par le scanner, pendant qu'ils sont encore en
+ * cache. Une instance par parcours, non thread-safe.
+ */
+abstract class ChunkDigester {
+
+    static ChunkDigester forAlgorithm(HashingAlgorithm algorithm) {
+        return switch (algorithm) {
+            case SHA1, SHA256 -> new MessageDigestDigester(algorithm);
+            case BLAKE3 -> new Blake3Digester();
+        };
+    }
+
+    /**
+     * Digester qui ne calcule rien : les chunks sont produits sans empreinte,
+     * pour être hachés plus tard (voir {@link ChunkHasher}).
+     */
+    static ChunkDigester none() {
+        return NoDigester.INSTANCE;
+    }
+
+    abstract void update(byte[] data, int offset, int length);
+
+    /**
+     * Ajoute les octets restants du buffer.
+     */
+    abstract void update(ByteBuffer data);
+
+    /**
+     * Termine le chunk en cours et remet l'état à zéro pour le suivant.
+     */
+    abstract ChunkHash digest();
+
+    private static final class NoDigester extends ChunkDigester {
+        private static final NoDigester INSTANCE = new NoDigester();
+
+        @Override
+        void update(byte[] data, int offset, int length) {
+        }
+
+        @Override
+        void update(ByteBuffer data) {
+        }
+
+        @Override
+        ChunkHash digest() {
+            return null;
+        }
+    }
+
+    private static final class MessageDigestDigester extends ChunkDigester {
+        private final MessageDigest messageDigest;
+
+        MessageDigestDigester(HashingAlgorithm algorithm) {
+            try {
+                this.messageDigest = MessageDigest.getInstance(algorithm.getAlgorithmName());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Algorithme de hachage indisponible: " + algorithm, e);
+            }
+        }
+
+        @Override
+        void update(byte[] data, int offset, int length) {
+            messageDigest.update(data, offset, length);
+        }
+
+        @Override
+        void update(ByteBuffer data) {
+            messageDigest.update(data);
+        }
+
+        @Override
+        ChunkHash digest() {
+            return ChunkHash.wrap(messageDigest.digest());
+        }
+    }
+
+    private static final class Blake3Digester extends ChunkDigester {
+        private static final int HASH_LENGTH = 32;
+
+        private final Blake3 blake3 = Blake3.initHash();
+        // Blake3 ne lit que des tableaux : les buffers directs passent par ce tampon
+        private final byte[] scratch = new byte[8192];
+
+        @Override
+        void update(byte[] data, int offset, int length) {
+            blake3.update(data, offset, length);
+        }
+
+        @Override
+        void update(ByteBuffer data) {
+            while (data.hasRemaining()) {
+                int length = Math.min(scratch.length, data.remaining());
+                data.get(scratch, 0, length);
+                blake3.update(scratch, 0, length);
+            }
+        }
+
+        @Override
+        ChunkHash digest() {
+            byte[] hash = new byte[HASH_LENGTH];
+            blake3.doFinalize(hash);
+            blake3.reset();
+            return ChunkHash.wrap(hash);
+        }
+    }
+}
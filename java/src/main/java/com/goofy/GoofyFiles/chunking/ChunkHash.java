@@ -0,0 +1,78 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.util.Arrays;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Empreinte binaire d'un chunk (20 octets en SHA-1, 32 en SHA-256 et BLAKE3).
+ * Le passage en hexadécimal ne se fait qu'aux bords : base de données et API.
+ */
+public final class ChunkHash {
+    private final byte[] bytes;
+    private final int hashCode;
+
+    private ChunkHash(byte[] bytes) {
+        this.bytes = bytes;
+        // Les octets d'un condensat sont uniformes : les premiers suffisent
+        this.hashCode = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Le tableau est conservé tel quel : l'appelant ne doit plus le modifier.
+     */
+    static ChunkHash wrap(byte[] bytes) {
+        return new ChunkHash(bytes);
+    }
+
+    public static ChunkHash of(byte[] bytes) {
+        return new ChunkHash(bytes.clone());
+    }
+
+    public static ChunkHash fromHex(String hex) {
+        try {
+            return new ChunkHash(Hex.decodeHex(hex));
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("Hash hexadécimal invalide: " + hex, e);
+        }
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Huit octets du condensat à partir de {@code offset}, en big-endian.
+     */
+    public long getLong(int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = value << 8 | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    public String toHex() {
+        return Hex.encodeHexString(bytes);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || other instanceof ChunkHash that && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
@@ -0,0 +1,38 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+/**
+ * Calcule après coup l'empreinte de chunks produits sans hachage, par exemple
+ * sur un autre thread que celui du découpage. Une instance par thread.
+ */
+public final class ChunkHasher {
+    private final ChunkDigester digester;
+
+    private ChunkHasher(ChunkDigester digester) {
+        this.digester = digester;
+    }
+
+    public static ChunkHasher forAlgorithm(HashingAlgorithm algorithm) {
+        return new ChunkHasher(ChunkDigester.forAlgorithm(algorithm));
+    }
+
+    /**
+     * Même chunk (même vue sur les données, même position), avec son empreinte.
+     */
+    public Chunk hash(Chunk chunk) {
+        digester.update(chunk.asReadOnlyBuffer());
+        return new Chunk(chunk.asReadOnlyBuffer(), digester.digest(), chunk.getPosition());
+    }
+
+    /**
+     * Empreinte de données reçues telles quelles, par exemple pour vérifier un
+     * chunk envoyé par un client.
+     */
+    public ChunkHash hash(byte[] data) {
+        digester.update(ByteBuffer.wrap(data));
+        return digester.digest();
+    }
+}
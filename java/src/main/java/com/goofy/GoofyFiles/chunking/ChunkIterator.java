@@ -0,0 +1,19 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Parcourt les chunks d'un fichier au fur et à mesure que les frontières sont
+ * trouvées. L'appelant doit fermer l'itérateur.
+ *
+ * Les erreurs de lecture sont remontées en {@link UncheckedIOException} par
+ * {@link #hasNext()} et {@link #next()}.
+ */
+public interface ChunkIterator extends Iterator<Chunk>, Closeable {
+
+    @Override
+    void close() throws IOException;
+}
@@ -1,78 +1,260 @@
 package com.goofy.GoofyFiles.chunking;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+import jakarta.annotation.PreDestroy;
+
 @Service
 public class ChunkingService {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkingService.class);
+
     private static final int MIN_CHUNK_SIZE = 4 * 1024;      // 4KB
     private static final int MAX_CHUNK_SIZE = 64 * 1024;     // 64KB
-    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int FASTCDC_MIN_CHUNK_SIZE = 2 * 1024;    // 2KB
+    private static final int FASTCDC_NORMAL_CHUNK_SIZE = 8 * 1024; // 8KB
+    private static final int READ_BLOCK_SIZE = 1024 * 1024;  // 1MB
+    private static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024; // 64MB
+
+    public static final String VECTORIZED_FASTCDC_PROPERTY = "goofy.chunking.fastcdc.vectorized";
+    public static final ChunkingStrategyType DEFAULT_STRATEGY = ChunkingStrategyType.RABIN;
+    public static final HashingAlgorithm DEFAULT_HASHING_ALGORITHM = HashingAlgorithm.SHA256;
 
-    private final RabinKarp rabinKarp;
-    private final MessageDigest messageDigest;
+    private final Map<ChunkingStrategyType, ChunkingStrategy> strategies = new EnumMap<>(ChunkingStrategyType.class);
+    private final ForkJoinPool chunkingPool;
 
-    public ChunkingService() throws NoSuchAlgorithmException {
-        this.rabinKarp = new RabinKarp();
-        this.messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+    public ChunkingService() {
+        register(new RabinChunkingStrategy(ChunkingStrategyType.RABIN, RabinKarp::new,
+                MIN_CHUNK_SIZE, MAX_CHUNK_SIZE));
+        register(new RabinChunkingStrategy(ChunkingStrategyType.RABIN_ROLLING, RollingRabinKarp::new,
+                MIN_CHUNK_SIZE, MAX_CHUNK_SIZE));
+        // Le backend Vector n'est pas plus rapide partout : à activer après mesure sur la machine cible
+        boolean vectorRequested = Boolean.getBoolean(VECTORIZED_FASTCDC_PROPERTY);
+        FastCdcChunkingStrategy fastCdc = new FastCdcChunkingStrategy(FASTCDC_MIN_CHUNK_SIZE,
+                FASTCDC_NORMAL_CHUNK_SIZE, MAX_CHUNK_SIZE, vectorRequested);
+        register(fastCdc);
+        if (fastCdc.isVectorized()) {
+            logger.info("Découpage FastCDC vectorisé ({} lanes)", FastCdcChunkingStrategy.vectorLanes());
+        } else if (vectorRequested) {
+            logger.warn("Découpage FastCDC scalaire : module jdk.incubator.vector absent ou build sans le profil Maven vector");
+        }
+        this.chunkingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     }
 
-    public List<Chunk> chunkFile(File file) throws IOException {
-        List<Chunk> chunks = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(file)) {
-            ByteArrayOutputStream currentChunk = new ByteArrayOutputStream();
-            int currentPosition = 0;
-            int b;
-            int currentChunkSize = 0;
-
-            while ((b = fis.read()) != -1) {
-                currentChunk.write(b);
-                currentChunkSize++;
-
-                if (currentChunkSize >= MIN_CHUNK_SIZE && rabinKarp.pushByte((byte) b) || 
-                    currentChunkSize >= MAX_CHUNK_SIZE) {
-                    
-                    // Créer un nouveau chunk
-                    byte[] chunkData = currentChunk.toByteArray();
-                    String hash = calculateHash(chunkData);
-                    chunks.add(new Chunk(chunkData, hash, currentPosition));
-
-                    // Réinitialiser pour le prochain chunk
-                    currentPosition += currentChunkSize;
-                    currentChunkSize = 0;
-                    currentChunk.reset();
-                    rabinKarp.reset();
-                }
+    @PreDestroy
+    public void shutdown() {
+        chunkingPool.shutdown();
+    }
+
+    private void register(ChunkingStrategy strategy) {
+        strategies.put(strategy.getType(), strategy);
+    }
+
+    public ChunkingStrategy getStrategy(ChunkingStrategyType type) {
+        ChunkingStrategy strategy = strategies.get(type);
+        if (strategy == null) {
+            throw new IllegalArgumentException("Stratégie de découpage non supportée: " + type);
+        }
+        return strategy;
+    }
+
+    /**
+     * Ouvre le fichier et renvoie un itérateur qui produit les chunks au fur et à
+     * mesure de la lecture. L'appelant doit fermer l'itérateur.
+     */
+    public ChunkIterator iterateChunks(File file) throws IOException {
+        return iterateChunks(file, DEFAULT_STRATEGY);
+    }
+
+    public ChunkIterator iterateChunks(File file, ChunkingStrategyType strategyType) throws IOException {
+        return iterateChunks(file, strategyType, DEFAULT_HASHING_ALGORITHM);
+    }
+
+    /**
+     * Chaque chunk est haché avec l'algorithme demandé pendant le découpage.
+     * Chaque parcours a son propre état (scanner et empreinte) : le service
+     * peut être appelé par plusieurs uploads en même temps sans verrou.
+     */
+    public ChunkIterator iterateChunks(File file, ChunkingStrategyType strategyType, HashingAlgorithm algorithm)
+            throws IOException {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new BufferedChunkIterator(channel, newScanner(strategy, channel), strategy.getMaxChunkSize(),
+                    ChunkDigester.forAlgorithm(algorithm), READ_BLOCK_SIZE, 0, Long.MAX_VALUE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Découpe un flux au fil de sa lecture, sans le copier dans un fichier : les
+     * chunks sont disponibles pendant que les données arrivent encore. Fermer
+     * l'itérateur ferme le flux.
+     */
+    public ChunkIterator iterateChunks(InputStream in, ChunkingStrategyType strategyType, HashingAlgorithm algorithm) {
+        return iterateStream(in, strategyType, ChunkDigester.forAlgorithm(algorithm));
+    }
+
+    /**
+     * Comme {@link #iterateChunks(InputStream, ChunkingStrategyType, HashingAlgorithm)},
+     * sans calculer les empreintes (voir {@link ChunkHasher}).
+     */
+    public ChunkIterator iterateUnhashedChunks(InputStream in, ChunkingStrategyType strategyType) {
+        return iterateStream(in, strategyType, ChunkDigester.none());
+    }
+
+    private ChunkIterator iterateStream(InputStream in, ChunkingStrategyType strategyType, ChunkDigester digester) {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        // Taille inconnue d'avance : pas de recherche des frontières en parallèle
+        return new BufferedChunkIterator(Channels.newChannel(in), strategy.newScanner(), strategy.getMaxChunkSize(),
+                digester, READ_BLOCK_SIZE);
+    }
+
+    /**
+     * Comme {@link #iterateChunks(File)}, mais en projetant le fichier en
+     * mémoire : les chunks sont des vues sur la projection et ne sont copiés
+     * que par {@link Chunk#copyData()}. Le fichier ne doit pas être modifié tant
+     * que les chunks sont utilisés.
+     */
+    public ChunkIterator iterateMappedChunks(File file) throws IOException {
+        return iterateMappedChunks(file, DEFAULT_STRATEGY);
+    }
+
+    public ChunkIterator iterateMappedChunks(File file, ChunkingStrategyType strategyType) throws IOException {
+        return iterateMappedChunks(file, strategyType, DEFAULT_HASHING_ALGORITHM);
+    }
+
+    public ChunkIterator iterateMappedChunks(File file, ChunkingStrategyType strategyType, HashingAlgorithm algorithm)
+            throws IOException {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedChunkIterator(channel, newScanner(strategy, channel), strategy.getMaxChunkSize(),
+                    ChunkDigester.forAlgorithm(algorithm), MappedChunkIterator.DEFAULT_WINDOW_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Comme {@link #iterateMappedChunks(File, ChunkingStrategyType)}, mais sans
+     * calculer les empreintes : {@link Chunk#getHash()} renvoie null. Pour hacher
+     * les chunks sur d'autres threads avec un {@link ChunkHasher}.
+     */
+    public ChunkIterator iterateUnhashedMappedChunks(File file, ChunkingStrategyType strategyType) throws IOException {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedChunkIterator(channel, newScanner(strategy, channel), strategy.getMaxChunkSize(),
+                    ChunkDigester.none(), MappedChunkIterator.DEFAULT_WINDOW_SIZE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private BoundaryScanner newScanner(ChunkingStrategy strategy, FileChannel channel) throws IOException {
+        if (channel.size() < PARALLEL_THRESHOLD || chunkingPool.getParallelism() < 2) {
+            return strategy.newScanner();
+        }
+        // Gros fichier : frontières calculées en parallèle, chunks toujours produits au fil de la lecture
+        long[] boundaries = new ParallelChunker(strategy, chunkingPool, channel.size()).findBoundaries(channel);
+        return new PrecomputedBoundaryScanner(boundaries, 0, 0);
+    }
+
+    /**
+     * Calcule les positions de fin de chaque chunk en découpant des segments du
+     * fichier en parallèle sur le pool donné. Le résultat est identique au
+     * découpage séquentiel.
+     */
+    public long[] findBoundaries(File file, ChunkingStrategyType strategyType, ForkJoinPool pool) throws IOException {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ParallelChunker(strategy, pool, channel.size()).findBoundaries(channel);
+        }
+    }
+
+    public List<Chunk> chunkFileParallel(File file, ChunkingStrategyType strategyType) throws IOException {
+        return chunkFileParallel(file, strategyType, chunkingPool);
+    }
+
+    /**
+     * Découpe tout le fichier en mémoire en parallélisant la recherche des
+     * frontières puis le calcul des hash.
+     */
+    public List<Chunk> chunkFileParallel(File file, ChunkingStrategyType strategyType, ForkJoinPool pool)
+            throws IOException {
+        ChunkingStrategy strategy = getStrategy(strategyType);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long[] boundaries = new ParallelChunker(strategy, pool, fileSize).findBoundaries(channel);
+
+            // Répartir les chunks en groupes contigus, hachés chacun par une tâche
+            int groups = Math.max(1, Math.min(boundaries.length + 1, pool.getParallelism() * 4));
+            int perGroup = (boundaries.length + 1 + groups - 1) / groups;
+            List<ForkJoinTask<List<Chunk>>> tasks = new ArrayList<>();
+            // Le chunk i se termine en boundaries[i], le dernier (index boundaries.length) en fin de fichier
+            for (int first = 0; first <= boundaries.length; first += perGroup) {
+                int firstBoundary = first;
+                int lastChunk = Math.min(boundaries.length, first + perGroup - 1);
+                long start = first == 0 ? 0 : boundaries[first - 1];
+                long end = lastChunk < boundaries.length ? boundaries[lastChunk] : fileSize;
+                tasks.add(pool.submit(() -> {
+                    List<Chunk> chunks = new ArrayList<>();
+                    ChunkIterator iterator = new BufferedChunkIterator(channel,
+                            new PrecomputedBoundaryScanner(boundaries, firstBoundary, start),
+                            strategy.getMaxChunkSize(), ChunkDigester.forAlgorithm(DEFAULT_HASHING_ALGORITHM),
+                            READ_BLOCK_SIZE, start, end);
+                    iterator.forEachRemaining(chunks::add);
+                    return chunks;
+                }));
             }
 
-            // Traiter le dernier chunk s'il reste des données
-            if (currentChunkSize > 0) {
-                byte[] chunkData = currentChunk.toByteArray();
-                String hash = calculateHash(chunkData);
-                chunks.add(new Chunk(chunkData, hash, currentPosition));
+            List<Chunk> chunks = new ArrayList<>(boundaries.length + 1);
+            for (ForkJoinTask<List<Chunk>> task : tasks) {
+                chunks.addAll(task.join());
             }
+            return chunks;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        return chunks;
+    /**
+     * Découpe tout le fichier en mémoire. À réserver aux petits fichiers : préférer
+     * {@link #iterateChunks(File)} pour les uploads.
+     */
+    public List<Chunk> chunkFile(File file) throws IOException {
+        return chunkFile(file, DEFAULT_STRATEGY);
     }
 
-    private String calculateHash(byte[] data) {
-        messageDigest.reset();
-        byte[] hash = messageDigest.digest(data);
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+    public List<Chunk> chunkFile(File file, ChunkingStrategyType strategyType) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        try (ChunkIterator iterator = iterateChunks(file, strategyType)) {
+            iterator.forEachRemaining(chunks::add);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return hexString.toString();
+        return chunks;
     }
 }
@@ -0,0 +1,20 @@
+package com.goofy.GoofyFiles.chunking;
+
+/**
+ * Algorithme de recherche des frontières de chunks.
+ */
+public interface ChunkingStrategy {
+
+    ChunkingStrategyType getType();
+
+    /**
+     * Taille maximale d'un chunk : le lecteur doit pouvoir garder un chunk entier
+     * en mémoire.
+     */
+    int getMaxChunkSize();
+
+    /**
+     * Crée un état de découpage pour un seul parcours de fichier.
+     */
+    BoundaryScanner newScanner();
+}
@@ -0,0 +1,14 @@
+package com.goofy.GoofyFiles.chunking;
+
+/**
+ * Algorithmes de découpage disponibles. Le nom est enregistré avec chaque
+ * fichier pour pouvoir redécouper son contenu de la même façon.
+ */
+public enum ChunkingStrategyType {
+    /** Rabin historique sans fenêtre glissante, utilisé par les fichiers déjà stockés. */
+    RABIN,
+    /** Rabin sur une vraie fenêtre glissante de 48 octets. */
+    RABIN_ROLLING,
+    /** FastCDC : hash Gear et tailles de chunks normalisées. */
+    FASTCDC
+}
@@ -0,0 +1,189 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+
+/**
+ * FastCDC (Xia et al., USENIX ATC 2016) : hash Gear, saut direct jusqu'à la
+ * taille minimale et découpage normalisé avec deux masques. Le masque strict
+ * (15 bits) est utilisé avant la taille normale et le masque large (11 bits)
+ * après, ce qui resserre la distribution des tailles autour de 8KB.
+ */
+class FastCdcChunkingStrategy implements ChunkingStrategy {
+    // Masques pour une taille moyenne de 8KB (bits répartis sur les poids forts).
+    // MASK_L est le MaskL du papier FastCDC. MASK_S n'est PAS le MaskS du papier
+    // (0x0003590703530000L) : il a été dérivé ici en ajoutant 4 bits (0xf0 << 32)
+    // à MASK_L. Les points de coupe en dépendent (format persistant des chunks
+    // déjà stockés) : ne pas modifier ces valeurs.
+    static final long MASK_S = 0x0000d9f003530000L; // 15 bits à 1
+    static final long MASK_L = 0x0000d90003530000L; // 11 bits à 1
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    // Compilé seulement avec le profil Maven "vector" (src/main/java-vector)
+    static final String VECTOR_SCANNER_CLASS = "com.goofy.GoofyFiles.chunking.VectorFastCdcScanner";
+
+    static final long[] GEAR = new long[256];
+
+    static {
+        // Table Gear figée : SplitMix64 avec une graine fixe pour rester reproductible
+        long seed = 0x676f6f667966696cL;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    // Après GEAR : le scanner vectorisé la lit
+    private static final Constructor<? extends BoundaryScanner> VECTOR_SCANNER = loadVectorScanner();
+
+    private final int minChunkSize;
+    private final int normalChunkSize;
+    private final int maxChunkSize;
+    private final boolean vectorized;
+
+    /**
+     * @param vectorized utiliser {@code VectorFastCdcScanner} ; ignoré si le
+     *                   module {@code jdk.incubator.vector} n'est pas chargé
+     *                   ou si le scanner n'a pas été compilé
+     */
+    FastCdcChunkingStrategy(int minChunkSize, int normalChunkSize, int maxChunkSize, boolean vectorized) {
+        this.minChunkSize = minChunkSize;
+        this.normalChunkSize = normalChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.vectorized = vectorized && isVectorBackendAvailable();
+    }
+
+    /**
+     * Le scanner vectorisé n'est compilé qu'avec le profil Maven {@code vector}
+     * et le module incubateur n'est résolu que si la JVM est lancée avec
+     * {@code --add-modules jdk.incubator.vector}. Sans les deux, le scanner
+     * scalaire est utilisé.
+     */
+    static boolean isVectorBackendAvailable() {
+        return VECTOR_SCANNER != null;
+    }
+
+    /**
+     * @return nombre de lanes du scanner vectorisé, 0 s'il est indisponible
+     */
+    static int vectorLanes() {
+        if (VECTOR_SCANNER == null) {
+            return 0;
+        }
+        try {
+            return VECTOR_SCANNER.getDeclaringClass().getDeclaredField("LANES").getInt(null);
+        } catch (ReflectiveOperationException e) {
+            return 0;
+        }
+    }
+
+    private static Constructor<? extends BoundaryScanner> loadVectorScanner() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            Class<? extends BoundaryScanner> type = Class.forName(VECTOR_SCANNER_CLASS)
+                    .asSubclass(BoundaryScanner.class);
+            if (type.getDeclaredField("LANES").getInt(null) < 2) {
+                return null;
+            }
+            return type.getDeclaredConstructor(int.class, int.class, int.class, long.class, long.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    boolean isVectorized() {
+        return vectorized;
+    }
+
+    @Override
+    public ChunkingStrategyType getType() {
+        return ChunkingStrategyType.FASTCDC;
+    }
+
+    @Override
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    @Override
+    public BoundaryScanner newScanner() {
+        if (vectorized) {
+            try {
+                return VECTOR_SCANNER.newInstance(minChunkSize, normalChunkSize, maxChunkSize, MASK_S, MASK_L);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Impossible de créer le scanner FastCDC vectorisé", e);
+            }
+        }
+        return new Scanner();
+    }
+
+    private class Scanner implements BoundaryScanner {
+        private long fingerprint;
+
+        @Override
+        public void reset() {
+            fingerprint = 0;
+        }
+
+        @Override
+        public int findBoundary(byte[] data, int chunkStart, int from, int to) {
+            // Les octets avant la taille minimale ne sont pas hachés
+            int i = Math.max(from, chunkStart + minChunkSize);
+            long fp = fingerprint;
+
+            int normalEnd = Math.min(to, chunkStart + normalChunkSize);
+            for (; i < normalEnd; i++) {
+                fp = (fp << 1) + GEAR[data[i] & 0xff];
+                if ((fp & MASK_S) == 0) {
+                    return i + 1;
+                }
+            }
+
+            int maxEnd = Math.min(to, chunkStart + maxChunkSize);
+            for (; i < maxEnd; i++) {
+                fp = (fp << 1) + GEAR[data[i] & 0xff];
+                if ((fp & MASK_L) == 0) {
+                    return i + 1;
+                }
+            }
+
+            if (i == chunkStart + maxChunkSize) {
+                return i;
+            }
+            fingerprint = fp;
+            return -1;
+        }
+
+        @Override
+        public int findBoundary(ByteBuffer data, int chunkStart, int from, int to) {
+            int i = Math.max(from, chunkStart + minChunkSize);
+            long fp = fingerprint;
+
+            int normalEnd = Math.min(to, chunkStart + normalChunkSize);
+            for (; i < normalEnd; i++) {
+                fp = (fp << 1) + GEAR[data.get(i) & 0xff];
+                if ((fp & MASK_S) == 0) {
+                    return i + 1;
+                }
+            }
+
+            int maxEnd = Math.min(to, chunkStart + maxChunkSize);
+            for (; i < maxEnd; i++) {
+                fp = (fp << 1) + GEAR[data.get(i) & 0xff];
+                if ((fp & MASK_L) == 0) {
+                    return i + 1;
+                }
+            }
+
+            if (i == chunkStart + maxChunkSize) {
+                return i;
+            }
+            fingerprint = fp;
+            return -1;
+        }
+    }
+}
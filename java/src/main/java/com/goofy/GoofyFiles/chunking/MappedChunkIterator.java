@@ -0,0 +1,118 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * Découpe un fichier mappé en mémoire : chaque chunk est une tranche de la
+ * projection, hachée au fil du découpage directement depuis la page cache,
+ * sans tableau intermédiaire. Les données ne sont copiées que si l'appelant les demande
+ * avec {@link Chunk#copyData()}.
+ *
+ * Un mapping est limité à 2GB : le fichier est projeté par fenêtres, et une
+ * nouvelle fenêtre commence toujours au début du chunk en cours pour qu'aucun
+ * chunk ne soit à cheval sur deux projections.
+ */
+class MappedChunkIterator implements ChunkIterator {
+    static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024; // 256MB
+
+    private final FileChannel channel;
+    private final BoundaryScanner scanner;
+    private final ChunkDigester digester;
+    private final long fileSize;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;  // position dans le fichier de window[0]
+    private int chunkStart = 0;
+    private int scanPos = 0;
+    private Chunk nextChunk;
+
+    MappedChunkIterator(FileChannel channel, BoundaryScanner scanner, int maxChunkSize,
+            ChunkDigester digester, long windowSize) throws IOException {
+        if (windowSize < maxChunkSize || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Taille de fenêtre invalide: " + windowSize);
+        }
+        this.channel = channel;
+        this.scanner = scanner;
+        this.digester = digester;
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextChunk == null) {
+            try {
+                nextChunk = readNextChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextChunk != null;
+    }
+
+    @Override
+    public Chunk next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Chunk chunk = nextChunk;
+        nextChunk = null;
+        return chunk;
+    }
+
+    /**
+     * Ferme le channel. Les chunks déjà produits restent lisibles : la
+     * projection est libérée par le GC quand plus aucun chunk ne la référence.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Chunk readNextChunk() throws IOException {
+        while (true) {
+            int limit = window.limit();
+            if (scanPos < limit) {
+                // Hacher les octets que le scanner vient de parcourir, encore en cache
+                int boundary = scanner.findBoundary(window, chunkStart, scanPos, limit);
+                int scanned = boundary < 0 ? limit : boundary;
+                digester.update(window.slice(scanPos, scanned - scanPos));
+                scanPos = scanned;
+                if (boundary >= 0) {
+                    scanner.reset();
+                    return cut(boundary);
+                }
+            }
+
+            if (windowStart + limit >= fileSize) {
+                // Dernier chunk s'il reste des données
+                return limit > chunkStart ? cut(limit) : null;
+            }
+            // Projeter la fenêtre suivante à partir du chunk en cours
+            int scanned = scanPos - chunkStart;
+            map(windowStart + chunkStart);
+            scanPos = scanned;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(windowSize, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        chunkStart = 0;
+    }
+
+    private Chunk cut(int end) {
+        ByteBuffer slice = window.slice(chunkStart, end - chunkStart);
+        Chunk chunk = new Chunk(slice, digester.digest(), windowStart + chunkStart);
+        chunkStart = end;
+        return chunk;
+    }
+}
@@ -0,0 +1,211 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.LongPredicate;
+
+/**
+ * Recherche les frontières de chunks d'un gros fichier sur plusieurs threads.
+ *
+ * Le fichier est coupé en segments découpés en parallèle comme si un chunk
+ * commençait au début de chaque segment. Ces frontières sont spéculatives : un
+ * segment ne sait pas où finit le dernier chunk du segment précédent. Chaque
+ * worker continue donc après la fin de son segment, depuis sa dernière
+ * frontière, jusqu'à tomber sur une frontière déjà trouvée par le segment
+ * suivant. L'état d'un scanner étant remis à zéro à chaque coupure, toutes les
+ * frontières suivantes coïncident : le résultat est identique au découpage
+ * séquentiel.
+ */
+class ParallelChunker {
+    static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024; // 4MB
+    private static final int SEGMENTS_PER_THREAD = 4;
+    private static final int READ_BLOCK_SIZE = 1024 * 1024; // 1MB
+
+    private final ChunkingStrategy strategy;
+    private final ForkJoinPool pool;
+    private final long segmentSize;
+
+    ParallelChunker(ChunkingStrategy strategy, ForkJoinPool pool, long fileSize) {
+        this(strategy, pool, fileSize, Math.max(MIN_SEGMENT_SIZE,
+                ceilDiv(fileSize, (long) pool.getParallelism() * SEGMENTS_PER_THREAD)));
+    }
+
+    ParallelChunker(ChunkingStrategy strategy, ForkJoinPool pool, long fileSize, long segmentSize) {
+        this.strategy = strategy;
+        this.pool = pool;
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    /**
+     * Renvoie les positions de fin de chaque chunk, dans l'ordre. Le dernier
+     * chunk (jusqu'à la fin du fichier) n'y figure que s'il se termine sur une
+     * frontière.
+     */
+    long[] findBoundaries(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int segments = (int) Math.max(1, ceilDiv(fileSize, segmentSize));
+
+        // 1. Frontières spéculatives de chaque segment, en parallèle
+        long[][] speculative = new long[segments][];
+        runAll(segments, i -> speculative[i] = scan(channel, segmentStart(i), segmentEnd(i, fileSize), null).cuts);
+
+        // 2. Chaque segment continue après sa fin jusqu'à se resynchroniser avec la suite
+        ScanResult[] extensions = new ScanResult[segments];
+        runAll(segments - 1, i -> {
+            long[] cuts = speculative[i];
+            long start = cuts.length > 0 ? cuts[cuts.length - 1] : segmentStart(i);
+            long end = segmentEnd(i, fileSize);
+            extensions[i] = scan(channel, start, fileSize,
+                    cut -> cut > end && isSpeculativeCut(speculative, cut, fileSize));
+        });
+
+        // 3. Assembler les frontières sûres
+        LongList boundaries = new LongList();
+        boundaries.addAll(speculative[0], 0);
+        int segment = 0;
+        while (segment < segments - 1) {
+            ScanResult extension = extensions[segment];
+            boundaries.addAll(extension.cuts, 0);
+            if (!extension.synchronised) {
+                break; // fin du fichier atteinte sans resynchronisation
+            }
+            long syncPoint = extension.cuts[extension.cuts.length - 1];
+            segment = segmentOf(syncPoint, fileSize);
+            long[] cuts = speculative[segment];
+            boundaries.addAll(cuts, Arrays.binarySearch(cuts, syncPoint) + 1);
+        }
+        return boundaries.toArray();
+    }
+
+    private boolean isSpeculativeCut(long[][] speculative, long cut, long fileSize) {
+        return Arrays.binarySearch(speculative[segmentOf(cut, fileSize)], cut) >= 0;
+    }
+
+    // Les frontières d'un segment i sont dans ]start(i), end(i)]
+    private int segmentOf(long cut, long fileSize) {
+        return (int) Math.min((cut - 1) / segmentSize, ceilDiv(fileSize, segmentSize) - 1);
+    }
+
+    private long segmentStart(int segment) {
+        return segment * segmentSize;
+    }
+
+    private long segmentEnd(int segment, long fileSize) {
+        return Math.min(fileSize, (segment + 1) * segmentSize);
+    }
+
+    /**
+     * Découpe à partir de start (début d'un chunk) sans lire au-delà de readEnd.
+     * S'arrête après la première frontière acceptée par stopAt.
+     */
+    private ScanResult scan(FileChannel channel, long start, long readEnd, LongPredicate stopAt) {
+        BoundaryScanner scanner = strategy.newScanner();
+        ByteBuffer buffer = ByteBuffer.allocate(strategy.getMaxChunkSize() + READ_BLOCK_SIZE);
+        byte[] data = buffer.array();
+        LongList cuts = new LongList();
+        long base = start;  // position dans le fichier de data[0]
+        int chunkStart = 0;
+        int scanPos = 0;
+        int limit = 0;
+
+        try {
+            while (true) {
+                if (scanPos == limit) {
+                    if (chunkStart > 0) {
+                        System.arraycopy(data, chunkStart, data, 0, limit - chunkStart);
+                        base += chunkStart;
+                        scanPos -= chunkStart;
+                        limit -= chunkStart;
+                        chunkStart = 0;
+                    }
+                    long position = base + limit;
+                    if (position >= readEnd) {
+                        break;
+                    }
+                    buffer.limit((int) Math.min(data.length, limit + (readEnd - position))).position(limit);
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    limit += read;
+                    continue;
+                }
+
+                int boundary = scanner.findBoundary(data, chunkStart, scanPos, limit);
+                if (boundary < 0) {
+                    scanPos = limit;
+                    continue;
+                }
+                long cut = base + boundary;
+                cuts.add(cut);
+                scanner.reset();
+                chunkStart = scanPos = boundary;
+                if (stopAt != null && stopAt.test(cut)) {
+                    return new ScanResult(cuts.toArray(), true);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ScanResult(cuts.toArray(), false);
+    }
+
+    private void runAll(int count, IntTask task) throws IOException {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            tasks.add(pool.submit(() -> task.run(index)));
+        }
+        try {
+            for (ForkJoinTask<?> forkJoinTask : tasks) {
+                forkJoinTask.join();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return (x + y - 1) / y;
+    }
+
+    private interface IntTask {
+        void run(int index);
+    }
+
+    private record ScanResult(long[] cuts, boolean synchronised) {
+    }
+
+    /**
+     * Liste de long sans boxing : un gros fichier produit des centaines de
+     * milliers de frontières.
+     */
+    static class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(long[] source, int from) {
+            for (int i = from; i < source.length; i++) {
+                add(source[i]);
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
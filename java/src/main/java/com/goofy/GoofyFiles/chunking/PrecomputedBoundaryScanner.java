@@ -0,0 +1,50 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rejoue des frontières déjà calculées, par exemple par {@link ParallelChunker}.
+ */
+class PrecomputedBoundaryScanner implements BoundaryScanner {
+    private final long[] boundaries;
+    private int next;
+    private long previous;
+
+    /**
+     * @param boundaries positions de fin des chunks, triées
+     * @param first      index de la première frontière à rejouer
+     * @param start      position dans le fichier du début du premier chunk
+     */
+    PrecomputedBoundaryScanner(long[] boundaries, int first, long start) {
+        this.boundaries = boundaries;
+        this.next = first;
+        this.previous = start;
+    }
+
+    @Override
+    public void reset() {
+        // Rien à faire : l'avancement est suivi par findBoundary
+    }
+
+    @Override
+    public int findBoundary(byte[] data, int chunkStart, int from, int to) {
+        return nextBoundary(chunkStart, to);
+    }
+
+    @Override
+    public int findBoundary(ByteBuffer data, int chunkStart, int from, int to) {
+        return nextBoundary(chunkStart, to);
+    }
+
+    private int nextBoundary(int chunkStart, int to) {
+        if (next >= boundaries.length) {
+            return -1;
+        }
+        long target = chunkStart + (boundaries[next] - previous);
+        if (target > to) {
+            return -1;
+        }
+        previous = boundaries[next++];
+        return (int) target;
+    }
+}
@@ -0,0 +1,80 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Découpage par empreinte de Rabin : coupure quand les bits bas de l'empreinte
+ * sont nuls, entre une taille minimale et une taille maximale.
+ */
+class RabinChunkingStrategy implements ChunkingStrategy {
+    private final ChunkingStrategyType type;
+    private final Supplier<RollingHash> rollingHashFactory;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+
+    RabinChunkingStrategy(ChunkingStrategyType type, Supplier<RollingHash> rollingHashFactory,
+            int minChunkSize, int maxChunkSize) {
+        this.type = type;
+        this.rollingHashFactory = rollingHashFactory;
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    @Override
+    public ChunkingStrategyType getType() {
+        return type;
+    }
+
+    @Override
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    @Override
+    public BoundaryScanner newScanner() {
+        return new Scanner(rollingHashFactory.get());
+    }
+
+    private class Scanner implements BoundaryScanner {
+        private final RollingHash rollingHash;
+
+        Scanner(RollingHash rollingHash) {
+            this.rollingHash = rollingHash;
+        }
+
+        @Override
+        public void reset() {
+            rollingHash.reset();
+        }
+
+        @Override
+        public int findBoundary(byte[] data, int chunkStart, int from, int to) {
+            // Les octets avant le premier octet utile ne sont jamais passés au fingerprint
+            int i = Math.max(from, chunkStart + rollingHash.firstPushedByte(minChunkSize));
+            while (i < to) {
+                byte b = data[i++];
+                int currentChunkSize = i - chunkStart;
+                if (rollingHash.pushByte(b) && currentChunkSize >= minChunkSize
+                        || currentChunkSize >= maxChunkSize) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int findBoundary(ByteBuffer data, int chunkStart, int from, int to) {
+            int i = Math.max(from, chunkStart + rollingHash.firstPushedByte(minChunkSize));
+            while (i < to) {
+                byte b = data.get(i++);
+                int currentChunkSize = i - chunkStart;
+                if (rollingHash.pushByte(b) && currentChunkSize >= minChunkSize
+                        || currentChunkSize >= maxChunkSize) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -3,7 +3,12 @@ package com.goofy.GoofyFiles.chunking;
 import org.rabinfingerprint.fingerprint.RabinFingerprintLong;
 import org.rabinfingerprint.polynomial.Polynomial;
 
-public class RabinKarp {
+/**
+ * Découpage historique : l'empreinte couvre tous les octets poussés depuis le
+ * dernier point de coupure, sans fenêtre glissante. Conservé pour que les
+ * fichiers déjà stockés restent reproductibles.
+ */
+public class RabinKarp implements RollingHash {
     private static final int WINDOW_SIZE = 48;
     private static final int MASK = (1 << 13) - 1; // Pour une taille de chunk moyenne de 8KB
     
@@ -17,11 +22,13 @@ public class RabinKarp {
         this.fingerprint = new RabinFingerprintLong(polynomial);
     }
 
+    @Override
     public void reset() {
         this.windowPos = 0;
         this.fingerprint.reset();
     }
 
+    @Override
     public boolean pushByte(byte b) {
         // Ajouter le nouveau byte
         fingerprint.pushByte(b);
@@ -30,4 +37,9 @@ public class RabinKarp {
         // Vérifier si c'est un point de coupure
         return windowPos >= WINDOW_SIZE && (fingerprint.getFingerprintLong() & MASK) == 0;
     }
+
+    @Override
+    public int firstPushedByte(int minChunkSize) {
+        return minChunkSize - 1;
+    }
 }
@@ -0,0 +1,20 @@
+package com.goofy.GoofyFiles.chunking;
+
+/**
+ * Empreinte utilisée pour détecter les frontières de chunks.
+ */
+interface RollingHash {
+
+    void reset();
+
+    /**
+     * Ajoute un octet et indique si la position courante est un point de coupure.
+     */
+    boolean pushByte(byte b);
+
+    /**
+     * Index, relatif au début du chunk, du premier octet à passer à
+     * {@link #pushByte(byte)}. Les octets précédents sont ignorés.
+     */
+    int firstPushedByte(int minChunkSize);
+}
@@ -0,0 +1,93 @@
+package com.goofy.GoofyFiles.chunking;
+
+import java.util.Arrays;
+
+/**
+ * Empreinte de Rabin sur une vraie fenêtre glissante de 48 octets : l'octet qui
+ * sort de la fenêtre est retiré à chaque ajout, si bien qu'un point de coupure
+ * ne dépend que des 48 derniers octets. Une modification du fichier ne déplace
+ * donc que les frontières voisines.
+ *
+ * Les réductions modulo le polynôme sont précalculées dans deux tables de 256
+ * {@code long} : une pour l'octet entrant, une pour l'octet sortant.
+ */
+public class RollingRabinKarp implements RollingHash {
+    static final int WINDOW_SIZE = 48;
+    private static final long MASK = (1 << 13) - 1; // Pour une taille de chunk moyenne de 8KB
+
+    // Polynôme irréductible de degré 53 sur GF(2)
+    private static final long POLYNOMIAL = 0x3DA3358B4DC173L;
+    private static final int DEGREE = 63 - Long.numberOfLeadingZeros(POLYNOMIAL);
+    private static final int SHIFT = DEGREE - 8;
+
+    // PUSH_TABLE[i] : réduction de i * x^DEGREE, avec les bits de poids fort à effacer
+    private static final long[] PUSH_TABLE = new long[256];
+    // POP_TABLE[b] : contribution b * x^(8 * (WINDOW_SIZE - 1)) de l'octet qui sort
+    private static final long[] POP_TABLE = new long[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            PUSH_TABLE[i] = mod((long) i << DEGREE) | ((long) i << DEGREE);
+
+            long h = i;
+            for (int j = 0; j < WINDOW_SIZE - 1; j++) {
+                h = mod(h << 8);
+            }
+            POP_TABLE[i] = h;
+        }
+    }
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPos;
+    private int pushed;
+    private long fingerprint;
+
+    public RollingRabinKarp() {
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(window, (byte) 0);
+        windowPos = 0;
+        pushed = 0;
+        fingerprint = 0;
+    }
+
+    @Override
+    public boolean pushByte(byte b) {
+        // Retirer l'octet qui sort de la fenêtre puis ajouter le nouveau
+        byte out = window[windowPos];
+        window[windowPos] = b;
+        if (++windowPos == WINDOW_SIZE) {
+            windowPos = 0;
+        }
+        fingerprint ^= POP_TABLE[out & 0xff];
+        int index = (int) (fingerprint >>> SHIFT);
+        fingerprint = ((fingerprint << 8) | (b & 0xff)) ^ PUSH_TABLE[index];
+        pushed++;
+
+        // Vérifier si c'est un point de coupure
+        return pushed >= WINDOW_SIZE && (fingerprint & MASK) == 0;
+    }
+
+    /**
+     * La fenêtre est remplie avec les octets qui précèdent minChunkSize pour
+     * qu'un point de coupure soit possible dès minChunkSize.
+     */
+    @Override
+    public int firstPushedByte(int minChunkSize) {
+        return Math.max(0, minChunkSize - WINDOW_SIZE);
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    private static long mod(long value) {
+        while (value != 0 && 63 - Long.numberOfLeadingZeros(value) >= DEGREE) {
+            value ^= POLYNOMIAL << (63 - Long.numberOfLeadingZeros(value) - DEGREE);
+        }
+        return value;
+    }
+}
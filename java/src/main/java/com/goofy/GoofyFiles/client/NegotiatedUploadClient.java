@@ -0,0 +1,176 @@
+package com.goofy.GoofyFiles.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkIterator;
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
+import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+/**
+ * Client de référence de l'upload négocié ({@code /api/negotiation}) : le
+ * fichier est découpé et haché localement, avec la même stratégie que le
+ * serveur, puis seules les données des chunks que le serveur ne possède pas
+ * sont envoyées.
+ *
+ * Le fichier est lu deux fois : une première pour les hash, une seconde pour
+ * envoyer les chunks manquants au fil de la lecture, sans les garder en mémoire.
+ */
+public class NegotiatedUploadClient {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final ChunkingService chunkingService;
+    private final URI baseUri;
+
+    /**
+     * @param baseUri adresse du serveur, par exemple {@code http://localhost:8080/}
+     */
+    public NegotiatedUploadClient(URI baseUri, ChunkingService chunkingService) {
+        this(baseUri, chunkingService, HttpClient.newHttpClient(), new ObjectMapper());
+    }
+
+    public NegotiatedUploadClient(URI baseUri, ChunkingService chunkingService, HttpClient httpClient,
+            ObjectMapper objectMapper) {
+        this.baseUri = baseUri.resolve("api/negotiation/");
+        this.chunkingService = chunkingService;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Envoie un fichier en trois requêtes : hash des chunks, données des chunks
+     * manquants, création du fichier.
+     *
+     * @param compression compression des chunks stockés, ou null
+     * @return réponse de la création du fichier (id, chunks et octets transférés)
+     */
+    public Map<String, Object> upload(File file, HashingAlgorithm algorithm, ChunkingStrategyType strategy,
+            CompressionType compression) throws IOException, InterruptedException {
+        // 1. Hash et tailles des chunks, dans l'ordre du fichier
+        List<String> hashes = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        try (ChunkIterator chunks = chunkingService.iterateChunks(file, strategy, algorithm)) {
+            while (chunks.hasNext()) {
+                Chunk chunk = chunks.next();
+                hashes.add(chunk.getHash().toHex());
+                sizes.add(chunk.getOriginalSize());
+            }
+        }
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("fileName", file.getName());
+        request.put("algorithm", algorithm);
+        request.put("strategy", strategy);
+        request.put("compression", compression);
+        request.put("hashes", hashes);
+        request.put("sizes", sizes);
+        Map<String, Object> session = send(HttpRequest.newBuilder(baseUri.resolve("sessions"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                .build());
+        String sessionId = (String) session.get("sessionId");
+
+        // 2. Données des chunks manquants, dans l'ordre de leur première apparition
+        @SuppressWarnings("unchecked")
+        Set<String> missing = new HashSet<>((List<String>) session.get("missingChunks"));
+        if (!missing.isEmpty()) {
+            send(HttpRequest.newBuilder(baseUri.resolve("sessions/" + sessionId + "/chunks"))
+                    .header("Content-Type", "application/octet-stream")
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(
+                            () -> new MissingChunksStream(file, algorithm, strategy, missing)))
+                    .build());
+        }
+
+        // 3. Création du fichier à partir des chunks connus du serveur
+        return send(HttpRequest.newBuilder(baseUri.resolve("sessions/" + sessionId + "/complete"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build());
+    }
+
+    private Map<String, Object> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Map<String, Object> body = objectMapper.readValue(response.body(), JSON_OBJECT);
+        if (response.statusCode() != 200) {
+            throw new IOException("Requête " + request.uri() + " refusée (" + response.statusCode() + "): "
+                    + body.get("error"));
+        }
+        return body;
+    }
+
+    /**
+     * Relit le fichier et n'en restitue que les chunks demandés, chacun une seule fois.
+     */
+    private class MissingChunksStream extends InputStream {
+        private final ChunkIterator chunks;
+        private final Set<String> missing;
+        private byte[] current = new byte[0];
+        private int offset;
+
+        MissingChunksStream(File file, HashingAlgorithm algorithm, ChunkingStrategyType strategy,
+                Set<String> missing) {
+            try {
+                this.chunks = chunkingService.iterateChunks(file, strategy, algorithm);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.missing = new HashSet<>(missing);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            while (offset == current.length) {
+                if (!nextMissingChunk()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, current.length - offset);
+            System.arraycopy(current, offset, buffer, off, count);
+            offset += count;
+            return count;
+        }
+
+        private boolean nextMissingChunk() {
+            while (!missing.isEmpty() && chunks.hasNext()) {
+                Chunk chunk = chunks.next();
+                if (missing.remove(chunk.getHash().toHex())) {
+                    current = chunk.copyData();
+                    offset = 0;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            chunks.close();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.goofy.GoofyFiles.compression;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import org.springframework.stereotype.Service;
 import org.xerial.snappy.Snappy;
 import org.slf4j.Logger;
@@ -18,6 +20,7 @@ public class CompressionService {
     private final LZ4Factory lz4Factory;
     private final LZ4Compressor lz4Compressor;
     private final LZ4FastDecompressor lz4Decompressor;
+    private final ThreadLocal<ByteBuffer> directScratch = new ThreadLocal<>();
 
     public enum CompressionType {
         LZ4,
@@ -43,6 +46,57 @@ public class CompressionService {
         }
     }
 
+    /**
+     * Comme {@link #compress(byte[], CompressionType)}, au niveau donné pour
+     * Zstd (de 1 à {@link #maxZstdLevel()}). LZ4 et Snappy n'ont pas de niveau :
+     * il est ignoré. Le format produit est le même, la décompression aussi.
+     */
+    public byte[] compress(byte[] data, CompressionType type, int level) {
+        if (type != CompressionType.ZSTD) {
+            return compress(data, type);
+        }
+        try {
+            return compressZstd(data, 0, data.length, level);
+        } catch (Exception e) {
+            throw new RuntimeException("Compression failed", e);
+        }
+    }
+
+    public int maxZstdLevel() {
+        return Zstd.maxCompressionLevel();
+    }
+
+    /**
+     * Compresse les octets restants du buffer sans modifier sa position. Le
+     * format produit est celui de {@link #compress(byte[], CompressionType)}.
+     * L'entrée n'est pas copiée si elle est adossée à un tableau accessible ou
+     * si c'est un buffer direct (fichier mappé en mémoire).
+     */
+    public byte[] compress(ByteBuffer data, CompressionType type) {
+        ByteBuffer source = data.duplicate();
+        try {
+            if (type == CompressionType.LZ4) {
+                return compressLZ4(source);
+            }
+            if (source.hasArray()) {
+                byte[] array = source.array();
+                int offset = source.arrayOffset() + source.position();
+                return type == CompressionType.ZSTD
+                        ? compressZstd(array, offset, source.remaining(), Zstd.defaultCompressionLevel())
+                        : compressSnappy(array, offset, source.remaining());
+            }
+            if (source.isDirect()) {
+                return type == CompressionType.ZSTD ? compressZstdDirect(source) : compressSnappyDirect(source);
+            }
+            // Buffer en lecture seule sur un tableau : pas d'accès au tableau, copie nécessaire
+            byte[] copy = new byte[source.remaining()];
+            source.get(copy);
+            return compress(copy, type);
+        } catch (Exception e) {
+            throw new RuntimeException("Compression failed", e);
+        }
+    }
+
     public byte[] decompress(byte[] compressedData, CompressionType type, int originalLength) {
         try {
             return switch (type) {
@@ -58,14 +112,20 @@ public class CompressionService {
     }
 
     private byte[] compressLZ4(byte[] data) {
-        byte[] compressed = lz4Compressor.compress(data);
-        
+        return compressLZ4(ByteBuffer.wrap(data));
+    }
+
+    private byte[] compressLZ4(ByteBuffer data) {
+        int length = data.remaining();
+        byte[] output = new byte[8 + lz4Compressor.maxCompressedLength(length)];
+        ByteBuffer buffer = ByteBuffer.wrap(output);
+        int compressedLength = lz4Compressor.compress(data, data.position(), length,
+                buffer, 8, output.length - 8);
+
         // Format: [4 bytes for original length][4 bytes for compressed length][compressed data]
-        ByteBuffer buffer = ByteBuffer.allocate(8 + compressed.length);
-        buffer.putInt(data.length);          // Taille originale
-        buffer.putInt(compressed.length);     // Taille compressée
-        buffer.put(compressed);              // Données compressées
-        return buffer.array();
+        buffer.putInt(length);               // Taille originale
+        buffer.putInt(compressedLength);     // Taille compressée
+        return Arrays.copyOf(output, 8 + compressedLength);
     }
 
     private byte[] decompressLZ4(byte[] compressedData) {
@@ -101,6 +161,29 @@ public class CompressionService {
         return Zstd.compress(data);
     }
 
+    private byte[] compressZstd(byte[] data, int offset, int length, int level) {
+        byte[] output = new byte[(int) Zstd.compressBound(length)];
+        long size = Zstd.compressByteArray(output, 0, output.length, data, offset, length, level);
+        checkZstd(size);
+        return Arrays.copyOf(output, (int) size);
+    }
+
+    private byte[] compressZstdDirect(ByteBuffer data) {
+        ByteBuffer output = directScratch((int) Zstd.compressBound(data.remaining()));
+        long size = Zstd.compressDirectByteBuffer(output, 0, output.capacity(), data, data.position(),
+                data.remaining(), Zstd.defaultCompressionLevel());
+        checkZstd(size);
+        byte[] compressed = new byte[(int) size];
+        output.get(0, compressed);
+        return compressed;
+    }
+
+    private void checkZstd(long size) {
+        if (Zstd.isError(size)) {
+            throw new IllegalStateException("Compression Zstd échouée: " + Zstd.getErrorName(size));
+        }
+    }
+
     private byte[] decompressZstd(byte[] compressedData) {
         long originalSize = Zstd.getFrameContentSize(compressedData);
         return Zstd.decompress(compressedData, (int) originalSize);
@@ -110,6 +193,34 @@ public class CompressionService {
         return Snappy.compress(data);
     }
 
+    private byte[] compressSnappy(byte[] data, int offset, int length) throws Exception {
+        byte[] output = new byte[Snappy.maxCompressedLength(length)];
+        int size = Snappy.compress(data, offset, length, output, 0);
+        return Arrays.copyOf(output, size);
+    }
+
+    private byte[] compressSnappyDirect(ByteBuffer data) throws Exception {
+        ByteBuffer output = directScratch(Snappy.maxCompressedLength(data.remaining()));
+        int size = Snappy.compress(data, output);
+        byte[] compressed = new byte[size];
+        output.get(0, compressed);
+        return compressed;
+    }
+
+    /**
+     * Buffer direct de sortie réutilisé par thread : les compresseurs natifs
+     * n'acceptent une entrée directe qu'avec une sortie directe.
+     */
+    private ByteBuffer directScratch(int capacity) {
+        ByteBuffer scratch = directScratch.get();
+        if (scratch == null || scratch.capacity() < capacity) {
+            scratch = ByteBuffer.allocateDirect(capacity);
+            directScratch.set(scratch);
+        }
+        scratch.clear();
+        return scratch;
+    }
+
     private byte[] decompressSnappy(byte[] compressedData) throws Exception {
         return Snappy.uncompress(compressedData);
     }
@@ -0,0 +1,97 @@
+package com.goofy.GoofyFiles.controller.api;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.duplication.ChunkNegotiationService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+/**
+ * Upload négocié : le client annonce les hash de ses chunks, puis n'envoie que
+ * ceux que le serveur ne possède pas encore.
+ */
+@RestController
+@RequestMapping("api/negotiation")
+public class ChunkNegotiationController {
+
+    private final ChunkNegotiationService negotiationService;
+
+    public ChunkNegotiationController(ChunkNegotiationService negotiationService) {
+        this.negotiationService = negotiationService;
+    }
+
+    /**
+     * Description d'un fichier découpé par le client.
+     */
+    public record SessionRequest(
+            String fileName,
+            HashingAlgorithm algorithm,
+            ChunkingStrategyType strategy,
+            CompressionService.CompressionType compression,
+            List<String> hashes,
+            List<Integer> sizes) {
+    }
+
+    @PostMapping(value = "/sessions", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> openSession(@RequestBody SessionRequest request) {
+        if (request.fileName() == null || request.hashes() == null || request.sizes() == null) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Les champs fileName, hashes et sizes sont obligatoires"));
+        }
+        try {
+            return ResponseEntity.ok(negotiationService.open(
+                    request.fileName(),
+                    request.algorithm() != null ? request.algorithm() : HashingAlgorithm.SHA256,
+                    request.strategy() != null ? request.strategy() : ChunkingStrategyType.RABIN,
+                    request.compression(),
+                    request.hashes(),
+                    request.sizes()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Données des chunks manquants, concaténées dans l'ordre annoncé par
+     * l'ouverture de la session.
+     */
+    @PostMapping(value = "/sessions/{sessionId}/chunks", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunks(@PathVariable String sessionId, InputStream body) {
+        try {
+            return ResponseEntity.ok(negotiationService.receive(sessionId, body));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException | EOFException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec de la réception des chunks: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/sessions/{sessionId}/complete")
+    public ResponseEntity<?> completeSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(negotiationService.complete(sessionId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -2,10 +2,13 @@ package com.goofy.GoofyFiles.controller.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -13,35 +16,64 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkIterator;
 import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
 
 @RestController
 @RequestMapping("api/chunking")
 public class ChunkingController {
 
     private final ChunkingService chunkingService;
+    // Passer par un fichier temporaire plutôt que de découper le flux reçu
+    private final boolean useTempFile;
 
-    public ChunkingController(ChunkingService chunkingService) {
+    public ChunkingController(
+            ChunkingService chunkingService,
+            @Value("${goofy.upload.temp-file:false}") boolean useTempFile) {
         this.chunkingService = chunkingService;
+        this.useTempFile = useTempFile;
     }
     @PostMapping("/analyze")
-    public ResponseEntity<?> analyzeFile(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> analyzeFile(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "strategy", defaultValue = "RABIN") ChunkingStrategyType strategy) {
         try {
-            File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
-            file.transferTo(tempFile);
+            File tempFile = null;
+            ChunkIterator iterator;
+            if (useTempFile) {
+                tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
+                file.transferTo(tempFile);
+                iterator = chunkingService.iterateChunks(tempFile, strategy);
+            } else {
+                iterator = chunkingService.iterateChunks(file.getInputStream(), strategy,
+                        ChunkingService.DEFAULT_HASHING_ALGORITHM);
+            }
 
-            List<Chunk> chunks = chunkingService.chunkFile(tempFile);
+            int numberOfChunks = 0;
+            Set<ChunkHash> uniqueHashes = new HashSet<>();
+            try (ChunkIterator chunks = iterator) {
+                while (chunks.hasNext()) {
+                    uniqueHashes.add(chunks.next().getHash());
+                    numberOfChunks++;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
 
             Map<String, Object> stats = Map.of(
                 "fileName", file.getOriginalFilename(),
+                "strategy", strategy.name(),
                 "originalSize", file.getSize(),
-                "numberOfChunks", chunks.size(),
-                "averageChunkSize", file.getSize() / chunks.size(),
-                "uniqueChunks", chunks.stream().map(Chunk::getHash).distinct().count()
+                "numberOfChunks", numberOfChunks,
+                "averageChunkSize", file.getSize() / numberOfChunks,
+                "uniqueChunks", uniqueHashes.size()
             );
 
-            Files.delete(tempFile.toPath());
+            if (tempFile != null) {
+                Files.delete(tempFile.toPath());
+            }
 
             return ResponseEntity.ok(stats);
         } catch (IOException e) {
@@ -2,15 +2,22 @@ package com.goofy.GoofyFiles.controller.api;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
 import com.goofy.GoofyFiles.compression.CompressionService;
 import com.goofy.GoofyFiles.duplication.DuplicationService;
 import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
@@ -20,9 +27,14 @@ import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
 public class DuplicationController {
 
     private final DuplicationService duplicationService;
+    // Passer par un fichier temporaire plutôt que de découper le flux reçu
+    private final boolean useTempFile;
 
-    public DuplicationController(DuplicationService duplicationService) {
+    public DuplicationController(
+            DuplicationService duplicationService,
+            @Value("${goofy.upload.temp-file:false}") boolean useTempFile) {
         this.duplicationService = duplicationService;
+        this.useTempFile = useTempFile;
     }
 
     @PostMapping("/analyze")
@@ -30,6 +42,10 @@ public class DuplicationController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm) {
         try {
+            if (!useTempFile) {
+                return ResponseEntity.ok(
+                        duplicationService.analyzeStream(file.getInputStream(), file.getOriginalFilename(), algorithm));
+            }
             File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
             file.transferTo(tempFile);
 
@@ -46,8 +62,13 @@ public class DuplicationController {
     @PostMapping("/process")
     public ResponseEntity<?> processFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm) {
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "strategy", defaultValue = "RABIN") ChunkingStrategyType strategy) {
         try {
+            if (!useTempFile) {
+                return ResponseEntity.ok(duplicationService.processAndStoreStream(file.getInputStream(),
+                        file.getOriginalFilename(), algorithm, strategy, null));
+            }
             File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
             file.transferTo(tempFile);
 
@@ -55,7 +76,8 @@ public class DuplicationController {
                     tempFile,
                     file.getOriginalFilename(),
                     file.getSize(),
-                    algorithm);
+                    algorithm,
+                    strategy);
 
             tempFile.delete();
             return ResponseEntity.ok(result);
@@ -69,8 +91,13 @@ public class DuplicationController {
     public ResponseEntity<?> processFileCompressed(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
-            @RequestParam(value = "compression", defaultValue = "LZ4") CompressionService.CompressionType compression) {
+            @RequestParam(value = "compression", defaultValue = "LZ4") CompressionService.CompressionType compression,
+            @RequestParam(value = "strategy", defaultValue = "RABIN") ChunkingStrategyType strategy) {
         try {
+            if (!useTempFile) {
+                return ResponseEntity.ok(duplicationService.processAndStoreStream(file.getInputStream(),
+                        file.getOriginalFilename(), algorithm, strategy, compression));
+            }
             File tempFile = File.createTempFile("upload-", "-" + file.getOriginalFilename());
             file.transferTo(tempFile);
 
@@ -79,7 +106,8 @@ public class DuplicationController {
                     file.getOriginalFilename(),
                     file.getSize(),
                     algorithm,
-                    compression);
+                    compression,
+                    strategy);
 
             tempFile.delete();
             return ResponseEntity.ok(result);
@@ -89,4 +117,53 @@ public class DuplicationController {
                             "Échec du traitement et de l'enregistrement du fichier compressé: " + e.getMessage()));
         }
     }
+
+    /**
+     * Upload brut : le corps de la requête est le contenu du fichier. Les chunks
+     * sont dédupliqués pendant la réception, sans copie sur disque ni découpage
+     * multipart par le serveur, et sans connexion retenue pendant l'envoi.
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadStream(
+            InputStream body,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "algorithm", defaultValue = "SHA256") HashingAlgorithm algorithm,
+            @RequestParam(value = "strategy", defaultValue = "RABIN") ChunkingStrategyType strategy,
+            @RequestParam(value = "compression", required = false) CompressionService.CompressionType compression) {
+        try {
+            if (!useTempFile) {
+                return ResponseEntity.ok(
+                        duplicationService.processAndStoreStream(body, fileName, algorithm, strategy, compression));
+            }
+            File tempFile = File.createTempFile("upload-", "-" + fileName);
+            try {
+                Files.copy(body, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return ResponseEntity.ok(compression == null
+                        ? duplicationService.processAndStoreFile(tempFile, fileName, tempFile.length(), algorithm,
+                                strategy)
+                        : duplicationService.processAndStoreFileCompressed(tempFile, fileName, tempFile.length(),
+                                algorithm, compression, strategy));
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec du traitement et de l'enregistrement du flux: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/index-stats")
+    public ResponseEntity<?> getChunkIndexStats() {
+        return ResponseEntity.ok(duplicationService.getChunkIndexStats());
+    }
+
+    @GetMapping("/filter-stats")
+    public ResponseEntity<?> getChunkFilterStats() {
+        return ResponseEntity.ok(duplicationService.getChunkFilterStats());
+    }
+
+    @GetMapping("/pipeline-stats")
+    public ResponseEntity<?> getPipelineStats() {
+        return ResponseEntity.ok(duplicationService.getPipelineStats());
+    }
 }
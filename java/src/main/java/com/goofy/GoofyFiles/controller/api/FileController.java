@@ -7,6 +7,7 @@ import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.goofy.GoofyFiles.model.FileEntity;
 import com.goofy.GoofyFiles.repository.FileRepository;
+import com.goofy.GoofyFiles.service.FileDeletionService;
 import com.goofy.GoofyFiles.service.FileReconstructionService;
 
 @RestController
@@ -21,11 +23,14 @@ import com.goofy.GoofyFiles.service.FileReconstructionService;
 public class FileController {
 
     private final FileReconstructionService fileReconstructionService;
+    private final FileDeletionService fileDeletionService;
     private final FileRepository fileRepository;
 
     @Autowired
-    public FileController(FileReconstructionService fileReconstructionService, FileRepository fileRepository) {
+    public FileController(FileReconstructionService fileReconstructionService,
+            FileDeletionService fileDeletionService, FileRepository fileRepository) {
         this.fileReconstructionService = fileReconstructionService;
+        this.fileDeletionService = fileDeletionService;
         this.fileRepository = fileRepository;
     }
 
@@ -53,4 +58,17 @@ public class FileController {
                     .body("Erreur lors de la reconstruction du fichier: " + e.getMessage());
         }
     }
+
+    /**
+     * Supprime le fichier ; ses chunks sans autre référence sont libérés par le
+     * ramasse-miettes.
+     */
+    @DeleteMapping("/{fileId}")
+    public ResponseEntity<?> deleteFile(@PathVariable Long fileId) {
+        try {
+            return ResponseEntity.ok(fileDeletionService.deleteFile(fileId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
 }
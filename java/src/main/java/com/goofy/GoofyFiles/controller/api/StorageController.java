@@ -0,0 +1,169 @@
+package com.goofy.GoofyFiles.controller.api;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.goofy.GoofyFiles.duplication.ChunkGarbageCollector;
+import com.goofy.GoofyFiles.storage.ChunkAccessTracker;
+import com.goofy.GoofyFiles.storage.ChunkPackMigrator;
+import com.goofy.GoofyFiles.storage.ChunkTieringService;
+import com.goofy.GoofyFiles.storage.PackChunkStore;
+import com.goofy.GoofyFiles.storage.PackCompactor;
+import com.goofy.GoofyFiles.storage.PackRebalancer;
+
+@RestController
+@RequestMapping("api/storage")
+public class StorageController {
+
+    private final ChunkPackMigrator packMigrator;
+    private final PackChunkStore packStore;
+    private final PackCompactor packCompactor;
+    private final ChunkGarbageCollector garbageCollector;
+    private final ChunkTieringService tieringService;
+    private final ChunkAccessTracker accessTracker;
+    private final PackRebalancer packRebalancer;
+
+    public StorageController(ChunkPackMigrator packMigrator, PackChunkStore packStore, PackCompactor packCompactor,
+            ChunkGarbageCollector garbageCollector, ChunkTieringService tieringService,
+            ChunkAccessTracker accessTracker, PackRebalancer packRebalancer) {
+        this.packMigrator = packMigrator;
+        this.packStore = packStore;
+        this.packCompactor = packCompactor;
+        this.garbageCollector = garbageCollector;
+        this.tieringService = tieringService;
+        this.accessTracker = accessTracker;
+        this.packRebalancer = packRebalancer;
+    }
+
+    /**
+     * Déplace vers les packs les données des chunks encore stockées en base.
+     */
+    @PostMapping("/migrate-to-packs")
+    public ResponseEntity<?> migrateToPacks(@RequestParam(value = "batchSize", defaultValue = "500") int batchSize) {
+        try {
+            return ResponseEntity.ok(packMigrator.migrateToPacks(batchSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec de la migration vers les packs: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/pack-stats")
+    public ResponseEntity<?> getPackStats() {
+        try {
+            return ResponseEntity.ok(packStore.getStats());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Lecture du répertoire des packs impossible: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Octets vivants et morts de chaque segment de pack.
+     */
+    @GetMapping("/segments")
+    public ResponseEntity<?> getSegments() {
+        try {
+            return ResponseEntity.ok(packCompactor.getSegments());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Lecture du répertoire des packs impossible: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Lance une passe de compactage sans attendre la prochaine passe planifiée.
+     */
+    @PostMapping("/compact")
+    public ResponseEntity<?> compact() {
+        try {
+            return ResponseEntity.ok(packCompactor.compact());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec du compactage des packs: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/compaction-stats")
+    public ResponseEntity<?> getCompactionStats() {
+        return ResponseEntity.ok(packCompactor.getStats());
+    }
+
+    /**
+     * Lance une passe du ramasse-miettes des chunks sans référence.
+     */
+    @PostMapping("/collect-garbage")
+    public ResponseEntity<?> collectGarbage() {
+        return ResponseEntity.ok(garbageCollector.collect());
+    }
+
+    @GetMapping("/gc-stats")
+    public ResponseEntity<?> getGarbageCollectorStats() {
+        return ResponseEntity.ok(garbageCollector.getStats());
+    }
+
+    /**
+     * Enregistre les lectures en attente puis lance une passe de recompression
+     * des chunks froids, sans attendre la prochaine passe planifiée.
+     */
+    @PostMapping("/tiering")
+    public ResponseEntity<?> runTiering() {
+        try {
+            accessTracker.flush();
+            return ResponseEntity.ok(tieringService.demoteColdChunks());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec de la recompression des chunks froids: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Chunks et octets par étage, octets gagnés et temps CPU de la recompression.
+     */
+    @GetMapping("/tiering-stats")
+    public ResponseEntity<?> getTieringStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(tieringService.getStats());
+        stats.put("accesses", accessTracker.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Recopie sur leur volume les chunks qu'un volume ajouté doit désormais
+     * recevoir.
+     */
+    @PostMapping("/rebalance")
+    public ResponseEntity<?> rebalance() {
+        try {
+            return ResponseEntity.ok(packRebalancer.rebalance());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Échec du rééquilibrage des packs: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Chunks et octets stockés sur chaque volume des packs.
+     */
+    @GetMapping("/volumes")
+    public ResponseEntity<?> getVolumes() {
+        try {
+            return ResponseEntity.ok(packRebalancer.getDistribution());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Lecture des volumes des packs impossible: " + e.getMessage()));
+        }
+    }
+}
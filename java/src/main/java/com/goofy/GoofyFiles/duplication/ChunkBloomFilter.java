@@ -0,0 +1,99 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+
+/**
+ * Filtre de Bloom sur des empreintes de chunks. Les octets d'un condensat sont
+ * déjà uniformes : les positions sont dérivées par double hachage de deux mots
+ * de 64 bits du hash, sans re-hacher. Thread-safe, sans faux négatif.
+ */
+final class ChunkBloomFilter {
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+
+  ChunkBloomFilter(long bitCount, int hashCount) {
+    // Arrondi au mot de 64 bits
+    int wordCount = (int) Math.max(1, (bitCount + 63) / 64);
+    this.words = new AtomicLongArray(wordCount);
+    this.bitCount = (long) wordCount * 64;
+    this.hashCount = hashCount;
+  }
+
+  /**
+   * Dimensionnement optimal pour {@code expectedInsertions} éléments et le
+   * taux de faux positifs visé.
+   */
+  static ChunkBloomFilter create(long expectedInsertions, double falsePositiveRate) {
+    if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Paramètres du filtre invalides: " + expectedInsertions
+          + " éléments, taux " + falsePositiveRate);
+    }
+    double ln2 = Math.log(2);
+    long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+    int hashes = (int) Math.max(1, Math.round((double) bits / expectedInsertions * ln2));
+    return new ChunkBloomFilter(bits, hashes);
+  }
+
+  void add(ChunkHash hash) {
+    long h1 = hash.getLong(0);
+    long h2 = hash.getLong(8) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(h1 + i * h2, bitCount);
+      long mask = 1L << bit;
+      int word = (int) (bit >>> 6);
+      long current = words.get(word);
+      while ((current & mask) == 0 && !words.weakCompareAndSetVolatile(word, current, current | mask)) {
+        current = words.get(word);
+      }
+    }
+  }
+
+  boolean mightContain(ChunkHash hash) {
+    long h1 = hash.getLong(0);
+    long h2 = hash.getLong(8) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      long bit = Math.floorMod(h1 + i * h2, bitCount);
+      if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long bitCount() {
+    return bitCount;
+  }
+
+  int hashCount() {
+    return hashCount;
+  }
+
+  int wordCount() {
+    return words.length();
+  }
+
+  long word(int index) {
+    return words.get(index);
+  }
+
+  /**
+   * Fusionne un mot lu d'un instantané (OU binaire avec l'état courant).
+   */
+  void mergeWord(int index, long value) {
+    words.getAndAccumulate(index, value, (a, b) -> a | b);
+  }
+
+  /**
+   * Taux de faux positifs estimé d'après la proportion de bits à 1.
+   */
+  double estimatedFalsePositiveRate() {
+    long set = 0;
+    for (int i = 0; i < words.length(); i++) {
+      set += Long.bitCount(words.get(i));
+    }
+    return Math.pow((double) set / bitCount, hashCount);
+  }
+}
@@ -0,0 +1,228 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Index uniques sur les colonnes de hash des chunks, dont dépend l'insertion
+ * concurrente ({@link com.goofy.GoofyFiles.repository.ChunkUpsertWriter}).
+ *
+ * Avant eux, deux uploads simultanés pouvaient stocker le même contenu deux
+ * fois. Sur une telle base, Hibernate ({@code ddl-auto=update}) ne parvient pas
+ * à créer les index et démarre quand même. Ici, avant la première insertion :
+ * pour chaque colonne sans index unique, les lignes d'un même hash sont
+ * fusionnées dans la plus ancienne (liens file_chunk et manifestes compacts
+ * redirigés, compteurs de références additionnés), puis la contrainte unique
+ * est créée, le tout dans une transaction par colonne. L'application refuse de
+ * démarrer si un index manque encore.
+ *
+ * Les données des lignes supprimées restent en base jusqu'au VACUUM, ou dans
+ * les packs jusqu'au compactage.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class ChunkDeduplicationMigration {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkDeduplicationMigration.class);
+
+  // Colonne de hash -> nom de sa contrainte unique (ChunkEntity)
+  static final Map<String, String> INDEXES = Map.of(
+      "hash_sha_1", "ux_chunk_hash_sha_1",
+      "hash_sha_256", "ux_chunk_hash_sha_256",
+      "hash_blake3", "ux_chunk_hash_blake3");
+
+  private static final int HASHES_PER_QUERY = 1000;
+
+  private final DataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  public ChunkDeduplicationMigration(DataSource dataSource, PlatformTransactionManager transactionManager) {
+    this.dataSource = dataSource;
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  @PostConstruct
+  public void migrate() throws MetaDataAccessException {
+    boolean postgres = "PostgreSQL".equals(
+        JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName));
+    for (Map.Entry<String, String> index : INDEXES.entrySet()) {
+      if (hasUniqueIndex(index.getKey())) {
+        continue;
+      }
+      transactionTemplate.executeWithoutResult(status -> {
+        if (postgres) {
+          // Pas d'insertion d'une autre instance entre la fusion et la création de l'index
+          jdbcTemplate.execute("LOCK TABLE chunk IN SHARE ROW EXCLUSIVE MODE");
+        }
+        int merged = mergeDuplicates(index.getKey());
+        // La contrainte que crée Hibernate, avec son index
+        jdbcTemplate.execute("ALTER TABLE chunk ADD CONSTRAINT " + index.getValue() + " UNIQUE ("
+            + index.getKey() + ")");
+        logger.info("Contrainte unique {} créée, {} chunks en double fusionnés", index.getValue(), merged);
+      });
+    }
+    for (String column : INDEXES.keySet()) {
+      if (!hasUniqueIndex(column)) {
+        throw new IllegalStateException("Index unique manquant sur chunk." + column
+            + " : un même contenu pourrait être stocké plusieurs fois");
+      }
+    }
+  }
+
+  /**
+   * Un index unique qui porte sur cette seule colonne de la table chunk du
+   * schéma courant.
+   */
+  boolean hasUniqueIndex(String column) {
+    return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+      DatabaseMetaData metaData = connection.getMetaData();
+      String table = metaData.storesUpperCaseIdentifiers() ? "CHUNK" : "chunk";
+      Map<String, List<String>> columnsByIndex = new HashMap<>();
+      try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), table, true,
+          false)) {
+        while (rs.next()) {
+          if (rs.getString("INDEX_NAME") != null && rs.getString("COLUMN_NAME") != null) {
+            columnsByIndex.computeIfAbsent(rs.getString("INDEX_NAME"), name -> new ArrayList<>())
+                .add(rs.getString("COLUMN_NAME"));
+          }
+        }
+      }
+      return columnsByIndex.values().stream()
+          .anyMatch(columns -> columns.size() == 1 && columns.get(0).equalsIgnoreCase(column));
+    });
+  }
+
+  /**
+   * Fusionne les lignes de même hash dans celle de plus petit id.
+   *
+   * @return lignes supprimées
+   */
+  private int mergeDuplicates(String column) {
+    List<String> hashes = jdbcTemplate.queryForList("SELECT " + column + " FROM chunk WHERE " + column
+        + " IS NOT NULL GROUP BY " + column + " HAVING count(*) > 1", String.class);
+    if (hashes.isEmpty()) {
+      return 0;
+    }
+
+    // Ligne conservée de chaque hash, et id conservé de chaque ligne supprimée
+    Map<String, Row> kept = new HashMap<>();
+    Map<Long, Long> replacements = new HashMap<>();
+    for (int first = 0; first < hashes.size(); first += HASHES_PER_QUERY) {
+      List<String> slice = hashes.subList(first, Math.min(hashes.size(), first + HASHES_PER_QUERY));
+      jdbcTemplate.query("SELECT id, " + column + ", ref_count, unreferenced_since FROM chunk WHERE " + column
+          + " IN (" + placeholders(slice.size()) + ") ORDER BY id", rs -> {
+            Row row = new Row(rs.getLong(1), (Integer) rs.getObject(3), rs.getTimestamp(4));
+            Row survivor = kept.putIfAbsent(rs.getString(2), row);
+            if (survivor != null) {
+              replacements.put(row.id, survivor.id);
+              survivor.absorb(row);
+            }
+          }, slice.toArray());
+    }
+
+    List<Object[]> links = new ArrayList<>(replacements.size());
+    replacements.forEach((removed, survivor) -> links.add(new Object[]{survivor, removed}));
+    jdbcTemplate.batchUpdate("UPDATE file_chunk SET chunk_id = ? WHERE chunk_id = ?", links);
+    int pages = repointManifests(replacements);
+
+    List<Object[]> counts = new ArrayList<>(kept.size());
+    for (Row survivor : kept.values()) {
+      counts.add(new Object[]{survivor.refCount, survivor.unreferencedSince, survivor.id});
+    }
+    jdbcTemplate.batchUpdate("UPDATE chunk SET ref_count = ?, unreferenced_since = ? WHERE id = ?", counts);
+    List<Long> removed = new ArrayList<>(replacements.keySet());
+    for (int first = 0; first < removed.size(); first += HASHES_PER_QUERY) {
+      List<Long> slice = removed.subList(first, Math.min(removed.size(), first + HASHES_PER_QUERY));
+      jdbcTemplate.update("DELETE FROM chunk WHERE id IN (" + placeholders(slice.size()) + ")", slice.toArray());
+    }
+    logger.warn("{} chunks en double sur {} fusionnés ({} pages de manifeste réécrites)", removed.size(), column,
+        pages);
+    return removed.size();
+  }
+
+  /**
+   * Réécrit les pages de manifeste compact qui citent un chunk supprimé. Les
+   * pages sont autonomes : chacune est relue et réécrite seule.
+   *
+   * @return pages réécrites
+   */
+  private int repointManifests(Map<Long, Long> replacements) {
+    Map<Long, byte[]> rewritten = new HashMap<>();
+    jdbcTemplate.query("SELECT id, data FROM file_manifest_page", rs -> {
+      PackedManifest page = PackedManifest.decode(List.of(rs.getBytes(2)));
+      boolean changed = false;
+      PackedManifest.Builder builder = PackedManifest.builder();
+      for (int i = 0; i < page.size(); i++) {
+        Long survivor = replacements.get(page.getChunkId(i));
+        changed |= survivor != null;
+        builder.add(survivor != null ? survivor : page.getChunkId(i), page.getLength(i));
+      }
+      if (changed) {
+        rewritten.put(rs.getLong(1), builder.build().get(0));
+      }
+    });
+    List<Object[]> updates = new ArrayList<>(rewritten.size());
+    rewritten.forEach((id, data) -> updates.add(new Object[]{data, id}));
+    jdbcTemplate.batchUpdate("UPDATE file_manifest_page SET data = ? WHERE id = ?", updates);
+    return rewritten.size();
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  /**
+   * Compteur de la ligne conservée : somme des références des lignes fusionnées,
+   * null (jamais collecté) si l'une d'elles n'était pas comptée.
+   */
+  private static final class Row {
+    final long id;
+    Integer refCount;
+    Timestamp unreferencedSince;
+
+    Row(long id, Integer refCount, Timestamp unreferencedSince) {
+      this.id = id;
+      this.refCount = refCount;
+      this.unreferencedSince = refCount == null ? null : unreferencedSince;
+    }
+
+    void absorb(Row other) {
+      if (refCount == null || other.refCount == null) {
+        refCount = null;
+        unreferencedSince = null;
+        return;
+      }
+      refCount += other.refCount;
+      if (refCount > 0) {
+        unreferencedSince = null;
+      } else if (unreferencedSince == null || (other.unreferencedSince != null
+          && other.unreferencedSince.after(unreferencedSince))) {
+        // Sans référence depuis le plus récent abandon : le délai de grâce repart de là
+        unreferencedSince = other.unreferencedSince;
+      }
+    }
+  }
+}
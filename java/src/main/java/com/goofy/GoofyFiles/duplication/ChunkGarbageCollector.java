@@ -0,0 +1,239 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+
+/**
+ * Ramasse-miettes des chunks qu'aucun fichier ne référence plus : chunks des
+ * fichiers supprimés, ou insérés par un upload qui a échoué ensuite.
+ *
+ * Incrémental : chaque lot est une transaction courte qui prend les plus
+ * anciens chunks sans référence par l'index sur {@code unreferenced_since},
+ * sans parcourir la table, les verrouille ligne par ligne et les supprime. Le
+ * lot suivant reprend l'index là où le précédent s'est arrêté, sans repasser
+ * sur les entrées qu'il vient de supprimer. Un chunk n'est candidat qu'après un
+ * délai de grâce, plus long qu'un téléchargement.
+ *
+ * Face à un upload qui référence de nouveau un chunk :
+ * <ul>
+ * <li>l'upload retient les chunks qu'il va référencer, dès qu'il les trouve
+ * (recherche, conflit d'insertion) puis à chaque moitié de délai de grâce
+ * jusqu'à la fin : leur délai repart de zéro, quelle que soit la durée de
+ * l'upload ({@link com.goofy.GoofyFiles.repository.ChunkReferenceWriter#hold}) ;</li>
+ * <li>un chunk supprimé avant d'être retenu est stocké de nouveau par
+ * l'upload ;</li>
+ * <li>les lignes déjà verrouillées par l'upload (lien en cours d'insertion,
+ * compteur en cours de mise à jour) sont sautées ({@code SKIP LOCKED}) et
+ * restent en place tant qu'il n'a pas fini ;</li>
+ * <li>en dernier recours, un upload dont un chunk a disparu malgré tout échoue
+ * quand il compte ses références, au lieu d'enregistrer un fichier
+ * incomplet.</li>
+ * </ul>
+ * Les données d'un chunk en pack deviennent un enregistrement mort, rendu par
+ * le compactage. Le filtre de Bloom garde les hash supprimés : un faux positif
+ * de plus, résolu par la recherche en base.
+ */
+@Service
+public class ChunkGarbageCollector {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkGarbageCollector.class);
+
+  private static final String SELECT_CANDIDATES = "SELECT id, hash_sha_1, hash_sha_256, hash_blake3, stored_size, "
+      + "unreferenced_since "
+      + "FROM chunk WHERE unreferenced_since >= ? AND unreferenced_since < ? AND ref_count = 0 "
+      + "ORDER BY unreferenced_since LIMIT ? FOR UPDATE SKIP LOCKED";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ChunkHashIndex chunkHashIndex;
+  private final Duration gracePeriod;
+  private final int batchSize;
+  private final int maxBatchesPerRun;
+  private final ReentrantLock runLock = new ReentrantLock();
+
+  private volatile Map<String, Object> lastRun = Map.of();
+  private long runs;
+  private long totalChunks;
+  private long totalBytes;
+
+  @Autowired
+  public ChunkGarbageCollector(
+      DataSource dataSource,
+      PlatformTransactionManager transactionManager,
+      ChunkHashIndex chunkHashIndex,
+      @Value("${goofy.gc.grace-period:PT6H}") Duration gracePeriod,
+      @Value("${goofy.gc.batch-size:500}") int batchSize,
+      @Value("${goofy.gc.max-batches-per-run:200}") int maxBatchesPerRun) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.chunkHashIndex = chunkHashIndex;
+    this.gracePeriod = gracePeriod;
+    this.batchSize = batchSize;
+    this.maxBatchesPerRun = maxBatchesPerRun;
+  }
+
+  @Scheduled(fixedDelayString = "${goofy.gc.interval:PT1M}", initialDelayString = "${goofy.gc.interval:PT1M}")
+  public void scheduledCollection() {
+    if (!runLock.tryLock()) {
+      return;
+    }
+    try {
+      collect();
+    } catch (RuntimeException e) {
+      logger.error("Échec du ramasse-miettes des chunks", e);
+    } finally {
+      runLock.unlock();
+    }
+  }
+
+  /**
+   * Une passe : des lots jusqu'à épuisement des candidats ou
+   * {@code max-batches-per-run}.
+   *
+   * @return chunks et octets libérés, lots, durée et débit de la passe
+   */
+  public Map<String, Object> collect() {
+    runLock.lock();
+    try {
+      long start = System.nanoTime();
+      Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(gracePeriod));
+      Timestamp from = new Timestamp(0);
+      long chunks = 0;
+      long bytes = 0;
+      int batches = 0;
+      while (batches < maxBatchesPerRun) {
+        Batch batch = collectBatch(from, cutoff);
+        batches++;
+        chunks += batch.deletedChunks();
+        bytes += batch.releasedBytes();
+        if (batch.lockedChunks() < batchSize) {
+          break;
+        }
+        // Les chunks de même instant que le dernier sont relus : ceux d'un même fichier le partagent
+        from = batch.last();
+      }
+
+      long elapsed = System.nanoTime() - start;
+      Map<String, Object> run = new LinkedHashMap<>();
+      run.put("collectedChunks", chunks);
+      run.put("releasedBytes", bytes);
+      run.put("batches", batches);
+      run.put("elapsedMs", elapsed / 1_000_000);
+      run.put("chunksPerSecond", chunks == 0 ? 0 : Math.round(chunks / (elapsed / 1e9)));
+      lastRun = run;
+      runs++;
+      totalChunks += chunks;
+      totalBytes += bytes;
+      if (chunks > 0) {
+        logger.info("Ramasse-miettes: {} chunks supprimés ({} octets) en {} lots, {} ms", chunks, bytes, batches,
+            elapsed / 1_000_000);
+      }
+      return run;
+    } finally {
+      runLock.unlock();
+    }
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("gracePeriod", gracePeriod.toString());
+    stats.put("batchSize", batchSize);
+    stats.put("runs", runs);
+    stats.put("totalCollectedChunks", totalChunks);
+    stats.put("totalReleasedBytes", totalBytes);
+    stats.put("pendingChunks", jdbcTemplate.queryForObject(
+        "SELECT count(*) FROM chunk WHERE unreferenced_since IS NOT NULL AND ref_count = 0", Long.class));
+    stats.put("lastRun", lastRun);
+    return stats;
+  }
+
+  /**
+   * Un lot dans sa propre transaction.
+   *
+   * @param from premier instant à examiner, dernier du lot précédent
+   */
+  private Batch collectBatch(Timestamp from, Timestamp cutoff) {
+    List<Candidate> deleted = new ArrayList<>(batchSize);
+    Timestamp[] last = {from};
+    int locked = transactionTemplate.execute(status -> {
+      List<Candidate> candidates = new ArrayList<>(batchSize);
+      jdbcTemplate.query(SELECT_CANDIDATES, rs -> {
+        HashingAlgorithm algorithm = rs.getString(2) != null ? HashingAlgorithm.SHA1
+            : rs.getString(3) != null ? HashingAlgorithm.SHA256
+            : HashingAlgorithm.BLAKE3;
+        String hash = rs.getString(2) != null ? rs.getString(2)
+            : rs.getString(3) != null ? rs.getString(3)
+            : rs.getString(4);
+        candidates.add(new Candidate(rs.getLong(1), algorithm, hash, rs.getLong(5)));
+        last[0] = rs.getTimestamp(6);
+      }, from, cutoff, batchSize);
+      if (candidates.isEmpty()) {
+        return 0;
+      }
+
+      // Compteur à zéro mais des liens validés : compteur faux, le chunk n'est plus jamais collecté.
+      // Les manifestes compacts ne sont pas relus : leurs références sont comptées dans la
+      // transaction qui écrit les pages et décomptées dans celle qui les supprime, et les
+      // chunks antérieurs aux compteurs (ref_count NULL) ne sont jamais candidats. Décoder
+      // toutes les pages à chaque lot reviendrait à parcourir tous les manifestes
+      Set<Long> linked = new HashSet<>(jdbcTemplate.queryForList("SELECT DISTINCT chunk_id FROM file_chunk "
+          + "WHERE chunk_id IN (" + placeholders(candidates.size()) + ")", Long.class, ids(candidates)));
+      if (!linked.isEmpty()) {
+        logger.warn("Chunks sans référence comptée mais encore liés à des fichiers, écartés: {}", linked);
+        jdbcTemplate.update("UPDATE chunk SET ref_count = NULL, unreferenced_since = NULL WHERE id IN ("
+            + placeholders(linked.size()) + ")", linked.toArray());
+      }
+      candidates.stream().filter(candidate -> !linked.contains(candidate.id())).forEach(deleted::add);
+      if (!deleted.isEmpty()) {
+        jdbcTemplate.update("DELETE FROM chunk WHERE id IN (" + placeholders(deleted.size()) + ")", ids(deleted));
+      }
+      return candidates.size();
+    });
+
+    // Après validation : invalidée plus tôt, l'entrée pourrait être remise en
+    // cache par une recherche qui voit encore la ligne
+    long bytes = 0;
+    for (Candidate candidate : deleted) {
+      chunkHashIndex.invalidate(candidate.algorithm(), ChunkHash.fromHex(candidate.hash()));
+      bytes += candidate.storedSize();
+    }
+    return new Batch(locked, deleted.size(), bytes, last[0]);
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  private static Object[] ids(List<Candidate> candidates) {
+    return candidates.stream().map(Candidate::id).toArray();
+  }
+
+  private record Batch(int lockedChunks, long deletedChunks, long releasedBytes, Timestamp last) {
+  }
+
+  private record Candidate(long id, HashingAlgorithm algorithm, String hash, long storedSize) {
+  }
+}
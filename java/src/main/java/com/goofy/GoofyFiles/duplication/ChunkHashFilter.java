@@ -0,0 +1,261 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.repository.ChunkRepository;
+import com.goofy.GoofyFiles.repository.ChunkRepository.ChunkHashes;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Filtre de Bloom par algorithme sur tous les hash stockés. Une réponse
+ * négative garantit que le chunk est nouveau : la recherche en base est évitée.
+ *
+ * Reconstruit au démarrage depuis le dernier instantané disque puis les chunks
+ * insérés depuis. Tant que ce n'est pas terminé, toutes les réponses sont
+ * positives et la base reste consultée.
+ */
+@Service
+public class ChunkHashFilter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkHashFilter.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x474f4246;  // "GOBF"
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int REBUILD_PAGE_SIZE = 10_000;
+  // Un id peut être attribué juste avant l'instantané sans être encore dans le
+  // filtre : les derniers ids couverts sont relus au redémarrage
+  private static final long SNAPSHOT_RESCAN_MARGIN = 1_000;
+
+  private final ChunkRepository chunkRepository;
+  private final long expectedChunks;
+  private final double falsePositiveRate;
+  private final Path snapshotFile;
+  private final Map<HashingAlgorithm, ChunkBloomFilter> filters = new EnumMap<>(HashingAlgorithm.class);
+  private final AtomicLong lastIndexedId = new AtomicLong();
+  private final LongAdder queries = new LongAdder();
+  private final LongAdder negatives = new LongAdder();
+  private volatile boolean ready = false;
+
+  public ChunkHashFilter(
+      ChunkRepository chunkRepository,
+      @Value("${goofy.chunk-filter.expected-chunks:10000000}") long expectedChunks,
+      @Value("${goofy.chunk-filter.false-positive-rate:0.01}") double falsePositiveRate,
+      @Value("${goofy.chunk-filter.snapshot-file:${goofy.data-dir:${user.home}/.goofyfiles}/chunk-filter.bin}")
+      String snapshotFile) {
+    this.chunkRepository = chunkRepository;
+    this.expectedChunks = expectedChunks;
+    this.falsePositiveRate = falsePositiveRate;
+    this.snapshotFile = Paths.get(snapshotFile);
+    for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+      filters.put(algorithm, ChunkBloomFilter.create(expectedChunks, falsePositiveRate));
+    }
+  }
+
+  /**
+   * False si le hash n'a jamais été stocké. True s'il l'a peut-être été, ou si
+   * le filtre n'est pas encore reconstruit.
+   */
+  public boolean mightContain(HashingAlgorithm algorithm, ChunkHash hash) {
+    if (!ready) {
+      return true;
+    }
+    queries.increment();
+    if (filters.get(algorithm).mightContain(hash)) {
+      return true;
+    }
+    negatives.increment();
+    return false;
+  }
+
+  /**
+   * À appeler dès l'insertion, avant le commit : un rollback laisse au pire un
+   * faux positif.
+   */
+  public void add(HashingAlgorithm algorithm, ChunkHash hash, long chunkId) {
+    filters.get(algorithm).add(hash);
+    lastIndexedId.accumulateAndGet(chunkId, Math::max);
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    long start = System.nanoTime();
+    long fromId = 0;
+    try {
+      fromId = loadSnapshot();
+    } catch (IOException e) {
+      logger.warn("Instantané du filtre illisible, reconstruction complète: {}", e.getMessage());
+    }
+
+    long scanned = 0;
+    try {
+      List<ChunkHashes> page;
+      do {
+        page = chunkRepository.findByIdGreaterThanOrderByIdAsc(fromId, Limit.of(REBUILD_PAGE_SIZE));
+        for (ChunkHashes chunk : page) {
+          addHex(HashingAlgorithm.SHA1, chunk.getHashSha1(), chunk.getId());
+          addHex(HashingAlgorithm.SHA256, chunk.getHashSha256(), chunk.getId());
+          addHex(HashingAlgorithm.BLAKE3, chunk.getHashBlake3(), chunk.getId());
+          fromId = chunk.getId();
+        }
+        scanned += page.size();
+      } while (page.size() == REBUILD_PAGE_SIZE);
+    } catch (RuntimeException e) {
+      // Filtre inactif : chaque recherche passe par la base, comme avant
+      logger.error("Échec de la reconstruction du filtre des hash", e);
+      return;
+    }
+
+    ready = true;
+    logger.info("Filtre des hash prêt: {} chunks relus en {} ms", scanned, (System.nanoTime() - start) / 1_000_000);
+    if (lastIndexedId.get() > expectedChunks) {
+      logger.warn("Plus de chunks que prévu ({}) : le taux de faux positifs dépasse {}, "
+          + "augmenter goofy.chunk-filter.expected-chunks", expectedChunks, falsePositiveRate);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${goofy.chunk-filter.snapshot-interval:PT10M}",
+      initialDelayString = "${goofy.chunk-filter.snapshot-interval:PT10M}")
+  public void scheduledSnapshot() {
+    if (!ready) {
+      return;
+    }
+    try {
+      saveSnapshot();
+    } catch (IOException e) {
+      logger.error("Échec de l'écriture de l'instantané du filtre", e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduledSnapshot();
+  }
+
+  /**
+   * Écrit les filtres dans un fichier temporaire puis le renomme : un arrêt
+   * pendant l'écriture ne corrompt pas l'instantané précédent.
+   */
+  void saveSnapshot() throws IOException {
+    // Lu avant les bits : tout id inférieur est déjà dans le filtre copié
+    long coveredId = lastIndexedId.get();
+    Path parent = snapshotFile.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, "chunk-filter", ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(SNAPSHOT_VERSION);
+      out.writeLong(expectedChunks);
+      out.writeDouble(falsePositiveRate);
+      out.writeLong(coveredId);
+      for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+        ChunkBloomFilter filter = filters.get(algorithm);
+        out.writeUTF(algorithm.name());
+        out.writeInt(filter.wordCount());
+        for (int i = 0; i < filter.wordCount(); i++) {
+          out.writeLong(filter.word(i));
+        }
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    logger.debug("Instantané du filtre écrit jusqu'au chunk {}", coveredId);
+  }
+
+  /**
+   * Fusionne l'instantané dans les filtres et renvoie l'id à partir duquel
+   * relire la table, 0 s'il n'y a pas d'instantané utilisable.
+   */
+  long loadSnapshot() throws IOException {
+    if (!Files.exists(snapshotFile)) {
+      return 0;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+      if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+        throw new IOException("format inconnu");
+      }
+      if (in.readLong() != expectedChunks || in.readDouble() != falsePositiveRate) {
+        logger.info("Paramètres du filtre modifiés, instantané ignoré");
+        return 0;
+      }
+      long coveredId = in.readLong();
+      // Lecture complète avant fusion : un fichier tronqué ne laisse pas de filtre à moitié chargé
+      Map<HashingAlgorithm, long[]> words = new EnumMap<>(HashingAlgorithm.class);
+      for (int a = 0; a < HashingAlgorithm.values().length; a++) {
+        HashingAlgorithm algorithm = HashingAlgorithm.valueOf(in.readUTF());
+        long[] algorithmWords = new long[in.readInt()];
+        if (algorithmWords.length != filters.get(algorithm).wordCount()) {
+          throw new IOException("taille incohérente pour " + algorithm);
+        }
+        for (int i = 0; i < algorithmWords.length; i++) {
+          algorithmWords[i] = in.readLong();
+        }
+        words.put(algorithm, algorithmWords);
+      }
+      words.forEach((algorithm, algorithmWords) -> {
+        ChunkBloomFilter filter = filters.get(algorithm);
+        for (int i = 0; i < algorithmWords.length; i++) {
+          filter.mergeWord(i, algorithmWords[i]);
+        }
+      });
+      lastIndexedId.accumulateAndGet(coveredId, Math::max);
+      return Math.max(0, coveredId - SNAPSHOT_RESCAN_MARGIN);
+    }
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("ready", ready);
+    stats.put("expectedChunks", expectedChunks);
+    stats.put("falsePositiveRate", falsePositiveRate);
+    long memory = 0;
+    for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+      ChunkBloomFilter filter = filters.get(algorithm);
+      memory += filter.bitCount() / 8;
+      stats.put(algorithm.name(), Map.of(
+          "bits", filter.bitCount(),
+          "hashFunctions", filter.hashCount(),
+          "estimatedFalsePositiveRate", filter.estimatedFalsePositiveRate()));
+    }
+    stats.put("memoryBytes", memory);
+    stats.put("queries", queries.sum());
+    stats.put("skippedLookups", negatives.sum());
+    return stats;
+  }
+
+  private void addHex(HashingAlgorithm algorithm, String hex, long chunkId) {
+    if (hex != null) {
+      add(algorithm, ChunkHash.fromHex(hex), chunkId);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+
+/**
+ * Index en mémoire hash -> id de chunk, consulté avant la base lors de la
+ * déduplication. Un cache borné par algorithme (éviction W-TinyLFU), clés en
+ * binaire : environ 180 octets par entrée en SHA-256.
+ *
+ * Une entrée n'est ajoutée qu'une fois la ligne visible en base : à la lecture
+ * (cache miss) ou après le commit de la transaction qui l'a insérée.
+ */
+@Service
+public class ChunkHashIndex {
+
+  private final Map<HashingAlgorithm, Cache<ChunkHash, Long>> caches = new EnumMap<>(HashingAlgorithm.class);
+  private final long maximumSize;
+
+  public ChunkHashIndex(@Value("${goofy.chunk-index.maximum-size:1000000}") long maximumSize) {
+    this.maximumSize = maximumSize;
+    for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+      caches.put(algorithm, Caffeine.newBuilder()
+          .maximumSize(maximumSize)
+          .recordStats()
+          .build());
+    }
+  }
+
+  /**
+   * Id du chunk ayant ce hash, ou null s'il n'est pas dans l'index.
+   */
+  public Long get(HashingAlgorithm algorithm, ChunkHash hash) {
+    return caches.get(algorithm).getIfPresent(hash);
+  }
+
+  public void put(HashingAlgorithm algorithm, ChunkHash hash, long chunkId) {
+    caches.get(algorithm).put(hash, chunkId);
+  }
+
+  public void invalidate(HashingAlgorithm algorithm, ChunkHash hash) {
+    caches.get(algorithm).invalidate(hash);
+  }
+
+  public long size(HashingAlgorithm algorithm) {
+    return caches.get(algorithm).estimatedSize();
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("maximumSize", maximumSize);
+    for (Map.Entry<HashingAlgorithm, Cache<ChunkHash, Long>> entry : caches.entrySet()) {
+      CacheStats cacheStats = entry.getValue().stats();
+      stats.put(entry.getKey().name(), Map.of(
+          "size", entry.getValue().estimatedSize(),
+          "hits", cacheStats.hitCount(),
+          "misses", cacheStats.missCount(),
+          "hitRate", cacheStats.hitRate(),
+          "evictions", cacheStats.evictionCount()));
+    }
+    return stats;
+  }
+}
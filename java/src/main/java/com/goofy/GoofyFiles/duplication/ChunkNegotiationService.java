@@ -0,0 +1,279 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkHasher;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
+import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
+import com.goofy.GoofyFiles.model.FileEntity;
+
+/**
+ * Upload en deux temps, pour ne transférer que les chunks que le serveur n'a
+ * pas déjà :
+ * <ol>
+ * <li>le client découpe le fichier chez lui et envoie la liste ordonnée des
+ * hash et tailles de ses chunks ; le serveur répond par ceux qui lui manquent
+ * ({@link #open}) ;</li>
+ * <li>le client envoie les données de ces chunks seulement, à la suite, dans
+ * l'ordre de la réponse ({@link #receive}, en un ou plusieurs appels) ;</li>
+ * <li>le serveur crée le fichier et son manifeste ({@link #complete}).</li>
+ * </ol>
+ * Les sessions sont gardées en mémoire par ce processus et expirent si
+ * l'upload n'est pas terminé à temps.
+ */
+@Service
+public class ChunkNegotiationService {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkNegotiationService.class);
+
+  private final DuplicationService duplicationService;
+  private final int lookupWindow;
+  private final Duration sessionTimeout;
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+  public ChunkNegotiationService(
+      DuplicationService duplicationService,
+      @Value("${goofy.dedup.lookup-window:1000}") int lookupWindow,
+      @Value("${goofy.negotiation.session-timeout:PT1H}") Duration sessionTimeout) {
+    this.duplicationService = duplicationService;
+    this.lookupWindow = lookupWindow;
+    this.sessionTimeout = sessionTimeout;
+  }
+
+  /**
+   * Ouvre une session pour un fichier décrit par ses chunks.
+   *
+   * @param hashes hash hexadécimaux des chunks, dans l'ordre du fichier
+   * @param sizes  taille de chaque chunk, en octets
+   * @return identifiant de session et chunks à envoyer (hash distincts, dans
+   *         l'ordre de leur première apparition)
+   */
+  public Map<String, Object> open(String fileName, HashingAlgorithm algorithm, ChunkingStrategyType chunkingStrategy,
+      CompressionType compressionType, List<String> hashes, List<Integer> sizes) {
+    expireSessions();
+    if (hashes.isEmpty() || hashes.size() != sizes.size()) {
+      throw new IllegalArgumentException("Il faut autant de tailles que de hash, et au moins un chunk");
+    }
+    int hashLength = algorithm == HashingAlgorithm.SHA1 ? 20 : 32;
+    ChunkHash[] chunkHashes = new ChunkHash[hashes.size()];
+    int[] lengths = new int[sizes.size()];
+    Map<ChunkHash, Integer> sizeByHash = new LinkedHashMap<>();
+    long fileSize = 0;
+    for (int i = 0; i < chunkHashes.length; i++) {
+      chunkHashes[i] = ChunkHash.fromHex(hashes.get(i));
+      lengths[i] = sizes.get(i);
+      if (chunkHashes[i].length() != hashLength || lengths[i] <= 0) {
+        throw new IllegalArgumentException("Chunk " + i + " invalide: " + hashes.get(i) + " (" + lengths[i] + " octets)");
+      }
+      Integer previous = sizeByHash.putIfAbsent(chunkHashes[i], lengths[i]);
+      if (previous != null && previous != lengths[i]) {
+        throw new IllegalArgumentException("Tailles différentes pour le même hash: " + hashes.get(i));
+      }
+      fileSize += lengths[i];
+    }
+
+    // Recherche des chunks connus par fenêtres, comme pendant l'ingestion
+    List<ChunkHash> distinct = new ArrayList<>(sizeByHash.keySet());
+    Set<ChunkHash> missing = new LinkedHashSet<>(distinct);
+    for (int from = 0; from < distinct.size(); from += lookupWindow) {
+      List<ChunkHash> window = distinct.subList(from, Math.min(distinct.size(), from + lookupWindow));
+      missing.removeAll(duplicationService.findExistingChunks(window, algorithm).keySet());
+    }
+
+    Session session = new Session(UUID.randomUUID().toString(), fileName, algorithm, chunkingStrategy,
+        compressionType, chunkHashes, lengths, fileSize, new ArrayList<>(missing), sizeByHash);
+    sessions.put(session.id, session);
+
+    long missingBytes = session.missing.stream().mapToLong(sizeByHash::get).sum();
+    logger.info("Négociation ouverte: session={}, fichier={}, chunks={}, à envoyer={} ({} octets sur {})",
+        session.id, fileName, chunkHashes.length, session.missing.size(), missingBytes, fileSize);
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("sessionId", session.id);
+    result.put("totalChunks", chunkHashes.length);
+    result.put("fileSize", fileSize);
+    result.put("missingBytes", missingBytes);
+    result.put("missingChunks", session.missing.stream().map(ChunkHash::toHex).toList());
+    return result;
+  }
+
+  /**
+   * Reçoit les données des chunks manquants, à la suite les unes des autres,
+   * en reprenant après le dernier chunk reçu par les appels précédents.
+   * Chaque chunk est vérifié (taille et hash) puis stocké par fenêtres.
+   */
+  public Map<String, Object> receive(String sessionId, InputStream body) throws IOException {
+    Session session = getSession(sessionId);
+    synchronized (session) {
+      ChunkHasher hasher = ChunkHasher.forAlgorithm(session.algorithm);
+      Map<ChunkHash, byte[]> window = new LinkedHashMap<>();
+      try {
+        while (session.received + window.size() < session.missing.size()) {
+          ChunkHash expected = session.missing.get(session.received + window.size());
+          int size = session.sizes.get(expected);
+          byte[] data = body.readNBytes(size);
+          if (data.length == 0) {
+            break;
+          }
+          if (data.length < size) {
+            throw new EOFException("Chunk incomplet: " + expected + " (" + data.length + " octets sur " + size + ")");
+          }
+          if (!hasher.hash(data).equals(expected)) {
+            throw new IllegalArgumentException("Les données reçues ne correspondent pas au hash " + expected);
+          }
+          window.put(expected, data);
+          if (window.size() == lookupWindow) {
+            store(session, window);
+          }
+        }
+        if (body.read() >= 0) {
+          throw new IllegalArgumentException("Données en trop après le dernier chunk attendu");
+        }
+      } finally {
+        // Les chunks vérifiés sont gardés même si la suite du corps est invalide
+        store(session, window);
+      }
+      session.touch();
+
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("sessionId", session.id);
+      result.put("receivedChunks", session.received);
+      result.put("remainingChunks", session.missing.size() - session.received);
+      return result;
+    }
+  }
+
+  /**
+   * Crée le fichier une fois tous les chunks manquants reçus.
+   */
+  @Transactional
+  public Map<String, Object> complete(String sessionId) {
+    Session session = getSession(sessionId);
+    synchronized (session) {
+      if (session.received < session.missing.size()) {
+        throw new IllegalStateException("Chunks manquants: " + (session.missing.size() - session.received));
+      }
+
+      // Tous les chunks doivent maintenant être en base, y compris ceux arrivés
+      // par d'autres uploads pendant la session
+      Map<ChunkHash, Long> ids = new HashMap<>(session.stored);
+      List<ChunkHash> unresolved = session.sizes.keySet().stream().filter(hash -> !ids.containsKey(hash)).toList();
+      for (int from = 0; from < unresolved.size(); from += lookupWindow) {
+        List<ChunkHash> window = unresolved.subList(from, Math.min(unresolved.size(), from + lookupWindow));
+        ids.putAll(duplicationService.findExistingChunks(window, session.algorithm));
+      }
+      long[] chunkIds = new long[session.hashes.length];
+      for (int i = 0; i < chunkIds.length; i++) {
+        Long id = ids.get(session.hashes[i]);
+        if (id == null) {
+          throw new IllegalStateException("Chunk disparu depuis l'ouverture de la session: " + session.hashes[i]);
+        }
+        chunkIds[i] = id;
+      }
+
+      FileEntity fileEntity = duplicationService.createFileEntity(session.fileName, session.fileSize,
+          session.chunkingStrategy);
+      duplicationService.storeLinks(fileEntity, chunkIds, session.lengths);
+      sessions.remove(session.id);
+
+      long transferred = session.missing.stream().mapToLong(session.sizes::get).sum();
+      Map<String, Object> result = new HashMap<>();
+      result.put("fileId", fileEntity.getId());
+      result.put("fileName", fileEntity.getName());
+      result.put("extension", fileEntity.getExtension());
+      result.put("fileSize", fileEntity.getSize());
+      result.put("algorithm", session.algorithm.name());
+      result.put("chunkingStrategy", session.chunkingStrategy.name());
+      result.put("totalChunks", chunkIds.length);
+      result.put("uploadedChunks", session.missing.size());
+      result.put("transferredBytes", transferred);
+      result.put("savedTransfer", session.fileSize - transferred);
+
+      logger.info("Négociation terminée: session={}, id={}, nom={}, chunks={}, transférés={} octets sur {}",
+          session.id, fileEntity.getId(), session.fileName, chunkIds.length, transferred, session.fileSize);
+      return result;
+    }
+  }
+
+  private void store(Session session, Map<ChunkHash, byte[]> window) {
+    if (window.isEmpty()) {
+      return;
+    }
+    session.stored.putAll(duplicationService.storeChunks(window, session.algorithm, session.compressionType,
+        session.owner));
+    session.received += window.size();
+    window.clear();
+  }
+
+  private Session getSession(String sessionId) {
+    Session session = sessions.get(sessionId);
+    if (session == null) {
+      throw new NoSuchElementException("Session de négociation inconnue ou expirée: " + sessionId);
+    }
+    return session;
+  }
+
+  private void expireSessions() {
+    Instant limit = Instant.now().minus(sessionTimeout);
+    sessions.values().removeIf(session -> session.lastAccess.isBefore(limit));
+  }
+
+  private static final class Session {
+    final String id;
+    final String fileName;
+    final HashingAlgorithm algorithm;
+    final ChunkingStrategyType chunkingStrategy;
+    final CompressionType compressionType;
+    final ChunkHash[] hashes;
+    final int[] lengths;
+    final long fileSize;
+    // Hash distincts à recevoir, dans l'ordre d'envoi
+    final List<ChunkHash> missing;
+    final Map<ChunkHash, Integer> sizes;
+    final Map<ChunkHash, Long> stored = new HashMap<>();
+    // Réserve les hash en cours d'insertion, comme le fichier d'un upload classique
+    final FileEntity owner = new FileEntity();
+    int received;
+    volatile Instant lastAccess = Instant.now();
+
+    Session(String id, String fileName, HashingAlgorithm algorithm, ChunkingStrategyType chunkingStrategy,
+        CompressionType compressionType, ChunkHash[] hashes, int[] lengths, long fileSize, List<ChunkHash> missing,
+        Map<ChunkHash, Integer> sizes) {
+      this.id = id;
+      this.fileName = fileName;
+      this.algorithm = algorithm;
+      this.chunkingStrategy = chunkingStrategy;
+      this.compressionType = compressionType;
+      this.hashes = hashes;
+      this.lengths = lengths;
+      this.fileSize = fileSize;
+      this.missing = missing;
+      this.sizes = sizes;
+    }
+
+    void touch() {
+      lastAccess = Instant.now();
+    }
+  }
+}
@@ -2,31 +2,54 @@ package com.goofy.GoofyFiles.duplication;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.Blake3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkIterator;
 import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
 import com.goofy.GoofyFiles.compression.CompressionService;
 import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
 import com.goofy.GoofyFiles.model.ChunkEntity;
 import com.goofy.GoofyFiles.model.FileChunkEntity;
 import com.goofy.GoofyFiles.model.FileEntity;
+import com.goofy.GoofyFiles.model.FileManifestPageEntity;
+import com.goofy.GoofyFiles.repository.ChunkCopyWriter;
+import com.goofy.GoofyFiles.repository.ChunkReferenceWriter;
 import com.goofy.GoofyFiles.repository.ChunkRepository;
+import com.goofy.GoofyFiles.repository.ChunkRepository.ChunkHashes;
+import com.goofy.GoofyFiles.repository.ChunkUpsertWriter;
 import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
 import com.goofy.GoofyFiles.repository.FileRepository;
-import com.google.common.hash.Hashing;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class DuplicationService {
@@ -38,6 +61,21 @@ public class DuplicationService {
   private final ChunkRepository chunkRepository;
   private final FileChunkRepository fileChunkRepository;
   private final CompressionService compressionService;
+  private final ChunkHashIndex chunkHashIndex;
+  private final ChunkHashFilter chunkHashFilter;
+  private final ChunkCopyWriter chunkCopyWriter;
+  private final ChunkUpsertWriter chunkUpsertWriter;
+  private final ChunkReferenceWriter chunkReferenceWriter;
+  private final InFlightHashes inFlightHashes;
+  private final ChunkStorage chunkStorage;
+  private final FileManifestPageRepository fileManifestPageRepository;
+  private final IngestPipeline ingestPipeline;
+  private final TransactionTemplate transactionTemplate;
+  private final int lookupWindow;
+  private final boolean packedManifest;
+  // Renouvellement des chunks retenus par les uploads en cours, deux fois par délai de grâce
+  private final Duration holdRenewal;
+  private final ScheduledExecutorService holdRenewer;
 
   /**
    * Constructeur principal pour l'utilisation en production
@@ -48,12 +86,43 @@ public class DuplicationService {
       FileRepository fileRepository,
       ChunkRepository chunkRepository,
       FileChunkRepository fileChunkRepository,
-      CompressionService compressionService) {
+      CompressionService compressionService,
+      ChunkHashIndex chunkHashIndex,
+      ChunkHashFilter chunkHashFilter,
+      ChunkCopyWriter chunkCopyWriter,
+      ChunkUpsertWriter chunkUpsertWriter,
+      ChunkReferenceWriter chunkReferenceWriter,
+      InFlightHashes inFlightHashes,
+      ChunkStorage chunkStorage,
+      FileManifestPageRepository fileManifestPageRepository,
+      IngestPipeline ingestPipeline,
+      PlatformTransactionManager transactionManager,
+      @Value("${goofy.dedup.lookup-window:1000}") int lookupWindow,
+      @Value("${goofy.manifest.packed:false}") boolean packedManifest,
+      @Value("${goofy.gc.grace-period:PT6H}") Duration gracePeriod) {
     this.chunkingService = chunkingService;
     this.fileRepository = fileRepository;
     this.chunkRepository = chunkRepository;
     this.fileChunkRepository = fileChunkRepository;
     this.compressionService = compressionService;
+    this.chunkHashIndex = chunkHashIndex;
+    this.chunkHashFilter = chunkHashFilter;
+    this.chunkCopyWriter = chunkCopyWriter;
+    this.chunkUpsertWriter = chunkUpsertWriter;
+    this.chunkReferenceWriter = chunkReferenceWriter;
+    this.inFlightHashes = inFlightHashes;
+    this.chunkStorage = chunkStorage;
+    this.fileManifestPageRepository = fileManifestPageRepository;
+    this.ingestPipeline = ingestPipeline;
+    this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+    this.lookupWindow = lookupWindow;
+    this.packedManifest = packedManifest;
+    this.holdRenewal = gracePeriod.dividedBy(2);
+    this.holdRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "chunk-hold-renewal");
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   /**
@@ -62,31 +131,57 @@ public class DuplicationService {
    * pas disponibles
    */
   public DuplicationService(ChunkingService chunkingService) {
-    this(chunkingService, null, null, null, null);
+    this(chunkingService, null, null, null, null, null, null, null, null, null, null, null, null, null, null, 1,
+        false, Duration.ofHours(6));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    holdRenewer.shutdownNow();
   }
 
   public Map<String, Object> analyzeFile(File file, HashingAlgorithm algorithm) throws IOException {
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-    Map<String, Integer> duplicates = new HashMap<>();
-
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-      duplicates.merge(hash, 1, Integer::sum);
-      logger.debug("Chunk at position {} with size {} bytes has hash: {}",
-          chunk.getPosition(), chunk.getData().length, hash);
+    return analyze(chunkingService.iterateMappedChunks(file, ChunkingService.DEFAULT_STRATEGY, algorithm),
+        file.getName(), algorithm);
+  }
+
+  /**
+   * Comme {@link #analyzeFile(File, HashingAlgorithm)}, au fil de la lecture du flux.
+   */
+  public Map<String, Object> analyzeStream(InputStream in, String fileName, HashingAlgorithm algorithm)
+      throws IOException {
+    return analyze(chunkingService.iterateChunks(in, ChunkingService.DEFAULT_STRATEGY, algorithm), fileName,
+        algorithm);
+  }
+
+  private Map<String, Object> analyze(ChunkIterator iterator, String fileName, HashingAlgorithm algorithm)
+      throws IOException {
+    Map<ChunkHash, Integer> duplicates = new HashMap<>();
+    long totalChunks = 0;
+
+    try (ChunkIterator chunks = iterator) {
+      while (chunks.hasNext()) {
+        Chunk chunk = chunks.next();
+        ChunkHash hash = chunk.getHash();
+        duplicates.merge(hash, 1, Integer::sum);
+        totalChunks++;
+        logger.debug("Chunk at position {} with size {} bytes has hash: {}",
+            chunk.getPosition(), chunk.getOriginalSize(), hash);
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
     }
 
     duplicates.entrySet().stream()
         .filter(e -> e.getValue() > 1);
 
     long uniqueChunks = duplicates.size();
-    long totalChunks = chunks.size();
     long duplicatedChunks = duplicates.entrySet().stream()
         .filter(e -> e.getValue() > 1)
         .count();
 
     return Map.of(
-        "fileName", file.getName(),
+        "fileName", fileName,
         "totalChunks", totalChunks,
         "uniqueChunks", uniqueChunks,
         "duplicatedChunks", duplicatedChunks,
@@ -94,127 +189,58 @@ public class DuplicationService {
         "duplicateDetails", duplicates.entrySet().stream()
             .filter(e -> e.getValue() > 1)
             .collect(Collectors.toMap(
-                Map.Entry::getKey,
+                e -> e.getKey().toHex(),
                 Map.Entry::getValue)));
   }
 
-  private String calculateHash(byte[] data, HashingAlgorithm algorithm) {
-    try {
-      switch (algorithm) {
-        case SHA1:
-          return Hashing.sha1().hashBytes(data).toString();
-        case SHA256:
-          return Hashing.sha256().hashBytes(data).toString();
-        case BLAKE3:
-          byte[] hashBytes = Blake3.hash(data);
-          return Hex.encodeHexString(hashBytes);
-        default:
-          throw new IllegalArgumentException("Algorithme de hachage non supporté: " + algorithm);
-      }
-    } catch (Exception e) {
-      throw new RuntimeException("Erreur lors du calcul du hash", e);
-    }
+  /**
+   * Enregistre un fichier. Aucune transaction n'est ouverte pendant le
+   * découpage : les chunks neufs sont validés par lots, puis le fichier, ses
+   * liens et ses références dans une seule transaction courte, voir
+   * {@link #storeFile(FileEntity, IngestTotals)}.
+   */
+  public Map<String, Object> processAndStoreFile(
+      File file,
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm) throws IOException {
+    return processAndStoreFile(file, fileName, fileSize, algorithm, ChunkingService.DEFAULT_STRATEGY);
   }
 
-  @Transactional
   public Map<String, Object> processAndStoreFile(
       File file,
       String fileName,
       long fileSize,
-      HashingAlgorithm algorithm) throws IOException {
-    if (fileRepository == null || chunkRepository == null || fileChunkRepository == null) {
+      HashingAlgorithm algorithm,
+      ChunkingStrategyType chunkingStrategy) throws IOException {
+    if (!canStore()) {
       throw new UnsupportedOperationException(
           "Cette méthode nécessite les repositories qui n'ont pas été injectés. " +
               "Utilisez le constructeur avec tous les paramètres pour cette fonctionnalité.");
     }
 
-    // 1. Extraire le nom et l'extension
-    String name = fileName;
-    String extension = "";
-    int lastDotIndex = fileName.lastIndexOf('.');
-    if (lastDotIndex > 0) {
-      name = fileName.substring(0, lastDotIndex);
-      extension = fileName.substring(lastDotIndex + 1);
-    }
-
-    // 2. Créer et sauvegarder l'entité de fichier
-    FileEntity fileEntity = new FileEntity();
-    fileEntity.setName(name);
-    fileEntity.setExtension(extension);
-    fileEntity.setSize(fileSize);
-    fileEntity = fileRepository.save(fileEntity);
-
-    // 3. Découper le fichier
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-
-    // Statistiques pour le résultat
-    int totalChunks = chunks.size();
-    int duplicateChunks = 0;
-    int uniqueChunks = 0;
-    long savedStorage = 0;
-
-    // 4. Traiter chaque chunk
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-
-      // Chercher si ce chunk existe déjà en base
-      Optional<ChunkEntity> existingChunk;
-      switch (algorithm) {
-        case SHA1:
-          existingChunk = chunkRepository.findByHashSha1(hash);
-          break;
-        case SHA256:
-          existingChunk = chunkRepository.findByHashSha256(hash);
-          break;
-        case BLAKE3:
-          existingChunk = chunkRepository.findByHashBlake3(hash);
-          break;
-        default:
-          existingChunk = Optional.empty();
-      }
-
-      ChunkEntity chunkEntity;
-      if (existingChunk.isPresent()) {
-        chunkEntity = existingChunk.get();
-        duplicateChunks++;
-        savedStorage += chunk.getOriginalSize();
-        logger.info("Chunk dupliqué trouvé: {}", hash);
-      } else {
-        chunkEntity = new ChunkEntity();
-        chunkEntity.setData(chunk.getData());
-
-        // Stocker le hash selon l'algorithme
-        switch (algorithm) {
-          case SHA1:
-            chunkEntity.setHashSha1(hash);
-            break;
-          case SHA256:
-            chunkEntity.setHashSha256(hash);
-            break;
-          case BLAKE3:
-            chunkEntity.setHashBlake3(hash);
-            break;
-        }
+    // 1-2. Créer l'entité de fichier, sauvegardée avec ses liens
+    FileEntity fileEntity = newFileEntity(fileName, fileSize, chunkingStrategy);
 
-        chunkEntity = chunkRepository.save(chunkEntity);
-        uniqueChunks++;
-      }
-
-      // Créer la relation entre le fichier et le chunk
-      FileChunkEntity fileChunk = new FileChunkEntity();
-      fileChunk.setFile(fileEntity);
-      fileChunk.setChunk(chunkEntity);
-      fileChunk.setPosition(chunk.getPosition());
-      fileChunkRepository.save(fileChunk);
+    // 3. Découper le fichier et faire passer ses chunks par les étages d'ingestion
+    IngestTotals totals;
+    try (ChunkIterator chunks = chunkingService.iterateUnhashedMappedChunks(file, chunkingStrategy)) {
+      totals = ingest(chunks, fileEntity, algorithm, null);
     }
+    storeFile(fileEntity, totals);
+    int totalChunks = totals.totalChunks;
+    int duplicateChunks = totals.duplicateChunks;
+    int uniqueChunks = totals.uniqueChunks;
+    long savedStorage = totals.savedStorage;
 
-    // 5. Préparer le résultat
+    // 4. Préparer le résultat
     Map<String, Object> result = new HashMap<>();
     result.put("fileId", fileEntity.getId());
     result.put("fileName", fileEntity.getName());
     result.put("extension", fileEntity.getExtension());
     result.put("fileSize", fileEntity.getSize());
     result.put("algorithm", algorithm.name());
+    result.put("chunkingStrategy", chunkingStrategy.name());
     result.put("totalChunks", totalChunks);
     result.put("uniqueChunks", uniqueChunks);
     result.put("duplicateChunks", duplicateChunks);
@@ -227,21 +253,144 @@ public class DuplicationService {
     return result;
   }
 
-  @Transactional
+  /**
+   * Comme {@link #processAndStoreFile(File, String, long, HashingAlgorithm)},
+   * chunks compressés.
+   */
   public Map<String, Object> processAndStoreFileCompressed(
       File file,
       String fileName,
       long fileSize,
       HashingAlgorithm algorithm,
       CompressionType compressionType) throws IOException {
-    if (fileRepository == null || chunkRepository == null || fileChunkRepository == null
-        || compressionService == null) {
+    return processAndStoreFileCompressed(file, fileName, fileSize, algorithm, compressionType,
+        ChunkingService.DEFAULT_STRATEGY);
+  }
+
+  public Map<String, Object> processAndStoreFileCompressed(
+      File file,
+      String fileName,
+      long fileSize,
+      HashingAlgorithm algorithm,
+      CompressionType compressionType,
+      ChunkingStrategyType chunkingStrategy) throws IOException {
+    if (!canStore() || compressionService == null) {
       throw new UnsupportedOperationException(
           "Cette méthode nécessite les repositories et le service de compression qui n'ont pas été injectés. " +
               "Utilisez le constructeur avec tous les paramètres pour cette fonctionnalité.");
     }
 
-    // 1. Extraire le nom et l'extension
+    // 1-2. Créer l'entité de fichier, sauvegardée avec ses liens
+    FileEntity fileEntity = newFileEntity(fileName, fileSize, chunkingStrategy);
+
+    // 3. Découper le fichier et faire passer ses chunks par les étages d'ingestion
+    IngestTotals totals;
+    try (ChunkIterator chunks = chunkingService.iterateUnhashedMappedChunks(file, chunkingStrategy)) {
+      totals = ingest(chunks, fileEntity, algorithm, compressionType);
+    }
+    storeFile(fileEntity, totals);
+    int totalChunks = totals.totalChunks;
+    int duplicateChunks = totals.duplicateChunks;
+    int uniqueChunks = totals.uniqueChunks;
+    long savedStorage = totals.savedStorage;
+    long totalCompressedSize = totals.compressedSize;
+
+    // 4. Préparer le résultat
+    Map<String, Object> result = new HashMap<>();
+    result.put("fileId", fileEntity.getId());
+    result.put("fileName", fileEntity.getName());
+    result.put("extension", fileEntity.getExtension());
+    result.put("fileSize", fileEntity.getSize());
+    result.put("algorithm", algorithm.name());
+    result.put("chunkingStrategy", chunkingStrategy.name());
+    result.put("compressionType", compressionType.name());
+    result.put("totalChunks", totalChunks);
+    result.put("uniqueChunks", uniqueChunks);
+    result.put("duplicateChunks", duplicateChunks);
+    result.put("savedStorage", savedStorage);
+    result.put("deduplicationRatio", totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0);
+    result.put("totalCompressedSize", totalCompressedSize);
+
+    logger.info("Fichier compressé traité: id={}, nom={}, chunks={}, uniques={}, doublons={}, taille compressée={}",
+        fileEntity.getId(), fileName, totalChunks, uniqueChunks, duplicateChunks, totalCompressedSize);
+
+    return result;
+  }
+
+  /**
+   * Enregistre un fichier lu au fil de sa réception (corps d'une requête), sans
+   * passer par un fichier temporaire : la déduplication commence avant la fin
+   * de l'upload. La taille du fichier n'est connue qu'une fois le flux épuisé.
+   *
+   * Aucune transaction n'est ouverte pendant la réception : un client lent ne
+   * retient pas de connexion. Les chunks neufs sont validés lot par lot, le
+   * fichier et ses liens une fois le flux épuisé.
+   *
+   * @param compressionType null pour stocker les chunks sans compression
+   */
+  public Map<String, Object> processAndStoreStream(
+      InputStream in,
+      String fileName,
+      HashingAlgorithm algorithm,
+      ChunkingStrategyType chunkingStrategy,
+      CompressionType compressionType) throws IOException {
+    if (!canStore() || (compressionType != null && compressionService == null)) {
+      throw new UnsupportedOperationException(
+          "Cette méthode nécessite les repositories qui n'ont pas été injectés. " +
+              "Utilisez le constructeur avec tous les paramètres pour cette fonctionnalité.");
+    }
+
+    FileEntity fileEntity = newFileEntity(fileName, 0, chunkingStrategy);
+    IngestTotals totals;
+    try (ChunkIterator chunks = chunkingService.iterateUnhashedChunks(in, chunkingStrategy)) {
+      totals = ingest(chunks, fileEntity, algorithm, compressionType);
+    }
+    fileEntity.setSize(totals.bytes);
+    storeFile(fileEntity, totals);
+
+    Map<String, Object> result = new HashMap<>();
+    result.put("fileId", fileEntity.getId());
+    result.put("fileName", fileEntity.getName());
+    result.put("extension", fileEntity.getExtension());
+    result.put("fileSize", fileEntity.getSize());
+    result.put("algorithm", algorithm.name());
+    result.put("chunkingStrategy", chunkingStrategy.name());
+    result.put("totalChunks", totals.totalChunks);
+    result.put("uniqueChunks", totals.uniqueChunks);
+    result.put("duplicateChunks", totals.duplicateChunks);
+    result.put("savedStorage", totals.savedStorage);
+    result.put("deduplicationRatio",
+        totals.totalChunks > 0 ? (double) totals.duplicateChunks / totals.totalChunks : 0);
+    if (compressionType != null) {
+      result.put("compressionType", compressionType.name());
+      result.put("totalCompressedSize", totals.compressedSize);
+    }
+
+    logger.info("Flux traité: id={}, nom={}, taille={}, chunks={}, uniques={}, doublons={}",
+        fileEntity.getId(), fileName, totals.bytes, totals.totalChunks, totals.uniqueChunks,
+        totals.duplicateChunks);
+
+    return result;
+  }
+
+  /**
+   * Tous les collaborateurs de l'enregistrement sont injectés, ce qui n'est pas
+   * le cas avec le constructeur simplifié.
+   */
+  private boolean canStore() {
+    return fileRepository != null && chunkRepository != null && fileChunkRepository != null
+        && chunkHashIndex != null && chunkHashFilter != null && chunkCopyWriter != null
+        && chunkUpsertWriter != null && chunkReferenceWriter != null && inFlightHashes != null
+        && chunkStorage != null && ingestPipeline != null && transactionTemplate != null
+        && (!packedManifest || fileManifestPageRepository != null);
+  }
+
+  FileEntity createFileEntity(String fileName, long fileSize, ChunkingStrategyType chunkingStrategy) {
+    return fileRepository.save(newFileEntity(fileName, fileSize, chunkingStrategy));
+  }
+
+  private FileEntity newFileEntity(String fileName, long fileSize, ChunkingStrategyType chunkingStrategy) {
+    // Extraire le nom et l'extension
     String name = fileName;
     String extension = "";
     int lastDotIndex = fileName.lastIndexOf('.');
@@ -250,104 +399,428 @@ public class DuplicationService {
       extension = fileName.substring(lastDotIndex + 1);
     }
 
-    // 2. Créer et sauvegarder l'entité de fichier
     FileEntity fileEntity = new FileEntity();
     fileEntity.setName(name);
     fileEntity.setExtension(extension);
     fileEntity.setSize(fileSize);
-    fileEntity = fileRepository.save(fileEntity);
-
-    // 3. Découper le fichier
-    List<Chunk> chunks = chunkingService.chunkFile(file);
-
-    // Statistiques pour le résultat
-    int totalChunks = chunks.size();
-    int duplicateChunks = 0;
-    int uniqueChunks = 0;
-    long savedStorage = 0;
-    long totalCompressedSize = 0;
-
-    // 4. Traiter chaque chunk
-    for (Chunk chunk : chunks) {
-      String hash = calculateHash(chunk.getData(), algorithm);
-
-      // Chercher si ce chunk existe déjà en base
-      Optional<ChunkEntity> existingChunk;
-      switch (algorithm) {
-        case SHA1:
-          existingChunk = chunkRepository.findByHashSha1(hash);
-          break;
-        case SHA256:
-          existingChunk = chunkRepository.findByHashSha256(hash);
-          break;
-        case BLAKE3:
-          existingChunk = chunkRepository.findByHashBlake3(hash);
-          break;
-        default:
-          existingChunk = Optional.empty();
+    fileEntity.setChunkingStrategy(chunkingStrategy.name());
+    return fileEntity;
+  }
+
+  /**
+   * Compteurs d'une ingestion, pour le résultat.
+   */
+  private static final class IngestTotals {
+    int totalChunks;
+    int duplicateChunks;
+    int uniqueChunks;
+    long savedStorage;
+    long compressedSize;
+    long bytes;
+    // Id et taille du chunk de chaque position, pour les liens écrits en fin d'upload
+    long[] chunkIds = new long[1024];
+    int[] lengths = new int[1024];
+
+    synchronized void addChunk(long chunkId, int length) {
+      if (totalChunks == chunkIds.length) {
+        chunkIds = Arrays.copyOf(chunkIds, chunkIds.length * 2);
+        lengths = Arrays.copyOf(lengths, lengths.length * 2);
       }
+      chunkIds[totalChunks] = chunkId;
+      lengths[totalChunks++] = length;
+    }
 
-      ChunkEntity chunkEntity;
-      if (existingChunk.isPresent()) {
-        chunkEntity = existingChunk.get();
-        duplicateChunks++;
-        savedStorage += chunk.getOriginalSize();
-        logger.info("Chunk dupliqué trouvé: {}", hash);
-      } else {
-        // Compression du chunk
-        byte[] compressedData = compressionService.compress(chunk.getData(), compressionType);
-        totalCompressedSize += compressedData.length;
-
-        chunkEntity = new ChunkEntity();
-        // Stocker les données compressées
-        chunkEntity.setData(compressedData);
-        // Vous pouvez ajouter une propriété pour stocker la taille originale si besoin,
-        // ex :
-        chunkEntity.setCompressionType(compressionType.name());
-
-        // Stocker le hash selon l'algorithme
-        switch (algorithm) {
-          case SHA1:
-            chunkEntity.setHashSha1(hash);
-            break;
-          case SHA256:
-            chunkEntity.setHashSha256(hash);
-            break;
-          case BLAKE3:
-            chunkEntity.setHashBlake3(hash);
-            break;
+    // Lu par le renouvellement des chunks retenus, pendant l'ingestion
+    synchronized long[] chunkIdsSoFar() {
+      return Arrays.copyOf(chunkIds, totalChunks);
+    }
+  }
+
+  /**
+   * Hache, déduplique, compresse (si {@code compressionType} n'est pas null) et
+   * stocke les chunks produits par l'itérateur, étages en parallèle. Seule
+   * l'insertion des chunks neufs tourne sur ce thread, lot par lot, chacun dans
+   * ses propres transactions courtes ; les liens du fichier sont seulement
+   * collectés, pour {@link #storeFile(FileEntity, IngestTotals)}.
+   */
+  private IngestTotals ingest(ChunkIterator chunks, FileEntity fileEntity, HashingAlgorithm algorithm,
+      CompressionType compressionType) throws IOException {
+    IngestTotals totals = new IngestTotals();
+    // Chunks stockés par cet upload, que les recherches lancées plus tôt n'ont pas pu voir
+    Map<ChunkHash, Long> savedChunks = new HashMap<>();
+
+    IngestPipeline.Stages stages = new IngestPipeline.Stages() {
+      @Override
+      public Map<ChunkHash, Long> lookup(List<Chunk> chunks) {
+        return findExistingChunks(chunks.stream().map(Chunk::getHash).toList(), algorithm);
+      }
+
+      @Override
+      public byte[] payload(Chunk chunk) {
+        return compressionType == null
+            ? chunk.copyData()
+            : compressionService.compress(chunk.asReadOnlyBuffer(), compressionType);
+      }
+
+      @Override
+      public void persist(IngestPipeline.Batch batch) {
+        persistBatch(batch, fileEntity, algorithm, compressionType, savedChunks, totals);
+      }
+    };
+
+    // Un upload plus long que le délai de grâce, ou un client arrêté, garde ses chunks
+    ScheduledFuture<?> renewal = holdRenewer.scheduleWithFixedDelay(() -> renewHolds(totals, fileEntity),
+        holdRenewal.toNanos(), holdRenewal.toNanos(), TimeUnit.NANOSECONDS);
+    try {
+      ingestPipeline.run(chunks, algorithm, lookupWindow, stages);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      renewal.cancel(false);
+    }
+    return totals;
+  }
+
+  /**
+   * Retient de nouveau tous les chunks déjà notés par l'upload. Un chunk
+   * supprimé malgré tout fera échouer l'upload quand il comptera ses
+   * références.
+   */
+  private void renewHolds(IngestTotals totals, FileEntity fileEntity) {
+    try {
+      Set<Long> missing = chunkReferenceWriter.hold(totals.chunkIdsSoFar());
+      if (!missing.isEmpty()) {
+        logger.error("Chunks de l'upload {} supprimés avant la fin de l'upload: {}", fileEntity.getName(),
+            missing);
+      }
+    } catch (RuntimeException e) {
+      logger.error("Échec du renouvellement des chunks retenus par l'upload {}", fileEntity.getName(), e);
+    }
+  }
+
+  /**
+   * Enregistre le fichier, ses liens et ses références dans une seule
+   * transaction, une fois tous ses chunks stockés. Elle ne dure que le temps de
+   * ces écritures : ni le découpage, ni la réception du flux, ni l'attente des
+   * chunks d'un upload concurrent ne retiennent une connexion, et l'insertion
+   * des chunks (transactions séparées) n'en demande jamais une seconde.
+   */
+  private void storeFile(FileEntity fileEntity, IngestTotals totals) {
+    long[] chunkIds = Arrays.copyOf(totals.chunkIds, totals.totalChunks);
+    int[] lengths = Arrays.copyOf(totals.lengths, totals.totalChunks);
+    transactionTemplate.executeWithoutResult(status -> {
+      fileRepository.save(fileEntity);
+      storeLinks(fileEntity, chunkIds, lengths);
+    });
+  }
+
+  private void persistBatch(IngestPipeline.Batch batch, FileEntity fileEntity, HashingAlgorithm algorithm,
+      CompressionType compressionType, Map<ChunkHash, Long> savedChunks, IngestTotals totals) {
+    List<Chunk> window = batch.getChunks();
+
+    // 1. Chunks inconnus des recherches et pas encore insérés par ce fichier
+    Map<ChunkHash, ChunkEntity> newChunks = new LinkedHashMap<>();
+    for (Chunk chunk : window) {
+      ChunkHash hash = chunk.getHash();
+      if (!savedChunks.containsKey(hash) && batch.getExistingId(hash) == null && !newChunks.containsKey(hash)) {
+        newChunks.put(hash, newChunkEntity(hash, batch.getPayload(hash), algorithm, compressionType));
+      }
+    }
+
+    // 2. Les stocker : ceux qu'un upload concurrent vient d'insérer deviennent des doublons
+    Set<ChunkHash> inserted = storeNewChunks(newChunks, algorithm, fileEntity, savedChunks);
+
+    // 3. Noter le chunk de chaque position, les liens sont écrits en fin d'upload
+    for (Chunk chunk : window) {
+      // Un chunk peut aussi répéter un chunk inséré plus tôt dans ce fichier
+      Long chunkId = savedChunks.get(chunk.getHash());
+      if (chunkId == null) {
+        chunkId = batch.getExistingId(chunk.getHash());
+      }
+      totals.bytes += chunk.getOriginalSize();
+      if (inserted.remove(chunk.getHash())) {
+        totals.uniqueChunks++;
+        if (compressionType != null) {
+          totals.compressedSize += batch.getPayload(chunk.getHash()).length;
         }
+      } else {
+        totals.duplicateChunks++;
+        totals.savedStorage += chunk.getOriginalSize();
+        logger.info("Chunk dupliqué trouvé: {}", chunk.getHash());
+      }
+      totals.addChunk(chunkId, chunk.getOriginalSize());
+    }
+  }
 
-        chunkEntity = chunkRepository.save(chunkEntity);
-        uniqueChunks++;
+  private ChunkEntity newChunkEntity(ChunkHash hash, byte[] data, HashingAlgorithm algorithm,
+      CompressionType compressionType) {
+    ChunkEntity chunkEntity = new ChunkEntity();
+    chunkEntity.setData(data);
+    if (compressionType != null) {
+      chunkEntity.setCompressionType(compressionType.name());
+    }
+
+    // Stocker le hash selon l'algorithme
+    switch (algorithm) {
+      case SHA1:
+        chunkEntity.setHashSha1(hash.toHex());
+        break;
+      case SHA256:
+        chunkEntity.setHashSha256(hash.toHex());
+        break;
+      case BLAKE3:
+        chunkEntity.setHashBlake3(hash.toHex());
+        break;
+    }
+    return chunkEntity;
+  }
+
+  /**
+   * Insère les chunks neufs d'un lot et les ajoute à {@code savedChunks}.
+   *
+   * Les chunks sont validés aussitôt, dans leur propre transaction, pour que les
+   * uploads concurrents puissent les référencer : un même contenu n'est stocké
+   * qu'une fois. Dans ce processus, un seul upload insère un hash donné, les
+   * autres attendent qu'il ait fini puis reprennent son chunk ; entre processus,
+   * l'insertion ignore les hash déjà stockés.
+   *
+   * @return les chunks réellement insérés par cet upload
+   */
+  private Set<ChunkHash> storeNewChunks(Map<ChunkHash, ChunkEntity> newChunks, HashingAlgorithm algorithm,
+      FileEntity fileEntity, Map<ChunkHash, Long> savedChunks) {
+    Set<ChunkHash> inserted = new HashSet<>();
+    Map<ChunkHash, ChunkEntity> pending = new LinkedHashMap<>(newChunks);
+    while (!pending.isEmpty()) {
+      Set<ChunkHash> claimed = inFlightHashes.claim(algorithm, pending.keySet(), fileEntity);
+      if (!claimed.isEmpty()) {
+        try {
+          List<ChunkEntity> rows = claimed.stream().map(pending::get).toList();
+          // Les données d'abord : une ligne validée doit pouvoir être relue. Un
+          // chunk réessayé a déjà les siennes
+          writePayloads(rows.stream().filter(chunk -> chunk.getStoredSize() == null).toList());
+          Map<String, Long> ids = chunkUpsertWriter.insertIfAbsent(rows);
+          // Déjà stockés : retenus comme ceux trouvés par la recherche
+          Set<Long> missing = chunkReferenceWriter.hold(claimed.stream()
+              .filter(hash -> ids.containsKey(hash.toHex())
+                  && !ids.get(hash.toHex()).equals(pending.get(hash).getId()))
+              .mapToLong(hash -> ids.get(hash.toHex()))
+              .toArray());
+          for (ChunkHash hash : claimed) {
+            Long id = ids.get(hash.toHex());
+            if (id == null || missing.contains(id)) {
+              // Ligne en conflit supprimée par le ramasse-miettes avant d'être retenue :
+              // le chunk reste à insérer, au tour suivant
+              chunkHashIndex.invalidate(algorithm, hash);
+              continue;
+            }
+            ChunkEntity chunk = pending.remove(hash);
+            if (chunk.getId() != null && chunk.getId().equals(id)) {
+              inserted.add(hash);
+            }
+            // Stocké par un autre processus : le filtre de celui-ci ne le connaissait pas
+            chunkHashFilter.add(algorithm, hash, id);
+            chunkHashIndex.put(algorithm, hash, id);
+            savedChunks.put(hash, id);
+          }
+        } finally {
+          inFlightHashes.release(algorithm, claimed, fileEntity);
+        }
+      }
+      if (pending.isEmpty()) {
+        break;
       }
+      // Les autres sont en cours d'insertion par un upload concurrent : reprendre
+      // ses chunks une fois validés, réessayer ceux qu'il n'a pas pu insérer
+      inFlightHashes.awaitRelease(algorithm, pending.keySet());
+      pending.keySet().removeIf(hash -> {
+        Long id = chunkHashIndex.get(algorithm, hash);
+        if (id != null) {
+          savedChunks.put(hash, id);
+        }
+        return id != null;
+      });
+    }
+    return inserted;
+  }
+
+  private void writePayloads(List<ChunkEntity> chunks) {
+    try {
+      chunkStorage.write(chunks);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stocke des chunks reçus hors du pipeline (négociation des hash), compressés
+   * si {@code compressionType} n'est pas null.
+   *
+   * @param payloads données non compressées par hash, déjà vérifiées
+   * @param owner    réserve les hash en cours d'insertion, comme un upload
+   * @return id du chunk stocké par hash ; un chunk arrivé entre-temps par un
+   *         autre upload n'est pas inséré une seconde fois
+   */
+  Map<ChunkHash, Long> storeChunks(Map<ChunkHash, byte[]> payloads, HashingAlgorithm algorithm,
+      CompressionType compressionType, FileEntity owner) {
+    Map<ChunkHash, ChunkEntity> newChunks = new LinkedHashMap<>();
+    payloads.forEach((hash, data) -> {
+      ChunkEntity chunk = newChunkEntity(hash,
+          compressionType == null ? data : compressionService.compress(data, compressionType), algorithm,
+          compressionType);
+      chunk.setOriginalSize(data.length);
+      newChunks.put(hash, chunk);
+    });
+    Map<ChunkHash, Long> ids = new HashMap<>();
+    storeNewChunks(newChunks, algorithm, owner, ids);
+    return ids;
+  }
 
-      // Créer la relation entre le fichier et le chunk
+  /**
+   * Relie un fichier à ses chunks déjà stockés, dans l'ordre : lignes
+   * file_chunk par fenêtre ou manifeste compact selon la configuration.
+   */
+  void storeLinks(FileEntity fileEntity, long[] chunkIds, int[] lengths) {
+    if (packedManifest) {
+      PackedManifest.Builder manifest = PackedManifest.builder();
+      for (int i = 0; i < chunkIds.length; i++) {
+        manifest.add(chunkIds[i], lengths[i]);
+      }
+      storeManifest(fileEntity, manifest);
+      addReferences(chunkIds);
+      return;
+    }
+    List<FileChunkEntity> fileChunks = new ArrayList<>(lookupWindow);
+    for (int i = 0; i < chunkIds.length; i++) {
       FileChunkEntity fileChunk = new FileChunkEntity();
       fileChunk.setFile(fileEntity);
-      fileChunk.setChunk(chunkEntity);
-      fileChunk.setPosition(chunk.getPosition());
-      fileChunkRepository.save(fileChunk);
+      fileChunk.setChunk(chunkRepository.getReferenceById(chunkIds[i]));
+      fileChunk.setPosition(i);
+      fileChunks.add(fileChunk);
+      if (fileChunks.size() == lookupWindow || i == chunkIds.length - 1) {
+        storeFileChunks(fileChunks, i + 1);
+        fileChunks = new ArrayList<>(lookupWindow);
+      }
     }
+    addReferences(chunkIds);
+  }
 
-    // 5. Préparer le résultat
-    Map<String, Object> result = new HashMap<>();
-    result.put("fileId", fileEntity.getId());
-    result.put("fileName", fileEntity.getName());
-    result.put("extension", fileEntity.getExtension());
-    result.put("fileSize", fileEntity.getSize());
-    result.put("algorithm", algorithm.name());
-    result.put("compressionType", compressionType.name());
-    result.put("totalChunks", totalChunks);
-    result.put("uniqueChunks", uniqueChunks);
-    result.put("duplicateChunks", duplicateChunks);
-    result.put("savedStorage", savedStorage);
-    result.put("deduplicationRatio", totalChunks > 0 ? (double) duplicateChunks / totalChunks : 0);
-    result.put("totalCompressedSize", totalCompressedSize);
+  /**
+   * Compte les liens du fichier, dans la transaction qui les écrit : un upload
+   * annulé ne laisse aucune référence. Échoue si le ramasse-miettes a
+   * supprimé entre-temps un chunk que l'upload avait trouvé.
+   */
+  private void addReferences(long[] chunkIds) {
+    chunkReferenceWriter.addReferences(chunkIds);
+  }
 
-    logger.info("Fichier compressé traité: id={}, nom={}, chunks={}, uniques={}, doublons={}, taille compressée={}",
-        fileEntity.getId(), fileName, totalChunks, uniqueChunks, duplicateChunks, totalCompressedSize);
+  /**
+   * Une insertion groupée des liens de toute la fenêtre : batchs JDBC, ou COPY
+   * une fois que le fichier a dépassé le seuil de chunks.
+   */
+  private void storeFileChunks(List<FileChunkEntity> fileChunks, int chunksSoFar) {
+    if (chunkCopyWriter.shouldCopy(chunksSoFar)) {
+      if (!fileChunks.isEmpty()) {
+        chunkCopyWriter.insert(fileChunks);
+      }
+      return;
+    }
+    fileChunkRepository.saveAll(fileChunks);
+  }
 
-    return result;
+  private void storeManifest(FileEntity fileEntity, PackedManifest.Builder manifest) {
+    List<byte[]> pages = manifest.build();
+    List<FileManifestPageEntity> pageEntities = new ArrayList<>(pages.size());
+    for (int i = 0; i < pages.size(); i++) {
+      FileManifestPageEntity page = new FileManifestPageEntity();
+      page.setFile(fileEntity);
+      page.setPageNumber(i);
+      page.setData(pages.get(i));
+      pageEntities.add(page);
+    }
+    fileManifestPageRepository.saveAll(pageEntities);
+    fileEntity.setManifestPages(pages.size());
+  }
+
+  public Map<String, Object> getChunkIndexStats() {
+    if (chunkHashIndex == null) {
+      throw new UnsupportedOperationException("L'index des chunks n'a pas été injecté.");
+    }
+    return chunkHashIndex.getStats();
+  }
+
+  public Map<String, Object> getPipelineStats() {
+    if (ingestPipeline == null) {
+      throw new UnsupportedOperationException("Le pipeline d'ingestion n'a pas été injecté.");
+    }
+    return ingestPipeline.getLastRunStats();
+  }
+
+  public Map<String, Object> getChunkFilterStats() {
+    if (chunkHashFilter == null) {
+      throw new UnsupportedOperationException("Le filtre des chunks n'a pas été injecté.");
+    }
+    return chunkHashFilter.getStats();
+  }
+
+  /**
+   * Ids des chunks déjà stockés parmi ceux du lot, par hash. Le filtre écarte
+   * sans requête les chunks jamais vus, l'index en mémoire résout les chunks
+   * connus ; les hash restants sont cherchés en base en une seule requête.
+   * Appelé en dehors de la transaction d'ingestion, depuis l'étage de recherche
+   * ou la négociation des hash ({@link ChunkNegotiationService}).
+   *
+   * Les chunks trouvés sont retenus ({@link ChunkReferenceWriter#hold}) : le
+   * ramasse-miettes ne les supprime pas avant que l'upload les référence. Un
+   * chunk déjà supprimé n'est pas renvoyé, l'upload le stocke de nouveau.
+   */
+  Map<ChunkHash, Long> findExistingChunks(Collection<ChunkHash> window, HashingAlgorithm algorithm) {
+    Map<ChunkHash, Long> existingChunks = new HashMap<>();
+    Map<String, ChunkHash> unresolved = new HashMap<>();
+    for (ChunkHash hash : window) {
+      if (existingChunks.containsKey(hash) || !chunkHashFilter.mightContain(algorithm, hash)) {
+        continue;
+      }
+      Long chunkId = chunkHashIndex.get(algorithm, hash);
+      if (chunkId != null) {
+        existingChunks.put(hash, chunkId);
+      } else {
+        unresolved.put(hash.toHex(), hash);
+      }
+    }
+    if (unresolved.isEmpty()) {
+      return holdExisting(existingChunks, algorithm);
+    }
+
+    List<ChunkHashes> found = switch (algorithm) {
+      case SHA1 -> chunkRepository.findByHashSha1In(unresolved.keySet());
+      case SHA256 -> chunkRepository.findByHashSha256In(unresolved.keySet());
+      case BLAKE3 -> chunkRepository.findByHashBlake3In(unresolved.keySet());
+    };
+    for (ChunkHashes row : found) {
+      String hex = switch (algorithm) {
+        case SHA1 -> row.getHashSha1();
+        case SHA256 -> row.getHashSha256();
+        case BLAKE3 -> row.getHashBlake3();
+      };
+      ChunkHash hash = unresolved.get(hex);
+      chunkHashIndex.put(algorithm, hash, row.getId());
+      existingChunks.put(hash, row.getId());
+    }
+    return holdExisting(existingChunks, algorithm);
+  }
+
+  private Map<ChunkHash, Long> holdExisting(Map<ChunkHash, Long> existingChunks, HashingAlgorithm algorithm) {
+    Set<Long> missing = chunkReferenceWriter.hold(
+        existingChunks.values().stream().mapToLong(Long::longValue).toArray());
+    if (!missing.isEmpty()) {
+      existingChunks.entrySet().removeIf(entry -> {
+        if (missing.contains(entry.getValue())) {
+          chunkHashIndex.invalidate(algorithm, entry.getKey());
+          return true;
+        }
+        return false;
+      });
+    }
+    return existingChunks;
   }
 }
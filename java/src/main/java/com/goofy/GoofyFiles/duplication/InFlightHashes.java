@@ -0,0 +1,159 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+
+/**
+ * Hash des chunks en cours d'insertion dans ce processus. Quand deux uploads
+ * simultanés apportent le même chunk neuf, le premier le réserve et l'insère ;
+ * le second attend la fin de cette insertion puis réutilise le chunk, au lieu
+ * de tenter une insertion vouée au conflit.
+ *
+ * Les réservations sont réparties en verrous par tranche de hash : les uploads
+ * sans chunk commun ne se bloquent pas entre eux. Une réservation ne dure que
+ * le temps d'insérer un lot de chunks, jamais celui d'un upload entier, et
+ * l'appelant doit relâcher les siennes avant d'attendre celles des autres.
+ */
+@Service
+public class InFlightHashes {
+
+  private static final int STRIPES = 64;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final Duration waitTimeout;
+  private final LongAdder claims = new LongAdder();
+  private final LongAdder contended = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+
+  public InFlightHashes(@Value("${goofy.dedup.in-flight-timeout:PT1M}") Duration waitTimeout) {
+    this.waitTimeout = waitTimeout;
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Réserve les hash qui ne le sont pas déjà pour {@code owner}.
+   *
+   * @return les hash réservés par cet appel ; les autres sont en cours
+   *         d'insertion par un autre upload
+   */
+  public Set<ChunkHash> claim(HashingAlgorithm algorithm, Collection<ChunkHash> hashes, Object owner) {
+    Set<ChunkHash> claimed = new LinkedHashSet<>();
+    for (ChunkHash hash : hashes) {
+      Stripe stripe = stripeOf(hash);
+      stripe.lock.lock();
+      try {
+        if (stripe.owners.putIfAbsent(new Key(algorithm, hash), owner) == null) {
+          claimed.add(hash);
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    claims.add(claimed.size());
+    contended.add(hashes.size() - claimed.size());
+    return claimed;
+  }
+
+  /**
+   * Relâche les réservations de {@code owner} et réveille les uploads qui les
+   * attendent, que l'insertion ait réussi ou non.
+   */
+  public void release(HashingAlgorithm algorithm, Collection<ChunkHash> hashes, Object owner) {
+    for (ChunkHash hash : hashes) {
+      Stripe stripe = stripeOf(hash);
+      stripe.lock.lock();
+      try {
+        Key key = new Key(algorithm, hash);
+        if (stripe.owners.get(key) == owner) {
+          stripe.owners.remove(key);
+          stripe.released.signalAll();
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Attend que plus aucun de ces hash ne soit réservé. L'appelant ne doit en
+   * réserver aucun lui-même.
+   */
+  public void awaitRelease(HashingAlgorithm algorithm, Collection<ChunkHash> hashes) {
+    long deadline = System.nanoTime() + waitTimeout.toNanos();
+    for (ChunkHash hash : hashes) {
+      Key key = new Key(algorithm, hash);
+      Stripe stripe = stripeOf(hash);
+      stripe.lock.lock();
+      try {
+        boolean waited = false;
+        while (stripe.owners.containsKey(key)) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new IllegalStateException("Chunk toujours en cours d'insertion par un autre upload: " + hash);
+          }
+          waited = true;
+          stripe.released.await(remaining, TimeUnit.NANOSECONDS);
+        }
+        if (waited) {
+          waits.increment();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Attente d'un chunk en cours d'insertion interrompue", e);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.owners.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  public Map<String, Object> getStats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("inFlight", size());
+    stats.put("claims", claims.sum());
+    stats.put("contended", contended.sum());
+    stats.put("waits", waits.sum());
+    return stats;
+  }
+
+  private Stripe stripeOf(ChunkHash hash) {
+    return stripes[Math.floorMod(hash.hashCode(), STRIPES)];
+  }
+
+  private record Key(HashingAlgorithm algorithm, ChunkHash hash) {
+  }
+
+  private static final class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition released = lock.newCondition();
+    final Map<Key, Object> owners = new HashMap<>();
+  }
+}
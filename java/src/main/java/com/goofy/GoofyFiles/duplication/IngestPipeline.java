@@ -0,0 +1,436 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkHasher;
+import com.goofy.GoofyFiles.chunking.ChunkIterator;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Ingestion d'un fichier en étages reliés par des files bornées : découpage
+ * (lecture par projection mémoire) → hachage → recherche des doublons →
+ * compression → persistance. Les chunks circulent par lots ; chaque étage a
+ * ses propres threads et une file pleine bloque l'étage qui l'alimente.
+ *
+ * La persistance se fait sur le thread appelant, lot par lot dans l'ordre du
+ * fichier, chaque lot dans ses propres transactions courtes. Les recherches
+ * tournent sur d'autres threads, en avance : elles ne voient pas les chunks
+ * insérés entre-temps par l'upload en cours, que l'étage de persistance résout
+ * lui-même.
+ */
+@Service
+public class IngestPipeline {
+
+  private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+
+  private static final String[] STAGES = {"chunk", "hash", "lookup", "compress", "persist"};
+  // Marque de fin de flux, envoyée une fois par thread de l'étage suivant
+  private static final Batch END = new Batch(-1, List.of());
+
+  private final int queueCapacity;
+  private final int hashThreads;
+  private final int lookupThreads;
+  private final int compressThreads;
+  private final ExecutorService executor;
+  private volatile Map<String, Object> lastRunStats = Map.of();
+
+  public IngestPipeline(
+      @Value("${goofy.ingest.pipeline.queue-capacity:4}") int queueCapacity,
+      @Value("${goofy.ingest.pipeline.hash-threads:2}") int hashThreads,
+      @Value("${goofy.ingest.pipeline.lookup-threads:2}") int lookupThreads,
+      @Value("${goofy.ingest.pipeline.compress-threads:2}") int compressThreads) {
+    if (queueCapacity < 1 || hashThreads < 1 || lookupThreads < 1 || compressThreads < 1) {
+      throw new IllegalArgumentException("Capacité des files et nombre de threads doivent être positifs");
+    }
+    this.queueCapacity = queueCapacity;
+    this.hashThreads = hashThreads;
+    this.lookupThreads = lookupThreads;
+    this.compressThreads = compressThreads;
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, "ingest-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    this.executor = Executors.newCachedThreadPool(threadFactory);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Traitements de chaque étage, fournis par l'appelant.
+   */
+  public interface Stages {
+    /**
+     * Ids des chunks du lot déjà stockés, par hash. Appelé sur les threads de recherche.
+     */
+    Map<ChunkHash, Long> lookup(List<Chunk> chunks);
+
+    /**
+     * Données à stocker pour un chunk neuf. Appelé sur les threads de compression.
+     */
+    byte[] payload(Chunk chunk);
+
+    /**
+     * Enregistre un lot. Appelé sur le thread appelant, dans l'ordre du fichier.
+     */
+    void persist(Batch batch);
+  }
+
+  /**
+   * Lot de chunks consécutifs, complété par chaque étage.
+   */
+  public static final class Batch {
+    private final long sequence;
+    private final List<Chunk> chunks;
+    private Map<ChunkHash, Long> existingIds = Map.of();
+    private final Map<ChunkHash, byte[]> payloads = new HashMap<>();
+
+    private Batch(long sequence, List<Chunk> chunks) {
+      this.sequence = sequence;
+      this.chunks = chunks;
+    }
+
+    public List<Chunk> getChunks() {
+      return chunks;
+    }
+
+    /**
+     * Id du chunk déjà stocké ayant ce hash, ou null.
+     */
+    public Long getExistingId(ChunkHash hash) {
+      return existingIds.get(hash);
+    }
+
+    /**
+     * Données préparées pour un chunk absent de la base (première occurrence dans le lot).
+     */
+    public byte[] getPayload(ChunkHash hash) {
+      return payloads.get(hash);
+    }
+
+    private long bytes() {
+      long bytes = 0;
+      for (Chunk chunk : chunks) {
+        bytes += chunk.getOriginalSize();
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * Fait passer tous les chunks de l'itérateur par les étages, par lots de
+   * {@code batchSize}. L'itérateur doit produire des chunks sans empreinte ;
+   * il reste à la charge de l'appelant, qui le ferme après le retour.
+   */
+  public void run(ChunkIterator chunks, HashingAlgorithm algorithm, int batchSize, Stages stages)
+      throws IOException {
+    new Run(chunks, algorithm, batchSize, stages).execute();
+  }
+
+  /**
+   * Débit et occupation des files de la dernière ingestion.
+   */
+  public Map<String, Object> getLastRunStats() {
+    return lastRunStats;
+  }
+
+  private static final class StageMetrics {
+    final int threads;
+    final LongAdder batches = new LongAdder();
+    final LongAdder chunks = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder busyNanos = new LongAdder();
+
+    StageMetrics(int threads) {
+      this.threads = threads;
+    }
+
+    void record(Batch batch, long nanos) {
+      batches.increment();
+      chunks.add(batch.chunks.size());
+      bytes.add(batch.bytes());
+      busyNanos.add(nanos);
+    }
+
+    Map<String, Object> toMap(long wallNanos) {
+      double seconds = wallNanos / 1e9;
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("threads", threads);
+      stats.put("batches", batches.sum());
+      stats.put("chunks", chunks.sum());
+      stats.put("busyMs", busyNanos.sum() / 1_000_000);
+      stats.put("chunksPerSecond", Math.round(chunks.sum() / seconds));
+      stats.put("megabytesPerSecond", Math.round(bytes.sum() / seconds / (1024 * 1024) * 10) / 10.0);
+      // Part du temps où les threads de l'étage travaillent (le reste : attente des files)
+      stats.put("utilization", Math.round(busyNanos.sum() * 100.0 / (wallNanos * threads)) / 100.0);
+      return stats;
+    }
+  }
+
+  /**
+   * File bornée dont l'occupation est relevée à chaque ajout.
+   */
+  private static final class MeteredQueue {
+    final BlockingQueue<Batch> queue;
+    final int capacity;
+    final LongAdder samples = new LongAdder();
+    final LongAdder occupancy = new LongAdder();
+    final LongAccumulator maxOccupancy = new LongAccumulator(Math::max, 0);
+
+    MeteredQueue(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.capacity = capacity;
+    }
+
+    void put(Batch batch) throws InterruptedException {
+      if (batch != END) {
+        int size = queue.size();
+        samples.increment();
+        occupancy.add(size);
+        maxOccupancy.accumulate(size);
+      }
+      queue.put(batch);
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("capacity", capacity);
+      long count = samples.sum();
+      stats.put("averageOccupancy", count == 0 ? 0.0 : Math.round(occupancy.sum() * 100.0 / count) / 100.0);
+      stats.put("maxOccupancy", maxOccupancy.get());
+      return stats;
+    }
+  }
+
+  private final class Run {
+    private final ChunkIterator chunks;
+    private final HashingAlgorithm algorithm;
+    private final int batchSize;
+    private final Stages stages;
+
+    private final MeteredQueue[] queues = new MeteredQueue[STAGES.length - 1];
+    private final StageMetrics[] metrics = {
+        new StageMetrics(1), new StageMetrics(hashThreads), new StageMetrics(lookupThreads),
+        new StageMetrics(compressThreads), new StageMetrics(1)};
+    // Lots en cours entre le découpage et la persistance : borne aussi ceux qui
+    // attendent d'être remis dans l'ordre
+    private final Semaphore inFlight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Future<?>> workers = new ArrayList<>();
+
+    Run(ChunkIterator chunks, HashingAlgorithm algorithm, int batchSize, Stages stages) {
+      this.chunks = chunks;
+      this.algorithm = algorithm;
+      this.batchSize = batchSize;
+      this.stages = stages;
+      for (int i = 0; i < queues.length; i++) {
+        queues[i] = new MeteredQueue(queueCapacity);
+      }
+      this.inFlight = new Semaphore(queueCapacity * queues.length + hashThreads + lookupThreads + compressThreads);
+    }
+
+    void execute() throws IOException {
+      long start = System.nanoTime();
+      try {
+        workers.add(executor.submit(guard(this::produce)));
+        startStage(1, hashThreads, () -> {
+          ChunkHasher hasher = ChunkHasher.forAlgorithm(algorithm);
+          return batch -> batch.chunks.replaceAll(hasher::hash);
+        });
+        startStage(2, lookupThreads, () -> batch -> batch.existingIds = stages.lookup(batch.chunks));
+        startStage(3, compressThreads, () -> batch -> {
+          for (Chunk chunk : batch.chunks) {
+            if (!batch.existingIds.containsKey(chunk.getHash()) && !batch.payloads.containsKey(chunk.getHash())) {
+              batch.payloads.put(chunk.getHash(), stages.payload(chunk));
+            }
+          }
+        });
+        consume();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Ingestion interrompue", e);
+      } finally {
+        workers.forEach(worker -> worker.cancel(true));
+      }
+
+      long wallNanos = System.nanoTime() - start;
+      lastRunStats = toMap(wallNanos);
+      if (logger.isInfoEnabled()) {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < STAGES.length; i++) {
+          summary.append(String.format(" %s=%.0f%%", STAGES[i],
+              metrics[i].busyNanos.sum() * 100.0 / (wallNanos * metrics[i].threads)));
+        }
+        logger.info("Pipeline d'ingestion: {} chunks en {} ms, occupation des étages:{}",
+            metrics[0].chunks.sum(), wallNanos / 1_000_000, summary);
+      }
+    }
+
+    /**
+     * Étage de découpage : lit les chunks et les regroupe en lots numérotés.
+     */
+    private void produce() throws InterruptedException {
+      long sequence = 0;
+      List<Chunk> current = new ArrayList<>(batchSize);
+      long busyStart = System.nanoTime();
+      while (chunks.hasNext()) {
+        current.add(chunks.next());
+        if (current.size() == batchSize) {
+          emit(new Batch(sequence++, current), busyStart);
+          current = new ArrayList<>(batchSize);
+          busyStart = System.nanoTime();
+        }
+      }
+      if (!current.isEmpty()) {
+        emit(new Batch(sequence, current), busyStart);
+      }
+      for (int i = 0; i < hashThreads; i++) {
+        queues[0].put(END);
+      }
+    }
+
+    private void emit(Batch batch, long busyStart) throws InterruptedException {
+      metrics[0].record(batch, System.nanoTime() - busyStart);
+      inFlight.acquire();
+      queues[0].put(batch);
+    }
+
+    private void startStage(int stage, int threads, Supplier<Consumer<Batch>> worker) {
+      AtomicInteger running = new AtomicInteger(threads);
+      int downstreamThreads = metrics[stage + 1].threads;
+      for (int i = 0; i < threads; i++) {
+        workers.add(executor.submit(guard(() -> {
+          Consumer<Batch> action = worker.get();
+          while (true) {
+            Batch batch = queues[stage - 1].queue.take();
+            if (batch == END) {
+              // Le dernier thread de l'étage transmet la fin de flux
+              if (running.decrementAndGet() == 0) {
+                for (int j = 0; j < downstreamThreads; j++) {
+                  queues[stage].put(END);
+                }
+              }
+              return;
+            }
+            long busyStart = System.nanoTime();
+            action.accept(batch);
+            metrics[stage].record(batch, System.nanoTime() - busyStart);
+            queues[stage].put(batch);
+          }
+        })));
+      }
+    }
+
+    /**
+     * Étage de persistance, sur le thread appelant : remet les lots dans
+     * l'ordre du fichier avant de les enregistrer.
+     */
+    private void consume() throws IOException, InterruptedException {
+      TreeMap<Long, Batch> pending = new TreeMap<>();
+      long next = 0;
+      while (true) {
+        Batch batch = queues[queues.length - 1].queue.poll(100, TimeUnit.MILLISECONDS);
+        rethrowFailure();
+        if (batch == null) {
+          continue;
+        }
+        if (batch == END) {
+          break;
+        }
+        pending.put(batch.sequence, batch);
+        while ((batch = pending.remove(next)) != null) {
+          long busyStart = System.nanoTime();
+          stages.persist(batch);
+          metrics[STAGES.length - 1].record(batch, System.nanoTime() - busyStart);
+          inFlight.release();
+          next++;
+        }
+      }
+    }
+
+    private void rethrowFailure() throws IOException {
+      Throwable error = failure.get();
+      if (error == null) {
+        return;
+      }
+      if (error instanceof UncheckedIOException unchecked) {
+        throw unchecked.getCause();
+      }
+      if (error instanceof RuntimeException runtime) {
+        throw runtime;
+      }
+      if (error instanceof Error fatal) {
+        throw fatal;
+      }
+      throw new IllegalStateException("Échec de l'ingestion", error);
+    }
+
+    private Runnable guard(InterruptibleTask task) {
+      return () -> {
+        try {
+          task.run();
+        } catch (InterruptedException e) {
+          // Annulé après l'échec d'un autre étage
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      };
+    }
+
+    private Map<String, Object> toMap(long wallNanos) {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("wallTimeMs", wallNanos / 1_000_000);
+      stats.put("chunks", metrics[0].chunks.sum());
+      stats.put("batchSize", batchSize);
+      Map<String, Object> stageStats = new LinkedHashMap<>();
+      for (int i = 0; i < STAGES.length; i++) {
+        stageStats.put(STAGES[i], metrics[i].toMap(wallNanos));
+      }
+      stats.put("stages", stageStats);
+      Map<String, Object> queueStats = new LinkedHashMap<>();
+      for (int i = 0; i < queues.length; i++) {
+        queueStats.put(STAGES[i] + "->" + STAGES[i + 1], queues[i].toMap());
+      }
+      stats.put("queues", queueStats);
+      return stats;
+    }
+  }
+
+  @FunctionalInterface
+  private interface InterruptibleTask {
+    void run() throws InterruptedException;
+  }
+}
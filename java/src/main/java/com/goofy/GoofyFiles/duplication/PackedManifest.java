@@ -0,0 +1,200 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Manifeste compact d'un fichier : la suite ordonnée des ids de ses chunks et
+ * de leurs tailles, à la place d'une ligne file_chunk par chunk. Les entrées
+ * sont découpées en pages d'au plus {@link #PAGE_ENTRIES} chunks ; chaque page
+ * est autonome et contient, compressés (deflate) :
+ * <ul>
+ * <li>le nombre d'entrées (varint) ;</li>
+ * <li>pour chaque chunk, l'écart avec l'id précédent (varint zigzag, un octet
+ * pour les chunks neufs qui se suivent) puis sa taille (varint).</li>
+ * </ul>
+ * Les positions des chunks dans le fichier se déduisent des tailles.
+ */
+public final class PackedManifest {
+
+  // 64K chunks de 8 Ko : une seule page jusqu'à 512 Mo
+  public static final int PAGE_ENTRIES = 65536;
+
+  private final long[] chunkIds;
+  private final int[] lengths;
+  private final long[] offsets;
+
+  private PackedManifest(long[] chunkIds, int[] lengths) {
+    this.chunkIds = chunkIds;
+    this.lengths = lengths;
+    this.offsets = new long[lengths.length];
+    long offset = 0;
+    for (int i = 0; i < lengths.length; i++) {
+      offsets[i] = offset;
+      offset += lengths[i];
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Relit un manifeste à partir de ses pages, dans l'ordre.
+   */
+  public static PackedManifest decode(List<byte[]> pages) {
+    long[] chunkIds = new long[0];
+    int[] lengths = new int[0];
+    int size = 0;
+    Inflater inflater = new Inflater();
+    try {
+      for (byte[] page : pages) {
+        byte[] packed = inflate(inflater, page);
+        int[] cursor = {0};
+        int entries = (int) readVarint(packed, cursor);
+        chunkIds = Arrays.copyOf(chunkIds, size + entries);
+        lengths = Arrays.copyOf(lengths, size + entries);
+        long chunkId = 0;
+        for (int i = 0; i < entries; i++) {
+          long delta = readVarint(packed, cursor);
+          chunkId += (delta >>> 1) ^ -(delta & 1);
+          chunkIds[size] = chunkId;
+          lengths[size++] = (int) readVarint(packed, cursor);
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+    return new PackedManifest(chunkIds, lengths);
+  }
+
+  public int size() {
+    return chunkIds.length;
+  }
+
+  public long getChunkId(int position) {
+    return chunkIds[position];
+  }
+
+  public int getLength(int position) {
+    return lengths[position];
+  }
+
+  public long getOffset(int position) {
+    return offsets[position];
+  }
+
+  /**
+   * Ids distincts des chunks référencés, dans l'ordre de première apparition.
+   */
+  public long[] distinctChunkIds() {
+    return Arrays.stream(chunkIds).distinct().toArray();
+  }
+
+  private static byte[] inflate(Inflater inflater, byte[] page) {
+    inflater.reset();
+    inflater.setInput(page);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(page.length * 3);
+    byte[] buffer = new byte[8192];
+    try {
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buffer);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Page de manifeste tronquée");
+        }
+        out.write(buffer, 0, n);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Page de manifeste corrompue", e);
+    }
+    return out.toByteArray();
+  }
+
+  private static long readVarint(byte[] data, int[] cursor) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = data[cursor[0]++];
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  /**
+   * Accumule les chunks d'un fichier pendant l'ingestion, page par page.
+   */
+  public static final class Builder {
+    private final List<byte[]> pages = new ArrayList<>();
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private int entries;
+    private long previousId;
+    private int size;
+
+    private Builder() {
+    }
+
+    public void add(long chunkId, int length) {
+      long delta = chunkId - previousId;
+      writeVarint(current, (delta << 1) ^ (delta >> 63));
+      writeVarint(current, length);
+      previousId = chunkId;
+      size++;
+      if (++entries == PAGE_ENTRIES) {
+        closePage();
+      }
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Pages compressées, prêtes à être stockées dans l'ordre.
+     */
+    public List<byte[]> build() {
+      if (entries > 0 || pages.isEmpty()) {
+        closePage();
+      }
+      return List.copyOf(pages);
+    }
+
+    private void closePage() {
+      ByteArrayOutputStream page = new ByteArrayOutputStream(current.size() + 5);
+      writeVarint(page, entries);
+      page.writeBytes(current.toByteArray());
+
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try {
+        deflater.setInput(page.toByteArray());
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(page.size() / 2 + 16);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+          compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        pages.add(compressed.toByteArray());
+      } finally {
+        deflater.end();
+      }
+
+      current.reset();
+      entries = 0;
+      previousId = 0;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+      while ((value & ~0x7fL) != 0) {
+        out.write((int) ((value & 0x7f) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+  }
+}
@@ -9,20 +9,47 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "chunk")
+// Un même contenu n'est stocké qu'une fois, même quand deux uploads l'insèrent en même temps.
+// Sur une base qui a déjà des doublons, ddl-auto ne peut pas créer les index uniques :
+// ChunkDeduplicationMigration fusionne les doublons et les crée au démarrage
+@Table(name = "chunk", indexes = {
+    @Index(name = "ux_chunk_hash_sha_1", columnList = "hash_sha_1", unique = true),
+    @Index(name = "ux_chunk_hash_sha_256", columnList = "hash_sha_256", unique = true),
+    @Index(name = "ux_chunk_hash_blake3", columnList = "hash_blake3", unique = true),
+    // Chunks d'un segment de pack, dans l'ordre du fichier (compactage)
+    @Index(name = "ix_chunk_pack", columnList = "pack_id, pack_offset"),
+    // Chunks sans référence, du plus ancien au plus récent (ramasse-miettes)
+    @Index(name = "ix_chunk_unreferenced", columnList = "unreferenced_since")})
 public class ChunkEntity {
+  // Séquence par blocs de 50 (comme hibernate.jdbc.batch_size) : contrairement à
+  // IDENTITY, les insertions peuvent être regroupées en batch JDBC
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chunk_seq")
+  @SequenceGenerator(name = "chunk_seq", sequenceName = "chunk_seq", allocationSize = 50)
   private Long id;
 
+  // Données stockées en base (ChunkStore DATABASE) ; null quand elles sont dans un pack
   // @Lob
   @Column(columnDefinition = "bytea")
   private byte[] data;
 
+  // Taille des données stockées, compressées ou non
+  @Column(name = "stored_size")
+  private Integer storedSize;
+
+  // Emplacement dans les packs (ChunkStore PACK) : numéro du segment et position de l'enregistrement
+  @Column(name = "pack_id")
+  private Long packId;
+
+  @Column(name = "pack_offset")
+  private Long packOffset;
+
   @Column(name = "hash_sha_1")
   private String hashSha1;
 
@@ -35,6 +62,25 @@ public class ChunkEntity {
   @Column(name = "created_at")
   private LocalDateTime createdAt = LocalDateTime.now();
 
+  // Nombre de liens des fichiers vers ce chunk ; null pour les chunks stockés
+  // avant son ajout, qui ne sont jamais collectés
+  @Column(name = "ref_count")
+  private Integer refCount = 0;
+
+  // Depuis quand plus aucun fichier ne référence ce chunk ; null tant qu'il est référencé
+  @Column(name = "unreferenced_since")
+  private LocalDateTime unreferencedSince = createdAt;
+
+  // Dernière lecture, à l'heure près ; null pour les chunks stockés avant son
+  // ajout, dont l'âge est alors celui de created_at
+  @Column(name = "last_accessed_at")
+  private LocalDateTime lastAccessedAt = createdAt;
+
+  // Étage du chunk (TieringPolicy.Tier) : HOT tel qu'à l'upload, COLD
+  // recompressé pour la place ; null vaut HOT
+  @Column(name = "storage_tier")
+  private String storageTier = "HOT";
+
   @OneToMany(mappedBy = "chunk")
   private List<FileChunkEntity> fileChunks = new ArrayList<>();
 
@@ -61,6 +107,30 @@ public class ChunkEntity {
     this.data = data;
   }
 
+  public Integer getStoredSize() {
+    return storedSize;
+  }
+
+  public void setStoredSize(Integer storedSize) {
+    this.storedSize = storedSize;
+  }
+
+  public Long getPackId() {
+    return packId;
+  }
+
+  public void setPackId(Long packId) {
+    this.packId = packId;
+  }
+
+  public Long getPackOffset() {
+    return packOffset;
+  }
+
+  public void setPackOffset(Long packOffset) {
+    this.packOffset = packOffset;
+  }
+
   public String getHashSha1() {
     return hashSha1;
   }
@@ -89,6 +159,38 @@ public class ChunkEntity {
     return createdAt;
   }
 
+  public Integer getRefCount() {
+    return refCount;
+  }
+
+  public void setRefCount(Integer refCount) {
+    this.refCount = refCount;
+  }
+
+  public LocalDateTime getUnreferencedSince() {
+    return unreferencedSince;
+  }
+
+  public void setUnreferencedSince(LocalDateTime unreferencedSince) {
+    this.unreferencedSince = unreferencedSince;
+  }
+
+  public LocalDateTime getLastAccessedAt() {
+    return lastAccessedAt;
+  }
+
+  public void setLastAccessedAt(LocalDateTime lastAccessedAt) {
+    this.lastAccessedAt = lastAccessedAt;
+  }
+
+  public String getStorageTier() {
+    return storageTier;
+  }
+
+  public void setStorageTier(String storageTier) {
+    this.storageTier = storageTier;
+  }
+
   public List<FileChunkEntity> getFileChunks() {
     return fileChunks;
   }
@@ -5,10 +5,15 @@ import java.time.LocalDateTime;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "file_chunk")
+@Table(name = "file_chunk", indexes = {
+    // Liens d'un fichier dans l'ordre (reconstruction, suppression)
+    @Index(name = "ix_file_chunk_file", columnList = "file_id, position"),
+    // Fichiers d'un chunk : sans cet index, supprimer un chunk parcourt toute la table
+    @Index(name = "ix_file_chunk_chunk", columnList = "chunk_id")})
 public class FileChunkEntity {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_chunk_seq")
+  @SequenceGenerator(name = "file_chunk_seq", sequenceName = "file_chunk_seq", allocationSize = 50)
   private Long id;
 
   @ManyToOne
@@ -10,13 +10,22 @@ import jakarta.persistence.*;
 @Table(name = "files")
 public class FileEntity {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_seq")
+  @SequenceGenerator(name = "files_seq", sequenceName = "files_seq", allocationSize = 50)
   private Long id;
 
   private String name;
   private String extension;
   private Long size;
 
+  // Stratégie de découpage utilisée à l'ingestion (null pour les fichiers stockés avant son ajout : RABIN)
+  @Column(name = "chunking_strategy")
+  private String chunkingStrategy;
+
+  // Pages du manifeste compact ; null pour un manifeste en lignes file_chunk
+  @Column(name = "manifest_pages")
+  private Integer manifestPages;
+
   @Column(name = "created_at")
   private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -55,6 +64,22 @@ public class FileEntity {
     this.size = size;
   }
 
+  public String getChunkingStrategy() {
+    return chunkingStrategy;
+  }
+
+  public void setChunkingStrategy(String chunkingStrategy) {
+    this.chunkingStrategy = chunkingStrategy;
+  }
+
+  public Integer getManifestPages() {
+    return manifestPages;
+  }
+
+  public void setManifestPages(Integer manifestPages) {
+    this.manifestPages = manifestPages;
+  }
+
   public LocalDateTime getCreatedAt() {
     return createdAt;
   }
@@ -0,0 +1,55 @@
+package com.goofy.GoofyFiles.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Page d'un manifeste compact (voir PackedManifest) : un fichier en a une seule
+ * jusqu'à 64K chunks, quelques-unes au-delà.
+ */
+@Entity
+@Table(name = "file_manifest_page",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"file_id", "page_number"}))
+public class FileManifestPageEntity {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_manifest_page_seq")
+  @SequenceGenerator(name = "file_manifest_page_seq", sequenceName = "file_manifest_page_seq", allocationSize = 50)
+  private Long id;
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "file_id")
+  private FileEntity file;
+
+  @Column(name = "page_number")
+  private Integer pageNumber;
+
+  @Column(columnDefinition = "bytea")
+  private byte[] data;
+
+  public Long getId() {
+    return id;
+  }
+
+  public FileEntity getFile() {
+    return file;
+  }
+
+  public void setFile(FileEntity file) {
+    this.file = file;
+  }
+
+  public Integer getPageNumber() {
+    return pageNumber;
+  }
+
+  public void setPageNumber(Integer pageNumber) {
+    this.pageNumber = pageNumber;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+
+  public void setData(byte[] data) {
+    this.data = data;
+  }
+}
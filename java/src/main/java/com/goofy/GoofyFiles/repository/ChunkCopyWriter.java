@@ -0,0 +1,128 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.goofy.GoofyFiles.model.FileChunkEntity;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Insertion des liens fichier -> chunk par
+ * {@code COPY ... FROM STDIN (FORMAT binary)}, bien plus rapide que les batchs
+ * JDBC pour les gros fichiers. Le COPY passe par la connexion de la session
+ * Hibernate : il fait partie de la transaction en cours et disparaît avec elle
+ * en cas de rollback. Disponible uniquement sur PostgreSQL. Les chunks eux-mêmes
+ * passent par {@link ChunkUpsertWriter}, qui ignore les hash déjà stockés.
+ */
+@Component
+public class ChunkCopyWriter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkCopyWriter.class);
+
+  private static final String COPY_FILE_CHUNK = "COPY file_chunk (id, file_id, chunk_id, position, created_at) "
+      + "FROM STDIN (FORMAT binary)";
+
+  private final DataSource dataSource;
+  private final int thresholdChunks;
+  private boolean available;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  public ChunkCopyWriter(
+      DataSource dataSource,
+      @Value("${goofy.ingest.copy-threshold-chunks:20000}") int thresholdChunks) {
+    this.dataSource = dataSource;
+    this.thresholdChunks = thresholdChunks;
+  }
+
+  @PostConstruct
+  public void detectDatabase() throws MetaDataAccessException {
+    String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+    available = "PostgreSQL".equals(product);
+    if (!available) {
+      logger.info("Base {} : insertion par COPY désactivée", product);
+    }
+  }
+
+  /**
+   * Vrai quand un fichier a produit assez de chunks pour passer au COPY.
+   * Les chunks déjà insérés restent tels quels, seuls les suivants sont copiés.
+   */
+  public boolean shouldCopy(int chunksSoFar) {
+    return available && thresholdChunks > 0 && chunksSoFar >= thresholdChunks;
+  }
+
+  /**
+   * Copie les liens fichier -> chunk en leur attribuant leurs ids. Les entités
+   * ne sont pas attachées au contexte de persistance.
+   *
+   * @param fileChunks liens vers des chunks déjà stockés
+   */
+  public void insert(List<FileChunkEntity> fileChunks) {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+      throw new IllegalStateException("L'insertion par COPY doit se faire dans une transaction");
+    }
+    // Le fichier et les lignes en attente doivent exister pour les clés étrangères
+    entityManager.flush();
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try {
+        copyFileChunks(connection.unwrap(PGConnection.class), fileChunks,
+            PooledSequence.allocate(connection, "file_chunk_seq", fileChunks.size()));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private void copyFileChunks(PGConnection connection, List<FileChunkEntity> fileChunks, long[] ids)
+      throws SQLException, IOException {
+    PGCopyOutputStream copy = new PGCopyOutputStream(connection, COPY_FILE_CHUNK);
+    try {
+      PgBinaryCopyEncoder encoder = new PgBinaryCopyEncoder(copy);
+      int i = 0;
+      for (FileChunkEntity fileChunk : fileChunks) {
+        fileChunk.setId(ids[i++]);
+        encoder.startRow(5);
+        encoder.writeBigint(fileChunk.getId());
+        encoder.writeBigint(fileChunk.getFile().getId());
+        encoder.writeBigint(fileChunk.getChunk().getId());
+        encoder.writeInteger(fileChunk.getPosition());
+        encoder.writeTimestamp(fileChunk.getCreatedAt());
+      }
+      encoder.finish();
+    } catch (IOException | RuntimeException e) {
+      cancel(copy);
+      throw e;
+    }
+  }
+
+  private void cancel(PGCopyOutputStream copy) {
+    try {
+      if (copy.isActive()) {
+        copy.cancelCopy();
+      }
+    } catch (SQLException e) {
+      logger.warn("Annulation du COPY impossible", e);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compteurs de références des chunks, tenus dans la transaction qui crée ou
+ * supprime les liens d'un fichier.
+ *
+ * Un upload ajoute toutes ses références d'un coup, juste avant de valider :
+ * les lignes chunk ne restent verrouillées que le temps de la validation, et
+ * non pendant tout l'upload. Les ids sont toujours mis à jour par ordre
+ * croissant, à l'ajout comme au retrait : deux fichiers qui partagent des
+ * chunks s'attendent l'un l'autre sans interblocage.
+ *
+ * Un compteur null (chunk stocké avant l'ajout des compteurs) reste null.
+ *
+ * Jusque-là, un upload retient les chunks qu'il va référencer
+ * ({@link #hold(long[])}) : le délai de grâce de ceux qui n'ont pas de
+ * référence repart, le ramasse-miettes ne les prend pas avant la fin de
+ * l'upload.
+ */
+@Component
+public class ChunkReferenceWriter {
+
+  // Lignes par batch JDBC
+  private static final int BATCH_SIZE = 1000;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public ChunkReferenceWriter(DataSource dataSource) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+  }
+
+  /**
+   * Ajoute une référence par occurrence d'un id. Un chunk qui n'existe plus a
+   * été supprimé par le ramasse-miettes depuis que l'upload l'a trouvé : le
+   * fichier ne peut pas être enregistré, la transaction doit être annulée.
+   *
+   * @param chunkIds ids des chunks du fichier, un par lien
+   * @throws IllegalStateException si un des chunks n'existe plus
+   */
+  public void addReferences(long[] chunkIds) {
+    long[][] counts = countById(chunkIds);
+    update("UPDATE chunk SET ref_count = ref_count + ?, unreferenced_since = NULL WHERE id = ?", counts, false);
+  }
+
+  /**
+   * Retient des chunks qu'un upload en cours va référencer : ceux sans
+   * référence sont de nouveau sans référence depuis maintenant, et restent en
+   * place pendant un délai de grâce complet. Ceux qui ont des références ne
+   * sont pas modifiés ; leur délai ne commence qu'au retrait de la dernière.
+   * Hors transaction, chaque requête est validée aussitôt ; dans celle qui
+   * compte ensuite les références, les lignes restent verrouillées jusqu'à la
+   * fin et le ramasse-miettes les saute.
+   *
+   * @param chunkIds ids des chunks, dans n'importe quel ordre, répétés ou non
+   * @return ids qui n'existent plus, déjà supprimés par le ramasse-miettes
+   */
+  public Set<Long> hold(long[] chunkIds) {
+    long[] ids = countById(chunkIds)[0];
+    Set<Long> missing = new HashSet<>();
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    for (int first = 0; first < ids.length; first += BATCH_SIZE) {
+      List<Long> slice = Arrays.stream(ids, first, Math.min(ids.length, first + BATCH_SIZE)).boxed().toList();
+      Set<Long> found = new HashSet<>(slice.size());
+      List<Long> unreferenced = new ArrayList<>();
+      jdbcTemplate.query("SELECT id, ref_count FROM chunk WHERE id IN (" + placeholders(slice.size()) + ")", rs -> {
+        found.add(rs.getLong(1));
+        if (rs.getObject(2) != null && rs.getLong(2) == 0) {
+          unreferenced.add(rs.getLong(1));
+        }
+      }, slice.toArray());
+      slice.stream().filter(id -> !found.contains(id)).forEach(missing::add);
+      if (unreferenced.isEmpty()) {
+        continue;
+      }
+
+      // Par ordre croissant, comme les compteurs. Une ligne que le ramasse-miettes a
+      // verrouillée est attendue : supprimée entre-temps, elle n'est plus mise à jour
+      Collections.sort(unreferenced);
+      int[] updated = jdbcTemplate.batchUpdate("UPDATE chunk SET unreferenced_since = ? WHERE id = ? "
+          + "AND ref_count = 0", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+              statement.setTimestamp(1, now);
+              statement.setLong(2, unreferenced.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+              return unreferenced.size();
+            }
+          });
+      // Pas mise à jour : référencée entre-temps par un autre upload, ou supprimée
+      List<Long> changed = new ArrayList<>();
+      for (int i = 0; i < updated.length; i++) {
+        if (updated[i] == 0) {
+          changed.add(unreferenced.get(i));
+        }
+      }
+      if (!changed.isEmpty()) {
+        Set<Long> remaining = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM chunk WHERE id IN ("
+            + placeholders(changed.size()) + ")", Long.class, changed.toArray()));
+        changed.stream().filter(id -> !remaining.contains(id)).forEach(missing::add);
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Retire une référence par occurrence d'un id. Les chunks qui n'ont plus de
+   * référence deviennent candidats au ramasse-miettes à partir de maintenant.
+   */
+  public void removeReferences(long[] chunkIds) {
+    long[][] counts = countById(chunkIds);
+    update("UPDATE chunk SET ref_count = ref_count - ?, unreferenced_since = CASE WHEN ref_count <= ? THEN ? "
+        + "ELSE unreferenced_since END WHERE id = ?", counts, true);
+  }
+
+  private void update(String sql, long[][] counts, boolean release) {
+    long[] ids = counts[0];
+    long[] increments = counts[1];
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    for (int first = 0; first < ids.length; first += BATCH_SIZE) {
+      int offset = first;
+      int size = Math.min(BATCH_SIZE, ids.length - first);
+      int[] updated = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+        @Override
+        public void setValues(PreparedStatement statement, int i) throws SQLException {
+          int parameter = 1;
+          statement.setLong(parameter++, increments[offset + i]);
+          if (release) {
+            statement.setLong(parameter++, increments[offset + i]);
+            statement.setTimestamp(parameter++, now);
+          }
+          statement.setLong(parameter, ids[offset + i]);
+        }
+
+        @Override
+        public int getBatchSize() {
+          return size;
+        }
+      });
+      // Un chunk référencé n'est jamais collecté : seul un ajout peut manquer sa ligne
+      for (int i = 0; i < updated.length && !release; i++) {
+        if (updated[i] == 0) {
+          throw new IllegalStateException("Chunk supprimé pendant l'upload: " + ids[offset + i]);
+        }
+      }
+    }
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  /**
+   * Ids distincts par ordre croissant, avec leur nombre d'occurrences.
+   */
+  private static long[][] countById(long[] chunkIds) {
+    long[] sorted = chunkIds.clone();
+    Arrays.sort(sorted);
+    long[] ids = new long[sorted.length];
+    long[] counts = new long[sorted.length];
+    int distinct = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (distinct > 0 && ids[distinct - 1] == sorted[i]) {
+        counts[distinct - 1]++;
+      } else {
+        ids[distinct] = sorted[i];
+        counts[distinct++] = 1;
+      }
+    }
+    return new long[][]{Arrays.copyOf(ids, distinct), Arrays.copyOf(counts, distinct)};
+  }
+}
@@ -1,7 +1,10 @@
 package com.goofy.GoofyFiles.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import com.goofy.GoofyFiles.model.ChunkEntity;
@@ -13,4 +16,28 @@ public interface ChunkRepository extends JpaRepository<ChunkEntity, Long> {
   Optional<ChunkEntity> findByHashSha256(String hash);
 
   Optional<ChunkEntity> findByHashBlake3(String hash);
-}
\ No newline at end of file
+
+  /**
+   * Recherche groupée : ids et hash des chunks existants, sans les données.
+   */
+  List<ChunkHashes> findByHashSha1In(Collection<String> hashes);
+
+  List<ChunkHashes> findByHashSha256In(Collection<String> hashes);
+
+  List<ChunkHashes> findByHashBlake3In(Collection<String> hashes);
+
+  /**
+   * Parcours de la table par pages d'ids croissants, sans charger les données.
+   */
+  List<ChunkHashes> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+  interface ChunkHashes {
+    Long getId();
+
+    String getHashSha1();
+
+    String getHashSha256();
+
+    String getHashBlake3();
+  }
+}
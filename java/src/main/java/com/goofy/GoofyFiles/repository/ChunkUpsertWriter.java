@@ -0,0 +1,239 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Insertion des chunks neufs qui tolère les uploads concurrents : un chunk dont
+ * le hash est déjà stocké n'est pas inséré une seconde fois, son id existant
+ * est renvoyé à la place. Les index uniques sur les colonnes de hash garantissent
+ * qu'un même contenu n'a qu'une ligne ; ils sont créés, ou l'application ne
+ * démarre pas, par
+ * {@link com.goofy.GoofyFiles.duplication.ChunkDeduplicationMigration}.
+ *
+ * Chaque appel est validé dans sa propre transaction : les chunks deviennent
+ * aussitôt visibles des autres uploads, qui peuvent les référencer sans attendre
+ * la fin de l'upload qui les a apportés. Ils sont insérés sans référence : si
+ * cet upload échoue ensuite, le ramasse-miettes les supprime passé le délai de
+ * grâce.
+ *
+ * Sur PostgreSQL, une seule requête par lot :
+ * {@code INSERT ... ON CONFLICT (colonne de hash) DO NOTHING RETURNING}, suivie
+ * d'une lecture des ids des chunks en conflit. La colonne est nommée : sans son
+ * index unique, la requête échoue au lieu d'insérer un doublon. Ailleurs (H2 en test), lecture des hash connus puis
+ * insertion des autres, relancée si un upload concurrent a gagné la course.
+ */
+@Component
+@DependsOn("chunkDeduplicationMigration")
+public class ChunkUpsertWriter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkUpsertWriter.class);
+
+  private static final String COLUMNS = "id, data, hash_sha_1, hash_sha_256, hash_blake3, created_at, "
+      + "compression_type, original_size, stored_size, pack_id, pack_offset, ref_count, unreferenced_since, "
+      + "last_accessed_at, storage_tier";
+  private static final int COLUMN_COUNT = 15;
+  private static final String PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  // Bien en deçà des 65535 paramètres d'une requête PostgreSQL
+  private static final int ROWS_PER_STATEMENT = 1000;
+  // Chaque tentative voit les chunks validés entre-temps : elle insère moins de lignes
+  private static final int MAX_ATTEMPTS = 10;
+
+  private final DataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private boolean postgres;
+
+  public ChunkUpsertWriter(DataSource dataSource, PlatformTransactionManager transactionManager) {
+    this.dataSource = dataSource;
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  @PostConstruct
+  public void detectDatabase() throws MetaDataAccessException {
+    String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+    postgres = "PostgreSQL".equals(product);
+  }
+
+  /**
+   * Insère les chunks dont le hash n'est pas encore stocké, dans une transaction
+   * séparée. Seuls les chunks insérés par cet appel reçoivent un id ; pour les
+   * autres, l'id renvoyé (celui de la ligne existante) diffère de celui de
+   * l'entité.
+   *
+   * @param chunks chunks neufs d'un même algorithme, sans id
+   * @return id du chunk stocké par hash (hexadécimal) ; un hash peut manquer si
+   *         la ligne en conflit a été supprimée (ramasse-miettes) entre
+   *         l'insertion et la lecture de son id, le chunk est alors à réinsérer
+   */
+  public Map<String, Long> insertIfAbsent(List<ChunkEntity> chunks) {
+    if (chunks.isEmpty()) {
+      return Map.of();
+    }
+    String column = hashColumn(chunks.get(0));
+    // Même ordre pour tous les uploads : deux insertions qui se recouvrent
+    // s'attendent l'une l'autre sans interblocage
+    List<ChunkEntity> sorted = new ArrayList<>(chunks);
+    sorted.sort(Comparator.comparing(chunk -> hashOf(chunk, column)));
+    for (int attempt = 1;; attempt++) {
+      sorted.forEach(chunk -> chunk.setId(null));
+      try {
+        return transactionTemplate.execute(status -> postgres
+            ? upsert(column, sorted)
+            : insertMissing(column, sorted));
+      } catch (DuplicateKeyException e) {
+        if (attempt == MAX_ATTEMPTS) {
+          throw e;
+        }
+        logger.debug("Chunk inséré par un upload concurrent, nouvelle tentative ({} chunks)", sorted.size());
+      }
+    }
+  }
+
+  private Map<String, Long> upsert(String column, List<ChunkEntity> chunks) {
+    Map<String, Long> ids = new HashMap<>(chunks.size() * 2);
+    long[] newIds = allocateIds(chunks.size());
+    for (int first = 0; first < chunks.size(); first += ROWS_PER_STATEMENT) {
+      List<ChunkEntity> slice = chunks.subList(first, Math.min(chunks.size(), first + ROWS_PER_STATEMENT));
+      int offset = first;
+      StringBuilder sql = new StringBuilder("INSERT INTO chunk (" + COLUMNS + ") VALUES ");
+      for (int i = 0; i < slice.size(); i++) {
+        sql.append(i == 0 ? "" : ", ").append(PLACEHOLDERS);
+      }
+      sql.append(" ON CONFLICT (").append(column).append(") DO NOTHING RETURNING id, ").append(column);
+      jdbcTemplate.query(sql.toString(), statement -> {
+        for (int i = 0; i < slice.size(); i++) {
+          bindRow(statement, i * COLUMN_COUNT, slice.get(i), newIds[offset + i]);
+        }
+      }, rs -> {
+        ids.put(rs.getString(2), rs.getLong(1));
+      });
+    }
+    // Les lignes en conflit ont été validées par un autre upload entre-temps
+    List<String> conflicts = chunks.stream()
+        .map(chunk -> hashOf(chunk, column))
+        .filter(hash -> !ids.containsKey(hash))
+        .toList();
+    ids.putAll(selectIds(column, conflicts));
+    return ids;
+  }
+
+  private Map<String, Long> insertMissing(String column, List<ChunkEntity> chunks) {
+    Map<String, Long> ids = selectIds(column, chunks.stream().map(chunk -> hashOf(chunk, column)).toList());
+    List<ChunkEntity> missing = chunks.stream()
+        .filter(chunk -> !ids.containsKey(hashOf(chunk, column)))
+        .toList();
+    if (missing.isEmpty()) {
+      return ids;
+    }
+    long[] newIds = allocateIds(missing.size());
+    jdbcTemplate.batchUpdate("INSERT INTO chunk (" + COLUMNS + ") VALUES " + PLACEHOLDERS,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement statement, int i) throws SQLException {
+            bindRow(statement, 0, missing.get(i), newIds[i]);
+          }
+
+          @Override
+          public int getBatchSize() {
+            return missing.size();
+          }
+        });
+    for (int i = 0; i < missing.size(); i++) {
+      ids.put(hashOf(missing.get(i), column), newIds[i]);
+    }
+    return ids;
+  }
+
+  private Map<String, Long> selectIds(String column, List<String> hashes) {
+    Map<String, Long> ids = new HashMap<>(hashes.size() * 2);
+    for (int first = 0; first < hashes.size(); first += ROWS_PER_STATEMENT) {
+      List<String> slice = hashes.subList(first, Math.min(hashes.size(), first + ROWS_PER_STATEMENT));
+      String placeholders = String.join(", ", Collections.nCopies(slice.size(), "?"));
+      jdbcTemplate.query("SELECT id, " + column + " FROM chunk WHERE " + column + " IN (" + placeholders + ")",
+          rs -> {
+            ids.put(rs.getString(2), rs.getLong(1));
+          }, slice.toArray());
+    }
+    return ids;
+  }
+
+  private long[] allocateIds(int count) {
+    return jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> PooledSequence.allocate(connection,
+        "chunk_seq", count));
+  }
+
+  private static void bindRow(PreparedStatement statement, int offset, ChunkEntity chunk, long id)
+      throws SQLException {
+    chunk.setId(id);
+    statement.setLong(offset + 1, id);
+    statement.setBytes(offset + 2, chunk.getData());
+    statement.setString(offset + 3, chunk.getHashSha1());
+    statement.setString(offset + 4, chunk.getHashSha256());
+    statement.setString(offset + 5, chunk.getHashBlake3());
+    statement.setTimestamp(offset + 6, Timestamp.valueOf(chunk.getCreatedAt()));
+    statement.setString(offset + 7, chunk.getCompressionType());
+    statement.setObject(offset + 8, chunk.getOriginalSize(), Types.INTEGER);
+    statement.setObject(offset + 9, chunk.getStoredSize(), Types.INTEGER);
+    statement.setObject(offset + 10, chunk.getPackId(), Types.BIGINT);
+    statement.setObject(offset + 11, chunk.getPackOffset(), Types.BIGINT);
+    statement.setObject(offset + 12, chunk.getRefCount(), Types.INTEGER);
+    statement.setTimestamp(offset + 13,
+        chunk.getUnreferencedSince() != null ? Timestamp.valueOf(chunk.getUnreferencedSince()) : null);
+    statement.setTimestamp(offset + 14,
+        chunk.getLastAccessedAt() != null ? Timestamp.valueOf(chunk.getLastAccessedAt()) : null);
+    statement.setString(offset + 15, chunk.getStorageTier());
+  }
+
+  private static String hashColumn(ChunkEntity chunk) {
+    if (chunk.getHashSha1() != null) {
+      return "hash_sha_1";
+    }
+    if (chunk.getHashSha256() != null) {
+      return "hash_sha_256";
+    }
+    if (chunk.getHashBlake3() != null) {
+      return "hash_blake3";
+    }
+    throw new IllegalArgumentException("Chunk sans hash");
+  }
+
+  private static String hashOf(ChunkEntity chunk, String column) {
+    return switch (column) {
+      case "hash_sha_1" -> chunk.getHashSha1();
+      case "hash_sha_256" -> chunk.getHashSha256();
+      default -> chunk.getHashBlake3();
+    };
+  }
+}
@@ -3,6 +3,9 @@ package com.goofy.GoofyFiles.repository;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.goofy.GoofyFiles.model.FileChunkEntity;
@@ -10,4 +13,14 @@ import com.goofy.GoofyFiles.model.FileChunkEntity;
 @Repository
 public interface FileChunkRepository extends JpaRepository<FileChunkEntity, Long> {
     List<FileChunkEntity> findByFileIdOrderByPosition(Long fileId);
-}
\ No newline at end of file
+
+    /**
+     * Id du chunk de chaque lien d'un fichier, sans charger les chunks.
+     */
+    @Query("SELECT fc.chunk.id FROM FileChunkEntity fc WHERE fc.file.id = :fileId")
+    List<Long> findChunkIdsByFileId(@Param("fileId") Long fileId);
+
+    @Modifying
+    @Query("DELETE FROM FileChunkEntity fc WHERE fc.file.id = :fileId")
+    int deleteByFileId(@Param("fileId") Long fileId);
+}
@@ -0,0 +1,20 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.goofy.GoofyFiles.model.FileManifestPageEntity;
+
+@Repository
+public interface FileManifestPageRepository extends JpaRepository<FileManifestPageEntity, Long> {
+    List<FileManifestPageEntity> findByFileIdOrderByPageNumber(Long fileId);
+
+    @Modifying
+    @Query("DELETE FROM FileManifestPageEntity page WHERE page.file.id = :fileId")
+    int deleteByFileId(@Param("fileId") Long fileId);
+}
@@ -3,9 +3,29 @@ package com.goofy.GoofyFiles.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.goofy.GoofyFiles.model.FileEntity;
 
+import jakarta.persistence.LockModeType;
+
 public interface FileRepository extends JpaRepository<FileEntity, Long> {
   Optional<FileEntity> findById(Long id);
-}
\ No newline at end of file
+
+  /**
+   * Fichier verrouillé jusqu'à la fin de la transaction (SELECT ... FOR UPDATE).
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT f FROM FileEntity f WHERE f.id = :id")
+  Optional<FileEntity> findForUpdateById(@Param("id") Long id);
+
+  /**
+   * Suppression sans charger les liens du fichier (cascade de l'entité).
+   */
+  @Modifying
+  @Query("DELETE FROM FileEntity f WHERE f.id = :id")
+  int deleteFileById(@Param("id") Long id);
+}
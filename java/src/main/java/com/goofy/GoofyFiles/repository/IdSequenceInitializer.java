@@ -0,0 +1,56 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.sql.DatabaseMetaData;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Les ids venaient de colonnes IDENTITY : sur une base existante, les séquences
+ * créées par Hibernate repartent de 1. Elles sont avancées au-delà du plus grand
+ * id avant la première insertion, une fois le schéma mis à jour par
+ * l'EntityManagerFactory.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdSequenceInitializer {
+
+  private static final Logger logger = LoggerFactory.getLogger(IdSequenceInitializer.class);
+
+  // Table -> séquence de son id
+  private static final Map<String, String> SEQUENCES = Map.of(
+      "chunk", "chunk_seq",
+      "file_chunk", "file_chunk_seq",
+      "files", "files_seq");
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public IdSequenceInitializer(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @PostConstruct
+  public void alignSequences() throws MetaDataAccessException {
+    String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+        DatabaseMetaData::getDatabaseProductName);
+    if (!"PostgreSQL".equals(product)) {
+      return;
+    }
+    SEQUENCES.forEach((table, sequence) -> {
+      // Avec l'optimiseur pooled, le prochain bloc commence juste après la valeur fixée
+      Long value = jdbcTemplate.queryForObject(
+          "select setval('" + sequence + "', greatest((select coalesce(max(id), 0) from " + table + "), "
+              + "(select last_value from " + sequence + ")))",
+          Long.class);
+      logger.debug("Séquence {} alignée sur {}", sequence, value);
+    });
+  }
+}
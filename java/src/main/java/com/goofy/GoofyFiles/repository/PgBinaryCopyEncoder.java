@@ -0,0 +1,85 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Encodage des lignes au format binaire de {@code COPY ... FROM STDIN (FORMAT binary)} :
+ * en-tête, puis pour chaque ligne le nombre de colonnes et chaque valeur
+ * précédée de sa longueur (-1 pour NULL), en big-endian.
+ */
+final class PgBinaryCopyEncoder {
+  private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+  // Les timestamps Postgres comptent les microsecondes depuis le 01/01/2000
+  private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+  private final DataOutputStream out;
+
+  PgBinaryCopyEncoder(OutputStream target) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(target, 1024 * 1024));
+    out.write(SIGNATURE);
+    out.writeInt(0);  // flags
+    out.writeInt(0);  // longueur de l'extension d'en-tête
+  }
+
+  void startRow(int columns) throws IOException {
+    out.writeShort(columns);
+  }
+
+  void writeBigint(Long value) throws IOException {
+    if (value == null) {
+      writeNull();
+      return;
+    }
+    out.writeInt(Long.BYTES);
+    out.writeLong(value);
+  }
+
+  void writeInteger(Integer value) throws IOException {
+    if (value == null) {
+      writeNull();
+      return;
+    }
+    out.writeInt(Integer.BYTES);
+    out.writeInt(value);
+  }
+
+  void writeBytea(byte[] value) throws IOException {
+    if (value == null) {
+      writeNull();
+      return;
+    }
+    out.writeInt(value.length);
+    out.write(value);
+  }
+
+  void writeText(String value) throws IOException {
+    writeBytea(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  void writeTimestamp(LocalDateTime value) throws IOException {
+    if (value == null) {
+      writeNull();
+      return;
+    }
+    out.writeInt(Long.BYTES);
+    out.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, value));
+  }
+
+  /**
+   * Écrit la fin de flux et ferme la cible, ce qui termine le COPY.
+   */
+  void finish() throws IOException {
+    out.writeShort(-1);
+    out.close();
+  }
+
+  private void writeNull() throws IOException {
+    out.writeInt(-1);
+  }
+}
@@ -0,0 +1,43 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Réservation d'ids hors d'Hibernate, compatible avec son optimiseur pooled :
+ * chaque valeur de séquence réserve les ids (valeur - 49 .. valeur], comme
+ * l'allocationSize des @SequenceGenerator des entités. Les ids réservés ici ne
+ * peuvent pas croiser ceux des insertions JPA.
+ */
+final class PooledSequence {
+  static final int ALLOCATION_SIZE = 50;
+
+  private PooledSequence() {
+  }
+
+  static long[] allocate(Connection connection, String sequence, int count) throws SQLException {
+    long[] ids = new long[count];
+    int allocated = 0;
+    boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+    String sql = postgres
+        ? "select nextval('" + sequence + "') from generate_series(1, ?)"
+        : "select next value for " + sequence + " from system_range(1, ?)";
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      while (allocated < count) {
+        statement.setInt(1, (count - allocated + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE);
+        try (ResultSet rs = statement.executeQuery()) {
+          while (rs.next()) {
+            long hi = rs.getLong(1);
+            // Les premières valeurs d'une séquence neuve ont un bloc incomplet
+            for (long id = Math.max(1, hi - ALLOCATION_SIZE + 1); id <= hi && allocated < count; id++) {
+              ids[allocated++] = id;
+            }
+          }
+        }
+      }
+    }
+    return ids;
+  }
+}
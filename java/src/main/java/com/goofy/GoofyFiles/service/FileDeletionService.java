@@ -0,0 +1,87 @@
+package com.goofy.GoofyFiles.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyFiles.duplication.PackedManifest;
+import com.goofy.GoofyFiles.model.FileEntity;
+import com.goofy.GoofyFiles.model.FileManifestPageEntity;
+import com.goofy.GoofyFiles.repository.ChunkReferenceWriter;
+import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
+import com.goofy.GoofyFiles.repository.FileRepository;
+
+/**
+ * Suppression d'un fichier : ses liens disparaissent et les compteurs de
+ * références de ses chunks diminuent d'autant. Les chunks eux-mêmes ne sont pas
+ * supprimés ici, même sans référence : le ramasse-miettes s'en charge plus tard,
+ * ce qui laisse finir les téléchargements en cours et les uploads qui viennent
+ * de les trouver.
+ */
+@Service
+public class FileDeletionService {
+    private static final Logger logger = LoggerFactory.getLogger(FileDeletionService.class);
+
+    private final FileRepository fileRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final FileManifestPageRepository fileManifestPageRepository;
+    private final ChunkReferenceWriter chunkReferenceWriter;
+
+    @Autowired
+    public FileDeletionService(
+            FileRepository fileRepository,
+            FileChunkRepository fileChunkRepository,
+            FileManifestPageRepository fileManifestPageRepository,
+            ChunkReferenceWriter chunkReferenceWriter) {
+        this.fileRepository = fileRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.fileManifestPageRepository = fileManifestPageRepository;
+        this.chunkReferenceWriter = chunkReferenceWriter;
+    }
+
+    @Transactional
+    public Map<String, Object> deleteFile(Long fileId) {
+        // Verrou sur le fichier : deux suppressions simultanées ne retirent pas deux fois ses références
+        FileEntity file = fileRepository.findForUpdateById(fileId)
+                .orElseThrow(() -> new IllegalArgumentException("Fichier non trouvé: " + fileId));
+
+        long[] chunkIds;
+        if (file.getManifestPages() != null) {
+            List<byte[]> pages = fileManifestPageRepository.findByFileIdOrderByPageNumber(fileId).stream()
+                    .map(FileManifestPageEntity::getData)
+                    .toList();
+            PackedManifest manifest = PackedManifest.decode(pages);
+            chunkIds = new long[manifest.size()];
+            for (int position = 0; position < chunkIds.length; position++) {
+                chunkIds[position] = manifest.getChunkId(position);
+            }
+            fileManifestPageRepository.deleteByFileId(fileId);
+        } else {
+            chunkIds = fileChunkRepository.findChunkIdsByFileId(fileId).stream()
+                    .mapToLong(Long::longValue)
+                    .toArray();
+            fileChunkRepository.deleteByFileId(fileId);
+        }
+        fileRepository.deleteFileById(fileId);
+        chunkReferenceWriter.removeReferences(chunkIds);
+
+        long distinctChunks = Arrays.stream(chunkIds).distinct().count();
+        logger.info("Fichier supprimé: id={}, nom={}, chunks={}, distincts={}",
+                fileId, file.getName(), chunkIds.length, distinctChunks);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("fileId", fileId);
+        result.put("fileName", file.getName());
+        result.put("chunks", chunkIds.length);
+        result.put("distinctChunks", distinctChunks);
+        return result;
+    }
+}
@@ -2,7 +2,11 @@ package com.goofy.GoofyFiles.service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,27 +15,50 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.duplication.PackedManifest;
+import com.goofy.GoofyFiles.model.ChunkEntity;
 import com.goofy.GoofyFiles.model.FileChunkEntity;
 import com.goofy.GoofyFiles.model.FileEntity;
+import com.goofy.GoofyFiles.model.FileManifestPageEntity;
+import com.goofy.GoofyFiles.repository.ChunkRepository;
 import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
 import com.goofy.GoofyFiles.repository.FileRepository;
+import com.goofy.GoofyFiles.storage.ChunkAccessTracker;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
 
 @Service
 public class FileReconstructionService {
     private static final Logger logger = LoggerFactory.getLogger(FileReconstructionService.class);
+    // Ids de chunks par requête IN
+    private static final int CHUNK_FETCH_SIZE = 1000;
+    // Chunks lus d'un coup : répartis sur les volumes des packs, lus en parallèle
+    private static final int READ_WINDOW = 256;
 
     private final FileRepository fileRepository;
     private final FileChunkRepository fileChunkRepository;
+    private final FileManifestPageRepository fileManifestPageRepository;
+    private final ChunkRepository chunkRepository;
     private final CompressionService compressionService;
+    private final ChunkStorage chunkStorage;
+    private final ChunkAccessTracker chunkAccessTracker;
 
     @Autowired
     public FileReconstructionService(
             FileRepository fileRepository,
             FileChunkRepository fileChunkRepository,
-            CompressionService compressionService) {
+            FileManifestPageRepository fileManifestPageRepository,
+            ChunkRepository chunkRepository,
+            CompressionService compressionService,
+            ChunkStorage chunkStorage,
+            ChunkAccessTracker chunkAccessTracker) {
         this.fileRepository = fileRepository;
         this.fileChunkRepository = fileChunkRepository;
+        this.fileManifestPageRepository = fileManifestPageRepository;
+        this.chunkRepository = chunkRepository;
         this.compressionService = compressionService;
+        this.chunkStorage = chunkStorage;
+        this.chunkAccessTracker = chunkAccessTracker;
     }
 
     @Transactional(readOnly = true)
@@ -39,49 +66,129 @@ public class FileReconstructionService {
         FileEntity file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new IllegalArgumentException("Fichier non trouvé: " + fileId));
 
+        byte[] reconstructedFile = file.getManifestPages() != null
+                ? reconstructFromManifest(file)
+                : reconstructFromRows(fileId);
+        logger.info("Fichier reconstruit: id={}, nom={}, taille={} octets", 
+            fileId, file.getName(), reconstructedFile.length);
+
+        return reconstructedFile;
+    }
+
+    /**
+     * Manifeste en lignes file_chunk (fichiers stockés sans manifeste compact).
+     */
+    private byte[] reconstructFromRows(Long fileId) throws IOException {
         List<FileChunkEntity> chunks = fileChunkRepository.findByFileIdOrderByPosition(fileId);
         if (chunks.isEmpty()) {
             throw new IllegalStateException("Aucun chunk trouvé pour le fichier: " + fileId);
         }
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        
-        for (FileChunkEntity chunk : chunks) {
-            byte[] chunkData = chunk.getChunk().getData();
-            
-            // Si le chunk est compressé, le décompresser
-            String compressionType = chunk.getChunk().getCompressionType();
-            if (compressionType != null) {
-                try {
-                    // Si la taille originale n'est pas définie, utiliser la taille des données compressées
-                    int originalSize = chunk.getChunk().getOriginalSize() != null 
-                        ? chunk.getChunk().getOriginalSize() 
-                        : chunkData.length * 2; // Estimation conservatrice
-
-                    chunkData = compressionService.decompress(
-                        chunkData, 
-                        CompressionService.CompressionType.valueOf(compressionType),
-                        originalSize
-                    );
-                    
-                    logger.debug("Chunk décompressé à la position {}: taille originale={}, taille décompressée={}", 
-                        chunk.getPosition(), 
-                        originalSize,
-                        chunkData.length);
-                        
-                } catch (Exception e) {
-                    logger.error("Erreur lors de la décompression du chunk à la position {}", chunk.getPosition(), e);
-                    throw new IOException("Erreur de décompression", e);
+        for (int from = 0; from < chunks.size(); from += READ_WINDOW) {
+            List<FileChunkEntity> window = chunks.subList(from, Math.min(from + READ_WINDOW, chunks.size()));
+            List<byte[]> stored = readWindow(window.stream().map(FileChunkEntity::getChunk).toList());
+            for (int i = 0; i < window.size(); i++) {
+                ChunkEntity chunk = window.get(i).getChunk();
+                outputStream.write(decodeChunkData(chunk, stored.get(i), window.get(i).getPosition(),
+                        chunk.getOriginalSize()));
+            }
+        }
+
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Manifeste compact : ses pages en une requête, puis les chunks par lots
+     * d'ids. Le manifeste donne la taille exacte de chaque chunk décompressé.
+     */
+    private byte[] reconstructFromManifest(FileEntity file) throws IOException {
+        List<byte[]> pages = fileManifestPageRepository.findByFileIdOrderByPageNumber(file.getId()).stream()
+                .map(FileManifestPageEntity::getData)
+                .toList();
+        if (pages.size() != file.getManifestPages()) {
+            throw new IllegalStateException("Manifeste incomplet pour le fichier: " + file.getId());
+        }
+        PackedManifest manifest = PackedManifest.decode(pages);
+        if (manifest.size() == 0) {
+            throw new IllegalStateException("Aucun chunk trouvé pour le fichier: " + file.getId());
+        }
+
+        long[] chunkIds = manifest.distinctChunkIds();
+        Map<Long, ChunkEntity> chunks = new HashMap<>(chunkIds.length * 2);
+        for (int from = 0; from < chunkIds.length; from += CHUNK_FETCH_SIZE) {
+            List<Long> slice = Arrays.stream(chunkIds, from, Math.min(from + CHUNK_FETCH_SIZE, chunkIds.length))
+                    .boxed()
+                    .toList();
+            chunkRepository.findAllById(slice).forEach(chunk -> chunks.put(chunk.getId(), chunk));
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        List<ChunkEntity> window = new ArrayList<>(READ_WINDOW);
+        for (int from = 0; from < manifest.size(); from += READ_WINDOW) {
+            int to = Math.min(from + READ_WINDOW, manifest.size());
+            window.clear();
+            for (int position = from; position < to; position++) {
+                ChunkEntity chunk = chunks.get(manifest.getChunkId(position));
+                if (chunk == null) {
+                    throw new IllegalStateException("Chunk " + manifest.getChunkId(position)
+                            + " introuvable pour le fichier: " + file.getId());
                 }
+                window.add(chunk);
+            }
+            List<byte[]> stored = readWindow(window);
+            for (int position = from; position < to; position++) {
+                outputStream.write(decodeChunkData(window.get(position - from), stored.get(position - from),
+                        position, manifest.getLength(position)));
             }
-            
-            outputStream.write(chunkData);
         }
+        return outputStream.toByteArray();
+    }
 
-        byte[] reconstructedFile = outputStream.toByteArray();
-        logger.info("Fichier reconstruit: id={}, nom={}, taille={} octets", 
-            fileId, file.getName(), reconstructedFile.length);
+    /**
+     * Données stockées d'une suite de chunks : en base ou dans un pack, selon
+     * le magasin de chacun.
+     */
+    private List<byte[]> readWindow(List<ChunkEntity> window) throws IOException {
+        List<byte[]> stored = chunkStorage.readAll(window);
+        if (chunkAccessTracker != null) {
+            for (ChunkEntity chunk : window) {
+                chunkAccessTracker.recordRead(chunk.getId());
+            }
+        }
+        return stored;
+    }
 
-        return reconstructedFile;
+    /**
+     * Chaud ou froid, la compression de la ligne suffit à relire le chunk.
+     */
+    private byte[] decodeChunkData(ChunkEntity chunk, byte[] chunkData, int position, Integer originalSize)
+            throws IOException {
+        // Si la taille originale n'est pas définie, utiliser la taille des données compressées
+        if (originalSize == null) {
+            originalSize = chunkData.length * 2; // Estimation conservatrice
+        }
+
+        // Si le chunk est compressé, le décompresser
+        String compressionType = chunk.getCompressionType();
+        if (compressionType != null) {
+            try {
+                chunkData = compressionService.decompress(
+                    chunkData, 
+                    CompressionService.CompressionType.valueOf(compressionType),
+                    originalSize
+                );
+                
+                logger.debug("Chunk décompressé à la position {}: taille originale={}, taille décompressée={}", 
+                    position, 
+                    originalSize,
+                    chunkData.length);
+                    
+            } catch (Exception e) {
+                logger.error("Erreur lors de la décompression du chunk à la position {}", position, e);
+                throw new IOException("Erreur de décompression", e);
+            }
+        }
+        return chunkData;
     }
 }
@@ -0,0 +1,150 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Date de dernière lecture des chunks, pour l'étagement chaud/froid.
+ *
+ * Une lecture ne fait qu'ajouter l'id du chunk à un ensemble en mémoire : la
+ * reconstruction, en transaction en lecture seule, n'écrit rien. L'ensemble est
+ * vidé en base périodiquement, par lots triés par id, et une ligne n'est
+ * réécrite que si sa date a plus d'une résolution de retard : un chunk lu en
+ * boucle coûte au plus une mise à jour par heure.
+ *
+ * Au-delà de {@code max-pending}, les lectures ne sont plus enregistrées
+ * jusqu'au prochain vidage : un chunk lu à ce moment peut passer pour plus
+ * ancien qu'il n'est, et au pire être recompressé, ce qui ne change que le coût
+ * de ses lectures suivantes.
+ */
+@Component
+public class ChunkAccessTracker {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkAccessTracker.class);
+    // Lignes par batch JDBC
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration resolution;
+    private final int maxPending;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong recordedReads = new AtomicLong();
+    private final AtomicLong droppedReads = new AtomicLong();
+    private final AtomicLong updatedRows = new AtomicLong();
+
+    @Autowired
+    public ChunkAccessTracker(
+            DataSource dataSource,
+            @Value("${goofy.tiering.access-resolution:PT1H}") Duration resolution,
+            @Value("${goofy.tiering.max-pending-accesses:1000000}") int maxPending) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.resolution = resolution;
+        this.maxPending = maxPending;
+    }
+
+    public void recordRead(long chunkId) {
+        recordedReads.incrementAndGet();
+        if (pendingCount.get() >= maxPending) {
+            droppedReads.incrementAndGet();
+            return;
+        }
+        if (pending.add(chunkId)) {
+            pendingCount.incrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${goofy.tiering.access-flush-interval:PT1M}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Échec de l'enregistrement des lectures de chunks", e);
+        }
+    }
+
+    /**
+     * Écrit en base les lectures enregistrées depuis le dernier vidage.
+     *
+     * @return nombre de lignes mises à jour
+     */
+    public synchronized int flush() {
+        long[] ids = new long[Math.max(pendingCount.get(), 0)];
+        int count = 0;
+        for (Iterator<Long> iterator = pending.iterator(); iterator.hasNext();) {
+            Long id = iterator.next();
+            iterator.remove();
+            pendingCount.decrementAndGet();
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, count * 2));
+            }
+            ids[count++] = id;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // Même ordre que les compteurs de références : pas d'interblocage avec un upload
+        long[] sorted = Arrays.copyOf(ids, count);
+        Arrays.sort(sorted);
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp accessedAt = Timestamp.valueOf(now);
+        Timestamp staleBefore = Timestamp.valueOf(now.minus(resolution));
+        int updated = 0;
+        for (int first = 0; first < sorted.length; first += BATCH_SIZE) {
+            int offset = first;
+            int size = Math.min(BATCH_SIZE, sorted.length - first);
+            int[] rows = jdbcTemplate.batchUpdate("UPDATE chunk SET last_accessed_at = ? WHERE id = ? "
+                    + "AND (last_accessed_at IS NULL OR last_accessed_at < ?)", new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement statement, int i) throws SQLException {
+                            statement.setTimestamp(1, accessedAt);
+                            statement.setLong(2, sorted[offset + i]);
+                            statement.setTimestamp(3, staleBefore);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+            for (int row : rows) {
+                // Pilotes qui ne comptent pas les lignes d'un batch : SUCCESS_NO_INFO (-2)
+                updated += Math.max(row, 0);
+            }
+        }
+        updatedRows.addAndGet(updated);
+        logger.debug("Lectures de chunks enregistrées: {} chunks lus, {} lignes mises à jour", count, updated);
+        return updated;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("resolution", resolution.toString());
+        stats.put("recordedReads", recordedReads.get());
+        stats.put("droppedReads", droppedReads.get());
+        stats.put("pendingChunks", pendingCount.get());
+        stats.put("updatedRows", updatedRows.get());
+        return stats;
+    }
+}
@@ -0,0 +1,117 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Déplace les données des chunks encore stockées en base (bytea) vers les
+ * packs, par lots, sans interrompre les uploads ni les téléchargements.
+ *
+ * Pour chaque lot : écriture dans les packs et synchronisation sur disque, puis,
+ * dans une transaction courte, mise à jour des lignes avec leur emplacement et
+ * effacement de {@code data}. Une lecture concurrente trouve donc toujours les
+ * données à l'un ou l'autre endroit. La migration peut être interrompue et
+ * relancée : elle reprend les lignes qui ont encore leurs données en base.
+ *
+ * Sur PostgreSQL, l'espace des valeurs effacées n'est rendu qu'après un
+ * VACUUM (FULL pour le rendre au système) de la table chunk.
+ */
+@Service
+public class ChunkPackMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkPackMigrator.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PackChunkStore packStore;
+
+    public ChunkPackMigrator(DataSource dataSource, PlatformTransactionManager transactionManager,
+            PackChunkStore packStore) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.packStore = packStore;
+    }
+
+    /**
+     * @param batchSize chunks lus, écrits et mis à jour ensemble
+     * @return chunks et octets déplacés, durée
+     */
+    public Map<String, Object> migrateToPacks(int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Taille de lot invalide: " + batchSize);
+        }
+        long start = System.nanoTime();
+        long lastId = 0;
+        long migrated = 0;
+        long skipped = 0;
+        long bytes = 0;
+        int batches = 0;
+        while (true) {
+            List<ChunkEntity> chunks = jdbcTemplate.query(
+                    "SELECT id, data, hash_sha_1, hash_sha_256, hash_blake3 FROM chunk "
+                            + "WHERE id > ? AND pack_id IS NULL AND data IS NOT NULL ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> {
+                        ChunkEntity chunk = new ChunkEntity();
+                        chunk.setId(rs.getLong(1));
+                        chunk.setData(rs.getBytes(2));
+                        chunk.setHashSha1(rs.getString(3));
+                        chunk.setHashSha256(rs.getString(4));
+                        chunk.setHashBlake3(rs.getString(5));
+                        return chunk;
+                    }, lastId, batchSize);
+            if (chunks.isEmpty()) {
+                break;
+            }
+            packStore.write(chunks);
+
+            // Une ligne migrée entre-temps par une autre exécution garde son emplacement ;
+            // l'enregistrement écrit ici reste inutilisé dans le pack
+            int[][] updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE chunk SET pack_id = ?, pack_offset = ?, stored_size = ?, data = NULL "
+                            + "WHERE id = ? AND pack_id IS NULL",
+                    chunks, chunks.size(), (statement, chunk) -> {
+                        statement.setLong(1, chunk.getPackId());
+                        statement.setLong(2, chunk.getPackOffset());
+                        statement.setInt(3, chunk.getStoredSize());
+                        statement.setLong(4, chunk.getId());
+                    }));
+            for (int i = 0; i < chunks.size(); i++) {
+                // Statement.SUCCESS_NO_INFO (nombre de lignes inconnu) compte comme migré
+                if (updated[0][i] == 0) {
+                    skipped++;
+                } else {
+                    migrated++;
+                    bytes += chunks.get(i).getStoredSize();
+                }
+            }
+            batches++;
+            lastId = chunks.get(chunks.size() - 1).getId();
+            logger.debug("Lot migré vers les packs: {} chunks, jusqu'à l'id {}", chunks.size(), lastId);
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Migration vers les packs terminée: {} chunks, {} octets, {} lots en {} ms", migrated, bytes,
+                batches, elapsed);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("migratedChunks", migrated);
+        result.put("skippedChunks", skipped);
+        result.put("migratedBytes", bytes);
+        result.put("batches", batches);
+        result.put("elapsedMs", elapsed);
+        result.put("packs", packStore.getStats());
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Choix du magasin des données des chunks : les chunks neufs vont dans le
+ * magasin configuré, chaque chunk est relu depuis celui qui le contient. Une
+ * base dont une partie des chunks est encore en bytea reste donc lisible
+ * pendant et après une migration vers les packs.
+ */
+@Service
+public class ChunkStorage {
+
+    public enum Type {
+        DATABASE,
+        PACK
+    }
+
+    private final List<ChunkStore> stores;
+    private final ChunkStore writeStore;
+
+    public ChunkStorage(
+            DatabaseChunkStore databaseStore,
+            PackChunkStore packStore,
+            @Value("${goofy.chunk-store.type:DATABASE}") Type type) {
+        this.stores = packStore == null ? List.of(databaseStore) : List.of(packStore, databaseStore);
+        this.writeStore = type == Type.PACK ? packStore : databaseStore;
+        if (writeStore == null) {
+            throw new IllegalArgumentException("Magasin de chunks non disponible: " + type);
+        }
+    }
+
+    /**
+     * Écrit les données de chunks neufs dans le magasin configuré, avant
+     * l'insertion de leurs lignes.
+     */
+    public void write(List<ChunkEntity> chunks) throws IOException {
+        writeStore.write(chunks);
+    }
+
+    public byte[] read(ChunkEntity chunk) throws IOException {
+        for (ChunkStore store : stores) {
+            if (store.holds(chunk)) {
+                return store.read(chunk);
+            }
+        }
+        throw new IOException("Aucun magasin ne contient le chunk " + chunk.getId());
+    }
+
+    /**
+     * Données de plusieurs chunks, dans l'ordre de la liste, chaque magasin
+     * lisant d'un coup les chunks qu'il contient.
+     */
+    public List<byte[]> readAll(List<ChunkEntity> chunks) throws IOException {
+        byte[][] data = new byte[chunks.size()][];
+        boolean[] found = new boolean[chunks.size()];
+        for (ChunkStore store : stores) {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                if (!found[i] && store.holds(chunks.get(i))) {
+                    indexes.add(i);
+                    found[i] = true;
+                }
+            }
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            List<byte[]> read = store.readAll(indexes.stream().map(chunks::get).toList());
+            for (int i = 0; i < indexes.size(); i++) {
+                data[indexes.get(i)] = read.get(i);
+            }
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!found[i]) {
+                throw new IOException("Aucun magasin ne contient le chunk " + chunks.get(i).getId());
+            }
+        }
+        return Arrays.asList(data);
+    }
+}
@@ -0,0 +1,46 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Emplacement des données des chunks. La ligne chunk garde toujours le hash,
+ * les tailles et la compression ; le magasin décide où vont les octets et
+ * renseigne l'entité pour pouvoir les relire.
+ */
+public interface ChunkStore {
+
+    /**
+     * Écrit les données de chunks neufs, avant l'insertion de leurs lignes : une
+     * ligne visible des autres uploads doit toujours pouvoir être relue.
+     *
+     * @param chunks entités dont {@code data} contient les données à stocker ;
+     *               le magasin y note leur emplacement
+     */
+    void write(List<ChunkEntity> chunks) throws IOException;
+
+    /**
+     * Données stockées du chunk, telles qu'écrites (compressées ou non).
+     */
+    byte[] read(ChunkEntity chunk) throws IOException;
+
+    /**
+     * Données de plusieurs chunks, dans l'ordre de la liste. Un magasin sur
+     * plusieurs disques peut les lire en parallèle.
+     */
+    default List<byte[]> readAll(List<ChunkEntity> chunks) throws IOException {
+        List<byte[]> data = new ArrayList<>(chunks.size());
+        for (ChunkEntity chunk : chunks) {
+            data.add(read(chunk));
+        }
+        return data;
+    }
+
+    /**
+     * Indique si les données de ce chunk se trouvent dans ce magasin.
+     */
+    boolean holds(ChunkEntity chunk);
+}
@@ -0,0 +1,336 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Recompression en arrière-plan des chunks devenus froids selon
+ * {@link TieringPolicy}.
+ *
+ * La table est parcourue par id, par lots, d'une passe à l'autre : une passe
+ * reprend là où la précédente s'est arrêtée et repart du début une fois la fin
+ * atteinte. Pour chaque chunk froid, les données sont relues depuis leur
+ * magasin, décompressées, recompressées en Zstd au niveau froid puis écrites
+ * dans le magasin configuré, comme un chunk neuf. La ligne bascule ensuite
+ * (données, emplacement, compression, étage) par une mise à jour conditionnée à
+ * l'ancien emplacement : un chunk déplacé entre-temps par le compactage ou la
+ * migration n'est pas touché, sa copie recompressée reste morte. Dans un pack,
+ * l'ancien enregistrement devient de l'espace mort, rendu par le compactage.
+ * Les lectures déjà commencées le lisent encore sans erreur.
+ *
+ * Un chunk qui ne gagne rien à la recompression (données déjà compressées)
+ * est seulement marqué froid, pour ne pas être réessayé à chaque passe.
+ *
+ * Le débit est limité en octets décompressés par seconde, la recompression
+ * étant le coût dominant ; le temps CPU consommé est mesuré et rapporté avec
+ * les octets gagnés.
+ */
+@Service
+public class ChunkTieringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkTieringService.class);
+
+    // Les colonnes d'emplacement et de compression sont celles lues avec le chunk
+    private static final String SWITCH_CHUNK = "UPDATE chunk SET data = ?, stored_size = ?, pack_id = ?, "
+            + "pack_offset = ?, compression_type = ?, storage_tier = 'COLD' WHERE id = ? "
+            + "AND pack_id IS NOT DISTINCT FROM ? AND pack_offset IS NOT DISTINCT FROM ? "
+            + "AND compression_type IS NOT DISTINCT FROM ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChunkStorage chunkStorage;
+    private final CompressionService compressionService;
+    private final TieringPolicy tieringPolicy;
+    // Chunks froids selon la politique, hors chunks sans référence (laissés au ramasse-miettes)
+    private final String selectCandidates;
+    private final long bytesPerSecond;
+    private final int maxChunksPerRun;
+    private final int batchSize;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    // Dernier id examiné : la passe suivante reprend après
+    private long cursor;
+    private volatile Map<String, Object> lastRun = Map.of();
+    private long runs;
+    private long totalRecompressed;
+    private long totalBytesBefore;
+    private long totalBytesAfter;
+    private long totalCpuNanos;
+
+    @Autowired
+    public ChunkTieringService(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            ChunkStorage chunkStorage,
+            CompressionService compressionService,
+            TieringPolicy tieringPolicy,
+            @Value("${goofy.tiering.rate:16MB}") DataSize rate,
+            @Value("${goofy.tiering.max-chunks-per-run:100000}") int maxChunksPerRun) {
+        this(dataSource, transactionManager, chunkStorage, compressionService, tieringPolicy, rate,
+                maxChunksPerRun, 200);
+    }
+
+    ChunkTieringService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            ChunkStorage chunkStorage, CompressionService compressionService, TieringPolicy tieringPolicy,
+            DataSize rate, int maxChunksPerRun, int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkStorage = chunkStorage;
+        this.compressionService = compressionService;
+        this.tieringPolicy = tieringPolicy;
+        this.selectCandidates = "SELECT id, hash_sha_1, hash_sha_256, hash_blake3, data, stored_size, pack_id, "
+                + "pack_offset, compression_type, original_size FROM chunk WHERE id > ? AND "
+                + tieringPolicy.demotionPredicate() + " AND (ref_count IS NULL OR ref_count > 0) "
+                + "ORDER BY id LIMIT ?";
+        this.bytesPerSecond = rate.toBytes();
+        this.maxChunksPerRun = maxChunksPerRun;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${goofy.tiering.interval:PT1H}",
+            initialDelayString = "${goofy.tiering.interval:PT1H}")
+    public void scheduledTiering() {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            demoteColdChunks();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Échec de la recompression des chunks froids", e);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Une passe : des lots jusqu'à la fin de la table ou
+     * {@code max-chunks-per-run} chunks examinés.
+     *
+     * @return chunks recompressés, octets avant et après, octets gagnés, temps
+     *         CPU et octets gagnés par seconde CPU
+     */
+    public Map<String, Object> demoteColdChunks() throws IOException {
+        runLock.lock();
+        try {
+            long start = System.nanoTime();
+            Object[] demotionArguments = tieringPolicy.demotionArguments(LocalDateTime.now());
+            long[] totals = new long[6];
+            long examined = 0;
+            boolean sweepDone = false;
+            while (examined < maxChunksPerRun) {
+                Object[] arguments = new Object[demotionArguments.length + 2];
+                arguments[0] = cursor;
+                System.arraycopy(demotionArguments, 0, arguments, 1, demotionArguments.length);
+                arguments[arguments.length - 1] = (int) Math.min(batchSize, maxChunksPerRun - examined);
+                List<ChunkEntity> chunks = jdbcTemplate.query(selectCandidates, (rs, rowNum) -> {
+                    ChunkEntity chunk = new ChunkEntity();
+                    chunk.setId(rs.getLong(1));
+                    chunk.setHashSha1(rs.getString(2));
+                    chunk.setHashSha256(rs.getString(3));
+                    chunk.setHashBlake3(rs.getString(4));
+                    chunk.setData(rs.getBytes(5));
+                    chunk.setStoredSize(rs.getObject(6, Integer.class));
+                    chunk.setPackId(rs.getObject(7, Long.class));
+                    chunk.setPackOffset(rs.getObject(8, Long.class));
+                    chunk.setCompressionType(rs.getString(9));
+                    chunk.setOriginalSize(rs.getObject(10, Integer.class));
+                    return chunk;
+                }, arguments);
+                if (chunks.isEmpty()) {
+                    sweepDone = true;
+                    break;
+                }
+                demoteBatch(chunks, start, totals);
+                examined += chunks.size();
+                cursor = chunks.get(chunks.size() - 1).getId();
+            }
+            if (sweepDone) {
+                cursor = 0;
+            }
+
+            long recompressed = totals[0];
+            long bytesBefore = totals[2];
+            long bytesAfter = totals[3];
+            long cpuNanos = totals[4];
+            long elapsed = System.nanoTime() - start;
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("examinedChunks", examined);
+            run.put("recompressedChunks", recompressed);
+            run.put("incompressibleChunks", totals[1]);
+            run.put("bytesBefore", bytesBefore);
+            run.put("bytesAfter", bytesAfter);
+            run.put("savedBytes", bytesBefore - bytesAfter);
+            run.put("cpuMs", cpuNanos / 1_000_000);
+            run.put("savedMBPerCpuSecond", savedPerCpuSecond(bytesBefore - bytesAfter, cpuNanos));
+            run.put("throughputMBps", totals[5] == 0 ? 0.0
+                    : Math.round(totals[5] / (elapsed / 1e9) / (1024 * 1024) * 10) / 10.0);
+            run.put("sweepCompleted", sweepDone);
+            run.put("elapsedMs", elapsed / 1_000_000);
+            lastRun = run;
+            runs++;
+            totalRecompressed += recompressed;
+            totalBytesBefore += bytesBefore;
+            totalBytesAfter += bytesAfter;
+            totalCpuNanos += cpuNanos;
+            if (examined > 0) {
+                logger.info("Étagement: {} chunks froids, {} recompressés, {} octets gagnés, {} ms CPU en {} ms",
+                        examined, recompressed, bytesBefore - bytesAfter, cpuNanos / 1_000_000,
+                        elapsed / 1_000_000);
+            }
+            return run;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("coldAfter", tieringPolicy.getColdAfter().toString());
+        stats.put("coldLevel", tieringPolicy.coldLevel());
+        stats.put("rateBytesPerSecond", bytesPerSecond);
+        stats.put("runs", runs);
+        stats.put("recompressedChunks", totalRecompressed);
+        stats.put("bytesBefore", totalBytesBefore);
+        stats.put("bytesAfter", totalBytesAfter);
+        stats.put("savedBytes", totalBytesBefore - totalBytesAfter);
+        stats.put("cpuMs", totalCpuNanos / 1_000_000);
+        stats.put("savedMBPerCpuSecond", savedPerCpuSecond(totalBytesBefore - totalBytesAfter, totalCpuNanos));
+        Map<String, Long> tiers = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT coalesce(storage_tier, 'HOT'), count(*), coalesce(sum(stored_size), 0) "
+                + "FROM chunk GROUP BY coalesce(storage_tier, 'HOT')", rs -> {
+                    tiers.put(rs.getString(1) + "Chunks", rs.getLong(2));
+                    tiers.put(rs.getString(1) + "Bytes", rs.getLong(3));
+                });
+        stats.put("tiers", tiers);
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    /**
+     * Recompresse un lot, écrit les chunks gagnants dans le magasin configuré
+     * puis bascule leurs lignes en une transaction.
+     *
+     * @param totals recompressés, incompressibles, octets avant, octets après,
+     *               temps CPU, octets décompressés ; complétés par le lot
+     */
+    private void demoteBatch(List<ChunkEntity> chunks, long start, long[] totals) throws IOException {
+        List<ChunkEntity> rewritten = new ArrayList<>(chunks.size());
+        List<ChunkEntity> previous = new ArrayList<>(chunks.size());
+        List<Long> incompressible = new ArrayList<>();
+        for (ChunkEntity chunk : chunks) {
+            byte[] stored = chunkStorage.read(chunk);
+            // Absente des lignes stockées en base avant son ajout
+            chunk.setStoredSize(stored.length);
+            long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            byte[] raw = chunk.getCompressionType() == null ? stored
+                    : compressionService.decompress(stored,
+                            CompressionService.CompressionType.valueOf(chunk.getCompressionType()),
+                            chunk.getOriginalSize() != null ? chunk.getOriginalSize() : 0);
+            byte[] cold = compressionService.compress(raw, tieringPolicy.coldCompression(), tieringPolicy.coldLevel());
+            totals[4] += threadMXBean.getCurrentThreadCpuTime() - cpuStart;
+            totals[5] += raw.length;
+
+            if (cold.length >= stored.length) {
+                incompressible.add(chunk.getId());
+            } else {
+                ChunkEntity copy = new ChunkEntity();
+                copy.setId(chunk.getId());
+                copy.setHashSha1(chunk.getHashSha1());
+                copy.setHashSha256(chunk.getHashSha256());
+                copy.setHashBlake3(chunk.getHashBlake3());
+                copy.setData(cold);
+                copy.setCompressionType(tieringPolicy.coldCompression().name());
+                rewritten.add(copy);
+                previous.add(chunk);
+            }
+            throttle(start, totals[5]);
+        }
+        if (!rewritten.isEmpty()) {
+            chunkStorage.write(rewritten);
+        }
+
+        int[] switched = transactionTemplate.execute(status -> {
+            int[] updated = rewritten.isEmpty() ? new int[0]
+                    : jdbcTemplate.batchUpdate(SWITCH_CHUNK, new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement statement, int i) throws SQLException {
+                            ChunkEntity copy = rewritten.get(i);
+                            ChunkEntity chunk = previous.get(i);
+                            statement.setBytes(1, copy.getData());
+                            statement.setInt(2, copy.getStoredSize());
+                            statement.setObject(3, copy.getPackId(), Types.BIGINT);
+                            statement.setObject(4, copy.getPackOffset(), Types.BIGINT);
+                            statement.setString(5, copy.getCompressionType());
+                            statement.setLong(6, copy.getId());
+                            statement.setObject(7, chunk.getPackId(), Types.BIGINT);
+                            statement.setObject(8, chunk.getPackOffset(), Types.BIGINT);
+                            statement.setString(9, chunk.getCompressionType());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return rewritten.size();
+                        }
+                    });
+            if (!incompressible.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE chunk SET storage_tier = 'COLD' WHERE id = ?", incompressible,
+                        incompressible.size(), (statement, id) -> statement.setLong(1, id));
+            }
+            return updated;
+        });
+
+        // Une ligne déplacée ou supprimée entre-temps n'a pas basculé : sa copie ne gagne rien
+        for (int i = 0; i < switched.length; i++) {
+            if (switched[i] != 0) {
+                totals[0]++;
+                totals[2] += previous.get(i).getStoredSize();
+                totals[3] += rewritten.get(i).getStoredSize();
+            }
+        }
+        totals[1] += incompressible.size();
+    }
+
+    private void throttle(long start, long processedBytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long due = start + (long) (processedBytes * 1e9 / bytesPerSecond);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static double savedPerCpuSecond(long savedBytes, long cpuNanos) {
+        return cpuNanos == 0 ? 0.0 : Math.round(savedBytes / (cpuNanos / 1e9) / (1024 * 1024) * 10) / 10.0;
+    }
+}
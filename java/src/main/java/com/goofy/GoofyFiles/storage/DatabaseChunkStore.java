@@ -0,0 +1,35 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Données dans la colonne {@code chunk.data} (bytea), insérées avec la ligne.
+ */
+@Component
+public class DatabaseChunkStore implements ChunkStore {
+
+    @Override
+    public void write(List<ChunkEntity> chunks) {
+        for (ChunkEntity chunk : chunks) {
+            chunk.setStoredSize(chunk.getData().length);
+        }
+    }
+
+    @Override
+    public byte[] read(ChunkEntity chunk) throws IOException {
+        if (chunk.getData() == null) {
+            throw new IOException("Données absentes de la base pour le chunk " + chunk.getId());
+        }
+        return chunk.getData();
+    }
+
+    @Override
+    public boolean holds(ChunkEntity chunk) {
+        return chunk.getPackId() == null;
+    }
+}
@@ -0,0 +1,638 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Données des chunks dans des fichiers pack locaux, hors de la base.
+ *
+ * Un pack est un segment en ajout seul : les enregistrements s'y suivent, et la
+ * ligne chunk garde le numéro du segment et la position de l'enregistrement.
+ * Chaque enregistrement commence par un en-tête (marqueur, hash, taille) qui
+ * permet de vérifier une lecture et de parcourir un segment sans la base.
+ *
+ * Les écritures d'un lot sont regroupées puis synchronisées sur disque en une
+ * fois, avant l'insertion des lignes. Un segment plein, ou laissé par un
+ * précédent démarrage, n'est plus jamais modifié : la fin d'un segment
+ * interrompu par un arrêt brutal n'est référencée par aucune ligne. Les
+ * lectures sont des lectures positionnelles, sans verrou, sur un canal ouvert
+ * une fois par segment.
+ *
+ * Les segments peuvent être répartis sur plusieurs volumes (un répertoire par
+ * disque). Chaque chunk va sur le volume désigné par le préfixe de son hash,
+ * par hachage de rendez-vous : ajouter un volume ne réattribue que la part de
+ * chunks qui lui revient, sans déplacer les autres d'un volume existant à un
+ * autre. Chaque volume a son segment en cours d'écriture ; les numéros de
+ * segment sont uniques sur l'ensemble des volumes et jamais réutilisés (le
+ * plus grand est noté sur chaque volume), et un segment est retrouvé
+ * dans le volume qui contient son fichier : la ligne chunk ne change pas, et un
+ * chunk écrit avant un changement de volumes se relit toujours. Les lots
+ * d'écriture et de lecture touchant plusieurs volumes sont traités en
+ * parallèle, un volume par tâche.
+ *
+ * Magasin local à un nœud : deux processus ne doivent pas écrire dans les mêmes
+ * répertoires.
+ */
+@Component
+public class PackChunkStore implements ChunkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackChunkStore.class);
+
+    private static final int MAGIC = 0x474B4331; // "GKC1"
+    // Marqueur, longueur du hash (1 octet), longueur des données
+    static final int HEADER_SIZE = 4 + 1 + 4;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("pack-(\\d+)\\.pack");
+    // Plus grand numéro de segment attribué, écrit sur chaque volume
+    static final String LAST_SEGMENT_FILE = "pack-last-segment";
+
+    private final List<Volume> volumes;
+    private final long segmentSize;
+    private final int ioThreadsPerVolume;
+    private final Map<Long, FileChannel> readers = new ConcurrentHashMap<>();
+    // Volume de chaque segment déjà localisé
+    private final Map<Long, Volume> locations = new ConcurrentHashMap<>();
+    // Attribution des numéros de segment, tous volumes confondus
+    private final ReentrantLock segmentLock = new ReentrantLock();
+    private ExecutorService ioExecutor;
+
+    public PackChunkStore(String directory, DataSize segmentSize) {
+        this(List.of(directory), segmentSize, 2);
+    }
+
+    @Autowired
+    public PackChunkStore(
+            @Value("${goofy.chunk-store.pack.directories:${goofy.chunk-store.pack.directory:"
+                    + "${goofy.data-dir:${user.home}/.goofyfiles}/packs}}")
+            List<String> directories,
+            @Value("${goofy.chunk-store.pack.segment-size:1GB}") DataSize segmentSize,
+            @Value("${goofy.chunk-store.pack.io-threads-per-volume:2}") int ioThreadsPerVolume) {
+        if (directories.isEmpty()) {
+            throw new IllegalArgumentException("Aucun répertoire de packs configuré");
+        }
+        List<Volume> configured = new ArrayList<>(directories.size());
+        for (String directory : directories) {
+            Path path = Paths.get(directory.trim()).normalize();
+            // Un chemin relatif dépend du répertoire de lancement (les sources dans le conteneur)
+            if (!path.isAbsolute()) {
+                throw new IllegalArgumentException("Répertoire de packs relatif, chemin absolu requis: " + directory);
+            }
+            Volume volume = new Volume(path);
+            if (configured.stream().anyMatch(other -> other.directory.equals(volume.directory))) {
+                throw new IllegalArgumentException("Répertoire de packs en double: " + directory);
+            }
+            configured.add(volume);
+        }
+        this.volumes = List.copyOf(configured);
+        this.segmentSize = segmentSize.toBytes();
+        this.ioThreadsPerVolume = Math.max(1, ioThreadsPerVolume);
+    }
+
+    @Override
+    public void write(List<ChunkEntity> chunks) throws IOException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Map<Volume, List<ChunkEntity>> byVolume = new LinkedHashMap<>();
+        for (ChunkEntity chunk : chunks) {
+            byVolume.computeIfAbsent(owner(hashBytes(chunk)), volume -> new ArrayList<>()).add(chunk);
+        }
+        List<Task> tasks = new ArrayList<>(byVolume.size());
+        byVolume.forEach((volume, group) -> tasks.add(() -> append(volume, group)));
+        runAll(tasks);
+        for (ChunkEntity chunk : chunks) {
+            chunk.setData(null);
+        }
+    }
+
+    @Override
+    public byte[] read(ChunkEntity chunk) throws IOException {
+        byte[] hash = hashBytes(chunk);
+        int size = chunk.getStoredSize();
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + hash.length + size);
+        FileChannel channel = reader(chunk.getPackId());
+        long offset = chunk.getPackOffset();
+        while (record.hasRemaining()) {
+            if (channel.read(record, offset + record.position()) < 0) {
+                throw new EOFException("Enregistrement tronqué dans le pack " + chunk.getPackId()
+                        + " à la position " + offset);
+            }
+        }
+        record.flip();
+        int magic = record.getInt();
+        int hashLength = record.get();
+        int storedSize = record.getInt();
+        byte[] storedHash = new byte[hash.length];
+        record.get(storedHash);
+        if (magic != MAGIC || hashLength != hash.length || storedSize != size || !Arrays.equals(storedHash, hash)) {
+            throw new IOException("Enregistrement invalide pour le chunk " + chunk.getId() + " dans le pack "
+                    + chunk.getPackId() + " à la position " + offset);
+        }
+        return Arrays.copyOfRange(record.array(), record.position(), record.limit());
+    }
+
+    /**
+     * Lectures groupées par volume, les volumes en parallèle : le débit d'une
+     * reconstruction s'additionne sur les disques au lieu d'attendre chacun à
+     * son tour.
+     */
+    @Override
+    public List<byte[]> readAll(List<ChunkEntity> chunks) throws IOException {
+        byte[][] data = new byte[chunks.size()][];
+        Map<Volume, List<Integer>> byVolume = new LinkedHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            byVolume.computeIfAbsent(locate(chunks.get(i).getPackId()), volume -> new ArrayList<>()).add(i);
+        }
+        List<Task> tasks = new ArrayList<>();
+        for (List<Integer> indexes : byVolume.values()) {
+            // Plusieurs lectures en cours par disque, chacune sur une tranche contiguë
+            int slices = byVolume.size() == 1 ? 1 : Math.min(ioThreadsPerVolume, indexes.size());
+            for (int slice = 0; slice < slices; slice++) {
+                List<Integer> part = indexes.subList(indexes.size() * slice / slices,
+                        indexes.size() * (slice + 1) / slices);
+                tasks.add(() -> {
+                    for (int index : part) {
+                        data[index] = read(chunks.get(index));
+                    }
+                });
+            }
+        }
+        runAll(tasks);
+        return Arrays.asList(data);
+    }
+
+    @Override
+    public boolean holds(ChunkEntity chunk) {
+        return chunk.getPackId() != null;
+    }
+
+    /**
+     * Répertoire du volume auquel revient ce chunk d'après son hash.
+     */
+    public String volumeFor(ChunkEntity chunk) {
+        return owner(hashBytes(chunk)).directory.toString();
+    }
+
+    /**
+     * Répertoire du volume qui contient ce segment.
+     */
+    public String volumeOf(long packId) throws IOException {
+        return locate(packId).directory.toString();
+    }
+
+    /**
+     * Indique si ce chunk est stocké sur un autre volume que le sien, après
+     * l'ajout d'un volume.
+     */
+    public boolean isMisplaced(ChunkEntity chunk) throws IOException {
+        return holds(chunk) && locate(chunk.getPackId()) != owner(hashBytes(chunk));
+    }
+
+    public List<String> getVolumes() {
+        return volumes.stream().map(volume -> volume.directory.toString()).toList();
+    }
+
+    public Map<String, Object> getStats() throws IOException {
+        Map<Long, Long> segments = segmentSizes();
+        List<Map<String, Object>> perVolume = new ArrayList<>(volumes.size());
+        for (Volume volume : volumes) {
+            Map<Long, Long> sizes = segmentSizes(volume);
+            Map<String, Object> volumeStats = new LinkedHashMap<>();
+            volumeStats.put("directory", volume.directory.toAbsolutePath().toString());
+            volumeStats.put("segments", sizes.size());
+            volumeStats.put("bytes", sizes.values().stream().mapToLong(Long::longValue).sum());
+            volumeStats.put("usableBytes", Files.isDirectory(volume.directory)
+                    ? Files.getFileStore(volume.directory).getUsableSpace() : null);
+            volumeStats.put("currentSegment", currentSegment(volume));
+            perVolume.add(volumeStats);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", volumes.get(0).directory.toAbsolutePath().toString());
+        stats.put("segments", segments.size());
+        stats.put("bytes", segments.values().stream().mapToLong(Long::longValue).sum());
+        stats.put("segmentSize", segmentSize);
+        stats.put("currentSegment", currentSegment());
+        stats.put("volumes", perVolume);
+        return stats;
+    }
+
+    /**
+     * Taille sur disque de chaque segment, tous volumes confondus, par numéro
+     * croissant.
+     */
+    public Map<Long, Long> segmentSizes() throws IOException {
+        Map<Long, Long> sizes = new TreeMap<>();
+        for (Volume volume : volumes) {
+            sizes.putAll(segmentSizes(volume));
+        }
+        return sizes;
+    }
+
+    /**
+     * Plus petit numéro des segments en cours d'écriture, ou null avant la
+     * première écriture. Les segments de numéro inférieur sont définitivement
+     * fermés ; au-delà, un segment peut encore recevoir des écritures.
+     */
+    public Long currentSegment() {
+        Long current = null;
+        for (Volume volume : volumes) {
+            Long id = currentSegment(volume);
+            if (id != null && (current == null || id < current)) {
+                current = id;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Supprime un segment fermé. Les lectures encore en cours sur ce segment
+     * échouent : l'appelant s'assure qu'aucune ligne ne le référence plus.
+     */
+    public void deleteSegment(long packId) throws IOException {
+        Long current = currentSegment();
+        if (current != null && packId >= current) {
+            throw new IllegalArgumentException("Segment en cours d'écriture: " + packId);
+        }
+        FileChannel channel = readers.remove(packId);
+        if (channel != null) {
+            channel.close();
+        }
+        Path path;
+        try {
+            path = segmentPath(locate(packId), packId);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        Files.deleteIfExists(path);
+        locations.remove(packId);
+        logger.info("Segment de pack supprimé: {}", path);
+    }
+
+    /**
+     * Place occupée dans un pack par l'enregistrement d'un chunk.
+     */
+    public static long recordSize(int hashLength, int storedSize) {
+        return HEADER_SIZE + hashLength + storedSize;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (Volume volume : volumes) {
+            volume.appendLock.lock();
+            try {
+                if (volume.writer != null) {
+                    volume.writer.close();
+                    volume.writer = null;
+                }
+            } finally {
+                volume.appendLock.unlock();
+            }
+        }
+        for (FileChannel channel : readers.values()) {
+            channel.close();
+        }
+        readers.clear();
+        segmentLock.lock();
+        try {
+            if (ioExecutor != null) {
+                ioExecutor.shutdown();
+                ioExecutor = null;
+            }
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    private void append(Volume volume, List<ChunkEntity> chunks) throws IOException {
+        volume.appendLock.lock();
+        try {
+            for (ChunkEntity chunk : chunks) {
+                byte[] hash = hashBytes(chunk);
+                byte[] data = chunk.getData();
+                long recordSize = recordSize(hash.length, data.length);
+                if (volume.writer == null
+                        || (volume.writerPosition > 0 && volume.writerPosition + recordSize > segmentSize)) {
+                    nextSegment(volume);
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + hash.length)
+                        .putInt(MAGIC)
+                        .put((byte) hash.length)
+                        .putInt(data.length)
+                        .put(hash)
+                        .flip();
+                ByteBuffer[] record = {header, ByteBuffer.wrap(data)};
+                while (record[1].hasRemaining()) {
+                    volume.writer.write(record);
+                }
+                chunk.setPackId(volume.writerId);
+                chunk.setPackOffset(volume.writerPosition);
+                chunk.setStoredSize(data.length);
+                volume.writerPosition += recordSize;
+            }
+            // Sur disque avant que les lignes ne deviennent visibles
+            volume.writer.force(false);
+        } finally {
+            volume.appendLock.unlock();
+        }
+    }
+
+    /**
+     * Ferme le segment courant du volume et en commence un nouveau, après le
+     * plus grand numéro jamais attribué : celui des segments présents et celui
+     * noté sur les volumes, qui survit à la suppression d'un segment par le
+     * compacteur et au redémarrage. Le numéro est noté avant la création du
+     * segment.
+     */
+    private void nextSegment(Volume volume) throws IOException {
+        if (volume.writer != null) {
+            volume.writer.force(false);
+            volume.writer.close();
+            volume.writer = null;
+        }
+        Files.createDirectories(volume.directory);
+        long id;
+        segmentLock.lock();
+        try {
+            long lastId = segmentSizes().keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+            // Jamais un numéro déjà utilisé, même si son segment a été supprimé par le compacteur
+            id = Math.max(lastId, lastSegmentOnDisk()) + 1;
+            saveLastSegment(id);
+            volume.writer = FileChannel.open(segmentPath(volume, id), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+        } finally {
+            segmentLock.unlock();
+        }
+        volume.writerId = id;
+        volume.writerPosition = 0;
+        locations.put(id, volume);
+        logger.info("Nouveau segment de pack: {}", segmentPath(volume, id));
+    }
+
+    /**
+     * Plus grand numéro noté sur les volumes, 0 si aucun ne l'est encore.
+     */
+    private long lastSegmentOnDisk() throws IOException {
+        long last = 0;
+        for (Volume volume : volumes) {
+            Path file = volume.directory.resolve(LAST_SEGMENT_FILE);
+            if (Files.exists(file)) {
+                last = Math.max(last, Long.parseLong(Files.readString(file, StandardCharsets.US_ASCII).trim()));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Note le numéro sur chaque volume, remplacé d'un bloc et forcé sur disque :
+     * retirer un volume de la configuration ne fait pas perdre le numéro.
+     */
+    private void saveLastSegment(long id) throws IOException {
+        byte[] content = Long.toString(id).getBytes(StandardCharsets.US_ASCII);
+        for (Volume volume : volumes) {
+            Files.createDirectories(volume.directory);
+            Path temporary = volume.directory.resolve(LAST_SEGMENT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, volume.directory.resolve(LAST_SEGMENT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Map<Long, Long> segmentSizes(Volume volume) throws IOException {
+        Map<Long, Long> sizes = new TreeMap<>();
+        if (!Files.isDirectory(volume.directory)) {
+            return sizes;
+        }
+        try (Stream<Path> files = Files.list(volume.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    sizes.put(Long.parseLong(matcher.group(1)), Files.size(file));
+                }
+            }
+        }
+        return sizes;
+    }
+
+    private Long currentSegment(Volume volume) {
+        volume.appendLock.lock();
+        try {
+            return volume.writer != null ? volume.writerId : null;
+        } finally {
+            volume.appendLock.unlock();
+        }
+    }
+
+    /**
+     * Volume qui contient le fichier du segment.
+     */
+    private Volume locate(long packId) throws IOException {
+        Volume volume = locations.get(packId);
+        if (volume != null) {
+            return volume;
+        }
+        for (Volume candidate : volumes) {
+            if (Files.exists(segmentPath(candidate, packId))) {
+                locations.put(packId, candidate);
+                return candidate;
+            }
+        }
+        throw new NoSuchFileException("Segment de pack " + packId + " absent des volumes " + getVolumes());
+    }
+
+    /**
+     * Volume du chunk par hachage de rendez-vous : le volume dont le score
+     * pour le préfixe du hash est le plus élevé. Le score ne dépend que du
+     * préfixe et du répertoire du volume, pas de l'ordre des volumes.
+     */
+    private Volume owner(byte[] hash) {
+        if (volumes.size() == 1) {
+            return volumes.get(0);
+        }
+        long prefix = ByteBuffer.wrap(hash).getLong();
+        Volume best = null;
+        long bestScore = 0;
+        for (Volume volume : volumes) {
+            long score = mix(prefix ^ volume.seed);
+            if (best == null || Long.compareUnsigned(score, bestScore) > 0) {
+                best = volume;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Exécute les tâches en parallèle (une seule : dans le thread appelant) et
+     * attend qu'elles aient toutes fini.
+     */
+    private void runAll(List<Task> tasks) throws IOException {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+        ExecutorService executor = ioExecutor();
+        List<Future<?>> futures = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            futures.add(executor.submit(() -> {
+                task.run();
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Entrée/sortie des packs interrompue", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException io ? io
+                            : new IOException("Échec d'une entrée/sortie des packs", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private ExecutorService ioExecutor() {
+        segmentLock.lock();
+        try {
+            if (ioExecutor == null) {
+                AtomicInteger threads = new AtomicInteger();
+                ioExecutor = Executors.newFixedThreadPool(volumes.size() * ioThreadsPerVolume, runnable -> {
+                    Thread thread = new Thread(runnable, "pack-io-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return ioExecutor;
+        } finally {
+            segmentLock.unlock();
+        }
+    }
+
+    private FileChannel reader(long packId) throws IOException {
+        FileChannel channel = readers.get(packId);
+        if (channel != null) {
+            return channel;
+        }
+        Path path = segmentPath(locate(packId), packId);
+        try {
+            return readers.computeIfAbsent(packId, id -> {
+                try {
+                    return FileChannel.open(path, StandardOpenOption.READ);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Path segmentPath(Volume volume, long packId) {
+        return volume.directory.resolve(String.format("pack-%08d.pack", packId));
+    }
+
+    private static byte[] hashBytes(ChunkEntity chunk) {
+        String hex = chunk.getHashSha1() != null ? chunk.getHashSha1()
+                : chunk.getHashSha256() != null ? chunk.getHashSha256()
+                : chunk.getHashBlake3();
+        if (hex == null) {
+            throw new IllegalArgumentException("Chunk sans hash: " + chunk.getId());
+        }
+        return HexFormat.of().parseHex(hex);
+    }
+
+    /**
+     * Finaliseur de SplitMix64 : bits de sortie bien répartis même pour des
+     * entrées proches.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Graine stable d'un volume (FNV-1a 64 bits de son répertoire), identique
+     * d'un démarrage à l'autre.
+     */
+    private static long seed(Path directory) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : directory.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Un répertoire de segments, avec son segment en cours d'écriture.
+     */
+    private static final class Volume {
+        private final Path directory;
+        private final long seed;
+        private final ReentrantLock appendLock = new ReentrantLock();
+        // Segment en cours d'écriture, sous appendLock
+        private FileChannel writer;
+        private long writerId;
+        private long writerPosition;
+
+        private Volume(Path directory) {
+            this.directory = directory;
+            this.seed = seed(directory);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Compactage des packs : les segments où les enregistrements morts (chunks
+ * supprimés, réécrits ou jamais référencés) dominent sont recopiés, puis
+ * supprimés.
+ *
+ * Une passe choisit les segments fermés qui ont le plus d'octets morts, copie
+ * leurs chunks vivants dans le segment en cours d'écriture, par lots, et bascule
+ * chaque lot de lignes vers son nouvel emplacement dans une transaction courte.
+ * La copie est limitée en octets par seconde pour laisser le disque aux uploads
+ * et aux téléchargements. Les lectures ne sont jamais bloquées : jusqu'à la
+ * bascule elles lisent l'ancien enregistrement, ensuite le nouveau.
+ *
+ * Un segment vidé n'est supprimé qu'après un délai, pour les lectures qui ont
+ * chargé une ligne avant sa bascule, et seulement si aucune ligne ne le
+ * référence encore (insertion validée après le passage du compacteur).
+ */
+@Service
+public class PackCompactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackCompactor.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PackChunkStore packStore;
+    private final double minDeadRatio;
+    private final int maxSegmentsPerRun;
+    private final long bytesPerSecond;
+    private final Duration deleteDelay;
+    private final int batchSize;
+    private final ReentrantLock runLock = new ReentrantLock();
+    // Segments vidés, en attente de suppression
+    private final Map<Long, Instant> retired = new ConcurrentHashMap<>();
+
+    private volatile Map<String, Object> lastRun = Map.of();
+    private long totalSegments;
+    private long totalChunks;
+    private long totalCopiedBytes;
+    private long totalReclaimedBytes;
+
+    @Autowired
+    public PackCompactor(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            PackChunkStore packStore,
+            @Value("${goofy.chunk-store.compaction.min-dead-ratio:0.5}") double minDeadRatio,
+            @Value("${goofy.chunk-store.compaction.max-segments-per-run:4}") int maxSegmentsPerRun,
+            @Value("${goofy.chunk-store.compaction.rate:32MB}") DataSize rate,
+            @Value("${goofy.chunk-store.compaction.delete-delay:PT10M}") Duration deleteDelay) {
+        this(dataSource, transactionManager, packStore, minDeadRatio, maxSegmentsPerRun, rate, deleteDelay, 500);
+    }
+
+    PackCompactor(DataSource dataSource, PlatformTransactionManager transactionManager, PackChunkStore packStore,
+            double minDeadRatio, int maxSegmentsPerRun, DataSize rate, Duration deleteDelay, int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.packStore = packStore;
+        this.minDeadRatio = minDeadRatio;
+        this.maxSegmentsPerRun = maxSegmentsPerRun;
+        this.bytesPerSecond = rate.toBytes();
+        this.deleteDelay = deleteDelay;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${goofy.chunk-store.compaction.interval:PT15M}",
+            initialDelayString = "${goofy.chunk-store.compaction.interval:PT15M}")
+    public void scheduledCompaction() {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Échec du compactage des packs", e);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Une passe de compactage.
+     *
+     * @return segments compactés, chunks et octets copiés, octets rendus, débit
+     */
+    public Map<String, Object> compact() throws IOException {
+        runLock.lock();
+        try {
+            long start = System.nanoTime();
+            long reclaimed = deleteRetired();
+
+            List<Map<String, Object>> candidates = getSegments().stream()
+                    .filter(segment -> !(Boolean) segment.get("current") && !(Boolean) segment.get("retired"))
+                    .filter(segment -> (Double) segment.get("deadRatio") >= minDeadRatio)
+                    .sorted((a, b) -> Long.compare((Long) b.get("deadBytes"), (Long) a.get("deadBytes")))
+                    .limit(maxSegmentsPerRun)
+                    .toList();
+
+            long copyStart = System.nanoTime();
+            long copiedBytes = 0;
+            long movedChunks = 0;
+            List<Long> compacted = new ArrayList<>();
+            for (Map<String, Object> segment : candidates) {
+                long packId = (Long) segment.get("packId");
+                long[] moved = moveLiveChunks(packId, copyStart, copiedBytes);
+                movedChunks += moved[0];
+                copiedBytes += moved[1];
+                retired.put(packId, Instant.now());
+                compacted.add(packId);
+            }
+            long copyElapsed = System.nanoTime() - copyStart;
+            reclaimed += deleteRetired();
+
+            long elapsed = System.nanoTime() - start;
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("compactedSegments", compacted);
+            run.put("movedChunks", movedChunks);
+            run.put("copiedBytes", copiedBytes);
+            run.put("reclaimedBytes", reclaimed);
+            run.put("pendingDeletion", retired.size());
+            run.put("elapsedMs", elapsed / 1_000_000);
+            run.put("copyThroughputMBps", copiedBytes == 0 ? 0.0
+                    : Math.round(copiedBytes / (copyElapsed / 1e9) / (1024 * 1024) * 10) / 10.0);
+            lastRun = run;
+            totalSegments += compacted.size();
+            totalChunks += movedChunks;
+            totalCopiedBytes += copiedBytes;
+            totalReclaimedBytes += reclaimed;
+            if (!compacted.isEmpty() || reclaimed > 0) {
+                logger.info("Compactage des packs: segments={}, chunks copiés={}, octets copiés={}, "
+                        + "octets rendus={} en {} ms", compacted, movedChunks, copiedBytes, reclaimed,
+                        elapsed / 1_000_000);
+            }
+            return run;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Octets vivants et morts de chaque segment, d'après les lignes qui le
+     * référencent.
+     */
+    public List<Map<String, Object>> getSegments() throws IOException {
+        Map<Long, Long> sizes = packStore.segmentSizes();
+        // Lu après la liste : tout segment listé d'un numéro inférieur est fermé
+        Long current = packStore.currentSegment();
+        Map<Long, long[]> live = new HashMap<>();
+        jdbcTemplate.query("SELECT pack_id, count(*), sum(stored_size), "
+                + "sum(length(coalesce(hash_sha_1, hash_sha_256, hash_blake3))) "
+                + "FROM chunk WHERE pack_id IS NOT NULL GROUP BY pack_id", rs -> {
+                    long chunks = rs.getLong(2);
+                    // Hash en hexadécimal en base, en octets dans le pack
+                    long bytes = chunks * PackChunkStore.recordSize(0, 0) + rs.getLong(3) + rs.getLong(4) / 2;
+                    live.put(rs.getLong(1), new long[]{chunks, bytes});
+                });
+
+        List<Map<String, Object>> segments = new ArrayList<>(sizes.size());
+        sizes.forEach((packId, size) -> {
+            long[] counts = live.getOrDefault(packId, new long[2]);
+            long deadBytes = Math.max(0, size - counts[1]);
+            Map<String, Object> segment = new LinkedHashMap<>();
+            segment.put("packId", packId);
+            segment.put("size", size);
+            segment.put("liveChunks", counts[0]);
+            segment.put("liveBytes", counts[1]);
+            segment.put("deadBytes", deadBytes);
+            segment.put("deadRatio", size == 0 ? 1.0 : Math.round(deadBytes * 1000.0 / size) / 1000.0);
+            segment.put("current", current != null && packId >= current);
+            segment.put("retired", retired.containsKey(packId));
+            segments.add(segment);
+        });
+        return segments;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("compactedSegments", totalSegments);
+        stats.put("movedChunks", totalChunks);
+        stats.put("copiedBytes", totalCopiedBytes);
+        stats.put("reclaimedBytes", totalReclaimedBytes);
+        stats.put("pendingDeletion", retired.size());
+        stats.put("rateBytesPerSecond", bytesPerSecond);
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    /**
+     * Copie les chunks vivants d'un segment, dans l'ordre du fichier.
+     *
+     * @return chunks et octets copiés
+     */
+    private long[] moveLiveChunks(long packId, long copyStart, long copiedBefore) throws IOException {
+        long moved = 0;
+        long copied = 0;
+        long lastOffset = -1;
+        while (true) {
+            List<ChunkEntity> chunks = jdbcTemplate.query(
+                    "SELECT id, hash_sha_1, hash_sha_256, hash_blake3, stored_size, pack_offset FROM chunk "
+                            + "WHERE pack_id = ? AND pack_offset > ? ORDER BY pack_offset LIMIT ?",
+                    (rs, rowNum) -> {
+                        ChunkEntity chunk = new ChunkEntity();
+                        chunk.setId(rs.getLong(1));
+                        chunk.setHashSha1(rs.getString(2));
+                        chunk.setHashSha256(rs.getString(3));
+                        chunk.setHashBlake3(rs.getString(4));
+                        chunk.setStoredSize(rs.getInt(5));
+                        chunk.setPackId(packId);
+                        chunk.setPackOffset(rs.getLong(6));
+                        return chunk;
+                    }, packId, lastOffset, batchSize);
+            if (chunks.isEmpty()) {
+                return new long[]{moved, copied};
+            }
+            lastOffset = chunks.get(chunks.size() - 1).getPackOffset();
+
+            Map<Long, Long> oldOffsets = new HashMap<>(chunks.size() * 2);
+            for (ChunkEntity chunk : chunks) {
+                oldOffsets.put(chunk.getId(), chunk.getPackOffset());
+                chunk.setData(packStore.read(chunk));
+                copied += chunk.getStoredSize();
+                throttle(copyStart, copiedBefore + copied);
+            }
+            packStore.write(chunks);
+
+            // Une ligne supprimée ou déplacée entre-temps n'est pas touchée ; sa
+            // copie reste morte dans le nouveau segment
+            int[][] updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE chunk SET pack_id = ?, pack_offset = ? WHERE id = ? AND pack_id = ? AND pack_offset = ?",
+                    chunks, chunks.size(), (statement, chunk) -> {
+                        statement.setLong(1, chunk.getPackId());
+                        statement.setLong(2, chunk.getPackOffset());
+                        statement.setLong(3, chunk.getId());
+                        statement.setLong(4, packId);
+                        statement.setLong(5, oldOffsets.get(chunk.getId()));
+                    }));
+            for (int count : updated[0]) {
+                if (count != 0) {
+                    moved++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Supprime les segments vidés depuis au moins le délai, qu'aucune ligne ne
+     * référence.
+     *
+     * @return octets rendus
+     */
+    private long deleteRetired() throws IOException {
+        long reclaimed = 0;
+        Instant limit = Instant.now().minus(deleteDelay);
+        Map<Long, Long> sizes = packStore.segmentSizes();
+        for (Map.Entry<Long, Instant> entry : new ArrayList<>(retired.entrySet())) {
+            if (entry.getValue().isAfter(limit)) {
+                continue;
+            }
+            long packId = entry.getKey();
+            Integer remaining = jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE pack_id = ?",
+                    Integer.class, packId);
+            if (remaining != null && remaining > 0) {
+                // Lignes validées après la copie : le segment sera recompacté
+                logger.warn("Segment {} encore référencé par {} chunks, suppression reportée", packId, remaining);
+                retired.remove(packId);
+                continue;
+            }
+            packStore.deleteSegment(packId);
+            reclaimed += sizes.getOrDefault(packId, 0L);
+            retired.remove(packId);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Attend que le débit de copie retombe sous la limite.
+     */
+    private void throttle(long copyStart, long copiedBytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long due = copyStart + (long) (copiedBytes * 1e9 / bytesPerSecond);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
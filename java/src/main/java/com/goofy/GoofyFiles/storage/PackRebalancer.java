@@ -0,0 +1,219 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Rééquilibrage des packs après l'ajout d'un volume : les chunks que le
+ * hachage des volumes attribue désormais au nouveau volume y sont recopiés.
+ *
+ * Comme le compactage : la table est parcourue par id, les chunks mal placés
+ * sont relus puis écrits par le magasin (qui les place sur leur volume), et
+ * chaque ligne bascule vers sa copie par une mise à jour conditionnée à
+ * l'ancien emplacement. Un chunk déplacé ou supprimé entre-temps n'est pas
+ * touché. Les anciens enregistrements deviennent de l'espace mort, rendu par
+ * le compactage. Les lectures continuent pendant le rééquilibrage, sur l'un ou
+ * l'autre emplacement.
+ *
+ * Sans rééquilibrage, rien ne casse : les chunks restent lisibles là où ils
+ * sont, seuls les nouveaux chunks profitent du volume ajouté.
+ */
+@Service
+public class PackRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackRebalancer.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PackChunkStore packStore;
+    private final long bytesPerSecond;
+    private final int batchSize;
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @Autowired
+    public PackRebalancer(
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            PackChunkStore packStore,
+            @Value("${goofy.chunk-store.rebalance.rate:64MB}") DataSize rate) {
+        this(dataSource, transactionManager, packStore, rate, 500);
+    }
+
+    PackRebalancer(DataSource dataSource, PlatformTransactionManager transactionManager, PackChunkStore packStore,
+            DataSize rate, int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.packStore = packStore;
+        this.bytesPerSecond = rate.toBytes();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Une passe sur tous les chunks en pack.
+     *
+     * @return chunks examinés et déplacés, octets copiés, débit, chunks par
+     *         volume après la passe
+     */
+    public Map<String, Object> rebalance() throws IOException {
+        if (!runLock.tryLock()) {
+            throw new IllegalStateException("Rééquilibrage déjà en cours");
+        }
+        try {
+            long start = System.nanoTime();
+            long lastId = 0;
+            long examined = 0;
+            long moved = 0;
+            long copied = 0;
+            while (true) {
+                List<ChunkEntity> chunks = jdbcTemplate.query(
+                        "SELECT id, hash_sha_1, hash_sha_256, hash_blake3, stored_size, pack_id, pack_offset "
+                                + "FROM chunk WHERE pack_id IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> {
+                            ChunkEntity chunk = new ChunkEntity();
+                            chunk.setId(rs.getLong(1));
+                            chunk.setHashSha1(rs.getString(2));
+                            chunk.setHashSha256(rs.getString(3));
+                            chunk.setHashBlake3(rs.getString(4));
+                            chunk.setStoredSize(rs.getInt(5));
+                            chunk.setPackId(rs.getLong(6));
+                            chunk.setPackOffset(rs.getLong(7));
+                            return chunk;
+                        }, lastId, batchSize);
+                if (chunks.isEmpty()) {
+                    break;
+                }
+                lastId = chunks.get(chunks.size() - 1).getId();
+                examined += chunks.size();
+
+                List<ChunkEntity> misplaced = new ArrayList<>();
+                for (ChunkEntity chunk : chunks) {
+                    if (packStore.isMisplaced(chunk)) {
+                        misplaced.add(chunk);
+                    }
+                }
+                if (misplaced.isEmpty()) {
+                    continue;
+                }
+                long[] batch = moveChunks(misplaced, start, copied);
+                moved += batch[0];
+                copied += batch[1];
+            }
+
+            long elapsed = System.nanoTime() - start;
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("examinedChunks", examined);
+            run.put("movedChunks", moved);
+            run.put("copiedBytes", copied);
+            run.put("elapsedMs", elapsed / 1_000_000);
+            run.put("copyThroughputMBps", copied == 0 ? 0.0
+                    : Math.round(copied / (elapsed / 1e9) / (1024 * 1024) * 10) / 10.0);
+            run.put("chunksPerVolume", getDistribution());
+            lastRun = run;
+            if (moved > 0) {
+                logger.info("Rééquilibrage des packs: {} chunks déplacés ({} octets) sur {} examinés en {} ms",
+                        moved, copied, examined, elapsed / 1_000_000);
+            }
+            return run;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Chunks et octets stockés sur chaque volume, d'après les lignes.
+     */
+    public Map<String, Map<String, Long>> getDistribution() throws IOException {
+        Map<String, Map<String, Long>> distribution = new TreeMap<>();
+        for (String volume : packStore.getVolumes()) {
+            distribution.put(volume, new LinkedHashMap<>(Map.of("chunks", 0L, "bytes", 0L)));
+        }
+        Map<Long, long[]> perSegment = new HashMap<>();
+        jdbcTemplate.query("SELECT pack_id, count(*), sum(stored_size) FROM chunk WHERE pack_id IS NOT NULL "
+                + "GROUP BY pack_id", rs -> {
+                    perSegment.put(rs.getLong(1), new long[]{rs.getLong(2), rs.getLong(3)});
+                });
+        for (Map.Entry<Long, long[]> segment : perSegment.entrySet()) {
+            Map<String, Long> volume = distribution.get(packStore.volumeOf(segment.getKey()));
+            volume.merge("chunks", segment.getValue()[0], Long::sum);
+            volume.merge("bytes", segment.getValue()[1], Long::sum);
+        }
+        return distribution;
+    }
+
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * Recopie des chunks sur leur volume puis bascule de leurs lignes.
+     *
+     * @return chunks basculés et octets copiés
+     */
+    private long[] moveChunks(List<ChunkEntity> chunks, long start, long copiedBefore) throws IOException {
+        List<byte[]> data = packStore.readAll(chunks);
+        Map<Long, long[]> oldLocations = new HashMap<>(chunks.size() * 2);
+        long copied = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkEntity chunk = chunks.get(i);
+            oldLocations.put(chunk.getId(), new long[]{chunk.getPackId(), chunk.getPackOffset()});
+            chunk.setData(data.get(i));
+            copied += chunk.getStoredSize();
+        }
+        packStore.write(chunks);
+        throttle(start, copiedBefore + copied);
+
+        // Une ligne supprimée ou déplacée entre-temps n'est pas touchée ; sa
+        // copie reste morte sur le nouveau volume
+        int[][] updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                "UPDATE chunk SET pack_id = ?, pack_offset = ? WHERE id = ? AND pack_id = ? AND pack_offset = ?",
+                chunks, chunks.size(), (statement, chunk) -> {
+                    long[] old = oldLocations.get(chunk.getId());
+                    statement.setLong(1, chunk.getPackId());
+                    statement.setLong(2, chunk.getPackOffset());
+                    statement.setLong(3, chunk.getId());
+                    statement.setLong(4, old[0]);
+                    statement.setLong(5, old[1]);
+                }));
+        long moved = 0;
+        for (int count : updated[0]) {
+            if (count != 0) {
+                moved++;
+            }
+        }
+        return new long[]{moved, copied};
+    }
+
+    private void throttle(long start, long copiedBytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long due = start + (long) (copiedBytes * 1e9 / bytesPerSecond);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
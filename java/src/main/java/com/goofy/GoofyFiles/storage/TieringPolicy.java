@@ -0,0 +1,78 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.goofy.GoofyFiles.compression.CompressionService;
+
+/**
+ * Règle d'étagement des chunks. Un chunk est chaud tel qu'il a été stocké à
+ * l'upload, avec la compression rapide choisie pour l'ingestion. Non lu depuis
+ * {@code cold-after}, il devient froid : recompressé en Zstd à un niveau élevé,
+ * plus lent à compresser mais à peine plus lent à relire.
+ *
+ * Un chunk froid relu ne redevient pas chaud : sa décompression reste rapide,
+ * et le recompresser à chaque changement d'usage coûterait plus de calcul que
+ * l'écart de lecture n'en ferait gagner.
+ */
+@Component
+public class TieringPolicy {
+
+    public enum Tier {
+        HOT,
+        COLD
+    }
+
+    private final Duration coldAfter;
+    private final int coldLevel;
+
+    @Autowired
+    public TieringPolicy(
+            @Value("${goofy.tiering.cold-after:P30D}") Duration coldAfter,
+            @Value("${goofy.tiering.cold-level:19}") int coldLevel) {
+        if (coldLevel < 1) {
+            throw new IllegalArgumentException("Niveau Zstd invalide: " + coldLevel);
+        }
+        this.coldAfter = coldAfter;
+        this.coldLevel = coldLevel;
+    }
+
+    /**
+     * Lus pour la dernière fois avant cet instant, les chunks chauds deviennent
+     * froids.
+     */
+    public LocalDateTime coldBefore(LocalDateTime now) {
+        return now.minus(coldAfter);
+    }
+
+    /**
+     * Condition SQL sur la table {@code chunk} des chunks à rendre froids : pas
+     * encore froids (étage null pour les chunks stockés avant l'étagement) et lus
+     * pour la dernière fois, à défaut créés, avant {@link #coldBefore}. Ses
+     * paramètres sont {@link #demotionArguments(LocalDateTime)}, dans l'ordre.
+     */
+    public String demotionPredicate() {
+        return "(storage_tier IS NULL OR storage_tier <> ?) AND coalesce(last_accessed_at, created_at) < ?";
+    }
+
+    public Object[] demotionArguments(LocalDateTime now) {
+        return new Object[]{Tier.COLD.name(), Timestamp.valueOf(coldBefore(now))};
+    }
+
+    public CompressionService.CompressionType coldCompression() {
+        return CompressionService.CompressionType.ZSTD;
+    }
+
+    public int coldLevel() {
+        return coldLevel;
+    }
+
+    public Duration getColdAfter() {
+        return coldAfter;
+    }
+}
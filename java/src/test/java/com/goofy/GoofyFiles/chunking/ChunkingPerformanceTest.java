@@ -5,9 +5,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,14 +17,27 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.Blake3;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.util.StopWatch;
 
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
 public class ChunkingPerformanceTest {
 
     private ChunkingService chunkingService;
@@ -88,6 +103,423 @@ public class ChunkingPerformanceTest {
         }
     }
 
+    @Test
+    void testBufferedReadingVersusByteAtATime() throws IOException, NoSuchAlgorithmException {
+        System.out.println("\n=== Lecture par blocs NIO vs lecture octet par octet ===");
+        System.out.println("Format: Fichier | Taille | Avant (octet par octet) | Après (blocs NIO) | Accélération");
+        System.out.println("------------------------------------------------------------------------");
+
+        ByteAtATimeChunker byteAtATime = new ByteAtATimeChunker();
+        for (String fileType : new String[]{"Binaire", "Texte"}) {
+            for (int size : new int[]{10, 50}) {
+                File testFile = createTestFile(fileType, size);
+                try {
+                    StopWatch before = new StopWatch();
+                    before.start();
+                    List<Chunk> expected = byteAtATime.chunkFile(testFile);
+                    before.stop();
+
+                    StopWatch after = new StopWatch();
+                    after.start();
+                    List<Chunk> actual = chunkingService.chunkFile(testFile);
+                    after.stop();
+
+                    double sizeMB = testFile.length() / (1024.0 * 1024.0);
+                    double beforeMBps = sizeMB / before.getTotalTimeSeconds();
+                    double afterMBps = sizeMB / after.getTotalTimeSeconds();
+
+                    System.out.printf("%-20s | %5.1f MB | %8.1f MB/s | %8.1f MB/s | x%.1f%n",
+                            testFile.getName(),
+                            sizeMB,
+                            beforeMBps,
+                            afterMBps,
+                            afterMBps / beforeMBps);
+
+                    assertEquals(expected.size(), actual.size(),
+                            "Les deux lectures doivent produire le même nombre de chunks");
+                } finally {
+                    Files.deleteIfExists(testFile.toPath());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testStrategiesSpeedAndStabilityAfterInserts() throws IOException {
+        System.out.println("\n=== Comparaison des stratégies de découpage ===");
+        System.out.println("Format: Stratégie | Frontières seules | Découpage + SHA-256 | Chunks | Taille moy. ± écart-type | Déduplication après 10 insertions");
+        System.out.println("------------------------------------------------------------------------");
+
+        Random random = new Random(123);
+        byte[] original = new byte[32 * 1024 * 1024];
+        random.nextBytes(original);
+
+        // Insérer 10 petites séquences (1 à 16 octets) à des positions aléatoires
+        byte[] modified = original;
+        for (int i = 0; i < 10; i++) {
+            byte[] insert = new byte[1 + random.nextInt(16)];
+            random.nextBytes(insert);
+            int at = random.nextInt(modified.length);
+            byte[] next = new byte[modified.length + insert.length];
+            System.arraycopy(modified, 0, next, 0, at);
+            System.arraycopy(insert, 0, next, at, insert.length);
+            System.arraycopy(modified, at, next, at + insert.length, modified.length - at);
+            modified = next;
+        }
+
+        File originalFile = TEST_FILES_DIR.resolve("strategy-original.bin").toFile();
+        File modifiedFile = TEST_FILES_DIR.resolve("strategy-modified.bin").toFile();
+        Files.write(originalFile.toPath(), original);
+        Files.write(modifiedFile.toPath(), modified);
+        try {
+            for (ChunkingStrategyType type : ChunkingStrategyType.values()) {
+                // Premier passage pour la compilation JIT
+                chunkingService.chunkFile(originalFile, type);
+
+                long start = System.nanoTime();
+                List<Chunk> before = chunkingService.chunkFile(originalFile, type);
+                long elapsed = System.nanoTime() - start;
+                List<Chunk> after = chunkingService.chunkFile(modifiedFile, type);
+
+                Map<ChunkHash, Chunk> known = before.stream()
+                        .collect(Collectors.toMap(Chunk::getHash, chunk -> chunk, (a, b) -> a));
+                long reusedBytes = after.stream()
+                        .filter(chunk -> known.containsKey(chunk.getHash()))
+                        .mapToLong(Chunk::getOriginalSize)
+                        .sum();
+                double mean = original.length / (double) before.size();
+                double stdDev = Math.sqrt(before.stream()
+                        .mapToDouble(chunk -> Math.pow(chunk.getOriginalSize() - mean, 2))
+                        .average()
+                        .orElse(0));
+
+                System.out.printf("%-13s | %6.3f octets/ns | %6.3f octets/ns | %5d | %6.0f ± %6.0f B | %6.2f%% des octets réutilisés%n",
+                        type,
+                        measureBoundaryBytesPerNs(chunkingService.getStrategy(type), original),
+                        original.length / (double) elapsed,
+                        before.size(),
+                        mean,
+                        stdDev,
+                        reusedBytes * 100.0 / modified.length);
+            }
+        } finally {
+            Files.deleteIfExists(originalFile.toPath());
+            Files.deleteIfExists(modifiedFile.toPath());
+        }
+    }
+
+    @Test
+    void testParallelChunkingScaling() throws IOException {
+        System.out.println("\n=== Découpage parallèle : accélération selon le nombre de threads ===");
+        System.out.println("Processeurs disponibles: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("Format: Stratégie | Threads | Frontières seules | Accélération | Découpage + SHA-256 | Accélération");
+        System.out.println("------------------------------------------------------------------------");
+
+        byte[] content = new byte[128 * 1024 * 1024];
+        new Random(321).nextBytes(content);
+        File testFile = TEST_FILES_DIR.resolve("parallel-scaling.bin").toFile();
+        Files.write(testFile.toPath(), content);
+        try {
+            for (ChunkingStrategyType type : new ChunkingStrategyType[]{ChunkingStrategyType.RABIN, ChunkingStrategyType.FASTCDC}) {
+                int expectedChunks = chunkingService.chunkFile(testFile, type).size();
+                double baseBoundaries = 0;
+                double baseChunks = 0;
+                for (int threads : new int[]{1, 2, 4, 8, 16}) {
+                    ForkJoinPool pool = new ForkJoinPool(threads);
+                    try {
+                        // Premier passage pour la compilation JIT
+                        chunkingService.findBoundaries(testFile, type, pool);
+
+                        long start = System.nanoTime();
+                        long[] boundaries = chunkingService.findBoundaries(testFile, type, pool);
+                        double boundariesMBps = mbPerSecond(content.length, System.nanoTime() - start);
+
+                        start = System.nanoTime();
+                        List<Chunk> chunks = chunkingService.chunkFileParallel(testFile, type, pool);
+                        double chunksMBps = mbPerSecond(content.length, System.nanoTime() - start);
+
+                        if (threads == 1) {
+                            baseBoundaries = boundariesMBps;
+                            baseChunks = chunksMBps;
+                        }
+                        System.out.printf("%-13s | %7d | %8.1f MB/s | x%.2f | %8.1f MB/s | x%.2f%n",
+                                type,
+                                threads,
+                                boundariesMBps,
+                                boundariesMBps / baseBoundaries,
+                                chunksMBps,
+                                chunksMBps / baseChunks);
+
+                        assertEquals(expectedChunks, chunks.size());
+                        assertTrue(boundaries.length >= expectedChunks - 1);
+                    } finally {
+                        pool.shutdown();
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(testFile.toPath());
+        }
+    }
+
+    @Test
+    void testMappedVersusBufferedChunking() throws IOException {
+        System.out.println("\n=== Découpage par projection mémoire vs lecture par blocs ===");
+        System.out.println("Format: Mode | Temps | Vitesse | Octets copiés pour les chunks");
+        System.out.println("------------------------------------------------------------------------");
+
+        byte[] content = new byte[128 * 1024 * 1024];
+        new Random(77).nextBytes(content);
+        File testFile = TEST_FILES_DIR.resolve("mapped-chunking.bin").toFile();
+        Files.write(testFile.toPath(), content);
+        try {
+            for (boolean mapped : new boolean[]{false, true, false, true}) {
+                // Les deux premiers passages servent à chauffer le JIT et le cache disque
+                long start = System.nanoTime();
+                long chunks = 0;
+                long hashedBytes = 0;
+                try (ChunkIterator iterator = mapped
+                        ? chunkingService.iterateMappedChunks(testFile)
+                        : chunkingService.iterateChunks(testFile)) {
+                    while (iterator.hasNext()) {
+                        Chunk chunk = iterator.next();
+                        hashedBytes += chunk.getOriginalSize();
+                        chunks++;
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("%-18s | %7.1f ms | %8.1f MB/s | %5d MB (%d chunks)%n",
+                        mapped ? "Projection (mmap)" : "Blocs NIO",
+                        elapsed / 1e6,
+                        mbPerSecond(content.length, elapsed),
+                        mapped ? 0 : hashedBytes / (1024 * 1024),
+                        chunks);
+                assertEquals(content.length, hashedBytes);
+            }
+        } finally {
+            Files.deleteIfExists(testFile.toPath());
+        }
+    }
+
+    @Test
+    void testAllocationPerIngestedByte() throws IOException, NoSuchAlgorithmException {
+        System.out.println("\n=== Allocations par octet ingéré (hachage + compression LZ4 de chaque chunk) ===");
+        System.out.println("Format: Mode | Octets alloués | Octets alloués / octet ingéré");
+        System.out.println("------------------------------------------------------------------------");
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CompressionService compressionService = new CompressionService();
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        byte[] content = new byte[32 * 1024 * 1024];
+        new Random(99).nextBytes(content);
+        File testFile = TEST_FILES_DIR.resolve("allocation.bin").toFile();
+        Files.write(testFile.toPath(), content);
+        try {
+            String[] modes = {"Copies défensives", "Blocs NIO + vues", "Projection + vues"};
+            for (int run = 0; run < 2; run++) {
+                // Le premier tour sert à chauffer le JIT, seul le second est affiché
+                for (String mode : modes) {
+                    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    try (ChunkIterator iterator = mode.startsWith("Projection")
+                            ? chunkingService.iterateMappedChunks(testFile)
+                            : chunkingService.iterateChunks(testFile)) {
+                        while (iterator.hasNext()) {
+                            Chunk chunk = iterator.next();
+                            if (mode.startsWith("Copies")) {
+                                // Ancien Chunk : copie à la construction puis à chaque getData()
+                                // (hachage, longueur, stockage)
+                                chunk.copyData();
+                                digest.update(chunk.copyData());
+                                digest.reset();
+                                assertEquals(chunk.getOriginalSize(), chunk.copyData().length);
+                                compressionService.compress(chunk.copyData(), CompressionService.CompressionType.LZ4);
+                            } else {
+                                digest.update(chunk.asReadOnlyBuffer());
+                                digest.reset();
+                                compressionService.compress(chunk.asReadOnlyBuffer(), CompressionService.CompressionType.LZ4);
+                            }
+                        }
+                    }
+                    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+                    if (run == 1) {
+                        System.out.printf("%-18s | %7.1f MB | %5.2f%n",
+                                mode,
+                                allocated / (1024.0 * 1024.0),
+                                allocated / (double) content.length);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(testFile.toPath());
+        }
+    }
+
+    @Test
+    void testConcurrentUploadsThroughput() throws Exception {
+        System.out.println("\n=== Débit du service partagé selon le nombre d'uploads simultanés ===");
+        System.out.println("Processeurs disponibles: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("Format: Uploads simultanés | Temps | Débit total | Débit par upload");
+        System.out.println("------------------------------------------------------------------------");
+
+        int maxConcurrency = 16;
+        List<File> files = new ArrayList<>();
+        Random random = new Random(55);
+        byte[] content = new byte[8 * 1024 * 1024];
+        for (int i = 0; i < maxConcurrency; i++) {
+            random.nextBytes(content);
+            File file = TEST_FILES_DIR.resolve("concurrent-" + i + ".bin").toFile();
+            Files.write(file.toPath(), content);
+            files.add(file);
+        }
+        try {
+            for (int concurrency : new int[]{1, 1, 2, 4, 8, 16}) {
+                ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+                try {
+                    List<Callable<Integer>> uploads = new ArrayList<>();
+                    for (File file : files.subList(0, concurrency)) {
+                        uploads.add(() -> {
+                            int chunks = 0;
+                            try (ChunkIterator iterator = chunkingService.iterateMappedChunks(file)) {
+                                while (iterator.hasNext()) {
+                                    iterator.next();
+                                    chunks++;
+                                }
+                            }
+                            return chunks;
+                        });
+                    }
+
+                    long start = System.nanoTime();
+                    for (Future<Integer> upload : executor.invokeAll(uploads)) {
+                        assertTrue(upload.get() > 0);
+                    }
+                    long elapsed = System.nanoTime() - start;
+
+                    double totalMBps = mbPerSecond((long) content.length * concurrency, elapsed);
+                    System.out.printf("%5d | %7.1f ms | %8.1f MB/s | %8.1f MB/s%n",
+                            concurrency,
+                            elapsed / 1e6,
+                            totalMBps,
+                            totalMBps / concurrency);
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        } finally {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    @Test
+    void testFusedHashingVersusDoubleHashing() throws Exception {
+        System.out.println("\n=== Hachage fusionné au découpage vs double hachage ===");
+        System.out.println("Format: Algorithme | Avant (SHA-256 + re-hachage) | Après (un seul passage) | Accélération");
+        System.out.println("------------------------------------------------------------------------");
+
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random(404).nextBytes(content);
+        File testFile = TEST_FILES_DIR.resolve("fused-hashing.bin").toFile();
+        Files.write(testFile.toPath(), content);
+        try {
+            for (HashingAlgorithm algorithm : HashingAlgorithm.values()) {
+                double before = 0;
+                double after = 0;
+                // Premier tour pour la compilation JIT
+                for (int run = 0; run < 2; run++) {
+                    long start = System.nanoTime();
+                    try (ChunkIterator iterator = chunkingService.iterateMappedChunks(testFile)) {
+                        while (iterator.hasNext()) {
+                            // Ancien chemin : hex SHA-256 dans le chunker puis second hachage
+                            Chunk chunk = iterator.next();
+                            chunk.getHash().toHex();
+                            byte[] data = chunk.copyData();
+                            String hash = algorithm == HashingAlgorithm.BLAKE3
+                                    ? Hex.encodeHexString(Blake3.hash(data))
+                                    : Hex.encodeHexString(MessageDigest.getInstance(algorithm.getAlgorithmName()).digest(data));
+                            assertTrue(hash.length() > 0);
+                        }
+                    }
+                    before = mbPerSecond(content.length, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    try (ChunkIterator iterator = chunkingService.iterateMappedChunks(testFile,
+                            ChunkingService.DEFAULT_STRATEGY, algorithm)) {
+                        while (iterator.hasNext()) {
+                            assertTrue(iterator.next().getHash().length() > 0);
+                        }
+                    }
+                    after = mbPerSecond(content.length, System.nanoTime() - start);
+                }
+
+                System.out.printf("%-8s | %8.1f MB/s | %8.1f MB/s | x%.2f%n",
+                        algorithm, before, after, after / before);
+            }
+        } finally {
+            Files.deleteIfExists(testFile.toPath());
+        }
+    }
+
+    @Test
+    void testVectorizedFastCdcBoundaries() {
+        System.out.println("\n=== FastCDC scalaire vs API Vector ===");
+        FastCdcChunkingStrategy scalar = new FastCdcChunkingStrategy(2 * 1024, 8 * 1024, 64 * 1024, false);
+        FastCdcChunkingStrategy vector = new FastCdcChunkingStrategy(2 * 1024, 8 * 1024, 64 * 1024, true);
+        if (!vector.isVectorized()) {
+            System.out.println("Module jdk.incubator.vector absent : seul le scanner scalaire est disponible");
+            return;
+        }
+        System.out.printf("Lanes: %d (%d bits)%n", FastCdcChunkingStrategy.vectorLanes(),
+                FastCdcChunkingStrategy.vectorLanes() * 64);
+        System.out.println("Format: Données | Scalaire | Vector | Accélération");
+        System.out.println("------------------------------------------------------------------------");
+
+        Random random = new Random(1010);
+        byte[] randomData = new byte[64 * 1024 * 1024];
+        random.nextBytes(randomData);
+        byte[] text = new byte[64 * 1024 * 1024];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + random.nextInt(26));
+        }
+
+        for (Map.Entry<String, byte[]> entry : Map.of("aléatoires", randomData, "texte", text).entrySet()) {
+            // Premier passage pour la compilation JIT
+            measureBoundaryBytesPerNs(scalar, entry.getValue());
+            measureBoundaryBytesPerNs(vector, entry.getValue());
+            double scalarMBps = measureBoundaryBytesPerNs(scalar, entry.getValue()) * 1e9 / (1024 * 1024);
+            double vectorMBps = measureBoundaryBytesPerNs(vector, entry.getValue()) * 1e9 / (1024 * 1024);
+            System.out.printf("%-10s | %8.1f MB/s | %8.1f MB/s | x%.2f%n",
+                    entry.getKey(), scalarMBps, vectorMBps, vectorMBps / scalarMBps);
+        }
+    }
+
+    private double mbPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    private double measureBoundaryBytesPerNs(ChunkingStrategy strategy, byte[] data) {
+        long best = Long.MAX_VALUE;
+        int cuts = 0;
+        for (int run = 0; run < 3; run++) {
+            BoundaryScanner scanner = strategy.newScanner();
+            long start = System.nanoTime();
+            int chunkStart = 0;
+            int boundary;
+            while ((boundary = scanner.findBoundary(data, chunkStart, chunkStart, data.length)) >= 0) {
+                scanner.reset();
+                chunkStart = boundary;
+                cuts++;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue(cuts > 0);
+        return data.length / (double) best;
+    }
+
     private List<File> findRealFiles(String[] extensions) throws IOException {
         List<File> files = new ArrayList<>();
         try (var walk = Files.walk(PROJECT_ROOT)) {
@@ -267,7 +699,7 @@ public class ChunkingPerformanceTest {
         double speedMBps = (fileSize / (1024.0 * 1024.0)) / timeInSeconds;
         double avgChunkSize = fileSize / (double) chunks.size();
 
-        Map<String, Chunk> uniqueChunks = chunks.stream()
+        Map<ChunkHash, Chunk> uniqueChunks = chunks.stream()
                 .collect(Collectors.toMap(
                         Chunk::getHash,
                         chunk -> chunk,
@@ -275,7 +707,7 @@ public class ChunkingPerformanceTest {
                 ));
 
         long totalUniqueSize = uniqueChunks.values().stream()
-                .mapToInt(chunk -> chunk.getData().length)
+                .mapToInt(chunk -> chunk.copyData().length)
                 .sum();
 
         double storageGain = ((fileSize - totalUniqueSize) / (double) fileSize) * 100;
@@ -0,0 +1,374 @@
+package com.goofy.GoofyFiles.chunking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.Blake3;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+
+class ChunkingServiceTest {
+
+    private ChunkingService chunkingService;
+    private ByteAtATimeChunker reference;
+
+    @BeforeEach
+    void setUp() throws NoSuchAlgorithmException {
+        chunkingService = new ChunkingService();
+        reference = new ByteAtATimeChunker();
+    }
+
+    @Test
+    void testSameChunksAsByteAtATimeReading(@TempDir Path tempDir) throws IOException {
+        Random random = new Random(42);
+        // Tailles autour des seuils MIN/MAX et des frontières du buffer de lecture (1MB)
+        int[] sizes = { 0, 1, 4095, 4096, 4097, 65535, 65536, 65537, 1024 * 1024 - 1,
+                1024 * 1024 + 65 * 1024, 3 * 1024 * 1024 + 17 };
+
+        for (int size : sizes) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            assertGoldenOutput(tempDir, "random-" + size + ".bin", content);
+        }
+    }
+
+    @Test
+    void testSameChunksOnRepetitiveAndConstantData(@TempDir Path tempDir) throws IOException {
+        // Données constantes : uniquement des coupures forcées à MAX_CHUNK_SIZE
+        byte[] zeros = new byte[2 * 1024 * 1024 + 123];
+        assertGoldenOutput(tempDir, "zeros.bin", zeros);
+
+        // Motifs répétés comme dans DuplicationPerformanceTest
+        Random random = new Random(7);
+        byte[] patterns = new byte[3 * 1024 * 1024];
+        byte[] pattern = new byte[8192];
+        for (int offset = 0; offset < patterns.length; offset += pattern.length) {
+            Arrays.fill(pattern, (byte) random.nextInt(4));
+            System.arraycopy(pattern, 0, patterns, offset, Math.min(pattern.length, patterns.length - offset));
+        }
+        assertGoldenOutput(tempDir, "patterns.bin", patterns);
+    }
+
+    @Test
+    void testConsecutiveCallsAreIndependent(@TempDir Path tempDir) throws IOException, NoSuchAlgorithmException {
+        Random random = new Random(1);
+        byte[] first = new byte[100_003];
+        byte[] second = new byte[200_017];
+        random.nextBytes(first);
+        random.nextBytes(second);
+        File firstFile = write(tempDir, "first.bin", first);
+        File secondFile = write(tempDir, "second.bin", second);
+
+        chunkingService.chunkFile(firstFile);
+        List<Chunk> afterFirst = chunkingService.chunkFile(secondFile);
+        List<Chunk> fresh = new ChunkingService().chunkFile(secondFile);
+
+        assertSameChunks(fresh, afterFirst);
+    }
+
+    @Test
+    void testIteratorStreamsSameChunksAsList(@TempDir Path tempDir) throws IOException {
+        byte[] content = new byte[2 * 1024 * 1024 + 4321];
+        new Random(3).nextBytes(content);
+        File file = write(tempDir, "streamed.bin", content);
+
+        List<Chunk> streamed = new ArrayList<>();
+        long expectedPosition = 0;
+        try (ChunkIterator iterator = chunkingService.iterateChunks(file)) {
+            while (iterator.hasNext()) {
+                Chunk chunk = iterator.next();
+                // Les chunks doivent se suivre sans trou ni recouvrement
+                assertEquals(expectedPosition, chunk.getPosition());
+                expectedPosition += chunk.getOriginalSize();
+                streamed.add(chunk);
+            }
+            assertFalse(iterator.hasNext());
+            assertThrows(NoSuchElementException.class, iterator::next);
+        }
+
+        assertEquals(content.length, expectedPosition);
+        assertSameChunks(reference.chunkFile(file), streamed);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ChunkingStrategyType.class, names = { "RABIN_ROLLING", "FASTCDC" })
+    void testContentDefinedStrategiesResynchroniseAfterInsert(ChunkingStrategyType type, @TempDir Path tempDir)
+            throws IOException {
+        byte[] original = new byte[4 * 1024 * 1024];
+        new Random(5).nextBytes(original);
+        // Insérer quelques octets au milieu du fichier
+        int insertAt = original.length / 2;
+        byte[] modified = new byte[original.length + 3];
+        System.arraycopy(original, 0, modified, 0, insertAt);
+        modified[insertAt] = 1;
+        modified[insertAt + 1] = 2;
+        modified[insertAt + 2] = 3;
+        System.arraycopy(original, insertAt, modified, insertAt + 3, original.length - insertAt);
+
+        List<Chunk> before = chunkingService.chunkFile(write(tempDir, "original.bin", original), type);
+        List<Chunk> after = chunkingService.chunkFile(write(tempDir, "modified.bin", modified), type);
+
+        Set<ChunkHash> beforeHashes = new HashSet<>();
+        before.forEach(chunk -> beforeHashes.add(chunk.getHash()));
+        long changedChunks = after.stream().filter(chunk -> !beforeHashes.contains(chunk.getHash())).count();
+
+        // Seuls les chunks autour de l'insertion changent
+        assertTrue(changedChunks <= 3, "Chunks modifiés: " + changedChunks);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ChunkingStrategyType.class)
+    void testChunksCoverWholeFile(ChunkingStrategyType type, @TempDir Path tempDir) throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 999];
+        new Random(9).nextBytes(content);
+        List<Chunk> chunks = chunkingService.chunkFile(write(tempDir, "content.bin", content), type);
+        int maxChunkSize = chunkingService.getStrategy(type).getMaxChunkSize();
+
+        ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        for (Chunk chunk : chunks) {
+            assertEquals(rebuilt.size(), chunk.getPosition());
+            assertTrue(chunk.getOriginalSize() <= maxChunkSize);
+            rebuilt.write(chunk.copyData());
+        }
+        assertArrayEquals(content, rebuilt.toByteArray());
+    }
+
+    @ParameterizedTest
+    @EnumSource(ChunkingStrategyType.class)
+    void testParallelBoundariesMatchSequential(ChunkingStrategyType type, @TempDir Path tempDir)
+            throws IOException {
+        // Aléatoire puis zéros : coupures de contenu et coupures forcées à la taille maximale
+        byte[] content = new byte[3 * 1024 * 1024 + 777];
+        new Random(11).nextBytes(content);
+        Arrays.fill(content, 2 * 1024 * 1024, content.length - 100_000, (byte) 0);
+        File file = write(tempDir, "parallel.bin", content);
+        ChunkingStrategy strategy = chunkingService.getStrategy(type);
+
+        List<Chunk> sequential = chunkingService.chunkFile(file, type);
+        long[] expected = new long[sequential.size() - 1];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = sequential.get(i + 1).getPosition();
+        }
+
+        // Segments plus petits qu'un chunk, proches d'un chunk et bien plus grands
+        long[] segmentSizes = { 1000, 64 * 1024, 100_000, 1024 * 1024 };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (long segmentSize : segmentSizes) {
+                long[] boundaries = new ParallelChunker(strategy, pool, content.length, segmentSize)
+                        .findBoundaries(channel);
+                // Le dernier chunk se termine en fin de fichier, sans frontière
+                assertArrayEquals(expected, boundaries, "Segments de " + segmentSize + " octets");
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertSameChunks(sequential, chunkingService.chunkFileParallel(file, type, new ForkJoinPool(3)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ChunkingStrategyType.class)
+    void testMappedChunksMatchBufferedChunks(ChunkingStrategyType type, @TempDir Path tempDir)
+            throws IOException, NoSuchAlgorithmException {
+        byte[] content = new byte[3 * 1024 * 1024 + 321];
+        new Random(13).nextBytes(content);
+        Arrays.fill(content, 1024 * 1024, 1024 * 1024 + 300_000, (byte) 0);
+        File file = write(tempDir, "mapped.bin", content);
+        List<Chunk> expected = chunkingService.chunkFile(file, type);
+
+        List<Chunk> mapped = new ArrayList<>();
+        try (ChunkIterator iterator = chunkingService.iterateMappedChunks(file, type)) {
+            iterator.forEachRemaining(mapped::add);
+        }
+        assertSameChunks(expected, mapped);
+
+        // Petites fenêtres : les chunks à cheval sur deux projections doivent être reprojetés
+        ChunkingStrategy strategy = chunkingService.getStrategy(type);
+        for (long windowSize : new long[] { strategy.getMaxChunkSize(), 100_000, 1024 * 1024 + 7 }) {
+            List<Chunk> windowed = new ArrayList<>();
+            try (ChunkIterator iterator = new MappedChunkIterator(
+                    FileChannel.open(file.toPath(), StandardOpenOption.READ), strategy.newScanner(),
+                    strategy.getMaxChunkSize(), ChunkDigester.forAlgorithm(HashingAlgorithm.SHA256), windowSize)) {
+                iterator.forEachRemaining(windowed::add);
+            }
+            assertSameChunks(expected, windowed);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(ChunkingStrategyType.class)
+    void testStreamChunksMatchFileChunks(ChunkingStrategyType type, @TempDir Path tempDir) throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024 + 321];
+        new Random(19).nextBytes(content);
+        Arrays.fill(content, 1024 * 1024, 1024 * 1024 + 300_000, (byte) 0);
+        List<Chunk> expected = chunkingService.chunkFile(write(tempDir, "stream.bin", content), type);
+
+        // Lectures courtes et irrégulières, comme un corps de requête qui arrive par paquets
+        Random random = new Random(20);
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1 + random.nextInt(20_000)));
+            }
+        };
+        List<Chunk> streamed = new ArrayList<>();
+        try (ChunkIterator iterator = chunkingService.iterateChunks(trickle, type,
+                ChunkingService.DEFAULT_HASHING_ALGORITHM)) {
+            iterator.forEachRemaining(streamed::add);
+        }
+        // Les chunks restent valides une fois le flux entièrement lu
+        assertSameChunks(expected, streamed);
+    }
+
+    @Test
+    void testMappedChunkIsReadOnlyView(@TempDir Path tempDir) throws IOException {
+        byte[] content = new byte[200_000];
+        new Random(17).nextBytes(content);
+        try (ChunkIterator iterator = chunkingService.iterateMappedChunks(write(tempDir, "view.bin", content))) {
+            Chunk chunk = iterator.next();
+            ByteBuffer view = chunk.asReadOnlyBuffer();
+            assertTrue(view.isReadOnly());
+            assertEquals(chunk.getOriginalSize(), view.remaining());
+            assertArrayEquals(Arrays.copyOf(content, chunk.getOriginalSize()), chunk.copyData());
+        }
+    }
+
+    @Test
+    void testEmptyFileHasNoChunks(@TempDir Path tempDir) throws IOException {
+        File file = write(tempDir, "empty.bin", new byte[0]);
+        try (ChunkIterator iterator = chunkingService.iterateMappedChunks(file)) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(HashingAlgorithm.class)
+    void testFusedHashMatchesOneShotHash(HashingAlgorithm algorithm, @TempDir Path tempDir) throws Exception {
+        byte[] content = new byte[2 * 1024 * 1024 + 555];
+        new Random(31).nextBytes(content);
+        File file = write(tempDir, "fused.bin", content);
+
+        for (boolean mapped : new boolean[] { false, true }) {
+            try (ChunkIterator iterator = mapped
+                    ? chunkingService.iterateMappedChunks(file, ChunkingStrategyType.FASTCDC, algorithm)
+                    : chunkingService.iterateChunks(file, ChunkingStrategyType.FASTCDC, algorithm)) {
+                while (iterator.hasNext()) {
+                    Chunk chunk = iterator.next();
+                    byte[] data = chunk.copyData();
+                    byte[] expected = algorithm == HashingAlgorithm.BLAKE3
+                            ? Blake3.hash(data)
+                            : MessageDigest.getInstance(algorithm.getAlgorithmName()).digest(data);
+                    assertEquals(Hex.encodeHexString(expected), chunk.getHash().toHex());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentCallsMatchSequentialChunking(@TempDir Path tempDir) throws Exception {
+        int fileCount = 8;
+        List<File> files = new ArrayList<>();
+        Random random = new Random(21);
+        for (int i = 0; i < fileCount; i++) {
+            byte[] content = new byte[1024 * 1024 + random.nextInt(512 * 1024)];
+            random.nextBytes(content);
+            files.add(write(tempDir, "concurrent-" + i + ".bin", content));
+        }
+
+        // Résultats de référence calculés un par un
+        ChunkingStrategyType[] types = ChunkingStrategyType.values();
+        Map<String, List<Chunk>> expected = new HashMap<>();
+        for (File file : files) {
+            for (ChunkingStrategyType type : types) {
+                expected.put(file.getName() + type, chunkingService.chunkFile(file, type));
+            }
+        }
+
+        // Tous les fichiers, stratégies et modes en même temps sur le même service, plusieurs fois
+        ExecutorService executor = Executors.newFixedThreadPool(fileCount);
+        try {
+            for (int round = 0; round < 3; round++) {
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (File file : files) {
+                    for (ChunkingStrategyType type : types) {
+                        for (boolean mapped : new boolean[] { false, true }) {
+                            tasks.add(() -> {
+                                List<Chunk> chunks = new ArrayList<>();
+                                try (ChunkIterator iterator = mapped
+                                        ? chunkingService.iterateMappedChunks(file, type)
+                                        : chunkingService.iterateChunks(file, type)) {
+                                    iterator.forEachRemaining(chunks::add);
+                                }
+                                assertSameChunks(expected.get(file.getName() + type), chunks);
+                                return null;
+                            });
+                        }
+                    }
+                }
+                for (Future<Void> result : executor.invokeAll(tasks)) {
+                    result.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertGoldenOutput(Path tempDir, String name, byte[] content) throws IOException {
+        File file = write(tempDir, name, content);
+        assertSameChunks(reference.chunkFile(file), chunkingService.chunkFile(file));
+    }
+
+    private void assertSameChunks(List<Chunk> expected, List<Chunk> actual) {
+        assertEquals(expected.size(), actual.size(), "Nombre de chunks différent");
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPosition(), actual.get(i).getPosition(), "Position du chunk " + i);
+            assertEquals(expected.get(i).getHash(), actual.get(i).getHash(), "Hash du chunk " + i);
+            assertArrayEquals(expected.get(i).copyData(), actual.get(i).copyData(), "Données du chunk " + i);
+        }
+    }
+
+    private File write(Path tempDir, String name, byte[] content) throws IOException {
+        Path path = tempDir.resolve(name);
+        Files.write(path, content);
+        return path.toFile();
+    }
+}
@@ -0,0 +1,92 @@
+package com.goofy.GoofyFiles.chunking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FastCdcChunkingStrategyTest {
+    private static final int MIN = 2 * 1024;
+    private static final int NORMAL = 8 * 1024;
+    private static final int MAX = 64 * 1024;
+
+    private final FastCdcChunkingStrategy scalar = new FastCdcChunkingStrategy(MIN, NORMAL, MAX, false);
+    private final FastCdcChunkingStrategy vector = new FastCdcChunkingStrategy(MIN, NORMAL, MAX, true);
+
+    @Test
+    void testVectorBackendFindsSameBoundaries() {
+        assumeTrue(vector.isVectorized(), "Module jdk.incubator.vector absent");
+        Random random = new Random(8);
+
+        byte[] randomData = new byte[8 * 1024 * 1024 + 13];
+        random.nextBytes(randomData);
+        // Zéros : uniquement des coupures forcées à la taille maximale
+        byte[] mixed = randomData.clone();
+        Arrays.fill(mixed, 3 * 1024 * 1024, 5 * 1024 * 1024, (byte) 0);
+        // Peu de valeurs distinctes : empreintes très corrélées
+        byte[] lowEntropy = new byte[4 * 1024 * 1024];
+        for (int i = 0; i < lowEntropy.length; i++) {
+            lowEntropy[i] = (byte) random.nextInt(3);
+        }
+
+        for (byte[] data : List.of(randomData, mixed, lowEntropy)) {
+            List<Integer> expected = boundaries(scalar.newScanner(), data, data.length);
+            // Appels sur des plages entières puis découpées en petits morceaux
+            assertEquals(expected, boundaries(vector.newScanner(), data, data.length));
+            assertEquals(expected, boundaries(vector.newScanner(), data, 1000));
+            assertEquals(expected, boundaries(vector.newScanner(), data, FastCdcChunkingStrategy.vectorLanes() + 1));
+            assertEquals(expected, bufferBoundaries(vector.newScanner(), ByteBuffer.allocateDirect(data.length)
+                    .put(data).flip(), 777));
+        }
+    }
+
+    @Test
+    void testScalarFallbackWhenDisabled() {
+        assertFalse(scalar.isVectorized());
+        assertNotEquals(FastCdcChunkingStrategy.VECTOR_SCANNER_CLASS, scalar.newScanner().getClass().getName());
+    }
+
+    private List<Integer> boundaries(BoundaryScanner scanner, byte[] data, int step) {
+        List<Integer> cuts = new ArrayList<>();
+        int chunkStart = 0;
+        int from = 0;
+        while (from < data.length) {
+            int to = Math.min(data.length, from + step);
+            int boundary = scanner.findBoundary(data, chunkStart, from, to);
+            if (boundary < 0) {
+                from = to;
+                continue;
+            }
+            cuts.add(boundary);
+            scanner.reset();
+            chunkStart = from = boundary;
+        }
+        return cuts;
+    }
+
+    private List<Integer> bufferBoundaries(BoundaryScanner scanner, ByteBuffer data, int step) {
+        List<Integer> cuts = new ArrayList<>();
+        int chunkStart = 0;
+        int from = 0;
+        while (from < data.limit()) {
+            int to = Math.min(data.limit(), from + step);
+            int boundary = scanner.findBoundary(data, chunkStart, from, to);
+            if (boundary < 0) {
+                from = to;
+                continue;
+            }
+            cuts.add(boundary);
+            scanner.reset();
+            chunkStart = from = boundary;
+        }
+        return cuts;
+    }
+}
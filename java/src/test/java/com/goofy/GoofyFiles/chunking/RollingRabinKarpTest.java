@@ -0,0 +1,55 @@
+package com.goofy.GoofyFiles.chunking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class RollingRabinKarpTest {
+
+    @Test
+    void testFingerprintOnlyDependsOnWindow() {
+        Random random = new Random(11);
+        byte[] window = new byte[RollingRabinKarp.WINDOW_SIZE];
+        random.nextBytes(window);
+
+        RollingRabinKarp first = new RollingRabinKarp();
+        RollingRabinKarp second = new RollingRabinKarp();
+        // Des préfixes différents (et de longueurs différentes) avant la même fenêtre
+        push(first, randomBytes(random, 1000));
+        push(second, randomBytes(random, 37));
+        assertNotEquals(first.getFingerprint(), second.getFingerprint());
+
+        push(first, window);
+        push(second, window);
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+
+        RollingRabinKarp fresh = new RollingRabinKarp();
+        push(fresh, window);
+        assertEquals(fresh.getFingerprint(), first.getFingerprint());
+    }
+
+    @Test
+    void testNoCutBeforeWindowIsFull() {
+        RollingRabinKarp rabin = new RollingRabinKarp();
+        // Une fenêtre de zéros a une empreinte nulle : coupure dès que la fenêtre est pleine
+        for (int i = 1; i < RollingRabinKarp.WINDOW_SIZE; i++) {
+            assertEquals(false, rabin.pushByte((byte) 0), "Pas de coupure à l'octet " + i);
+        }
+        assertEquals(true, rabin.pushByte((byte) 0));
+    }
+
+    private void push(RollingRabinKarp rabin, byte[] bytes) {
+        for (byte b : bytes) {
+            rabin.pushByte(b);
+        }
+    }
+
+    private byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -5,9 +5,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.util.StopWatch;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -70,6 +74,34 @@ public class CompressionPerformanceTest {
         }
     }
 
+    @Test
+    void testBufferCompressionMatchesArrayCompression() {
+        byte[] data = new byte[64 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251 < 128 ? i % 7 : i * 31);
+        }
+        byte[] padded = new byte[data.length + 20];
+        System.arraycopy(data, 0, padded, 10, data.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+
+        // Tableau avec décalage, vue en lecture seule et buffer direct (comme un fichier mappé)
+        ByteBuffer[] buffers = {
+                ByteBuffer.wrap(padded, 10, data.length),
+                ByteBuffer.wrap(data).asReadOnlyBuffer(),
+                direct.asReadOnlyBuffer()
+        };
+        for (CompressionService.CompressionType type : COMPRESSION_TYPES) {
+            byte[] expected = compressionService.compress(data, type);
+            for (ByteBuffer buffer : buffers) {
+                int position = buffer.position();
+                byte[] compressed = compressionService.compress(buffer, type);
+                assertArrayEquals(expected, compressed, type + " sur " + buffer);
+                assertEquals(position, buffer.position());
+                assertArrayEquals(data, compressionService.decompress(compressed, type, data.length));
+            }
+        }
+    }
+
     @Test
     void testCompressionDashboard(@TempDir Path tempDir) throws IOException {
         Map<String, Map<String, Double>> metrics = new HashMap<>();
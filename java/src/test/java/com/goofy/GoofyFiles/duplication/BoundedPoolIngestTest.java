@@ -0,0 +1,186 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Plus d'uploads simultanés que de connexions dans le pool : un upload ne doit
+ * jamais retenir une connexion en attendant d'en obtenir une seconde, sans quoi
+ * tous restent bloqués jusqu'au délai d'obtention d'une connexion. La base H2
+ * est servie par un vrai pool Hikari (celui de l'application), et non par la
+ * source embarquée sans pool de {@code @DataJpaTest}.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:mem:bounded-pool;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.hikari.maximum-pool-size=" + BoundedPoolIngestTest.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=5000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BoundedPoolIngestTest extends IngestTestSupport {
+
+    static final int POOL_SIZE = 4;
+    private static final int UPLOADS = 8;
+    private static final int BLOCK_SIZE = 256 * 1024;
+    private static final int SHARED_BLOCKS = 6;
+    private static final int BLOCKS_PER_FILE = 4;
+
+    @Test
+    void testMoreUploadsThanConnectionsComplete() throws Exception {
+        System.out.println("\n=== Uploads simultanés sur un pool de connexions borné ===");
+        System.out.println("Format: Connexions | Uploads | Lignes chunk | Liens | Connexions max. utilisées | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        HikariDataSource pool = (HikariDataSource) dataSource;
+        assertEquals(POOL_SIZE, pool.getMaximumPoolSize());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("SET DEFAULT_LOCK_TIMEOUT 30000");
+
+        DuplicationService service = newService();
+
+        List<File> files = overlappingFiles();
+        ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Object>>> uploads = new ArrayList<>();
+        for (File file : files) {
+            uploads.add(executor.submit(() -> {
+                start.await();
+                return service.processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256);
+            }));
+        }
+        int[] maxActive = new int[1];
+        long begin = System.nanoTime();
+        start.countDown();
+        while (!uploads.stream().allMatch(Future::isDone) && System.nanoTime() - begin < 60_000_000_000L) {
+            maxActive[0] = Math.max(maxActive[0], pool.getHikariPoolMXBean().getActiveConnections());
+            Thread.sleep(5);
+        }
+        long totalChunks = 0;
+        for (Future<Map<String, Object>> upload : uploads) {
+            // Échoue avec une SQLTransientConnectionException si les uploads se bloquent
+            totalChunks += (Integer) upload.get(1, TimeUnit.SECONDS).get("totalChunks");
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        long rows = chunkRepository.count();
+        long links = fileChunkRepository.count();
+        System.out.printf("%d | %d | %d | %d | %d | %7.1f ms%n", POOL_SIZE, UPLOADS, rows, links, maxActive[0],
+                elapsed / 1e6);
+
+        assertEquals(UPLOADS, fileRepository.count());
+        assertEquals(totalChunks, links);
+        assertTrue(maxActive[0] <= POOL_SIZE);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM (SELECT hash_sha_256 FROM chunk GROUP BY hash_sha_256 HAVING count(*) > 1)",
+                Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk c WHERE ref_count <> "
+                + "(SELECT count(*) FROM file_chunk fc WHERE fc.chunk_id = c.id)", Integer.class));
+    }
+
+    @Test
+    void testStalledStreamsHoldNoConnection() throws Exception {
+        System.out.println("\n=== Uploads en flux interrompus par des clients lents ===");
+        System.out.println("Format: Connexions | Uploads | Lignes chunk pendant l'attente | "
+                + "Connexions actives pendant l'attente | Lignes chunk | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        HikariDataSource pool = (HikariDataSource) dataSource;
+        DuplicationService service = newService();
+        Random random = new Random(19);
+        CountDownLatch stalled = new CountDownLatch(UPLOADS);
+        CountDownLatch resume = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+        List<byte[]> contents = new ArrayList<>();
+        List<Future<Map<String, Object>>> uploads = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int i = 0; i < UPLOADS; i++) {
+            byte[] content = new byte[8 * BLOCK_SIZE];
+            random.nextBytes(content);
+            contents.add(content);
+            InputStream in = stallingStream(content, content.length / 2, stalled, resume);
+            String name = "stream-" + i + ".dat";
+            uploads.add(executor.submit(() -> service.processAndStoreStream(in, name, HashingAlgorithm.SHA256,
+                    ChunkingService.DEFAULT_STRATEGY, null)));
+        }
+
+        // Tous les clients à l'arrêt : les lots déjà reçus sont validés, aucune connexion n'est retenue
+        assertTrue(stalled.await(30, TimeUnit.SECONDS));
+        Thread.sleep(500);
+        long rowsWhileStalled = chunkRepository.count();
+        int activeWhileStalled = 0;
+        for (int sample = 0; sample < 40; sample++) {
+            activeWhileStalled = Math.max(activeWhileStalled, pool.getHikariPoolMXBean().getActiveConnections());
+            Thread.sleep(5);
+        }
+        resume.countDown();
+        for (int i = 0; i < UPLOADS; i++) {
+            assertEquals((long) contents.get(i).length, uploads.get(i).get(30, TimeUnit.SECONDS).get("fileSize"));
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        System.out.printf("%d | %d | %d | %d | %d | %7.1f ms%n", POOL_SIZE, UPLOADS, rowsWhileStalled,
+                activeWhileStalled, chunkRepository.count(), elapsed / 1e6);
+
+        assertEquals(0, activeWhileStalled);
+        assertTrue(rowsWhileStalled > 0);
+        assertEquals(UPLOADS, fileRepository.count());
+    }
+
+    private DuplicationService newService() {
+        // Un seul service, comme le bean de l'application : index, filtre et réservations partagés
+        return duplicationService().lookupWindow(64).build();
+    }
+
+    /**
+     * Des blocs communs à plusieurs fichiers, pour que des uploads attendent les
+     * chunks qu'un autre est en train d'insérer, puis un bloc propre à chacun.
+     */
+    private List<File> overlappingFiles() throws IOException {
+        Random random = new Random(4);
+        byte[][] blocks = new byte[SHARED_BLOCKS][BLOCK_SIZE];
+        for (byte[] block : blocks) {
+            random.nextBytes(block);
+        }
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < UPLOADS; i++) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (int b = 0; b < BLOCKS_PER_FILE; b++) {
+                content.writeBytes(blocks[(i + b) % SHARED_BLOCKS]);
+            }
+            byte[] own = new byte[BLOCK_SIZE];
+            random.nextBytes(own);
+            content.writeBytes(own);
+            File file = tempDir.resolve("pool-" + i + ".dat").toFile();
+            Files.write(file.toPath(), content.toByteArray());
+            files.add(file);
+        }
+        return files;
+    }
+}
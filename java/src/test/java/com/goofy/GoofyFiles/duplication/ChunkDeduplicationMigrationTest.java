@@ -0,0 +1,125 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Base remplie avant les index uniques : des chunks en double, liés par
+ * file_chunk et par un manifeste compact. La migration les fusionne, redirige
+ * les liens, additionne les références puis crée l'index.
+ */
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ChunkDeduplicationMigrationTest {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteAll() throws Exception {
+        jdbcTemplate.update("DELETE FROM file_manifest_page");
+        jdbcTemplate.update("DELETE FROM file_chunk");
+        jdbcTemplate.update("DELETE FROM chunk");
+        jdbcTemplate.update("DELETE FROM files");
+        // Les autres tests du contexte comptent sur l'index
+        new ChunkDeduplicationMigration(dataSource, transactionManager).migrate();
+    }
+
+    @Test
+    void testDuplicatesAreMergedBeforeTheIndexIsCreated() throws Exception {
+        ChunkDeduplicationMigration migration = new ChunkDeduplicationMigration(dataSource, transactionManager);
+        assertTrue(migration.hasUniqueIndex("hash_sha_256"));
+        jdbcTemplate.execute("ALTER TABLE chunk DROP CONSTRAINT ux_chunk_hash_sha_256");
+        assertFalse(migration.hasUniqueIndex("hash_sha_256"));
+
+        LocalDateTime old = LocalDateTime.now().minusDays(2).withNano(0);
+        // Hash a : trois lignes, deux liées ; hash b : deux lignes sans référence ; hash c : une seule ligne
+        insertChunk(1, "a", 1, null);
+        insertChunk(2, "a", 1, null);
+        insertChunk(3, "a", 0, old);
+        insertChunk(4, "b", 0, old);
+        insertChunk(5, "b", 0, old.plusHours(1));
+        insertChunk(6, "c", 1, null);
+        // Chunk stocké avant les compteurs : jamais collecté
+        insertChunk(7, "d", null, null);
+        insertChunk(8, "d", 1, null);
+
+        jdbcTemplate.update("INSERT INTO files (id, name, size) VALUES (1, 'liens', 3)");
+        jdbcTemplate.update("INSERT INTO file_chunk (id, file_id, chunk_id, position) VALUES (1, 1, 1, 0)");
+        jdbcTemplate.update("INSERT INTO file_chunk (id, file_id, chunk_id, position) VALUES (2, 1, 6, 1)");
+        jdbcTemplate.update("INSERT INTO file_chunk (id, file_id, chunk_id, position) VALUES (3, 1, 8, 2)");
+        PackedManifest.Builder manifest = PackedManifest.builder();
+        manifest.add(2, 100);
+        manifest.add(6, 200);
+        manifest.add(2, 100);
+        jdbcTemplate.update("INSERT INTO files (id, name, size, manifest_pages) VALUES (2, 'manifeste', 400, 1)");
+        jdbcTemplate.update("INSERT INTO file_manifest_page (id, file_id, page_number, data) VALUES (1, 2, 0, ?)",
+                (Object) manifest.build().get(0));
+
+        migration.migrate();
+
+        assertTrue(migration.hasUniqueIndex("hash_sha_256"));
+        assertEquals(List.of(1L, 4L, 6L, 7L), jdbcTemplate.queryForList("SELECT id FROM chunk ORDER BY id",
+                Long.class));
+        assertEquals(List.of(1L, 6L, 7L), jdbcTemplate.queryForList(
+                "SELECT chunk_id FROM file_chunk ORDER BY position", Long.class));
+        PackedManifest rewritten = PackedManifest.decode(List.of(jdbcTemplate.queryForObject(
+                "SELECT data FROM file_manifest_page WHERE id = 1", byte[].class)));
+        assertArrayEquals(new long[]{1, 6, 1}, new long[]{rewritten.getChunkId(0), rewritten.getChunkId(1),
+                rewritten.getChunkId(2)});
+        assertEquals(400, rewritten.getOffset(2) + rewritten.getLength(2));
+
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 1", Integer.class));
+        assertNull(jdbcTemplate.queryForObject("SELECT unreferenced_since FROM chunk WHERE id = 1",
+                Timestamp.class));
+        // Sans référence depuis le plus récent abandon
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 4", Integer.class));
+        assertEquals(Timestamp.valueOf(old.plusHours(1)), jdbcTemplate.queryForObject(
+                "SELECT unreferenced_since FROM chunk WHERE id = 4", Timestamp.class));
+        assertNull(jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 7", Integer.class));
+
+        assertThrows(DuplicateKeyException.class, () -> insertChunk(9, "a", 0, old));
+    }
+
+    @Test
+    void testStartupFailsWhenTheConstraintCannotBeCreated() {
+        ChunkDeduplicationMigration migration = new ChunkDeduplicationMigration(dataSource, transactionManager);
+        jdbcTemplate.execute("ALTER TABLE chunk DROP CONSTRAINT ux_chunk_hash_blake3");
+        // Ancienne contrainte du même nom sur deux colonnes : elle n'empêche pas les doublons de hash
+        jdbcTemplate.execute("ALTER TABLE chunk ADD CONSTRAINT ux_chunk_hash_blake3 UNIQUE (hash_blake3, id)");
+        assertFalse(migration.hasUniqueIndex("hash_blake3"));
+
+        assertThrows(DataAccessException.class, migration::migrate);
+        jdbcTemplate.execute("ALTER TABLE chunk DROP CONSTRAINT ux_chunk_hash_blake3");
+    }
+
+    private void insertChunk(long id, String hash, Integer refCount, LocalDateTime unreferencedSince) {
+        jdbcTemplate.update("INSERT INTO chunk (id, hash_sha_256, created_at, ref_count, unreferenced_since) "
+                + "VALUES (?, ?, ?, ?, ?)", id, hash, Timestamp.valueOf(LocalDateTime.now()), refCount,
+                unreferencedSince == null ? null : Timestamp.valueOf(unreferencedSince));
+    }
+}
@@ -0,0 +1,356 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+import com.goofy.GoofyFiles.model.FileManifestPageEntity;
+import com.goofy.GoofyFiles.repository.ChunkReferenceWriter;
+import com.goofy.GoofyFiles.repository.ChunkUpsertWriter;
+import com.goofy.GoofyFiles.service.FileDeletionService;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+import com.goofy.GoofyFiles.storage.DatabaseChunkStore;
+
+/**
+ * Suppression de fichiers qui partagent des chunks, puis collecte des chunks
+ * sans référence, y compris face à un upload qui les référence de nouveau.
+ */
+class ChunkGarbageCollectorTest extends IngestTestSupport {
+
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+    // -Dgoofy.gc.benchmark.chunks=10000000 pour la table de la mesure de référence
+    private static final int BENCHMARK_CHUNKS = Integer.getInteger("goofy.gc.benchmark.chunks", 1_000_000);
+
+    @Test
+    void testDeletedFilesReleaseOnlyTheirOwnChunks() throws Exception {
+        System.out.println("\n=== Suppression de fichiers et ramasse-miettes ===");
+        System.out.println("Format: Étape | Fichiers | Chunks | Sans référence | Collectés");
+        System.out.println("------------------------------------------------------------------------");
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (boolean packed : new boolean[]{false, true}) {
+            DuplicationService duplicationService = newService(packed);
+            ChunkGarbageCollector collector = new ChunkGarbageCollector(dataSource, transactionManager,
+                    new ChunkHashIndex(100_000), Duration.ZERO, 64, 1000);
+            FileDeletionService deletionService = new FileDeletionService(fileRepository, fileChunkRepository,
+                    fileManifestPageRepository, new ChunkReferenceWriter(dataSource));
+
+            // B reprend la première moitié de A ; C est annulé après avoir inséré ses chunks
+            Random random = new Random(23);
+            byte[] a = new byte[FILE_SIZE];
+            random.nextBytes(a);
+            byte[] b = Arrays.copyOf(a, FILE_SIZE);
+            byte[] tail = new byte[FILE_SIZE / 2];
+            random.nextBytes(tail);
+            System.arraycopy(tail, 0, b, FILE_SIZE / 2, tail.length);
+            byte[] c = new byte[FILE_SIZE];
+            random.nextBytes(c);
+
+            Long fileA = ingest(duplicationService, write("a.dat", a), false);
+            Long fileB = ingest(duplicationService, write("b.dat", b), false);
+            ingest(duplicationService, write("c.dat", c), true);
+            printState(jdbcTemplate, "uploads" + (packed ? " (manifeste)" : ""), null);
+            assertEquals(0, countWrongReferences(jdbcTemplate, packed));
+
+            Map<String, Object> failedUpload = collector.collect();
+            printState(jdbcTemplate, "upload annulé", failedUpload);
+            assertEquals(0L, unreferenced(jdbcTemplate));
+            long shared = chunkRepository.count();
+
+            delete(deletionService, fileA);
+            Map<String, Object> afterA = collector.collect();
+            printState(jdbcTemplate, "A supprimé", afterA);
+            assertEquals(1L, fileRepository.count());
+            assertEquals(0, countWrongReferences(jdbcTemplate, packed));
+            assertArrayEquals(b, reconstruct(fileB));
+            assertEquals(shared - (Long) afterA.get("collectedChunks"), chunkRepository.count());
+
+            delete(deletionService, fileB);
+            Map<String, Object> afterB = collector.collect();
+            printState(jdbcTemplate, "B supprimé", afterB);
+            assertEquals(0L, chunkRepository.count());
+            assertEquals(0L, fileRepository.count());
+            assertThrows(IllegalArgumentException.class, () -> delete(deletionService, fileB));
+            deleteAllRows();
+        }
+    }
+
+    @Test
+    void testChunkReferencedDuringCollectionIsKept() throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        ChunkReferenceWriter referenceWriter = new ChunkReferenceWriter(dataSource);
+        ChunkGarbageCollector collector = new ChunkGarbageCollector(dataSource, transactionManager,
+                new ChunkHashIndex(1000), Duration.ZERO, 64, 1000);
+        insertChunks(jdbcTemplate, 0, 2, 2);
+
+        // Un upload compte sa référence au chunk 0 sans avoir encore validé
+        CountDownLatch referenced = new CountDownLatch(1);
+        CountDownLatch collected = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> upload = executor.submit(() -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> {
+                    referenceWriter.addReferences(new long[]{0});
+                    referenced.countDown();
+                    try {
+                        collected.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        referenced.await();
+        Map<String, Object> run = collector.collect();
+        collected.countDown();
+        upload.get();
+        executor.shutdown();
+        System.out.printf("%nChunk verrouillé par un upload : %s chunk collecté sur 2, compteur du chunk 0 : %d%n",
+                run.get("collectedChunks"), jdbcTemplate.queryForObject(
+                        "SELECT ref_count FROM chunk WHERE id = 0", Integer.class));
+        assertEquals(1L, run.get("collectedChunks"));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 0", Integer.class));
+        assertEquals(0L, collector.collect().get("collectedChunks"));
+
+        // Collecté avant que l'upload ne compte ses références : l'upload échoue
+        assertThrows(IllegalStateException.class, () -> new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> referenceWriter.addReferences(new long[]{0, 1})));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 0", Integer.class));
+    }
+
+    @Test
+    void testChunkCollectedBeforeItsIdIsReadIsInsertedAgain() throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Le ramasse-miettes supprime une ligne entre l'insertion et la lecture de
+        // son id : l'id manque dans le résultat de l'insertion
+        ChunkUpsertWriter racingWriter = new ChunkUpsertWriter(dataSource, transactionManager) {
+            private boolean raced;
+
+            @Override
+            public Map<String, Long> insertIfAbsent(List<ChunkEntity> chunks) {
+                Map<String, Long> ids = new HashMap<>(super.insertIfAbsent(chunks));
+                if (!raced && !chunks.isEmpty()) {
+                    raced = true;
+                    jdbcTemplate.update("DELETE FROM chunk WHERE id = ?", ids.remove(chunks.get(0).getHashSha256()));
+                }
+                return ids;
+            }
+        };
+        racingWriter.detectDatabase();
+        byte[] content = new byte[1024 * 1024];
+        new Random(23).nextBytes(content);
+        File file = write("collected-before-read.dat", content);
+
+        // Sans transaction englobante : la suppression est validée aussitôt, comme par le ramasse-miettes
+        Long fileId = (Long) newService(false, racingWriter).processAndStoreFile(file, file.getName(),
+                file.length(), HashingAlgorithm.SHA256).get("fileId");
+        System.out.printf("%nId perdu par l'insertion : %d lignes chunk, %d liens%n", chunkRepository.count(),
+                fileChunkRepository.count());
+        assertArrayEquals(content, reconstruct(fileId));
+        assertEquals(fileChunkRepository.count(), chunkRepository.count());
+        assertEquals(0, countWrongReferences(jdbcTemplate, false));
+    }
+
+    @Test
+    void testUploadLongerThanTheGracePeriodKeepsItsChunks() throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Duration grace = Duration.ofMillis(1500);
+        DuplicationService duplicationService = duplicationService().lookupWindow(8).gracePeriod(grace).build();
+        ChunkGarbageCollector collector = new ChunkGarbageCollector(dataSource, transactionManager,
+                new ChunkHashIndex(100_000), grace, 64, 1000);
+
+        // Chunks de A sans référence depuis deux jours, que l'upload retrouve par la recherche
+        Random random = new Random(23);
+        byte[] a = new byte[FILE_SIZE / 2];
+        random.nextBytes(a);
+        Long fileA = ingest(duplicationService, write("orphans.dat", a), false);
+        delete(new FileDeletionService(fileRepository, fileChunkRepository, fileManifestPageRepository,
+                new ChunkReferenceWriter(dataSource)), fileA);
+        jdbcTemplate.update("UPDATE chunk SET unreferenced_since = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusDays(2)));
+
+        // Le contenu de A puis des chunks neufs, et un client arrêté plus longtemps que le délai de grâce
+        byte[] content = Arrays.copyOf(a, FILE_SIZE);
+        byte[] tail = new byte[FILE_SIZE - a.length];
+        random.nextBytes(tail);
+        System.arraycopy(tail, 0, content, a.length, tail.length);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Map<String, Object>> upload = executor.submit(() -> duplicationService.processAndStoreStream(
+                stallingStream(content, content.length * 3 / 4, stalled, resume), "long-upload.dat",
+                HashingAlgorithm.SHA256, ChunkingService.DEFAULT_STRATEGY, null));
+        assertTrue(stalled.await(30, TimeUnit.SECONDS));
+        Thread.sleep(grace.toMillis() + 1000);
+        Map<String, Object> run = collector.collect();
+        resume.countDown();
+        Long fileId = (Long) upload.get(30, TimeUnit.SECONDS).get("fileId");
+        executor.shutdown();
+
+        System.out.printf("%nUpload plus long que le délai de grâce : %s chunks collectés pendant l'upload, "
+                + "%d lignes chunk, %d liens%n", run.get("collectedChunks"), chunkRepository.count(),
+                fileChunkRepository.count());
+        assertArrayEquals(content, reconstruct(fileId));
+        assertEquals(0, countWrongReferences(jdbcTemplate, false));
+        // Seul le dernier chunk de A, recoupé par le contenu qui le suit, peut manquer à l'upload
+        assertTrue((Long) run.get("collectedChunks") <= 1);
+    }
+
+    @Test
+    void testCollectionThroughputDoesNotDependOnTableSize() {
+        System.out.println("\n=== Débit du ramasse-miettes selon la taille de la table ===");
+        System.out.println("Format: Chunks en table | Sans référence | Collectés | Lots | Temps | Chunks/s");
+        System.out.println("------------------------------------------------------------------------");
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        int garbage = 50_000;
+        long loaded = 0;
+        for (int size : new int[]{BENCHMARK_CHUNKS / 10, BENCHMARK_CHUNKS}) {
+            // Chunks vivants ajoutés à ceux du tour précédent, puis les déchets de ce tour
+            insertChunks(jdbcTemplate, loaded, size - garbage - loaded, 0);
+            insertChunks(jdbcTemplate, size - garbage, garbage, garbage);
+            loaded = size - garbage;
+
+            ChunkGarbageCollector collector = new ChunkGarbageCollector(dataSource, transactionManager,
+                    new ChunkHashIndex(1000), Duration.ZERO, 1000, Integer.MAX_VALUE);
+            Map<String, Object> run = collector.collect();
+            System.out.printf("%d | %d | %d | %d | %d ms | %d%n", size, garbage, run.get("collectedChunks"),
+                    run.get("batches"), run.get("elapsedMs"), run.get("chunksPerSecond"));
+            assertEquals((long) garbage, run.get("collectedChunks"));
+            assertEquals((long) loaded, chunkRepository.count());
+        }
+        // Par tranches : une seule suppression de toute la table tient tout son journal en mémoire dans H2
+        for (long first = 0; first < loaded; first += 50_000) {
+            jdbcTemplate.update("DELETE FROM chunk WHERE id >= ? AND id < ?", first, first + 50_000);
+        }
+    }
+
+    /**
+     * Lignes chunk sans données, par batch JDBC : les {@code unreferenced}
+     * premières sans référence depuis une heure, les autres référencées une fois.
+     */
+    private static void insertChunks(JdbcTemplate jdbcTemplate, long firstId, long count, long unreferenced) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Timestamp hourAgo = Timestamp.valueOf(LocalDateTime.now().minusHours(1));
+        List<Object[]> rows = new ArrayList<>(10_000);
+        for (long i = 0; i < count; i++) {
+            boolean garbage = i < unreferenced;
+            rows.add(new Object[]{firstId + i, String.format("%064x", firstId + i), now, 4096,
+                    garbage ? 0 : 1, garbage ? hourAgo : null});
+            if (rows.size() == 10_000 || i == count - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO chunk (id, hash_sha_256, created_at, stored_size, ref_count, "
+                        + "unreferenced_since) VALUES (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    private void printState(JdbcTemplate jdbcTemplate, String step, Map<String, Object> run) {
+        System.out.printf("%s | %d | %d | %d | %s%n", step, fileRepository.count(), chunkRepository.count(),
+                unreferenced(jdbcTemplate), run == null ? "-" : run.get("collectedChunks"));
+    }
+
+    private static long unreferenced(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE ref_count = 0", Long.class);
+    }
+
+    /**
+     * Chunks dont le compteur diffère du nombre de liens (lignes file_chunk, ou
+     * entrées des manifestes compacts).
+     */
+    private int countWrongReferences(JdbcTemplate jdbcTemplate, boolean packed) {
+        if (!packed) {
+            return jdbcTemplate.queryForObject("SELECT count(*) FROM chunk c WHERE ref_count <> "
+                    + "(SELECT count(*) FROM file_chunk fc WHERE fc.chunk_id = c.id)", Integer.class);
+        }
+        Map<Long, Integer> links = new HashMap<>();
+        for (Long fileId : jdbcTemplate.queryForList("SELECT id FROM files", Long.class)) {
+            PackedManifest manifest = PackedManifest.decode(fileManifestPageRepository
+                    .findByFileIdOrderByPageNumber(fileId).stream().map(FileManifestPageEntity::getData).toList());
+            for (int i = 0; i < manifest.size(); i++) {
+                links.merge(manifest.getChunkId(i), 1, Integer::sum);
+            }
+        }
+        int[] wrong = {0};
+        jdbcTemplate.query("SELECT id, ref_count FROM chunk", rs -> {
+            if (rs.getInt(2) != links.getOrDefault(rs.getLong(1), 0)) {
+                wrong[0]++;
+            }
+        });
+        return wrong[0];
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Upload dans sa propre transaction ; {@code rollback} l'annule après
+     * l'insertion de ses chunks, comme un upload interrompu.
+     */
+    private Long ingest(DuplicationService service, File file, boolean rollback) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                Map<String, Object> result = service.processAndStoreFile(file, file.getName(), file.length(),
+                        HashingAlgorithm.SHA256);
+                if (rollback) {
+                    status.setRollbackOnly();
+                }
+                return (Long) result.get("fileId");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void delete(FileDeletionService deletionService, Long fileId) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> deletionService.deleteFile(fileId));
+    }
+
+    private byte[] reconstruct(Long fileId) {
+        FileReconstructionService reconstructionService = new FileReconstructionService(fileRepository,
+                fileChunkRepository, fileManifestPageRepository, chunkRepository, new CompressionService(),
+                new ChunkStorage(new DatabaseChunkStore(), null, ChunkStorage.Type.DATABASE), null);
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return reconstructionService.reconstructFile(fileId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private DuplicationService newService(boolean packed) {
+        return duplicationService().packedManifest(packed).build();
+    }
+
+    private DuplicationService newService(boolean packed, ChunkUpsertWriter upsertWriter) {
+        return duplicationService().packedManifest(packed).chunkUpsertWriter(upsertWriter).build();
+    }
+}
@@ -0,0 +1,122 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.repository.ChunkRepository;
+
+class ChunkHashFilterTest extends IngestTestSupport {
+
+    @Test
+    void testFalsePositiveRateMatchesConfiguration() {
+        System.out.println("\n=== Filtre de Bloom : taux de faux positifs ===");
+        System.out.println("Format: Taux visé | Taux mesuré | Fonctions de hachage | Mémoire (1M chunks)");
+        System.out.println("------------------------------------------------------------------------");
+
+        int entries = 1_000_000;
+        Random random = new Random(12);
+        List<ChunkHash> stored = randomHashes(random, entries);
+        List<ChunkHash> unknown = randomHashes(random, entries);
+
+        for (double rate : new double[]{0.1, 0.01, 0.001}) {
+            ChunkBloomFilter filter = ChunkBloomFilter.create(entries, rate);
+            stored.forEach(filter::add);
+
+            // Aucun faux négatif
+            assertTrue(stored.stream().allMatch(filter::mightContain));
+            long falsePositives = unknown.stream().filter(filter::mightContain).count();
+            double measured = (double) falsePositives / entries;
+
+            System.out.printf("%-8s | %.5f | %2d | %6.2f Mo%n", rate, measured, filter.hashCount(),
+                    filter.bitCount() / 8.0 / (1024 * 1024));
+            assertTrue(measured < rate * 1.5, "Taux mesuré " + measured + " pour " + rate);
+        }
+    }
+
+    @Test
+    void testSnapshotAvoidsFullRescan() throws IOException {
+        String snapshot = tempDir.resolve("filter.bin").toString();
+        List<ChunkHash> hashes = randomHashes(new Random(13), 5_000);
+
+        ChunkRepository chunkRepo = mock(ChunkRepository.class);
+        ChunkHashFilter filter = new ChunkHashFilter(chunkRepo, 100_000, 0.01, snapshot);
+        filter.rebuild();
+        for (int i = 0; i < hashes.size(); i++) {
+            filter.add(HashingAlgorithm.SHA256, hashes.get(i), i + 1);
+        }
+        filter.saveSnapshot();
+
+        // Redémarrage : seuls les derniers ids sont relus en base
+        ChunkRepository restartedRepo = mock(ChunkRepository.class);
+        ChunkHashFilter restarted = new ChunkHashFilter(restartedRepo, 100_000, 0.01, snapshot);
+        restarted.rebuild();
+        verify(restartedRepo).findByIdGreaterThanOrderByIdAsc(eq(4_000L), any());
+        assertTrue(hashes.stream().allMatch(hash -> restarted.mightContain(HashingAlgorithm.SHA256, hash)));
+
+        // Paramètres différents : l'instantané est ignoré
+        ChunkRepository resizedRepo = mock(ChunkRepository.class);
+        new ChunkHashFilter(resizedRepo, 200_000, 0.01, snapshot).rebuild();
+        verify(resizedRepo).findByIdGreaterThanOrderByIdAsc(eq(0L), any());
+    }
+
+    @Test
+    void testFilterSkipsLookupsForNewContent() throws IOException {
+        System.out.println("\n=== Filtre de Bloom : requêtes évitées ===");
+        System.out.println("Format: Envoi | Chunks | Requêtes SQL de recherche | Requêtes évitées | Mémoire du filtre");
+        System.out.println("------------------------------------------------------------------------");
+
+        // Appels au repository comptés, comportement réel
+        ChunkRepository chunkRepo = mock(ChunkRepository.class, delegatesTo(chunkRepository));
+        ChunkHashFilter filter = new ChunkHashFilter(chunkRepo, 1_000_000, 0.01,
+                tempDir.resolve("filter.bin").toString());
+        filter.rebuild();
+        DuplicationService duplicationService = duplicationService().chunkRepository(chunkRepo)
+                .chunkHashFilter(filter).build();
+
+        // Deux fichiers de contenu neuf : le second n'a aucun chunk en commun avec le premier
+        for (int upload = 1; upload <= 2; upload++) {
+            File file = tempDir.resolve("new-" + upload + ".dat").toFile();
+            byte[] content = new byte[16 * 1024 * 1024];
+            new Random(upload).nextBytes(content);
+            Files.write(file.toPath(), content);
+
+            Map<String, Object> result = duplicationService.processAndStoreFile(file, file.getName(),
+                    content.length, HashingAlgorithm.SHA256);
+            Map<String, Object> stats = filter.getStats();
+            long lookups = mockingDetails(chunkRepo).getInvocations().stream()
+                    .filter(invocation -> invocation.getMethod().getName().equals("findByHashSha256In"))
+                    .count();
+            System.out.printf("%d | %6d | %6d | %6d | %.1f Mo%n", upload, result.get("totalChunks"), lookups,
+                    stats.get("skippedLookups"), ((Number) stats.get("memoryBytes")).longValue() / (1024.0 * 1024));
+            assertEquals(0, result.get("duplicateChunks"));
+        }
+        verify(chunkRepo, never()).findByHashSha256In(any());
+    }
+
+    private List<ChunkHash> randomHashes(Random random, int count) {
+        List<ChunkHash> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            hashes.add(ChunkHash.of(digest));
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,177 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.repository.ChunkUpsertWriter;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+import com.goofy.GoofyFiles.storage.DatabaseChunkStore;
+import com.goofy.GoofyFiles.storage.PackChunkStore;
+
+/**
+ * Uploads simultanés de fichiers qui partagent la plupart de leurs chunks, sur
+ * une base H2 embarquée : chaque contenu doit être stocké exactement une fois.
+ * Plusieurs services avec chacun leur index, leur filtre et leurs réservations
+ * simulent autant de processus derrière la même base.
+ */
+class ConcurrentIngestTest extends IngestTestSupport {
+
+    private static final int BLOCK_SIZE = 512 * 1024;
+    private static final int SHARED_BLOCKS = 12;
+    private static final int BLOCKS_PER_FILE = 8;
+    private static final int UPLOADS = 12;
+
+    @Test
+    void testOverlappingUploadsStoreEachChunkOnce() throws Exception {
+        System.out.println("\n=== Uploads simultanés de contenus qui se recouvrent ===");
+        System.out.println("Format: Processus | Uploads | Chunks distincts | Lignes chunk | Chunks comptés uniques | "
+                + "Réservations contestées | Attentes | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        ChunkingService chunkingService = new ChunkingService();
+        List<File> files = overlappingFiles();
+        Set<ChunkHash> distinct = new HashSet<>();
+        for (File file : files) {
+            for (Chunk chunk : chunkingService.chunkFile(file, ChunkingService.DEFAULT_STRATEGY)) {
+                distinct.add(chunk.getHash());
+            }
+        }
+
+        // Données dans les packs : écrites par plusieurs uploads à la fois, relues à la reconstruction
+        ChunkStorage chunkStorage = new ChunkStorage(new DatabaseChunkStore(),
+                new PackChunkStore(tempDir.resolve("packs").toString(), DataSize.ofMegabytes(4)), ChunkStorage.Type.PACK);
+        ChunkUpsertWriter upsertWriter = new ChunkUpsertWriter(dataSource, transactionManager);
+        upsertWriter.detectDatabase();
+        FileReconstructionService reconstructionService = new FileReconstructionService(fileRepository,
+                fileChunkRepository, fileManifestPageRepository, chunkRepository, new CompressionService(), chunkStorage,
+                null);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Une insertion en conflit avec une ligne non validée attend la fin de l'autre
+        // transaction, comme sous PostgreSQL ; le délai par défaut de H2 est trop court
+        jdbcTemplate.execute("SET DEFAULT_LOCK_TIMEOUT 30000");
+
+        for (int processes : new int[]{4, 2, 1}) {
+            List<InFlightHashes> inFlight = new ArrayList<>();
+            List<DuplicationService> services = new ArrayList<>();
+            for (int p = 0; p < processes; p++) {
+                inFlight.add(new InFlightHashes(Duration.ofMinutes(1)));
+                services.add(duplicationService()
+                        .chunkingService(chunkingService)
+                        .chunkUpsertWriter(upsertWriter)
+                        .inFlightHashes(inFlight.get(p))
+                        .chunkStorage(chunkStorage)
+                        .build());
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(UPLOADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Map<String, Object>>> uploads = new ArrayList<>();
+            for (int i = 0; i < UPLOADS; i++) {
+                DuplicationService service = services.get(i % processes);
+                File file = files.get(i);
+                uploads.add(executor.submit(() -> {
+                    start.await();
+                    return ingest(service, file);
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Future<Map<String, Object>> upload : uploads) {
+                results.add(upload.get());
+            }
+            long elapsed = System.nanoTime() - begin;
+            executor.shutdown();
+
+            long rows = chunkRepository.count();
+            int countedUnique = results.stream().mapToInt(result -> (Integer) result.get("uniqueChunks")).sum();
+            long contended = inFlight.stream().mapToLong(hashes -> (Long) hashes.getStats().get("contended")).sum();
+            long waits = inFlight.stream().mapToLong(hashes -> (Long) hashes.getStats().get("waits")).sum();
+            System.out.printf("%d | %d | %d | %d | %d | %d | %d | %7.1f ms%n", processes, UPLOADS, distinct.size(),
+                    rows, countedUnique, contended, waits, elapsed / 1e6);
+
+            assertEquals(distinct.size(), rows);
+            assertEquals(0, jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM (SELECT hash_sha_256 FROM chunk GROUP BY hash_sha_256 HAVING count(*) > 1)",
+                    Integer.class));
+            assertEquals(distinct.size(), countedUnique);
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE data IS NOT NULL",
+                    Integer.class));
+            // Compteurs mis à jour par des uploads simultanés : autant de références que de liens
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk c WHERE ref_count <> "
+                    + "(SELECT count(*) FROM file_chunk fc WHERE fc.chunk_id = c.id)", Integer.class));
+            for (int i = 0; i < UPLOADS; i++) {
+                Long fileId = (Long) results.get(i).get("fileId");
+                byte[] restored = new TransactionTemplate(transactionManager).execute(status -> {
+                    try {
+                        return reconstructionService.reconstructFile(fileId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                assertArrayEquals(Files.readAllBytes(files.get(i).toPath()), restored);
+            }
+            deleteAllRows();
+        }
+    }
+
+    /**
+     * Chaque fichier enchaîne des blocs communs, en partant d'un bloc différent,
+     * puis un bloc qui lui est propre.
+     */
+    private List<File> overlappingFiles() throws IOException {
+        Random random = new Random(18);
+        byte[][] blocks = new byte[SHARED_BLOCKS][BLOCK_SIZE];
+        for (byte[] block : blocks) {
+            random.nextBytes(block);
+        }
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < UPLOADS; i++) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (int b = 0; b < BLOCKS_PER_FILE; b++) {
+                content.writeBytes(blocks[(i + b) % SHARED_BLOCKS]);
+            }
+            byte[] own = new byte[BLOCK_SIZE / 2];
+            random.nextBytes(own);
+            content.writeBytes(own);
+            File file = tempDir.resolve("upload-" + i + ".dat").toFile();
+            Files.write(file.toPath(), content.toByteArray());
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Upload sans transaction englobante, comme depuis le contrôleur : le service
+     * ouvre ses propres transactions.
+     */
+    private Map<String, Object> ingest(DuplicationService service, File file) throws IOException {
+        return service.processAndStoreFile(file, file.getName(), file.length(), HashingAlgorithm.SHA256);
+    }
+}
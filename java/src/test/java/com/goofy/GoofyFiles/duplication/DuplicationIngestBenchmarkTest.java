@@ -0,0 +1,254 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+import com.goofy.GoofyFiles.model.FileChunkEntity;
+import com.goofy.GoofyFiles.model.FileEntity;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+import com.goofy.GoofyFiles.storage.DatabaseChunkStore;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Ingestion sur une base H2 embarquée, à la place de Postgres : les allers-retours
+ * y sont bien moins coûteux qu'à travers le réseau, les gains réels sont plus grands.
+ *
+ * Chaque ingestion est validée dans sa propre transaction : les recherches de
+ * doublons passent par d'autres connexions et ne voient que les données validées.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DuplicationIngestBenchmarkTest extends IngestTestSupport {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void testPerChunkVersusBatchedLookups() throws IOException {
+        System.out.println("\n=== Ingestion d'un fichier déjà stocké : recherche par chunk vs par fenêtre ===");
+        System.out.println("Format: Fenêtre | Chunks | Requêtes de recherche | Requêtes SQL totales | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        File file = tempDir.resolve("ingest.dat").toFile();
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random(13).nextBytes(content);
+        Files.write(file.toPath(), content);
+
+        ChunkingService chunkingService = new ChunkingService();
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long seedStart = System.nanoTime();
+        Map<String, Object> seed = ingest(newService(chunkingService, 1000, false), file, "seed.dat");
+        System.out.printf("Fichier neuf | %6d | %6d | %6d | %7.1f ms%n", seed.get("totalChunks"),
+                statistics.getQueryExecutionCount(), statistics.getPrepareStatementCount(),
+                (System.nanoTime() - seedStart) / 1e6);
+
+        for (int window : new int[]{1, 1000, 1, 1000}) {
+            DuplicationService service = newService(chunkingService, window, false);
+            statistics.clear();
+            long start = System.nanoTime();
+            Map<String, Object> result = ingest(service, file, "ingest.dat");
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%5d | %6d | %6d | %6d | %7.1f ms%n", window, result.get("totalChunks"),
+                    statistics.getQueryExecutionCount(), statistics.getPrepareStatementCount(), elapsed / 1e6);
+            assertEquals(result.get("totalChunks"), result.get("duplicateChunks"));
+        }
+    }
+
+    @Test
+    void testChunkInsertRate() {
+        System.out.println("\n=== Insertion de 100 000 chunks (fenêtres de 1000) ===");
+        System.out.println("Format: Lignes insérées | Requêtes SQL | Temps | Débit");
+        System.out.println("------------------------------------------------------------------------");
+
+        int chunks = 100_000;
+        int window = 1000;
+        Random random = new Random(14);
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long start = System.nanoTime();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> insertChunks(chunks, window, random));
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d | %d | %.1f ms | %.0f lignes/s%n", 2 * chunks, statistics.getPrepareStatementCount(),
+                elapsed / 1e6, 2 * chunks / (elapsed / 1e9));
+        assertEquals(chunks, chunkRepository.count());
+    }
+
+    private void insertChunks(int chunks, int window, Random random) {
+        FileEntity file = new FileEntity();
+        file.setName("insert-rate");
+        file = fileRepository.save(file);
+        for (int first = 0; first < chunks; first += window) {
+            List<ChunkEntity> newChunks = new ArrayList<>(window);
+            List<FileChunkEntity> fileChunks = new ArrayList<>(window);
+            for (int i = first; i < first + window; i++) {
+                // Petites données : seul le coût par ligne est mesuré
+                byte[] data = new byte[64];
+                random.nextBytes(data);
+                ChunkEntity chunk = new ChunkEntity();
+                chunk.setData(data);
+                chunk.setHashSha256(ChunkHash.of(data).toHex());
+                newChunks.add(chunk);
+
+                FileChunkEntity fileChunk = new FileChunkEntity();
+                fileChunk.setFile(file);
+                fileChunk.setChunk(chunk);
+                fileChunk.setPosition(i);
+                fileChunks.add(fileChunk);
+            }
+            chunkRepository.saveAll(newChunks);
+            fileChunkRepository.saveAll(fileChunks);
+            entityManager.flush();
+            entityManager.clear();
+            file = entityManager.getReference(FileEntity.class, file.getId());
+        }
+    }
+
+    @Test
+    void testPackedManifestReadBack() throws IOException {
+        System.out.println("\n=== Manifeste en lignes file_chunk vs manifeste compact ===");
+        System.out.println("Format: Manifeste | Chunks | Lignes file_chunk | Octets du manifeste | Requêtes SQL (lecture) | Lecture");
+        System.out.println("------------------------------------------------------------------------");
+
+        File file = tempDir.resolve("manifest.dat").toFile();
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random(16).nextBytes(content);
+        // Une partie répétée : le manifeste référence aussi des chunks déjà vus
+        System.arraycopy(content, 0, content, 12 * 1024 * 1024, 4 * 1024 * 1024);
+        Files.write(file.toPath(), content);
+
+        ChunkingService chunkingService = new ChunkingService();
+        FileReconstructionService reconstructionService = new FileReconstructionService(fileRepository,
+                fileChunkRepository, fileManifestPageRepository, chunkRepository, new CompressionService(),
+                new ChunkStorage(new DatabaseChunkStore(), null, ChunkStorage.Type.DATABASE), null);
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        for (boolean packed : new boolean[]{false, true}) {
+            long rowsBefore = fileChunkRepository.count();
+            Map<String, Object> result = ingest(newService(chunkingService, 1000, packed), file, "manifest.dat");
+            long rows = fileChunkRepository.count() - rowsBefore;
+            long manifestBytes = fileManifestPageRepository.findByFileIdOrderByPageNumber((Long) result.get("fileId"))
+                    .stream().mapToLong(page -> page.getData().length).sum();
+
+            statistics.clear();
+            long start = System.nanoTime();
+            byte[] restored = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return reconstructionService.reconstructFile((Long) result.get("fileId"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-8s | %6d | %6d | %7d | %4d | %7.1f ms%n", packed ? "compact" : "lignes",
+                    result.get("totalChunks"), rows, manifestBytes, statistics.getPrepareStatementCount(),
+                    elapsed / 1e6);
+            assertArrayEquals(content, restored);
+            assertEquals(packed ? 0 : ((Number) result.get("totalChunks")).longValue(), rows);
+        }
+    }
+
+    @Test
+    void testStreamVersusTempFileIngest() throws IOException {
+        System.out.println("\n=== Upload de 32 Mo reçu à ~128 Mo/s : flux découpé à la volée vs fichier temporaire ===");
+        System.out.println("Format: Mode | Chunks | Octets écrits sur disque | Temps total");
+        System.out.println("------------------------------------------------------------------------");
+
+        ChunkingService chunkingService = new ChunkingService();
+        for (int run = 0; run < 2; run++) {
+            for (boolean tempFile : new boolean[]{true, false}) {
+                byte[] content = new byte[32 * 1024 * 1024];
+                new Random(19 + run * 2 + (tempFile ? 1 : 0)).nextBytes(content);
+                DuplicationService service = newService(chunkingService, 1000, false);
+
+                long start = System.nanoTime();
+                long written = 0;
+                Map<String, Object> result;
+                if (tempFile) {
+                    Path path = tempDir.resolve("upload-" + run + ".tmp");
+                    written = Files.copy(throttled(content), path);
+                    result = ingest(service, path.toFile(), "upload.dat");
+                    Files.delete(path);
+                } else {
+                    result = new TransactionTemplate(transactionManager).execute(status -> {
+                        try {
+                            return service.processAndStoreStream(throttled(content), "upload.dat",
+                                    HashingAlgorithm.SHA256, ChunkingService.DEFAULT_STRATEGY, null);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("%-18s | %6d | %9d | %7.1f ms%n", tempFile ? "fichier temporaire" : "flux",
+                        result.get("totalChunks"), written, elapsed / 1e6);
+                assertEquals((long) content.length, result.get("fileSize"));
+            }
+        }
+    }
+
+    /**
+     * Corps de requête simulé : paquets de 64 Ko, une pause de 0,5 ms entre deux.
+     */
+    private InputStream throttled(byte[] content) {
+        return new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                LockSupport.parkNanos(500_000);
+                return super.read(b, off, Math.min(len, 64 * 1024));
+            }
+        };
+    }
+
+    /**
+     * Ingestion validée dans sa propre transaction, comme derrière le proxy @Transactional.
+     */
+    private Map<String, Object> ingest(DuplicationService service, File file, String name) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return service.processAndStoreFile(file, name, file.length(), HashingAlgorithm.SHA256);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private DuplicationService newService(ChunkingService chunkingService, int lookupWindow, boolean packed) {
+        // Index vide et filtre non reconstruit : chaque chunk passe par la base
+        return duplicationService().chunkingService(chunkingService).lookupWindow(lookupWindow)
+                .packedManifest(packed).build();
+    }
+}
@@ -3,12 +3,11 @@ package com.goofy.GoofyFiles.duplication;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Path;
+import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -16,23 +15,17 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.io.TempDir;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.mockingDetails;
 
 import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
 import com.goofy.GoofyFiles.chunking.ChunkingService;
 import com.goofy.GoofyFiles.compression.CompressionService;
-import com.goofy.GoofyFiles.model.ChunkEntity;
-import com.goofy.GoofyFiles.model.FileChunkEntity;
-import com.goofy.GoofyFiles.model.FileEntity;
 import com.goofy.GoofyFiles.repository.ChunkRepository;
-import com.goofy.GoofyFiles.repository.FileChunkRepository;
-import com.goofy.GoofyFiles.repository.FileRepository;
 
-class DuplicationPerformanceTest {
+class DuplicationPerformanceTest extends IngestTestSupport {
 
     private DuplicationService duplicationService;
     private ChunkingService chunkingService;
@@ -45,9 +38,9 @@ class DuplicationPerformanceTest {
     }
 
     @Test
-    void testDuplicationDetectionWithDifferentAlgorithms(@TempDir Path tempDir) throws IOException {
+    void testDuplicationDetectionWithDifferentAlgorithms() throws IOException {
         // Créer un fichier de test avec des données répétitives (1MB)
-        File testFile = createTestFile(tempDir, 1024 * 1024);
+        File testFile = createTestFile(1024 * 1024);
 
         // Tester avec SHA-1
         long startTime = System.nanoTime();
@@ -96,37 +89,12 @@ class DuplicationPerformanceTest {
     }
 
     @Test
-    void testProcessAndStoreFileCompressed(@TempDir Path tempDir) throws IOException {
+    void testProcessAndStoreFileCompressed() throws IOException {
         // Créer un fichier de test avec des données répétitives (1MB)
-        File testFile = createTestFile(tempDir, 1024 * 1024);
-
-        // Utilisation de mocks pour les repositories
-        FileRepository fileRepo = mock(FileRepository.class);
-        when(fileRepo.save(any(FileEntity.class))).thenAnswer(invocation -> {
-            FileEntity entity = invocation.getArgument(0);
-            entity.setId(1L);
-            return entity;
-        });
-
-        ChunkRepository chunkRepo = mock(ChunkRepository.class);
-        // Par défaut, aucun chunk n'est trouvé (pour simuler des chunks nouveaux)
-        when(chunkRepo.findByHashSha1(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.findByHashSha256(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.findByHashBlake3(anyString())).thenReturn(Optional.empty());
-        when(chunkRepo.save(any(ChunkEntity.class))).thenAnswer(invocation -> {
-            ChunkEntity entity = invocation.getArgument(0);
-            entity.setId(1L);
-            return entity;
-        });
-
-        FileChunkRepository fileChunkRepo = mock(FileChunkRepository.class);
-        when(fileChunkRepo.save(any(FileChunkEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
-
-        CompressionService compressionService = new CompressionService();
-
-        // Ré-instancier le service avec toutes les dépendances
-        duplicationService = new DuplicationService(chunkingService, fileRepo, chunkRepo, fileChunkRepo,
-                compressionService);
+        File testFile = createTestFile(1024 * 1024);
+
+        // Ré-instancier le service avec toutes les dépendances, sur la base H2 du test
+        duplicationService = duplicationService().chunkingService(chunkingService).build();
 
         Map<String, Object> result = duplicationService.processAndStoreFileCompressed(
                 testFile,
@@ -149,7 +117,7 @@ class DuplicationPerformanceTest {
         // Vérifier que la taille compressée totale est inférieure à la somme des
         // tailles originales
         List<Chunk> chunks = chunkingService.chunkFile(testFile);
-        long totalOriginalSize = chunks.stream().mapToLong(chunk -> chunk.getData().length).sum();
+        long totalOriginalSize = chunks.stream().mapToLong(chunk -> chunk.copyData().length).sum();
         long totalCompressedSize = ((Number) result.get("totalCompressedSize")).longValue();
         assertTrue(totalCompressedSize < totalOriginalSize,
                 "La taille compressée (" + totalCompressedSize + " octets) doit être inférieure à la taille originale ("
@@ -158,7 +126,70 @@ class DuplicationPerformanceTest {
         System.out.println("ProcessAndStoreFileCompressed result: " + result);
     }
 
-    private File createTestFile(Path tempDir, int size) throws IOException {
+    @Test
+    void testChunkIndexAvoidsRepositoryLookups() throws IOException {
+        System.out.println("\n=== Index des hash en mémoire ===");
+        System.out.println("Format: Envoi | Chunks | Requêtes SQL de recherche | Hits index | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        File testFile = tempDir.resolve("index.dat").toFile();
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random(11).nextBytes(content);
+        Files.write(testFile.toPath(), content);
+
+        // Appels au repository comptés, comportement réel
+        ChunkRepository chunkRepo = mock(ChunkRepository.class, delegatesTo(chunkRepository));
+        ChunkHashIndex index = new ChunkHashIndex(100_000);
+        // Filtre non reconstruit : toujours positif, seul l'index est mesuré
+        duplicationService = duplicationService().chunkRepository(chunkRepo).chunkingService(chunkingService)
+                .chunkHashIndex(index).build();
+
+        int[] lookups = new int[2];
+        int totalChunks = 0;
+        for (int upload = 0; upload < 2; upload++) {
+            long start = System.nanoTime();
+            Map<String, Object> result = duplicationService.processAndStoreFile(testFile, "index.dat",
+                    content.length, HashingAlgorithm.SHA256);
+            long elapsed = System.nanoTime() - start;
+            totalChunks = (int) result.get("totalChunks");
+            lookups[upload] = mockingDetails(chunkRepo).getInvocations().stream()
+                    .filter(invocation -> invocation.getMethod().getName().equals("findByHashSha256In"))
+                    .mapToInt(invocation -> 1)
+                    .sum() - (upload == 0 ? 0 : lookups[0]);
+            Map<?, ?> stats = (Map<?, ?>) index.getStats().get(HashingAlgorithm.SHA256.name());
+            System.out.printf("%d | %6d | %6d | %6d | %6.1f ms%n", upload + 1, result.get("totalChunks"),
+                    lookups[upload], stats.get("hits"), elapsed / 1e6);
+        }
+
+        // Premier envoi : une requête par fenêtre de chunks ; second envoi : tout vient de l'index
+        assertEquals((totalChunks + 999) / 1000, lookups[0]);
+        assertEquals(0, lookups[1]);
+        assertEquals(chunkRepository.count(), index.size(HashingAlgorithm.SHA256));
+        assertEquals(totalChunks, chunkRepository.count());
+    }
+
+    @Test
+    void testChunkIndexMemoryPerEntry() {
+        int entries = 500_000;
+        ChunkHashIndex index = new ChunkHashIndex(entries);
+        Random random = new Random(12);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        for (int i = 0; i < entries; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            index.put(HashingAlgorithm.SHA256, ChunkHash.of(digest), i);
+        }
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+
+        double bytesPerEntry = (after - before) / (double) entries;
+        System.out.printf("%nIndex des hash : %d entrées SHA-256, ~%.0f octets par entrée%n", entries, bytesPerEntry);
+        assertEquals(entries, index.size(HashingAlgorithm.SHA256));
+    }
+
+    private File createTestFile(int size) throws IOException {
         File file = tempDir.resolve("test.dat").toFile();
         try (FileOutputStream fos = new FileOutputStream(file)) {
             // Créer quelques patterns fixes pour garantir des doublons
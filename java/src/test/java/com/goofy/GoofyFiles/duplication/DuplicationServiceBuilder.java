@@ -0,0 +1,153 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.repository.ChunkCopyWriter;
+import com.goofy.GoofyFiles.repository.ChunkReferenceWriter;
+import com.goofy.GoofyFiles.repository.ChunkRepository;
+import com.goofy.GoofyFiles.repository.ChunkUpsertWriter;
+import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
+import com.goofy.GoofyFiles.repository.FileRepository;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+import com.goofy.GoofyFiles.storage.DatabaseChunkStore;
+
+/**
+ * DuplicationService des tests, avec les collaborateurs de la production sur la
+ * base du test : chaque service construit a son propre index, son filtre et ses
+ * réservations, comme un processus. Seuls les collaborateurs qu'un test fait
+ * varier sont à préciser.
+ */
+public final class DuplicationServiceBuilder {
+
+    private final FileRepository fileRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final FileManifestPageRepository fileManifestPageRepository;
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+    private final Path filterFile;
+
+    private ChunkRepository chunkRepository;
+    private ChunkingService chunkingService;
+    private ChunkHashIndex chunkHashIndex;
+    private ChunkHashFilter chunkHashFilter;
+    private ChunkUpsertWriter chunkUpsertWriter;
+    private InFlightHashes inFlightHashes;
+    private ChunkStorage chunkStorage;
+    private int lookupWindow = 1000;
+    private boolean packedManifest;
+    private Duration gracePeriod = Duration.ofHours(6);
+
+    DuplicationServiceBuilder(FileRepository fileRepository, ChunkRepository chunkRepository,
+            FileChunkRepository fileChunkRepository, FileManifestPageRepository fileManifestPageRepository,
+            DataSource dataSource, PlatformTransactionManager transactionManager, Path filterFile) {
+        this.fileRepository = fileRepository;
+        this.chunkRepository = chunkRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.fileManifestPageRepository = fileManifestPageRepository;
+        this.dataSource = dataSource;
+        this.transactionManager = transactionManager;
+        this.filterFile = filterFile;
+    }
+
+    /**
+     * Repository des chunks du service, par exemple pour en compter les appels.
+     */
+    public DuplicationServiceBuilder chunkRepository(ChunkRepository chunkRepository) {
+        this.chunkRepository = chunkRepository;
+        return this;
+    }
+
+    public DuplicationServiceBuilder chunkingService(ChunkingService chunkingService) {
+        this.chunkingService = chunkingService;
+        return this;
+    }
+
+    public DuplicationServiceBuilder chunkHashIndex(ChunkHashIndex chunkHashIndex) {
+        this.chunkHashIndex = chunkHashIndex;
+        return this;
+    }
+
+    public DuplicationServiceBuilder chunkHashFilter(ChunkHashFilter chunkHashFilter) {
+        this.chunkHashFilter = chunkHashFilter;
+        return this;
+    }
+
+    public DuplicationServiceBuilder chunkUpsertWriter(ChunkUpsertWriter chunkUpsertWriter) {
+        this.chunkUpsertWriter = chunkUpsertWriter;
+        return this;
+    }
+
+    public DuplicationServiceBuilder inFlightHashes(InFlightHashes inFlightHashes) {
+        this.inFlightHashes = inFlightHashes;
+        return this;
+    }
+
+    public DuplicationServiceBuilder chunkStorage(ChunkStorage chunkStorage) {
+        this.chunkStorage = chunkStorage;
+        return this;
+    }
+
+    public DuplicationServiceBuilder lookupWindow(int lookupWindow) {
+        this.lookupWindow = lookupWindow;
+        return this;
+    }
+
+    public DuplicationServiceBuilder packedManifest(boolean packedManifest) {
+        this.packedManifest = packedManifest;
+        return this;
+    }
+
+    /**
+     * Délai de grâce du ramasse-miettes : les chunks retenus par un upload sont
+     * renouvelés à chaque moitié de délai.
+     */
+    public DuplicationServiceBuilder gracePeriod(Duration gracePeriod) {
+        this.gracePeriod = gracePeriod;
+        return this;
+    }
+
+    public DuplicationService build() {
+        try {
+            ChunkUpsertWriter upsertWriter = chunkUpsertWriter;
+            if (upsertWriter == null) {
+                upsertWriter = new ChunkUpsertWriter(dataSource, transactionManager);
+                upsertWriter.detectDatabase();
+            }
+            // Jamais disponible sur H2 : les liens passent par les batchs JDBC
+            ChunkCopyWriter copyWriter = new ChunkCopyWriter(dataSource, 20000);
+            copyWriter.detectDatabase();
+            return new DuplicationService(
+                    chunkingService != null ? chunkingService : new ChunkingService(),
+                    fileRepository,
+                    chunkRepository,
+                    fileChunkRepository,
+                    new CompressionService(),
+                    chunkHashIndex != null ? chunkHashIndex : new ChunkHashIndex(100_000),
+                    chunkHashFilter != null ? chunkHashFilter
+                            : new ChunkHashFilter(chunkRepository, 100_000, 0.01, filterFile.toString()),
+                    copyWriter,
+                    upsertWriter,
+                    new ChunkReferenceWriter(dataSource),
+                    inFlightHashes != null ? inFlightHashes : new InFlightHashes(Duration.ofMinutes(1)),
+                    chunkStorage != null ? chunkStorage
+                            : new ChunkStorage(new DatabaseChunkStore(), null, ChunkStorage.Type.DATABASE),
+                    fileManifestPageRepository,
+                    new IngestPipeline(4, 2, 2, 2),
+                    transactionManager,
+                    lookupWindow,
+                    packedManifest,
+                    gracePeriod);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
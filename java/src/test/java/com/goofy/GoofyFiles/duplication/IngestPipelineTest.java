@@ -0,0 +1,160 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkHash;
+import com.goofy.GoofyFiles.chunking.ChunkIterator;
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
+
+class IngestPipelineTest {
+
+    private final ChunkingService chunkingService = new ChunkingService();
+    private final CompressionService compressionService = new CompressionService();
+
+    @Test
+    void testBatchesPersistedInFileOrder(@TempDir Path tempDir) throws IOException {
+        File file = randomFile(tempDir, 8 * 1024 * 1024);
+        List<Chunk> expected = chunkingService.chunkFile(file, ChunkingStrategyType.FASTCDC);
+
+        List<Chunk> persisted = new ArrayList<>();
+        IngestPipeline pipeline = new IngestPipeline(2, 4, 3, 4);
+        try (ChunkIterator chunks = chunkingService.iterateUnhashedMappedChunks(file, ChunkingStrategyType.FASTCDC)) {
+            pipeline.run(chunks, HashingAlgorithm.SHA256, 16, new StoringStages(persisted, null));
+        }
+
+        assertEquals(expected.size(), persisted.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPosition(), persisted.get(i).getPosition());
+            assertEquals(expected.get(i).getHash(), persisted.get(i).getHash());
+        }
+        Map<String, Object> stats = pipeline.getLastRunStats();
+        assertEquals((long) expected.size(), stats.get("chunks"));
+    }
+
+    @Test
+    void testStageFailureStopsPipeline(@TempDir Path tempDir) throws IOException {
+        File file = randomFile(tempDir, 8 * 1024 * 1024);
+        IngestPipeline pipeline = new IngestPipeline(1, 2, 2, 2);
+        IngestPipeline.Stages failing = new StoringStages(new ArrayList<>(), null) {
+            @Override
+            public byte[] payload(Chunk chunk) {
+                throw new IllegalStateException("Compression impossible");
+            }
+        };
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (ChunkIterator chunks = chunkingService.iterateUnhashedMappedChunks(file,
+                    ChunkingStrategyType.FASTCDC)) {
+                IllegalStateException e = assertThrows(IllegalStateException.class,
+                        () -> pipeline.run(chunks, HashingAlgorithm.SHA256, 8, failing));
+                assertEquals("Compression impossible", e.getMessage());
+            }
+        });
+    }
+
+    @Test
+    void testStageParallelism(@TempDir Path tempDir) throws IOException {
+        System.out.println("\n=== Pipeline d'ingestion (ZSTD, recherche simulée à 2 ms par lot) ===");
+        System.out.println("Format: Threads hash/recherche/compression | Temps | Débit | Occupation des étages | File la plus pleine");
+        System.out.println("------------------------------------------------------------------------");
+
+        File file = randomFile(tempDir, 64 * 1024 * 1024);
+        int[][] configurations = {{1, 1, 1}, {2, 2, 2}, {4, 2, 4}};
+        long[] elapsed = new long[configurations.length];
+        for (int c = 0; c < configurations.length; c++) {
+            int[] threads = configurations[c];
+            IngestPipeline pipeline = new IngestPipeline(4, threads[0], threads[1], threads[2]);
+            List<Chunk> persisted = new ArrayList<>();
+            long start = System.nanoTime();
+            try (ChunkIterator chunks = chunkingService.iterateUnhashedMappedChunks(file,
+                    ChunkingStrategyType.FASTCDC)) {
+                pipeline.run(chunks, HashingAlgorithm.SHA256, 1000, new StoringStages(persisted, CompressionType.ZSTD));
+            }
+            elapsed[c] = System.nanoTime() - start;
+
+            Map<String, Object> stats = pipeline.getLastRunStats();
+            StringBuilder utilization = new StringBuilder();
+            ((Map<?, ?>) stats.get("stages")).forEach((stage, values) -> utilization.append(stage).append('=')
+                    .append(((Map<?, ?>) values).get("utilization")).append(' '));
+            String fullestQueue = ((Map<?, ?>) stats.get("queues")).entrySet().stream()
+                    .max((a, b) -> Double.compare(
+                            (Double) ((Map<?, ?>) a.getValue()).get("averageOccupancy"),
+                            (Double) ((Map<?, ?>) b.getValue()).get("averageOccupancy")))
+                    .map(entry -> entry.getKey() + " " + ((Map<?, ?>) entry.getValue()).get("averageOccupancy"))
+                    .orElse("-");
+            System.out.printf("%d/%d/%d | %7.1f ms | %6.1f Mo/s | %s| %s%n", threads[0], threads[1], threads[2],
+                    elapsed[c] / 1e6, file.length() / (elapsed[c] / 1e9) / (1024 * 1024), utilization, fullestQueue);
+        }
+    }
+
+    private File randomFile(Path tempDir, int size) throws IOException {
+        File file = tempDir.resolve("pipeline-" + size + ".dat").toFile();
+        byte[] content = new byte[size];
+        Random random = new Random(size);
+        // Moitié aléatoire, moitié texte répétitif : la compression a du travail
+        for (int i = 0; i < size; i++) {
+            content[i] = (i / 65536) % 2 == 0 ? (byte) random.nextInt() : (byte) ('a' + (i % 7) + random.nextInt(2));
+        }
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Étages de test : recherche simulée (aucun chunk connu), persistance en mémoire.
+     */
+    private class StoringStages implements IngestPipeline.Stages {
+        private final List<Chunk> persisted;
+        private final CompressionType compressionType;
+
+        StoringStages(List<Chunk> persisted, CompressionType compressionType) {
+            this.persisted = persisted;
+            this.compressionType = compressionType;
+        }
+
+        @Override
+        public Map<ChunkHash, Long> lookup(List<Chunk> chunks) {
+            try {
+                // Aller-retour vers la base
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Map.of();
+        }
+
+        @Override
+        public byte[] payload(Chunk chunk) {
+            return compressionType == null
+                    ? chunk.copyData()
+                    : compressionService.compress(chunk.asReadOnlyBuffer(), compressionType);
+        }
+
+        @Override
+        public void persist(IngestPipeline.Batch batch) {
+            for (Chunk chunk : batch.getChunks()) {
+                if (batch.getPayload(chunk.getHash()) == null) {
+                    throw new IllegalStateException("Chunk sans données: " + chunk.getPosition());
+                }
+                persisted.add(chunk);
+            }
+        }
+    }
+}
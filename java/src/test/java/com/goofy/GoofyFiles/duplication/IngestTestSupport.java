@@ -0,0 +1,110 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.goofy.GoofyFiles.repository.ChunkRepository;
+import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
+import com.goofy.GoofyFiles.repository.FileRepository;
+
+/**
+ * Base des tests d'ingestion sur H2 : pas de transaction englobante, les uploads
+ * ouvrent les leurs comme depuis le contrôleur, et les tables sont vidées après
+ * chaque test. Une sous-classe qui redéclare {@code @DataJpaTest} (propriétés
+ * propres) doit aussi redéclarer {@code @Transactional(NOT_SUPPORTED)} : sans
+ * quoi la transaction de test de {@code @DataJpaTest} l'emporte.
+ */
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public abstract class IngestTestSupport {
+
+    @Autowired
+    protected FileRepository fileRepository;
+    @Autowired
+    protected ChunkRepository chunkRepository;
+    @Autowired
+    protected FileChunkRepository fileChunkRepository;
+    @Autowired
+    protected FileManifestPageRepository fileManifestPageRepository;
+    @Autowired
+    protected DataSource dataSource;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @TempDir
+    protected Path tempDir;
+
+    private int services;
+
+    @AfterEach
+    protected void deleteAllRows() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fileChunkRepository.deleteAllInBatch();
+            fileManifestPageRepository.deleteAllInBatch();
+            chunkRepository.deleteAllInBatch();
+            fileRepository.deleteAllInBatch();
+        });
+    }
+
+    /**
+     * Service d'ingestion sur la base du test, chacun avec son instantané de
+     * filtre.
+     */
+    protected DuplicationServiceBuilder duplicationService() {
+        return new DuplicationServiceBuilder(fileRepository, chunkRepository, fileChunkRepository,
+                fileManifestPageRepository, dataSource, transactionManager,
+                tempDir.resolve("filter-" + services++ + ".bin"));
+    }
+
+    /**
+     * Flux qui s'arrête après {@code stallAt} octets jusqu'à {@code resume},
+     * comme un client lent au milieu de son envoi.
+     */
+    protected static InputStream stallingStream(byte[] content, int stallAt, CountDownLatch stalled,
+            CountDownLatch resume) {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (position == stallAt && resume.getCount() > 0) {
+                    stalled.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (position == content.length) {
+                    return -1;
+                }
+                int read = Math.min(length, (position < stallAt ? stallAt : content.length) - position);
+                System.arraycopy(content, position, buffer, offset, read);
+                position += read;
+                return read;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.goofy.GoofyFiles.chunking.Chunk;
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.chunking.ChunkingStrategyType;
+import com.goofy.GoofyFiles.client.NegotiatedUploadClient;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+
+/**
+ * Upload négocié de bout en bout, avec le client de référence, sur un serveur
+ * démarré avec une base H2 embarquée.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:negotiation;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.devtools.restart.enabled=false",
+        "spring.devtools.livereload.enabled=false"
+})
+class NegotiatedUploadTest {
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    @TempDir
+    static Path tempDir;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ChunkingService chunkingService;
+    @Autowired
+    private FileReconstructionService reconstructionService;
+
+    @DynamicPropertySource
+    static void localFiles(DynamicPropertyRegistry registry) {
+        registry.add("goofy.chunk-filter.snapshot-file", () -> tempDir.resolve("chunk-filter.bin").toString());
+        registry.add("goofy.chunk-store.pack.directory", () -> tempDir.resolve("packs").toString());
+    }
+
+    @Test
+    void testOnlyMissingChunksAreTransferred() throws Exception {
+        System.out.println("\n=== Upload négocié : seuls les chunks manquants sont envoyés ===");
+        System.out.println("Format: Version | Taille | Chunks | Chunks envoyés | Octets envoyés | Économie");
+        System.out.println("------------------------------------------------------------------------");
+
+        NegotiatedUploadClient client = new NegotiatedUploadClient(URI.create("http://localhost:" + port + "/"),
+                chunkingService);
+        Random random = new Random(20);
+        byte[][] blocks = new byte[16][BLOCK_SIZE];
+        for (byte[] block : blocks) {
+            random.nextBytes(block);
+        }
+        File v1 = write("document-v1.bin", blocks);
+        // Deuxième version : un bloc remplacé au milieu, un bloc ajouté à la fin
+        byte[][] changed = new byte[blocks.length + 1][];
+        System.arraycopy(blocks, 0, changed, 0, blocks.length);
+        changed[8] = new byte[BLOCK_SIZE];
+        random.nextBytes(changed[8]);
+        changed[blocks.length] = new byte[BLOCK_SIZE];
+        random.nextBytes(changed[blocks.length]);
+        File v2 = write("document-v2.bin", changed);
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (File file : new File[]{v1, v2, v1}) {
+            Map<String, Object> result = client.upload(file, HashingAlgorithm.SHA256, ChunkingStrategyType.FASTCDC,
+                    null);
+            results.add(result);
+            long transferred = ((Number) result.get("transferredBytes")).longValue();
+            System.out.printf("%s | %d | %d | %d | %d | %5.1f %%%n", file.getName(), file.length(),
+                    result.get("totalChunks"), result.get("uploadedChunks"), transferred,
+                    100.0 * (file.length() - transferred) / file.length());
+
+            byte[] restored = reconstructionService.reconstructFile(((Number) result.get("fileId")).longValue());
+            assertArrayEquals(Files.readAllBytes(file.toPath()), restored);
+        }
+
+        long distinctV1 = chunkingService.chunkFile(v1, ChunkingStrategyType.FASTCDC).stream()
+                .map(Chunk::getHash).distinct().count();
+        assertEquals(distinctV1, ((Number) results.get(0).get("uploadedChunks")).longValue());
+        // Seuls les chunks autour des blocs modifiés repartent
+        assertTrue(((Number) results.get(1).get("transferredBytes")).longValue() < v2.length() / 3);
+        assertEquals(0, ((Number) results.get(2).get("uploadedChunks")).intValue());
+    }
+
+    @Test
+    void testCorruptedPayloadIsRejected() throws Exception {
+        byte[] content = new byte[BLOCK_SIZE];
+        new Random(21).nextBytes(content);
+        File file = write("corrupted.bin", new byte[][]{content});
+        List<String> hashes = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (Chunk chunk : chunkingService.chunkFile(file, ChunkingStrategyType.FASTCDC)) {
+            hashes.add(chunk.getHash().toHex());
+            sizes.add(chunk.getOriginalSize());
+        }
+
+        HttpClient http = HttpClient.newHttpClient();
+        ObjectMapper objectMapper = new ObjectMapper();
+        URI base = URI.create("http://localhost:" + port + "/api/negotiation/");
+        HttpResponse<String> opened = http.send(HttpRequest.newBuilder(base.resolve("sessions"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of(
+                        "fileName", file.getName(), "strategy", "FASTCDC", "hashes", hashes, "sizes", sizes))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, opened.statusCode());
+        String sessionId = (String) objectMapper.readValue(opened.body(), Map.class).get("sessionId");
+
+        // Un octet modifié : la taille est bonne mais le hash ne correspond plus
+        byte[] corrupted = content.clone();
+        corrupted[100] ^= 1;
+        HttpResponse<String> rejected = http.send(HttpRequest.newBuilder(base.resolve("sessions/" + sessionId
+                + "/chunks"))
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(corrupted))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(400, rejected.statusCode());
+
+        HttpResponse<String> incomplete = http.send(HttpRequest.newBuilder(base.resolve("sessions/" + sessionId
+                + "/complete"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(409, incomplete.statusCode());
+
+        HttpResponse<String> unknown = http.send(HttpRequest.newBuilder(base.resolve("sessions/inconnue/complete"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, unknown.statusCode());
+    }
+
+    private File write(String name, byte[][] blocks) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] block : blocks) {
+            content.writeBytes(block);
+        }
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), content.toByteArray());
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+package com.goofy.GoofyFiles.duplication;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+class PackedManifestTest {
+
+    @Test
+    void testRoundTripAcrossPages() {
+        Random random = new Random(16);
+        int entries = PackedManifest.PAGE_ENTRIES * 2 + 123;
+        long[] ids = new long[entries];
+        int[] lengths = new int[entries];
+        PackedManifest.Builder builder = PackedManifest.builder();
+        for (int i = 0; i < entries; i++) {
+            // Chunks neufs consécutifs, mêlés de doublons plus anciens
+            ids[i] = random.nextInt(10) == 0 ? 1 + random.nextInt(1_000_000) : 2_000_000L + i;
+            lengths[i] = 2048 + random.nextInt(62 * 1024);
+            builder.add(ids[i], lengths[i]);
+        }
+        List<byte[]> pages = builder.build();
+        assertEquals(3, pages.size());
+
+        PackedManifest manifest = PackedManifest.decode(pages);
+        assertEquals(entries, manifest.size());
+        long offset = 0;
+        for (int i = 0; i < entries; i++) {
+            assertEquals(ids[i], manifest.getChunkId(i));
+            assertEquals(lengths[i], manifest.getLength(i));
+            assertEquals(offset, manifest.getOffset(i));
+            offset += lengths[i];
+        }
+    }
+
+    @Test
+    void testEmptyManifest() {
+        List<byte[]> pages = PackedManifest.builder().build();
+        assertEquals(1, pages.size());
+        assertEquals(0, PackedManifest.decode(pages).size());
+    }
+
+    @Test
+    void testManifestSize() {
+        System.out.println("\n=== Taille du manifeste d'un fichier de 1 Go (chunks de 8 Ko en moyenne) ===");
+        System.out.println("Format: Doublons | Chunks | Pages | Octets | Octets/chunk | Encodage | Décodage");
+        System.out.println("------------------------------------------------------------------------");
+
+        int entries = 131_072;
+        for (int duplicatePercent : new int[]{0, 10, 50, 90}) {
+            Random random = new Random(duplicatePercent);
+            long nextNewId = 5_000_000;
+            long start = System.nanoTime();
+            PackedManifest.Builder builder = PackedManifest.builder();
+            for (int i = 0; i < entries; i++) {
+                long id = random.nextInt(100) < duplicatePercent ? 1 + random.nextInt(5_000_000) : nextNewId++;
+                builder.add(id, 2048 + random.nextInt(62 * 1024));
+            }
+            List<byte[]> pages = builder.build();
+            long encoded = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PackedManifest manifest = PackedManifest.decode(pages);
+            long decoded = System.nanoTime() - start;
+
+            long bytes = pages.stream().mapToLong(page -> page.length).sum();
+            System.out.printf("%3d%% | %d | %d | %8d | %5.2f | %6.1f ms | %6.1f ms%n", duplicatePercent, entries,
+                    pages.size(), bytes, (double) bytes / entries, encoded / 1e6, decoded / 1e6);
+            assertEquals(entries, manifest.size());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.goofy.GoofyFiles.duplication.ChunkDeduplicationMigration;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+/**
+ * Branche PostgreSQL de l'insertion des chunks ({@code ON CONFLICT ...
+ * RETURNING}) et migration des doublons, que H2 ne sait pas exécuter. Lancé
+ * seulement contre une vraie base, dans un schéma jetable, par exemple celle du
+ * docker-compose :
+ * {@code GOOFY_TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/goofyfilesdb mvn test}
+ * (utilisateur et mot de passe {@code postgres} par défaut).
+ */
+@EnabledIfEnvironmentVariable(named = "GOOFY_TEST_POSTGRES_URL", matches = ".+")
+class ChunkUpsertWriterPostgresTest {
+
+    private static final int THREADS = 4;
+
+    private final String schema = "goofy_upsert_test_" + System.nanoTime();
+    private JdbcTemplate admin;
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void createSchema() {
+        String url = System.getenv("GOOFY_TEST_POSTGRES_URL");
+        String username = System.getenv().getOrDefault("GOOFY_TEST_POSTGRES_USERNAME", "postgres");
+        String password = System.getenv().getOrDefault("GOOFY_TEST_POSTGRES_PASSWORD", "postgres");
+        admin = new JdbcTemplate(new DriverManagerDataSource(url, username, password));
+        admin.execute("CREATE SCHEMA " + schema);
+
+        dataSource = new DriverManagerDataSource(url, username, password);
+        Properties properties = new Properties();
+        properties.setProperty("currentSchema", schema);
+        dataSource.setConnectionProperties(properties);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+
+        // Schéma d'Hibernate pour ces tables, sans les contraintes uniques ; séquence au-delà des ids écrits ici
+        jdbcTemplate.execute("CREATE SEQUENCE chunk_seq START WITH 1000 INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE chunk (id bigint PRIMARY KEY, data bytea, stored_size integer, "
+                + "pack_id bigint, pack_offset bigint, hash_sha_1 varchar(255), hash_sha_256 varchar(255), "
+                + "hash_blake3 varchar(255), created_at timestamp(6), ref_count integer, "
+                + "unreferenced_since timestamp(6), last_accessed_at timestamp(6), storage_tier varchar(255), "
+                + "compression_type varchar(255), original_size integer)");
+        jdbcTemplate.execute("CREATE TABLE files (id bigint PRIMARY KEY, name varchar(255), "
+                + "extension varchar(255), size bigint, chunking_strategy varchar(255), manifest_pages integer, "
+                + "created_at timestamp(6))");
+        jdbcTemplate.execute("CREATE TABLE file_chunk (id bigint PRIMARY KEY, file_id bigint REFERENCES files, "
+                + "chunk_id bigint REFERENCES chunk, position integer, created_at timestamp(6))");
+        jdbcTemplate.execute("CREATE TABLE file_manifest_page (id bigint PRIMARY KEY, "
+                + "file_id bigint REFERENCES files, page_number integer, data bytea)");
+    }
+
+    @AfterEach
+    void dropSchema() {
+        admin.execute("DROP SCHEMA " + schema + " CASCADE");
+    }
+
+    @Test
+    void testMigrationMergesDuplicatesThenConflictsResolveToTheStoredRow() throws Exception {
+        insertRow(1, "a", 1);
+        insertRow(2, "a", 1);
+        insertRow(3, "b", 0);
+        jdbcTemplate.update("INSERT INTO files (id, name, size) VALUES (1, 'f', 2)");
+        jdbcTemplate.update("INSERT INTO file_chunk (id, file_id, chunk_id, position) VALUES (1, 1, 1, 0), "
+                + "(2, 1, 2, 1)");
+
+        new ChunkDeduplicationMigration(dataSource, transactionManager).migrate();
+
+        assertEquals(List.of(1L, 3L), jdbcTemplate.queryForList("SELECT id FROM chunk ORDER BY id", Long.class));
+        assertEquals(List.of(1L, 1L), jdbcTemplate.queryForList(
+                "SELECT chunk_id FROM file_chunk ORDER BY position", Long.class));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT ref_count FROM chunk WHERE id = 1", Integer.class));
+
+        ChunkUpsertWriter writer = writer();
+        Map<String, Long> ids = writer.insertIfAbsent(List.of(chunk("a"), chunk("c")));
+        assertEquals(1L, ids.get("a"));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk", Integer.class));
+        assertEquals(ids.get("c"), jdbcTemplate.queryForObject("SELECT id FROM chunk WHERE hash_sha_256 = 'c'",
+                Long.class));
+    }
+
+    @Test
+    void testConcurrentInsertsStoreEachHashOnce() throws Exception {
+        new ChunkDeduplicationMigration(dataSource, transactionManager).migrate();
+        ChunkUpsertWriter writer = writer();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Long>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * 500;
+            results.add(executor.submit(() -> {
+                // Chaque lot recouvre la moitié du suivant, plus d'une requête de 1000 lignes
+                List<ChunkEntity> chunks = new ArrayList<>();
+                for (int i = offset; i < offset + 1500; i++) {
+                    chunks.add(chunk(String.format("%064x", i)));
+                }
+                start.await();
+                return writer.insertIfAbsent(chunks);
+            }));
+        }
+        start.countDown();
+        Map<String, Long> seen = new HashMap<>();
+        for (Future<Map<String, Long>> result : results) {
+            Map<String, Long> ids = result.get(60, TimeUnit.SECONDS);
+            assertEquals(1500, ids.size());
+            ids.forEach((hash, id) -> assertEquals(seen.computeIfAbsent(hash, h -> id), id));
+        }
+        executor.shutdown();
+
+        assertEquals(THREADS * 500 + 1000, seen.size());
+        assertEquals(seen.size(), jdbcTemplate.queryForObject("SELECT count(*) FROM chunk", Integer.class));
+    }
+
+    @Test
+    void testMissingIndexIsAnErrorInsteadOfADuplicate() throws Exception {
+        new ChunkDeduplicationMigration(dataSource, transactionManager).migrate();
+        ChunkUpsertWriter writer = writer();
+        writer.insertIfAbsent(List.of(chunk("a")));
+        jdbcTemplate.execute("ALTER TABLE chunk DROP CONSTRAINT ux_chunk_hash_sha_256");
+
+        assertThrows(DataAccessException.class, () -> writer.insertIfAbsent(List.of(chunk("a"))));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk", Integer.class));
+    }
+
+    private ChunkUpsertWriter writer() throws Exception {
+        ChunkUpsertWriter writer = new ChunkUpsertWriter(dataSource, transactionManager);
+        writer.detectDatabase();
+        return writer;
+    }
+
+    private void insertRow(long id, String hash, int refCount) {
+        jdbcTemplate.update("INSERT INTO chunk (id, hash_sha_256, created_at, ref_count) VALUES (?, ?, ?, ?)", id,
+                hash, Timestamp.valueOf(LocalDateTime.now()), refCount);
+    }
+
+    private static ChunkEntity chunk(String hash) {
+        ChunkEntity chunk = new ChunkEntity();
+        chunk.setHashSha256(hash);
+        chunk.setData(hash.getBytes());
+        chunk.setStoredSize(hash.length());
+        return chunk;
+    }
+}
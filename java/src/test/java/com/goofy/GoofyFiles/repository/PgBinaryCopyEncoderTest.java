@@ -0,0 +1,90 @@
+package com.goofy.GoofyFiles.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+class PgBinaryCopyEncoderTest {
+
+    @Test
+    void testRowLayout() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PgBinaryCopyEncoder encoder = new PgBinaryCopyEncoder(bytes);
+        encoder.startRow(5);
+        encoder.writeBigint(42L);
+        encoder.writeInteger(7);
+        encoder.writeText("é");
+        encoder.writeBytea(null);
+        encoder.writeTimestamp(LocalDateTime.of(2000, 1, 1, 0, 0, 1));
+        encoder.finish();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        byte[] signature = new byte[11];
+        buffer.get(signature);
+        assertArrayEquals("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1), signature);
+        assertEquals(0, buffer.getInt());
+        assertEquals(0, buffer.getInt());
+
+        assertEquals(5, buffer.getShort());
+        assertEquals(8, buffer.getInt());
+        assertEquals(42L, buffer.getLong());
+        assertEquals(4, buffer.getInt());
+        assertEquals(7, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals((byte) 0xc3, buffer.get());
+        assertEquals((byte) 0xa9, buffer.get());
+        assertEquals(-1, buffer.getInt());
+        assertEquals(8, buffer.getInt());
+        assertEquals(1_000_000L, buffer.getLong());
+
+        assertEquals(-1, buffer.getShort());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void testEncodingThroughput() throws IOException {
+        System.out.println("\n=== Encodage binaire COPY des lignes file_chunk ===");
+        System.out.println("Format: Lignes | Octets | Temps | Débit");
+        System.out.println("------------------------------------------------------------------------");
+
+        int rows = 1_000_000;
+        LocalDateTime now = LocalDateTime.now();
+        long[] written = new long[1];
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+            }
+        };
+
+        long start = System.nanoTime();
+        PgBinaryCopyEncoder encoder = new PgBinaryCopyEncoder(sink);
+        for (int i = 0; i < rows; i++) {
+            encoder.startRow(5);
+            encoder.writeBigint((long) i);
+            encoder.writeBigint(1L);
+            encoder.writeBigint((long) i);
+            encoder.writeInteger(i);
+            encoder.writeTimestamp(now);
+        }
+        encoder.finish();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d | %d | %.1f ms | %.0f lignes/s%n", rows, written[0], elapsed / 1e6,
+                rows / (elapsed / 1e9));
+        // En-tête de 19 octets ; par ligne, nombre de colonnes, 5 longueurs, 4 valeurs de 8 octets et 1 de 4
+        assertEquals(19 + rows * (2L + 5 * 4 + 4 * 8 + 4) + 2, written[0]);
+    }
+}
@@ -25,8 +25,12 @@ import com.goofy.GoofyFiles.compression.CompressionService;
 import com.goofy.GoofyFiles.model.ChunkEntity;
 import com.goofy.GoofyFiles.model.FileChunkEntity;
 import com.goofy.GoofyFiles.model.FileEntity;
+import com.goofy.GoofyFiles.repository.ChunkRepository;
 import com.goofy.GoofyFiles.repository.FileChunkRepository;
+import com.goofy.GoofyFiles.repository.FileManifestPageRepository;
 import com.goofy.GoofyFiles.repository.FileRepository;
+import com.goofy.GoofyFiles.storage.ChunkStorage;
+import com.goofy.GoofyFiles.storage.DatabaseChunkStore;
 
 class FileReconstructionServiceTest {
 
@@ -36,6 +40,12 @@ class FileReconstructionServiceTest {
     @Mock
     private FileChunkRepository fileChunkRepository;
 
+    @Mock
+    private FileManifestPageRepository fileManifestPageRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
     @Mock
     private CompressionService compressionService;
 
@@ -48,7 +58,9 @@ class FileReconstructionServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        service = new FileReconstructionService(fileRepository, fileChunkRepository, compressionService);
+        service = new FileReconstructionService(fileRepository, fileChunkRepository, fileManifestPageRepository,
+                chunkRepository, compressionService,
+                new ChunkStorage(new DatabaseChunkStore(), null, ChunkStorage.Type.DATABASE), null);
     }
 
     @Test
@@ -0,0 +1,115 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
+import com.goofy.GoofyFiles.duplication.DuplicationService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+import com.goofy.GoofyFiles.duplication.IngestTestSupport;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+
+/**
+ * Fichiers stockés en bytea, migrés vers les packs : les données quittent la
+ * base et les fichiers se reconstruisent à l'identique.
+ */
+class ChunkPackMigratorTest extends IngestTestSupport {
+
+    @Test
+    void testMigrateDatabaseChunksToPacks() throws Exception {
+        System.out.println("\n=== Migration des chunks de la base vers les packs ===");
+        System.out.println("Format: Étape | Chunks en base | Octets en base | Chunks en pack | Segments | Temps");
+        System.out.println("------------------------------------------------------------------------");
+
+        PackChunkStore packStore = new PackChunkStore(tempDir.resolve("packs").toString(), DataSize.ofMegabytes(8));
+        ChunkStorage databaseStorage = new ChunkStorage(new DatabaseChunkStore(), packStore,
+                ChunkStorage.Type.DATABASE);
+        DuplicationService duplicationService = newService(databaseStorage);
+
+        List<File> files = new ArrayList<>();
+        List<Long> fileIds = new ArrayList<>();
+        Random random = new Random(21);
+        for (int i = 0; i < 4; i++) {
+            byte[] content = new byte[4 * 1024 * 1024];
+            random.nextBytes(content);
+            // Moitié compressible : des chunks LZ4 et des chunks qui ne gagnent rien
+            for (int j = content.length / 2; j < content.length; j++) {
+                content[j] = (byte) ('a' + j % 13);
+            }
+            File file = tempDir.resolve("migrate-" + i + ".dat").toFile();
+            Files.write(file.toPath(), content);
+            files.add(file);
+            Map<String, Object> result = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return duplicationService.processAndStoreFileCompressed(file, file.getName(), file.length(),
+                            HashingAlgorithm.SHA256, CompressionType.LZ4, ChunkingService.DEFAULT_STRATEGY);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            fileIds.add((Long) result.get("fileId"));
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        long chunks = chunkRepository.count();
+        printState(jdbcTemplate, packStore, "avant", 0);
+        assertEquals(chunks, countInDatabase(jdbcTemplate));
+
+        ChunkPackMigrator migrator = new ChunkPackMigrator(dataSource, transactionManager, packStore);
+        Map<String, Object> migration = migrator.migrateToPacks(128);
+        printState(jdbcTemplate, packStore, "après", (Long) migration.get("elapsedMs"));
+        assertEquals(chunks, migration.get("migratedChunks"));
+        assertEquals(0L, countInDatabase(jdbcTemplate));
+
+        // Relancée, la migration n'a plus rien à faire
+        assertEquals(0L, migrator.migrateToPacks(128).get("migratedChunks"));
+
+        FileReconstructionService reconstructionService = new FileReconstructionService(fileRepository,
+                fileChunkRepository, fileManifestPageRepository, chunkRepository, new CompressionService(),
+                new ChunkStorage(new DatabaseChunkStore(), packStore, ChunkStorage.Type.PACK), null);
+        for (int i = 0; i < files.size(); i++) {
+            Long fileId = fileIds.get(i);
+            byte[] restored = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return reconstructionService.reconstructFile(fileId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertArrayEquals(Files.readAllBytes(files.get(i).toPath()), restored);
+        }
+        packStore.close();
+    }
+
+    private void printState(JdbcTemplate jdbcTemplate, PackChunkStore packStore, String step, long elapsedMs)
+            throws IOException {
+        Long bytes = jdbcTemplate.queryForObject("SELECT coalesce(sum(length(data)), 0) FROM chunk", Long.class);
+        Long inPacks = jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE pack_id IS NOT NULL",
+                Long.class);
+        System.out.printf("%s | %d | %d | %d | %s | %d ms%n", step, countInDatabase(jdbcTemplate), bytes, inPacks,
+                packStore.getStats().get("segments"), elapsedMs);
+    }
+
+    private static long countInDatabase(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE data IS NOT NULL", Long.class);
+    }
+
+    private DuplicationService newService(ChunkStorage chunkStorage) {
+        return duplicationService().chunkStorage(chunkStorage).build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.compression.CompressionService.CompressionType;
+import com.goofy.GoofyFiles.duplication.DuplicationService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+import com.goofy.GoofyFiles.duplication.IngestTestSupport;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+
+/**
+ * Étagement chaud/froid : les chunks des fichiers non lus depuis un mois sont
+ * recompressés en Zstd, ceux des fichiers relus restent tels quels, et tous
+ * les fichiers se reconstruisent à l'identique.
+ */
+class ChunkTieringServiceTest extends IngestTestSupport {
+
+    private static final int FILES = 8;
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+
+    private PackChunkStore packStore;
+    private ChunkStorage chunkStorage;
+    private ChunkAccessTracker accessTracker;
+    private final List<File> files = new ArrayList<>();
+    private final List<Long> fileIds = new ArrayList<>();
+
+    @AfterEach
+    void closePacks() throws IOException {
+        packStore.close();
+    }
+
+    @Test
+    void testColdChunksAreRecompressedAndStayReadable() throws Exception {
+        System.out.println("\n=== Étagement chaud/froid (fichiers impairs non lus depuis 40 jours) ===");
+        System.out.println("Format: Étape | Chunks chauds | Chunks froids | Octets stockés | Lecture des "
+                + "fichiers froids | CPU | Mo gagnés/s CPU");
+        System.out.println("------------------------------------------------------------------------");
+
+        JdbcTemplate jdbcTemplate = ingestThenAgeOddFiles();
+        FileReconstructionService reconstructionService = reconstructionService(accessTracker);
+        // Mesure des lectures sans les enregistrer : les fichiers impairs restent non lus
+        FileReconstructionService untrackedService = reconstructionService(null);
+        ChunkTieringService tieringService = new ChunkTieringService(dataSource, transactionManager, chunkStorage,
+                new CompressionService(), new TieringPolicy(Duration.ofDays(30), 19), DataSize.ofBytes(0),
+                100_000, 64);
+
+        // Les fichiers pairs sont relus : leurs chunks redeviennent récents
+        for (int i = 0; i < FILES; i += 2) {
+            reconstruct(reconstructionService, fileIds.get(i));
+        }
+        accessTracker.flush();
+        long storedBefore = storedBytes(jdbcTemplate);
+        long coldReadBefore = readColdFiles(untrackedService);
+        printState(jdbcTemplate, "avant", coldReadBefore, null);
+
+        Map<String, Object> run = tieringService.demoteColdChunks();
+        long coldReadAfter = readColdFiles(untrackedService);
+        printState(jdbcTemplate, "après", coldReadAfter, run);
+
+        long storedAfter = storedBytes(jdbcTemplate);
+        assertEquals(storedBefore - storedAfter, run.get("savedBytes"));
+        assertTrue((Long) run.get("savedBytes") > 0);
+        assertTrue((Long) run.get("recompressedChunks") > 0);
+        for (int i = 0; i < FILES; i++) {
+            List<Map<String, Object>> chunks = jdbcTemplate.queryForList("SELECT c.storage_tier, "
+                    + "c.compression_type FROM chunk c JOIN file_chunk fc ON fc.chunk_id = c.id "
+                    + "WHERE fc.file_id = ?", fileIds.get(i));
+            String tier = i % 2 == 0 ? "HOT" : "COLD";
+            for (Map<String, Object> chunk : chunks) {
+                assertEquals(tier, chunk.get("storage_tier"));
+                if (i % 2 == 0) {
+                    assertEquals("LZ4", chunk.get("compression_type"));
+                }
+            }
+        }
+        assertEquals((Long) run.get("recompressedChunks") + (Long) run.get("incompressibleChunks"),
+                jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE storage_tier = 'COLD'", Long.class));
+        for (int i = 0; i < FILES; i++) {
+            assertArrayEquals(Files.readAllBytes(files.get(i).toPath()),
+                    reconstruct(reconstructionService, fileIds.get(i)));
+        }
+
+        // Déjà froids, les chunks ne sont plus candidats : rien à refaire
+        Map<String, Object> rerun = tieringService.demoteColdChunks();
+        assertEquals(0L, rerun.get("examinedChunks"));
+    }
+
+    @Test
+    void testRecompressionIsRateLimited() throws Exception {
+        ingestThenAgeOddFiles();
+        long rate = DataSize.ofMegabytes(4).toBytes();
+        ChunkTieringService tieringService = new ChunkTieringService(dataSource, transactionManager, chunkStorage,
+                new CompressionService(), new TieringPolicy(Duration.ofDays(30), 19), DataSize.ofBytes(rate),
+                100_000, 64);
+
+        Map<String, Object> run = tieringService.demoteColdChunks();
+        double throughput = (Double) run.get("throughputMBps");
+        System.out.printf("%nRecompression limitée à %d Mo/s : %d chunks à %.1f Mo/s, %d ms CPU%n",
+                rate / (1024 * 1024), run.get("recompressedChunks"), throughput, run.get("cpuMs"));
+        assertTrue((Long) run.get("recompressedChunks") > 0);
+        assertTrue(throughput <= rate / (1024.0 * 1024) * 1.1);
+    }
+
+    /**
+     * Fichiers de journaux (compressibles) envoyés en LZ4 dans les packs, puis
+     * les chunks des fichiers impairs vieillis de 40 jours.
+     */
+    private JdbcTemplate ingestThenAgeOddFiles() throws IOException {
+        packStore = new PackChunkStore(tempDir.resolve("packs").toString(), DataSize.ofMegabytes(8));
+        chunkStorage = new ChunkStorage(new DatabaseChunkStore(), packStore, ChunkStorage.Type.PACK);
+        accessTracker = new ChunkAccessTracker(dataSource, Duration.ofHours(1), 1_000_000);
+        DuplicationService duplicationService = newService();
+        Random random = new Random(24);
+        String[] actions = {"GET", "PUT", "DELETE", "UPLOAD", "DOWNLOAD", "LOGIN"};
+        for (int i = 0; i < FILES; i++) {
+            StringBuilder log = new StringBuilder(FILE_SIZE + 128);
+            while (log.length() < FILE_SIZE) {
+                log.append("2024-05-").append(10 + random.nextInt(20)).append(" user=").append(random.nextInt(5000))
+                        .append(" action=").append(actions[random.nextInt(actions.length)])
+                        .append(" size=").append(random.nextInt(1 << 20))
+                        .append(" status=").append(random.nextInt(10) == 0 ? 500 : 200).append('\n');
+            }
+            File file = tempDir.resolve("tiering-" + i + ".log").toFile();
+            Files.writeString(file.toPath(), log);
+            files.add(file);
+            Map<String, Object> result = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return duplicationService.processAndStoreFileCompressed(file, file.getName(), file.length(),
+                            HashingAlgorithm.SHA256, CompressionType.LZ4, ChunkingService.DEFAULT_STRATEGY);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            fileIds.add((Long) result.get("fileId"));
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Timestamp aged = Timestamp.valueOf(LocalDateTime.now().minusDays(40));
+        for (int i = 1; i < FILES; i += 2) {
+            jdbcTemplate.update("UPDATE chunk SET last_accessed_at = ? WHERE id IN "
+                    + "(SELECT chunk_id FROM file_chunk WHERE file_id = ?)", aged, fileIds.get(i));
+        }
+        return jdbcTemplate;
+    }
+
+    private long readColdFiles(FileReconstructionService reconstructionService) {
+        long start = System.nanoTime();
+        for (int i = 1; i < FILES; i += 2) {
+            reconstruct(reconstructionService, fileIds.get(i));
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long storedBytes(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT sum(stored_size) FROM chunk", Long.class);
+    }
+
+    private void printState(JdbcTemplate jdbcTemplate, String step, long coldReadMs, Map<String, Object> run) {
+        Long cold = jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE storage_tier = 'COLD'",
+                Long.class);
+        Long hot = jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE storage_tier = 'HOT'",
+                Long.class);
+        System.out.printf("%s | %d | %d | %d | %d ms | %s | %s%n", step, hot, cold, storedBytes(jdbcTemplate),
+                coldReadMs, run == null ? "-" : run.get("cpuMs") + " ms",
+                run == null ? "-" : run.get("savedMBPerCpuSecond"));
+    }
+
+    private byte[] reconstruct(FileReconstructionService reconstructionService, Long fileId) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return reconstructionService.reconstructFile(fileId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private FileReconstructionService reconstructionService(ChunkAccessTracker tracker) {
+        return new FileReconstructionService(fileRepository, fileChunkRepository, fileManifestPageRepository,
+                chunkRepository, new CompressionService(), chunkStorage, tracker);
+    }
+
+    private DuplicationService newService() {
+        return duplicationService().chunkStorage(chunkStorage).build();
+    }
+}
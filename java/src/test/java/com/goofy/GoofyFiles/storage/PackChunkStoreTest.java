@@ -0,0 +1,275 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.ChunkHasher;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+
+class PackChunkStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTripAcrossSegments() throws IOException {
+        PackChunkStore store = new PackChunkStore(tempDir.toString(), DataSize.ofKilobytes(64));
+        List<ChunkEntity> chunks = randomChunks(100, 8 * 1024, 1);
+        List<byte[]> payloads = chunks.stream().map(ChunkEntity::getData).toList();
+        for (int from = 0; from < chunks.size(); from += 10) {
+            store.write(chunks.subList(from, from + 10));
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkEntity chunk = chunks.get(i);
+            assertNull(chunk.getData());
+            assertTrue(store.holds(chunk));
+            assertArrayEquals(payloads.get(i), store.read(chunk));
+        }
+        // ~800 Ko en segments de 64 Ko
+        assertTrue(chunks.get(chunks.size() - 1).getPackId() > 10);
+        store.close();
+    }
+
+    @Test
+    void testRestartNeverAppendsToExistingSegment() throws IOException {
+        PackChunkStore first = new PackChunkStore(tempDir.toString(), DataSize.ofMegabytes(1));
+        List<ChunkEntity> before = randomChunks(5, 4096, 2);
+        first.write(before);
+        first.close();
+
+        // Fin de segment interrompue par un arrêt brutal
+        Path segment = tempDir.resolve("pack-00000001.pack");
+        long written = Files.size(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(written + 100);
+        }
+
+        PackChunkStore second = new PackChunkStore(tempDir.toString(), DataSize.ofMegabytes(1));
+        List<ChunkEntity> after = randomChunks(5, 4096, 3);
+        List<byte[]> payloads = after.stream().map(ChunkEntity::getData).toList();
+        second.write(after);
+
+        assertEquals(2L, after.get(0).getPackId());
+        assertEquals(0L, after.get(0).getPackOffset());
+        assertEquals(written + 100, Files.size(segment));
+        for (int i = 0; i < after.size(); i++) {
+            assertArrayEquals(payloads.get(i), second.read(after.get(i)));
+        }
+        assertEquals(4096, second.read(before.get(4)).length);
+        second.close();
+    }
+
+    @Test
+    void testDeletedLastSegmentNumberIsNotReusedAfterRestart() throws IOException {
+        PackChunkStore first = new PackChunkStore(tempDir.toString(), DataSize.ofKilobytes(64));
+        List<ChunkEntity> before = randomChunks(20, 8 * 1024, 4);
+        first.write(before);
+        first.close();
+        long last = before.get(before.size() - 1).getPackId();
+
+        // Compactage après un redémarrage : le segment le plus récent est fermé, puis supprimé
+        PackChunkStore compacted = new PackChunkStore(tempDir.toString(), DataSize.ofKilobytes(64));
+        compacted.deleteSegment(last);
+        compacted.close();
+        assertEquals(last - 1, Collections.max(compacted.segmentSizes().keySet()));
+
+        // Un chunk encore noté dans ce segment ne doit pas se relire dans un autre
+        PackChunkStore restarted = new PackChunkStore(tempDir.toString(), DataSize.ofKilobytes(64));
+        List<ChunkEntity> after = randomChunks(1, 8 * 1024, 5);
+        restarted.write(after);
+        assertEquals(last + 1, after.get(0).getPackId());
+        assertThrows(IOException.class, () -> restarted.read(before.get(before.size() - 1)));
+        restarted.close();
+    }
+
+    @Test
+    void testWrongLocationIsDetected() throws IOException {
+        PackChunkStore store = new PackChunkStore(tempDir.toString(), DataSize.ofMegabytes(1));
+        List<ChunkEntity> chunks = randomChunks(2, 4096, 4);
+        store.write(chunks);
+
+        // Emplacement du second chunk avec le hash du premier
+        ChunkEntity mismatched = new ChunkEntity();
+        mismatched.setHashSha256(chunks.get(0).getHashSha256());
+        mismatched.setPackId(chunks.get(1).getPackId());
+        mismatched.setPackOffset(chunks.get(1).getPackOffset());
+        mismatched.setStoredSize(chunks.get(1).getStoredSize());
+        assertThrows(IOException.class, () -> store.read(mismatched));
+
+        ChunkEntity shifted = new ChunkEntity();
+        shifted.setHashSha256(chunks.get(0).getHashSha256());
+        shifted.setPackId(chunks.get(0).getPackId());
+        shifted.setPackOffset(chunks.get(0).getPackOffset() + 1);
+        shifted.setStoredSize(chunks.get(0).getStoredSize());
+        assertThrows(IOException.class, () -> store.read(shifted));
+        store.close();
+    }
+
+    @Test
+    void testRelativeDirectoryIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PackChunkStore("data/packs", DataSize.ofMegabytes(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PackChunkStore(List.of(tempDir.toString(), "packs"), DataSize.ofMegabytes(1), 2));
+    }
+
+    @Test
+    void testReadThroughput() throws IOException {
+        System.out.println("\n=== Lecture des chunks dans les packs ===");
+        System.out.println("Format: Chunks | Taille | Écriture | Lecture dans l'ordre | Lecture aléatoire");
+        System.out.println("------------------------------------------------------------------------");
+
+        PackChunkStore store = new PackChunkStore(tempDir.toString(), DataSize.ofMegabytes(16));
+        List<ChunkEntity> chunks = randomChunks(8192, 8 * 1024, 5);
+        long bytes = 8192L * 8 * 1024;
+
+        long start = System.nanoTime();
+        for (int from = 0; from < chunks.size(); from += 1000) {
+            store.write(chunks.subList(from, Math.min(chunks.size(), from + 1000)));
+        }
+        long write = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (ChunkEntity chunk : chunks) {
+            store.read(chunk);
+        }
+        long sequential = System.nanoTime() - start;
+
+        List<ChunkEntity> shuffled = new ArrayList<>(chunks);
+        Collections.shuffle(shuffled, new Random(6));
+        start = System.nanoTime();
+        for (ChunkEntity chunk : shuffled) {
+            store.read(chunk);
+        }
+        long random = System.nanoTime() - start;
+
+        System.out.printf("%d | %d Mo | %6.1f Mo/s | %6.1f Mo/s | %6.1f Mo/s%n", chunks.size(),
+                bytes / (1024 * 1024), throughput(bytes, write), throughput(bytes, sequential),
+                throughput(bytes, random));
+        store.close();
+    }
+
+    @Test
+    void testVolumesShareChunksAndAddingOneMovesOnlyItsShare() throws IOException {
+        List<String> directories = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            directories.add(tempDir.resolve("disk" + i).toString());
+        }
+        PackChunkStore store = new PackChunkStore(directories, DataSize.ofKilobytes(256), 2);
+        List<ChunkEntity> chunks = randomChunks(4000, 1024, 7);
+        List<byte[]> payloads = chunks.stream().map(ChunkEntity::getData).toList();
+        store.write(chunks);
+
+        Map<String, Integer> perVolume = new HashMap<>();
+        Set<Long> segments = new HashSet<>();
+        for (ChunkEntity chunk : chunks) {
+            String volume = store.volumeOf(chunk.getPackId());
+            assertEquals(store.volumeFor(chunk), volume);
+            perVolume.merge(volume, 1, Integer::sum);
+            segments.add(chunk.getPackId());
+        }
+        assertEquals(4, perVolume.size());
+        for (int count : perVolume.values()) {
+            assertTrue(Math.abs(count - 1000) < 150, "Répartition inégale: " + perVolume);
+        }
+        // Numéros de segment uniques sur l'ensemble des volumes
+        assertEquals(segments.size(), store.segmentSizes().size());
+        List<byte[]> read = store.readAll(chunks);
+        for (int i = 0; i < chunks.size(); i++) {
+            assertArrayEquals(payloads.get(i), read.get(i));
+        }
+        store.close();
+
+        // Cinquième volume : seuls les chunks qui lui reviennent changent de volume
+        directories.add(tempDir.resolve("disk4").toString());
+        PackChunkStore extended = new PackChunkStore(directories, DataSize.ofKilobytes(256), 2);
+        int misplaced = 0;
+        for (ChunkEntity chunk : chunks) {
+            if (extended.isMisplaced(chunk)) {
+                misplaced++;
+                assertEquals(directories.get(4), extended.volumeFor(chunk));
+            } else {
+                assertEquals(store.volumeFor(chunk), extended.volumeFor(chunk));
+            }
+            assertEquals(1024, extended.read(chunk).length);
+        }
+        System.out.printf("%nAjout d'un 5e volume : %d chunks sur %d à déplacer (%.1f %%)%n", misplaced,
+                chunks.size(), misplaced * 100.0 / chunks.size());
+        assertTrue(Math.abs(misplaced - 800) < 150);
+        extended.close();
+    }
+
+    @Test
+    void testReadThroughputAcrossVolumes() throws IOException {
+        System.out.println("\n=== Lecture groupée selon le nombre de volumes ===");
+        System.out.println("Format: Volumes | Chunks | Taille | Écriture | Lecture groupée");
+        System.out.println("------------------------------------------------------------------------");
+
+        for (int count : new int[]{1, 2, 4}) {
+            List<String> directories = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                directories.add(tempDir.resolve(count + "-volumes").resolve("disk" + i).toString());
+            }
+            PackChunkStore store = new PackChunkStore(directories, DataSize.ofMegabytes(16), 2);
+            List<ChunkEntity> chunks = randomChunks(4096, 8 * 1024, 8);
+            long bytes = 4096L * 8 * 1024;
+
+            long start = System.nanoTime();
+            for (int from = 0; from < chunks.size(); from += 1000) {
+                store.write(chunks.subList(from, Math.min(chunks.size(), from + 1000)));
+            }
+            long write = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int from = 0; from < chunks.size(); from += 256) {
+                store.readAll(chunks.subList(from, Math.min(chunks.size(), from + 256)));
+            }
+            long read = System.nanoTime() - start;
+
+            // Répertoires d'un même disque ici : le gain réel vient de disques distincts
+            System.out.printf("%d | %d | %d Mo | %6.1f Mo/s | %6.1f Mo/s%n", count, chunks.size(),
+                    bytes / (1024 * 1024), throughput(bytes, write), throughput(bytes, read));
+            store.close();
+        }
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return bytes / (nanos / 1e9) / (1024 * 1024);
+    }
+
+    private static List<ChunkEntity> randomChunks(int count, int size, long seed) {
+        Random random = new Random(seed);
+        ChunkHasher hasher = ChunkHasher.forAlgorithm(HashingAlgorithm.SHA256);
+        List<ChunkEntity> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            ChunkEntity chunk = new ChunkEntity();
+            chunk.setData(data);
+            chunk.setHashSha256(hasher.hash(data).toHex());
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,191 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.duplication.DuplicationService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+import com.goofy.GoofyFiles.duplication.IngestTestSupport;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+
+/**
+ * Compactage de packs dont la moitié des chunks a été supprimée, pendant que
+ * des lectures se poursuivent.
+ */
+class PackCompactorTest extends IngestTestSupport {
+
+    private static final int FILES = 8;
+    private static final int FILE_SIZE = 1536 * 1024;
+
+    private PackChunkStore packStore;
+    private final List<File> files = new ArrayList<>();
+    private final List<Long> fileIds = new ArrayList<>();
+
+    @AfterEach
+    void closePacks() throws IOException {
+        packStore.close();
+    }
+
+    @Test
+    void testCompactionReclaimsDeadSpaceWithoutBlockingReaders() throws Exception {
+        System.out.println("\n=== Compactage des packs (moitié des fichiers supprimés) ===");
+        System.out.println("Format: Étape | Segments | Octets sur disque | Octets morts | Chunks copiés | Débit de copie");
+        System.out.println("------------------------------------------------------------------------");
+
+        JdbcTemplate jdbcTemplate = ingestThenDeleteOddFiles(DataSize.ofMegabytes(1));
+        PackCompactor compactor = new PackCompactor(dataSource, transactionManager, packStore, 0.3, 100,
+                DataSize.ofMegabytes(0), Duration.ofMillis(500), 64);
+        FileReconstructionService reconstructionService = reconstructionService();
+        printState(compactor, "avant", null);
+        long chunksBefore = chunkRepository.count();
+
+        // Des lectures en continu des fichiers restants pendant la copie
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            reads.add(readers.submit(() -> {
+                int count = 0;
+                while (!stop.get()) {
+                    for (int i = 0; i < FILES; i += 2) {
+                        assertArrayEquals(Files.readAllBytes(files.get(i).toPath()),
+                                reconstruct(reconstructionService, fileIds.get(i)));
+                        count++;
+                    }
+                }
+                return count;
+            }));
+        }
+        Map<String, Object> run = compactor.compact();
+        stop.set(true);
+        int completedReads = 0;
+        for (Future<Integer> read : reads) {
+            completedReads += read.get();
+        }
+        readers.shutdown();
+        printState(compactor, "copie", run);
+        assertTrue(completedReads > 0);
+        assertFalse(((List<?>) run.get("compactedSegments")).isEmpty());
+        // Segments vidés mais pas encore supprimés : lectures commencées avant la bascule
+        assertEquals(0L, run.get("reclaimedBytes"));
+
+        Thread.sleep(600);
+        Map<String, Object> cleanup = compactor.compact();
+        printState(compactor, "suppression", cleanup);
+        assertTrue((Long) cleanup.get("reclaimedBytes") > 0);
+        for (Map<String, Object> segment : compactor.getSegments()) {
+            assertTrue((Double) segment.get("deadRatio") < 0.3 || (Boolean) segment.get("current"));
+        }
+
+        assertEquals(chunksBefore, chunkRepository.count());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM chunk WHERE pack_id IN ("
+                + String.join(", ", ((List<?>) run.get("compactedSegments")).stream().map(String::valueOf).toList())
+                + ")", Integer.class));
+        for (int i = 0; i < FILES; i += 2) {
+            assertArrayEquals(Files.readAllBytes(files.get(i).toPath()),
+                    reconstruct(reconstructionService, fileIds.get(i)));
+        }
+    }
+
+    @Test
+    void testCopyIsRateLimited() throws Exception {
+        ingestThenDeleteOddFiles(DataSize.ofMegabytes(1));
+        long rate = DataSize.ofMegabytes(8).toBytes();
+        PackCompactor compactor = new PackCompactor(dataSource, transactionManager, packStore, 0.3, 100,
+                DataSize.ofBytes(rate), Duration.ZERO, 64);
+
+        Map<String, Object> run = compactor.compact();
+        long copied = (Long) run.get("copiedBytes");
+        double throughput = (Double) run.get("copyThroughputMBps");
+        System.out.printf("%nCompactage limité à %d Mo/s : %d octets copiés à %.1f Mo/s%n",
+                rate / (1024 * 1024), copied, throughput);
+        assertTrue(copied > 2 * rate / 8);
+        assertTrue(throughput <= rate / (1024.0 * 1024) * 1.1);
+    }
+
+    /**
+     * Fichiers envoyés à la suite dans des segments courts, puis un sur deux
+     * supprimé avec ses chunks : chaque segment garde environ moitié de vivant.
+     */
+    private JdbcTemplate ingestThenDeleteOddFiles(DataSize segmentSize) throws IOException {
+        packStore = new PackChunkStore(tempDir.resolve("packs").toString(), segmentSize);
+        DuplicationService duplicationService = newService(new ChunkStorage(new DatabaseChunkStore(), packStore,
+                ChunkStorage.Type.PACK));
+        Random random = new Random(22);
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = new byte[FILE_SIZE];
+            random.nextBytes(content);
+            File file = tempDir.resolve("compact-" + i + ".dat").toFile();
+            Files.write(file.toPath(), content);
+            files.add(file);
+            Map<String, Object> result = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return duplicationService.processAndStoreFile(file, file.getName(), file.length(),
+                            HashingAlgorithm.SHA256, ChunkingService.DEFAULT_STRATEGY);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            fileIds.add((Long) result.get("fileId"));
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (int i = 1; i < FILES; i += 2) {
+            jdbcTemplate.update("DELETE FROM file_chunk WHERE file_id = ?", fileIds.get(i));
+            jdbcTemplate.update("DELETE FROM files WHERE id = ?", fileIds.get(i));
+        }
+        jdbcTemplate.update("DELETE FROM chunk WHERE id NOT IN (SELECT chunk_id FROM file_chunk)");
+        return jdbcTemplate;
+    }
+
+    private void printState(PackCompactor compactor, String step, Map<String, Object> run) throws IOException {
+        List<Map<String, Object>> segments = compactor.getSegments();
+        long size = segments.stream().mapToLong(segment -> (Long) segment.get("size")).sum();
+        long dead = segments.stream().mapToLong(segment -> (Long) segment.get("deadBytes")).sum();
+        System.out.printf("%s | %d | %d | %d | %s | %s Mo/s%n", step, segments.size(), size, dead,
+                run == null ? "-" : run.get("movedChunks"), run == null ? "-" : run.get("copyThroughputMBps"));
+    }
+
+    private byte[] reconstruct(FileReconstructionService reconstructionService, Long fileId) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            try {
+                return reconstructionService.reconstructFile(fileId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private FileReconstructionService reconstructionService() {
+        return new FileReconstructionService(fileRepository, fileChunkRepository, fileManifestPageRepository,
+                chunkRepository, new CompressionService(),
+                new ChunkStorage(new DatabaseChunkStore(), packStore, ChunkStorage.Type.PACK), null);
+    }
+
+    private DuplicationService newService(ChunkStorage chunkStorage) {
+        return duplicationService().chunkStorage(chunkStorage).build();
+    }
+}
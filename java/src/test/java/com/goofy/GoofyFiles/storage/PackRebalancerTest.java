@@ -0,0 +1,161 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.goofy.GoofyFiles.chunking.ChunkingService;
+import com.goofy.GoofyFiles.compression.CompressionService;
+import com.goofy.GoofyFiles.duplication.DuplicationService;
+import com.goofy.GoofyFiles.duplication.HashingAlgorithm;
+import com.goofy.GoofyFiles.duplication.IngestTestSupport;
+import com.goofy.GoofyFiles.model.ChunkEntity;
+import com.goofy.GoofyFiles.service.FileReconstructionService;
+
+/**
+ * Fichiers stockés sur deux volumes, puis un troisième ajouté : le
+ * rééquilibrage ne déplace que la part du nouveau volume, et les fichiers se
+ * reconstruisent à l'identique avant, pendant et après.
+ */
+class PackRebalancerTest extends IngestTestSupport {
+
+    private static final int FILES = 6;
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    private final List<PackChunkStore> stores = new ArrayList<>();
+    private final List<File> files = new ArrayList<>();
+    private final List<Long> fileIds = new ArrayList<>();
+
+    @AfterEach
+    void closePacks() throws IOException {
+        for (PackChunkStore store : stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    void testAddedVolumeReceivesOnlyItsShare() throws Exception {
+        System.out.println("\n=== Rééquilibrage des packs après l'ajout d'un volume ===");
+        System.out.println("Format: Étape | Chunks par volume | Chunks déplacés | Octets copiés | Débit de copie");
+        System.out.println("------------------------------------------------------------------------");
+
+        List<String> volumes = new ArrayList<>(List.of(tempDir.resolve("disk0").toString(),
+                tempDir.resolve("disk1").toString()));
+        PackChunkStore twoVolumes = store(volumes);
+        ingest(twoVolumes);
+        PackRebalancer before = new PackRebalancer(dataSource, transactionManager, twoVolumes,
+                DataSize.ofBytes(0), 64);
+        printState("2 volumes", before.getDistribution(), null);
+        long chunks = chunkRepository.count();
+
+        volumes.add(tempDir.resolve("disk2").toString());
+        PackChunkStore threeVolumes = store(volumes);
+        PackRebalancer rebalancer = new PackRebalancer(dataSource, transactionManager, threeVolumes,
+                DataSize.ofBytes(0), 64);
+        FileReconstructionService reconstructionService = reconstructionService(threeVolumes);
+        // Volume ajouté mais pas encore rééquilibré : tout reste lisible
+        assertFilesIntact(reconstructionService);
+        long misplaced = countMisplaced(threeVolumes);
+
+        Map<String, Object> run = rebalancer.rebalance();
+        printState("3 volumes", rebalancer.getDistribution(), run);
+        assertEquals(misplaced, run.get("movedChunks"));
+        assertEquals(chunks, run.get("examinedChunks"));
+        // Un tiers des chunks environ, tous vers le nouveau volume
+        assertTrue(Math.abs(misplaced - chunks / 3.0) < chunks * 0.1, "Chunks déplacés: " + misplaced);
+        assertEquals(misplaced, rebalancer.getDistribution().get(volumes.get(2)).get("chunks"));
+        assertEquals(0, countMisplaced(threeVolumes));
+        assertFilesIntact(reconstructionService);
+
+        // Anciens enregistrements : de l'espace mort pour le compactage
+        PackCompactor compactor = new PackCompactor(dataSource, transactionManager, threeVolumes, 0.3, 100,
+                DataSize.ofBytes(0), Duration.ZERO, 64);
+        long dead = compactor.getSegments().stream().mapToLong(segment -> (Long) segment.get("deadBytes")).sum();
+        assertTrue(dead >= (Long) run.get("copiedBytes"));
+
+        assertEquals(0L, rebalancer.rebalance().get("movedChunks"));
+    }
+
+    private void ingest(PackChunkStore packStore) throws IOException {
+        DuplicationService duplicationService = newService(new ChunkStorage(new DatabaseChunkStore(), packStore,
+                ChunkStorage.Type.PACK));
+        Random random = new Random(25);
+        for (int i = 0; i < FILES; i++) {
+            byte[] content = new byte[FILE_SIZE];
+            random.nextBytes(content);
+            File file = tempDir.resolve("rebalance-" + i + ".dat").toFile();
+            Files.write(file.toPath(), content);
+            files.add(file);
+            Map<String, Object> result = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return duplicationService.processAndStoreFile(file, file.getName(), file.length(),
+                            HashingAlgorithm.SHA256, ChunkingService.DEFAULT_STRATEGY);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            fileIds.add((Long) result.get("fileId"));
+        }
+    }
+
+    private long countMisplaced(PackChunkStore packStore) throws IOException {
+        long misplaced = 0;
+        for (ChunkEntity chunk : chunkRepository.findAll()) {
+            if (packStore.isMisplaced(chunk)) {
+                misplaced++;
+            }
+        }
+        return misplaced;
+    }
+
+    private void assertFilesIntact(FileReconstructionService reconstructionService) throws IOException {
+        for (int i = 0; i < FILES; i++) {
+            Long fileId = fileIds.get(i);
+            byte[] restored = new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return reconstructionService.reconstructFile(fileId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertArrayEquals(Files.readAllBytes(files.get(i).toPath()), restored);
+        }
+    }
+
+    private void printState(String step, Map<String, Map<String, Long>> distribution, Map<String, Object> run) {
+        List<Long> counts = distribution.values().stream().map(volume -> volume.get("chunks")).toList();
+        System.out.printf("%s | %s | %s | %s | %s Mo/s%n", step, counts,
+                run == null ? "-" : run.get("movedChunks"), run == null ? "-" : run.get("copiedBytes"),
+                run == null ? "-" : run.get("copyThroughputMBps"));
+    }
+
+    private PackChunkStore store(List<String> volumes) {
+        PackChunkStore store = new PackChunkStore(new ArrayList<>(volumes), DataSize.ofMegabytes(1), 2);
+        stores.add(store);
+        return store;
+    }
+
+    private FileReconstructionService reconstructionService(PackChunkStore packStore) {
+        return new FileReconstructionService(fileRepository, fileChunkRepository, fileManifestPageRepository,
+                chunkRepository, new CompressionService(),
+                new ChunkStorage(new DatabaseChunkStore(), packStore, ChunkStorage.Type.PACK), null);
+    }
+
+    private DuplicationService newService(ChunkStorage chunkStorage) {
+        return duplicationService().chunkStorage(chunkStorage).build();
+    }
+}
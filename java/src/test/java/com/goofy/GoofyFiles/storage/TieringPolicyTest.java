@@ -0,0 +1,51 @@
+package com.goofy.GoofyFiles.storage;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Sélection des chunks à rendre froids par la condition de la politique :
+ * seuls les chunks pas encore froids et non lus depuis {@code cold-after} (à
+ * défaut de lecture, créés avant) sont retenus.
+ */
+@DataJpaTest(showSql = false)
+class TieringPolicyTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testDemotionPredicateSelectsOnlyColdCandidates() {
+        TieringPolicy policy = new TieringPolicy(Duration.ofDays(30), 19);
+        LocalDateTime now = LocalDateTime.of(2025, 6, 1, 12, 0);
+        LocalDateTime old = now.minusDays(40);
+        LocalDateTime recent = now.minusDays(10);
+
+        insert(1, old, old, "HOT");
+        insert(2, old, recent, "HOT");
+        insert(3, old, old, "COLD");
+        // Chunks stockés avant l'étagement : ni étage ni date de lecture
+        insert(4, old, null, null);
+        insert(5, recent, null, null);
+        // Lu juste après la limite : encore chaud
+        insert(6, old, now.minusDays(30).plusMinutes(1), "HOT");
+
+        List<Long> selected = jdbcTemplate.queryForList("SELECT id FROM chunk WHERE "
+                + policy.demotionPredicate() + " ORDER BY id", Long.class, policy.demotionArguments(now));
+        assertEquals(List.of(1L, 4L), selected);
+    }
+
+    private void insert(long id, LocalDateTime createdAt, LocalDateTime lastAccessedAt, String tier) {
+        jdbcTemplate.update("INSERT INTO chunk (id, hash_sha_256, created_at, last_accessed_at, storage_tier) "
+                + "VALUES (?, ?, ?, ?, ?)", id, String.format("%064x", id), Timestamp.valueOf(createdAt),
+                lastAccessedAt == null ? null : Timestamp.valueOf(lastAccessedAt), tier);
+    }
+}